@@ -44,6 +44,7 @@ import java.io.Serializable;
 public class ParallelInferenceConfig implements Serializable {
 
     private static final int NUM_WORKERS = 1;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MICROS = 0;
 
     @Builder.Default
     private int queueLimit = ParallelInference.DEFAULT_QUEUE_LIMIT;
@@ -55,6 +56,14 @@ public class ParallelInferenceConfig implements Serializable {
     private int maxTrainEpochs = 1;
     @Builder.Default
     private InferenceMode inferenceMode = ParallelInference.DEFAULT_INFERENCE_MODE;
+    //upper bound on how long a batch is held open waiting for more inputs,
+    //0 flushes a batch as soon as a worker is free. Only used in BATCHED mode.
+    @Builder.Default
+    private long maxBatchDelayMicros = DEFAULT_MAX_BATCH_DELAY_MICROS;
+    //batch size at which a batch is flushed without waiting for the window to expire,
+    //defaults to the batch limit when not positive
+    @Builder.Default
+    private int preferredBatchSize = 0;
 
     //config json for vertx: used for configuring
     //the retrainer and revision manager
@@ -54,9 +54,49 @@ public class ServingConfig {
     @Builder.Default
     private String uploadsDirectory = "file-uploads/";
 
+    //parse multi part uploads in to memory instead of writing every part to the uploads directory
+    @Builder.Default
+    private boolean inMemoryUploads = false;
+
+    //parts larger than this are still written to the uploads directory when in memory uploads are enabled
+    @Builder.Default
+    private long uploadSpillThresholdBytes = 10 * 1024 * 1024;
+
     @Builder.Default
     private boolean logTimings = false;
 
+    //indent json responses, off by default to keep large batch responses small
+    @Builder.Default
+    private boolean prettyPrintJson = false;
+
+    //threads decoding multipart uploads in to records
+    @Builder.Default
+    private int batchCreationPoolSize = 20;
+
+    //threads handing record batches to the pipeline
+    @Builder.Default
+    private int inferencePoolSize = 20;
+
+    //off heap memory all arrow vectors created from requests may use
+    @Builder.Default
+    private long arrowMemoryLimitBytes = 1024L * 1024 * 1024;
+
+    //off heap memory the arrow vectors of a single request may use
+    @Builder.Default
+    private long arrowRequestMemoryLimitBytes = 256L * 1024 * 1024;
+
+    //off heap memory kept in arrow vectors reused by small requests with the same schema
+    @Builder.Default
+    private long arrowVectorCacheBytes = 64L * 1024 * 1024;
+
+    //how often native metrics refresh their readings in the background
+    @Builder.Default
+    private long nativeMetricsSamplePeriodMs = 5000;
+
+    //native metric readings older than this are reported as NaN
+    @Builder.Default
+    private long nativeMetricsMaxStalenessMs = 15000;
+
     @Builder.Default
     private List<MetricType> metricTypes = Arrays.asList(
             MetricType.CLASS_LOADER,
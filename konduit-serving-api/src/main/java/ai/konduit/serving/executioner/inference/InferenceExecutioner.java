@@ -25,6 +25,8 @@ package ai.konduit.serving.executioner.inference;
 import ai.konduit.serving.model.loader.ModelLoader;
 import ai.konduit.serving.config.ParallelInferenceConfig;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * An {@link InferenceExecutioner}
  * handles wrapping a model thread pool
@@ -80,6 +82,28 @@ public interface InferenceExecutioner<MODEL_LOADER_TYPE extends ModelLoader<MODE
      */
     OUTPUT_TYPE execute(INPUT_TYPE input);
 
+    /**
+     * Executes inference without blocking the calling thread.
+     * The returned future is completed by the thread running the model.
+     *
+     * The default implementation runs {@link #execute(Object)}
+     * on the calling thread and returns an already completed future.
+     * Executioners backed by their own worker threads should override this.
+     *
+     * @param input the input to score
+     * @return a future completed with the output of the model
+     */
+    default CompletableFuture<OUTPUT_TYPE> executeAsync(INPUT_TYPE input) {
+        CompletableFuture<OUTPUT_TYPE> ret = new CompletableFuture<>();
+        try {
+            ret.complete(execute(input));
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+
+        return ret;
+    }
+
     /**
      * Stop the inference executioner.
      */
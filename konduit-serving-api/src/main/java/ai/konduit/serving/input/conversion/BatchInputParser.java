@@ -23,7 +23,9 @@
 package ai.konduit.serving.input.conversion;
 
 import ai.konduit.serving.input.adapter.InputAdapter;
+import ai.konduit.serving.input.upload.InMemoryFileUpload;
 import ai.konduit.serving.input.upload.MultipartFileUploadHandler;
+import ai.konduit.serving.verticles.VerticleConstants;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.FileUpload;
 import io.vertx.ext.web.RoutingContext;
@@ -109,8 +111,7 @@ public class BatchInputParser implements MultipartFileUploadHandler {
             List<BatchPartInfo> batch = partInfo.get(inputParts.get(i));
             for(int j = 0; j < batch.size(); j++) {
                 Pair<String, Integer> partNameAndIndex = partNameAndIndex(batch.get(j).getPartName());
-                Buffer buffer =  loadBuffer(routingContext,
-                        batch.get(j).getFileUploadPath());
+                Buffer buffer =  loadBuffer(routingContext, batch.get(j));
                 Object convert = convert(buffer, partNameAndIndex.getFirst(), null, routingContext);
                 Preconditions.checkNotNull(convert,"Converted writable was null!");
                 //set the name
@@ -165,41 +166,26 @@ public class BatchInputParser implements MultipartFileUploadHandler {
      * for each input
      */
     private Map<String,List<BatchPartInfo>> partInfoForUploads(RoutingContext ctx) {
-        if(ctx.fileUploads().isEmpty()) {
+        List<InMemoryFileUpload> inMemoryUploads = ctx.get(VerticleConstants.IN_MEMORY_UPLOADS);
+        int numUploads = inMemoryUploads != null ? inMemoryUploads.size() : ctx.fileUploads().size();
+        if(numUploads == 0) {
             throw new IllegalStateException("No files found for part info!");
         }
         else {
-            log.debug("Found " + ctx.fileUploads().size() + " file uploads");
+            log.debug("Found " + numUploads + " file uploads");
         }
 
         Map<String,List<BatchPartInfo>> ret = new LinkedHashMap<>();
         //parse each file upload all at once
-        for(FileUpload upload : ctx.fileUploads()) {
-            //the part name: inputName[index]
-            String name = upload.name();
-            //likely a colon for a tensorflow name got passed in
-            //verify against the name in the configuration and set it to that
-            if(name.contains(" ")) {
-                name = name.replace(" ",":");
-                if(!inputParts.contains(name)) {
-                    throw new IllegalStateException("Illegal name for multi part passed in " + upload.name());
-                }
-                else {
-                    log.warn("Corrected input name "  + upload.name() + " to " + name);
-                }
+        if(inMemoryUploads != null) {
+            for(InMemoryFileUpload upload : inMemoryUploads) {
+                addPartInfo(ret, upload.getName(), upload.getUploadedFileName(), upload.getData());
             }
-            //split the input name and the index
-            Pair<String,Integer> partNameAndIndex = partNameAndIndex(name);
-            //the part info for this particular file
-            BatchPartInfo batchPartInfo = new BatchPartInfo(
-                    partNameAndIndex.getRight(),upload.uploadedFileName(),name);
-            //add the input name and accumulate the part info for each input
-            if (!ret.containsKey(partNameAndIndex.getFirst())) {
-                ret.put(partNameAndIndex.getFirst(),new ArrayList<>());
+        }
+        else {
+            for(FileUpload upload : ctx.fileUploads()) {
+                addPartInfo(ret, upload.name(), upload.uploadedFileName(), null);
             }
-
-            List<BatchPartInfo> batchPartInfos = ret.get(partNameAndIndex.getFirst());
-            batchPartInfos.add(batchPartInfo);
         }
 
         //sort based on index
@@ -210,6 +196,34 @@ public class BatchInputParser implements MultipartFileUploadHandler {
         return ret;
     }
 
+    private void addPartInfo(Map<String,List<BatchPartInfo>> ret, String uploadName, String uploadedFileName, Buffer data) {
+        //the part name: inputName[index]
+        String name = uploadName;
+        //likely a colon for a tensorflow name got passed in
+        //verify against the name in the configuration and set it to that
+        if(name.contains(" ")) {
+            name = name.replace(" ",":");
+            if(!inputParts.contains(name)) {
+                throw new IllegalStateException("Illegal name for multi part passed in " + uploadName);
+            }
+            else {
+                log.warn("Corrected input name "  + uploadName + " to " + name);
+            }
+        }
+        //split the input name and the index
+        Pair<String,Integer> partNameAndIndex = partNameAndIndex(name);
+        //the part info for this particular file
+        BatchPartInfo batchPartInfo = new BatchPartInfo(
+                partNameAndIndex.getRight(),uploadedFileName,name,data);
+        //add the input name and accumulate the part info for each input
+        if (!ret.containsKey(partNameAndIndex.getFirst())) {
+            ret.put(partNameAndIndex.getFirst(),new ArrayList<>());
+        }
+
+        List<BatchPartInfo> batchPartInfos = ret.get(partNameAndIndex.getFirst());
+        batchPartInfos.add(batchPartInfo);
+    }
+
     /**
      * Use the converter specified
      * by name to convert a
@@ -233,13 +247,19 @@ public class BatchInputParser implements MultipartFileUploadHandler {
     }
 
     /**
-     * Load the buffer from each file
+     * Load the buffer for each part.
+     * Parts held in memory are returned as is,
+     * otherwise the uploaded file is read
      * @param ctx the context to load from
-     * @param uploadedFileName the uploaded file path
+     * @param partInfo the part to load
      * @return the file contents for the file part
      */
-    private Buffer loadBuffer(RoutingContext ctx, String uploadedFileName) {
-        return ctx.vertx().fileSystem().readFileBlocking(uploadedFileName);
+    private Buffer loadBuffer(RoutingContext ctx, BatchPartInfo partInfo) {
+        if(partInfo.getData() != null) {
+            return partInfo.getData();
+        }
+
+        return ctx.vertx().fileSystem().readFileBlocking(partInfo.getFileUploadPath());
     }
 
 
@@ -258,6 +278,12 @@ public class BatchInputParser implements MultipartFileUploadHandler {
         private int index;
         private String fileUploadPath;
         private String partName;
+        //content of the part when it was never written to disk
+        private Buffer data;
+
+        public BatchPartInfo(int index, String fileUploadPath, String partName) {
+            this(index, fileUploadPath, partName, null);
+        }
 
         @Override
         public int compareTo(BatchPartInfo batchPartInfo) {
@@ -0,0 +1,59 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.input.upload;
+
+import io.vertx.core.buffer.Buffer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A single part of a multi part upload
+ * parsed by {@link InMemoryMultipartHandler}.
+ *
+ * Small parts are kept as a {@link Buffer} backed by a pooled
+ * netty buffer and are never written to disk.
+ * Parts larger than the configured threshold are spilled
+ * to the uploads directory, in which case {@link #getData()} is null
+ * and {@link #getUploadedFileName()} points at the file.
+ *
+ * @author Adam Gibson
+ */
+@Data
+@AllArgsConstructor
+public class InMemoryFileUpload {
+
+    private String name;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private Buffer data;
+    private String uploadedFileName;
+
+    /**
+     * @return true if the content of this part is held in memory
+     */
+    public boolean isInMemory() {
+        return data != null;
+    }
+
+}
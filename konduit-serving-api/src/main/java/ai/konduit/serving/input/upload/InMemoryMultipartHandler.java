@@ -0,0 +1,320 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.input.upload;
+
+import ai.konduit.serving.verticles.VerticleConstants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+
+/**
+ * A body handler that parses multi part uploads straight
+ * off of the {@link HttpServerRequest} in to memory.
+ *
+ * Each part is accumulated in a pooled netty direct buffer
+ * and handed to the rest of the route as an {@link InMemoryFileUpload}
+ * under {@link VerticleConstants#IN_MEMORY_UPLOADS}, so
+ * {@link ai.konduit.serving.input.conversion.BatchInputParser}
+ * can convert it without a round trip through the file system.
+ * A part that grows beyond the spill threshold is written
+ * to the uploads directory instead.
+ *
+ * The pooled buffers are released and the spilled files
+ * deleted once the response has been written.
+ *
+ * Requests that aren't multi part are passed to the given fallback handler.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+public class InMemoryMultipartHandler implements Handler<RoutingContext> {
+
+    private final Vertx vertx;
+    private final Handler<RoutingContext> fallback;
+    private final String uploadsDirectory;
+    private final long spillThresholdBytes;
+
+    /**
+     * @param vertx               the vertx instance used for spilling large parts
+     * @param fallback            the handler for requests that aren't multi part
+     * @param uploadsDirectory    the directory parts above the threshold are written to
+     * @param spillThresholdBytes the maximum size of a part held in memory
+     */
+    public InMemoryMultipartHandler(Vertx vertx,
+                                    Handler<RoutingContext> fallback,
+                                    String uploadsDirectory,
+                                    long spillThresholdBytes) {
+        if(spillThresholdBytes < 0)
+            throw new IllegalArgumentException("Spill threshold must not be negative");
+
+        this.vertx = vertx;
+        this.fallback = fallback;
+        this.uploadsDirectory = uploadsDirectory;
+        this.spillThresholdBytes = spillThresholdBytes;
+        if(!vertx.fileSystem().existsBlocking(uploadsDirectory)) {
+            vertx.fileSystem().mkdirsBlocking(uploadsDirectory);
+        }
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        String contentType = ctx.request().getHeader(HttpHeaders.CONTENT_TYPE);
+        if(contentType == null || !contentType.toLowerCase().startsWith("multipart/")) {
+            fallback.handle(ctx);
+            return;
+        }
+
+        new MultipartRequest(ctx).start();
+    }
+
+    /**
+     * Parse state for a single request.
+     * All callbacks run on the request's context, so no synchronization is needed.
+     */
+    private class MultipartRequest {
+        private final RoutingContext ctx;
+        private final List<InMemoryFileUpload> uploads = new ArrayList<>();
+        private final List<Part> parts = new ArrayList<>();
+        private int pendingParts = 0;
+        private boolean ended,done,released;
+
+        private MultipartRequest(RoutingContext ctx) {
+            this.ctx = ctx;
+        }
+
+        private void start() {
+            HttpServerRequest request = ctx.request();
+            request.setExpectMultipart(true);
+            ctx.addBodyEndHandler(v -> release());
+            request.exceptionHandler(this::fail);
+            request.uploadHandler(this::onUpload);
+            request.endHandler(v -> {
+                ended = true;
+                completeIfDone();
+            });
+        }
+
+        private void onUpload(HttpServerFileUpload upload) {
+            Part part = new Part();
+            parts.add(part);
+            pendingParts++;
+
+            upload.exceptionHandler(this::fail);
+            //chunks are counted here rather than pumped, so the size stays right after spilling
+            upload.handler(chunk -> {
+                part.size += chunk.length();
+                if(part.spilling) {
+                    write(upload, part, chunk);
+                }
+                else if(part.size > spillThresholdBytes) {
+                    spill(upload, part, chunk);
+                }
+                else {
+                    part.data.appendBuffer(chunk);
+                }
+            });
+            upload.endHandler(v -> {
+                part.ended = true;
+                if(!part.spilling) {
+                    uploads.add(new InMemoryFileUpload(upload.name(), upload.filename(), upload.contentType(),
+                            part.size, part.data, null));
+                    partDone();
+                }
+                else if(part.ready) {
+                    closeSpilled(upload, part);
+                }
+                //otherwise the file is closed once the spilled prefix was written
+            });
+        }
+
+        private void spill(HttpServerFileUpload upload, Part part, Buffer chunk) {
+            //chunks already in flight until the pause takes effect queue up behind this one
+            part.spilling = true;
+            part.opening = true;
+            part.pending.add(chunk);
+            upload.pause();
+            part.path = uploadsDirectory + "/" + UUID.randomUUID().toString();
+            log.debug("Part " + upload.name() + " exceeded " + spillThresholdBytes + " bytes, spilling to " + part.path);
+            vertx.fileSystem().open(part.path, new OpenOptions(), opened -> {
+                part.opening = false;
+                if(opened.failed()) {
+                    part.releaseBuffer();
+                    fail(opened.cause());
+                    return;
+                }
+
+                if(released) {
+                    part.releaseBuffer();
+                    opened.result().close(closed -> delete(part));
+                    return;
+                }
+
+                part.file = opened.result();
+                int spilledBytes = part.data.length();
+                //the pooled buffer is only released once the file is done reading it
+                part.file.write(part.data, 0, written -> {
+                    part.releaseBuffer();
+                    if(written.failed()) {
+                        fail(written.cause());
+                        return;
+                    }
+
+                    if(released) {
+                        return;
+                    }
+
+                    part.file.setWritePos(spilledBytes);
+                    part.file.exceptionHandler(this::fail);
+                    Buffer pending;
+                    while((pending = part.pending.poll()) != null) {
+                        part.file.write(pending);
+                    }
+
+                    part.ready = true;
+
+                    if(part.ended) {
+                        closeSpilled(upload, part);
+                    }
+                    else {
+                        upload.resume();
+                    }
+                });
+            });
+        }
+
+        private void write(HttpServerFileUpload upload, Part part, Buffer chunk) {
+            if(!part.ready) {
+                part.pending.add(chunk);
+                return;
+            }
+
+            part.file.write(chunk);
+            if(part.file.writeQueueFull()) {
+                upload.pause();
+                part.file.drainHandler(v -> upload.resume());
+            }
+        }
+
+        private void closeSpilled(HttpServerFileUpload upload, Part part) {
+            AsyncFile file = part.file;
+            part.file = null;
+            file.close(closed -> {
+                if(closed.failed()) {
+                    fail(closed.cause());
+                    return;
+                }
+
+                uploads.add(new InMemoryFileUpload(upload.name(), upload.filename(), upload.contentType(),
+                        part.size, null, part.path));
+                partDone();
+            });
+        }
+
+        private void partDone() {
+            pendingParts--;
+            completeIfDone();
+        }
+
+        private void completeIfDone() {
+            if(done || !ended || pendingParts > 0)
+                return;
+
+            done = true;
+            HttpServerRequest request = ctx.request();
+            request.params().addAll(request.formAttributes());
+            ctx.setBody(Buffer.buffer());
+            ctx.put(VerticleConstants.IN_MEMORY_UPLOADS, uploads);
+            ctx.next();
+        }
+
+        private void fail(Throwable t) {
+            if(done)
+                return;
+
+            done = true;
+            release();
+            ctx.fail(t);
+        }
+
+        private void release() {
+            if(released)
+                return;
+
+            released = true;
+            for(Part part : parts) {
+                //a spilling part's buffer may still be read by the file, it is released once written
+                if(!part.spilling) {
+                    part.releaseBuffer();
+                }
+
+                if(part.file != null) {
+                    AsyncFile file = part.file;
+                    part.file = null;
+                    file.close(closed -> delete(part));
+                }
+                else if(part.path != null && !part.opening) {
+                    delete(part);
+                }
+            }
+        }
+
+        private void delete(Part part) {
+            vertx.fileSystem().delete(part.path, deleted -> {
+                if(deleted.failed()) {
+                    log.warn("Unable to delete spilled upload " + part.path);
+                }
+            });
+        }
+    }
+
+    private static class Part {
+        private final ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT.directBuffer();
+        private final Buffer data = Buffer.buffer(byteBuf);
+        private final Queue<Buffer> pending = new ArrayDeque<>();
+        private long size;
+        private boolean spilling,opening,ready,ended;
+        private AsyncFile file;
+        private String path;
+
+        private void releaseBuffer() {
+            if(byteBuf.refCnt() > 0)
+                byteBuf.release();
+        }
+    }
+
+}
@@ -37,6 +37,13 @@ public class PmmlConfig extends ModelConfig {
     private String evaluatorFactoryName =DEFAULT_EVALUATOR_FACTORY;
     public final static String DEFAULT_EVALUATOR_FACTORY = "org.jpmml.evaluator.ModelEvaluatorFactory";
 
+    /**
+     * Optional path of a serialized copy of the parsed PMML model.
+     * When set, the model is read from here on restart if it was built from the current
+     * content of the PMML file, and written here whenever the PMML file had to be parsed.
+     */
+    private String serializedModelPath;
+
     public String evaluatorFactoryName() {
         return evaluatorFactoryName == null ? DEFAULT_EVALUATOR_FACTORY : evaluatorFactoryName;
     }
@@ -50,4 +50,31 @@ public class PythonConfig extends ModelConfig {
 
     private boolean returnAllInputs;
 
+    /**
+     * When true the code runs once per batch instead of once per record:
+     * every input is a column over all the records of the batch
+     * (numpy arrays for numbers and arrays, lists for strings)
+     * and outputs are expected in the same layout.
+     */
+    private boolean batchMode;
+
+    /**
+     * When greater than zero the code runs in a pool of this many
+     * python processes instead of the interpreter embedded in the jvm,
+     * so python heavy steps are no longer limited to one core by the GIL.
+     * Not supported together with returnAllInputs.
+     */
+    private int pythonWorkers;
+
+    /**
+     * The python executable for the worker processes, python3 on the path if not set.
+     */
+    private String pythonExecutable;
+
+    /**
+     * How long a call may wait for a free python worker and then run on it, in milliseconds.
+     * A worker that doesn't answer in time is killed and replaced. Zero or less waits forever.
+     */
+    private long pythonWorkerTimeoutMillis;
+
 }
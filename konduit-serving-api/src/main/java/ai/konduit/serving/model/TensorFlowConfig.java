@@ -35,6 +35,15 @@ public class TensorFlowConfig extends ModelConfig {
 
     private String configProtoPath;
     private SavedModelConfig savedModelConfig;
+    //threads used within a single op, 0 leaves the choice to tensorflow (one per core).
+    //overrides the value in the config proto when set
+    private int intraOpParallelismThreads;
+    //threads used to run independent ops concurrently, 0 leaves the choice to tensorflow.
+    //overrides the value in the config proto when set
+    private int interOpParallelismThreads;
+    //by default all workers share one session, TF_SessionRun is thread safe.
+    //set this to give each worker its own graph and session (one model copy per worker)
+    private boolean sessionPerWorker;
     public final static String TENSORFLOW_EXECUTION_CONFIG_KEY = "tensorFlowConfig";
 
 
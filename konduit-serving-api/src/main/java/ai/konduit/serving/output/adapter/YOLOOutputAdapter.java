@@ -72,7 +72,6 @@ public class YOLOOutputAdapter implements MultiOutputAdapter<INDArray[]> {
             this.inputShape = inputShape;
         else
             this.inputShape = new int[]{3, 608, 608};
-        this.labels = labels;
         this.numLabels = numLabels;
         if(boundingBoxPriors == null)
             this.boundingBoxPriors = Nd4j.create(YOLO2.DEFAULT_PRIOR_BOXES).castTo(DataType.FLOAT);
@@ -80,8 +79,8 @@ public class YOLOOutputAdapter implements MultiOutputAdapter<INDArray[]> {
             this.boundingBoxPriors = Nd4j.create(boundingBoxPriors).castTo(DataType.FLOAT);
         }
 
-        gridWidth = DarknetHelper.getGridWidth(inputShape);
-        gridHeight = DarknetHelper.getGridHeight(inputShape);
+        gridWidth = DarknetHelper.getGridWidth(this.inputShape);
+        gridHeight = DarknetHelper.getGridHeight(this.inputShape);
 
     }
 
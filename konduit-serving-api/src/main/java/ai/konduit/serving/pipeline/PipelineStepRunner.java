@@ -23,10 +23,13 @@
 package ai.konduit.serving.pipeline;
 
 import ai.konduit.serving.config.SchemaType;
+import ai.konduit.serving.util.SchemaTypeUtils;
+import ai.konduit.serving.util.TensorBatchRecord;
 import org.datavec.api.records.Record;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -68,6 +71,55 @@ public interface PipelineStepRunner {
      */
     Record[] transform(Record[] input);
 
+    /**
+     * Transform a set of {@link Record}
+     * without blocking the calling thread.
+     * The default implementation calls {@link #transform(Record[])}
+     * on the calling thread and returns an already completed future.
+     * Steps that hand work off to their own threads
+     * (for example model thread pools) should override this.
+     * @param input the input records
+     * @return a future completed with the output from the transform
+     */
+    default CompletableFuture<Record[]> transformAsync(Record[] input) {
+        CompletableFuture<Record[]> ret = new CompletableFuture<>();
+        try {
+            ret.complete(transform(input));
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Whether this step reads its input as
+     * one array per input name rather than as records.
+     * The pipeline hands steps that consume tensors
+     * a single {@link TensorBatchRecord}, adapting the records
+     * from the previous step with {@link #toTensorBatch(Record[])}
+     * only when that step didn't already produce a tensor batch.
+     * @return true if this step consumes tensors, false by default
+     */
+    default boolean consumesTensors() {
+        return false;
+    }
+
+    /**
+     * Adapt the records produced by a step
+     * that works on records to the tensor batch this step reads.
+     * The default implementation concatenates the arrays
+     * of each column (see {@link SchemaTypeUtils#toArrays(Record[])}).
+     * @param input the input records
+     * @return the equivalent tensor batch
+     */
+    default TensorBatchRecord toTensorBatch(Record[] input) {
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(input);
+        if(batch != null) {
+            return batch;
+        }
 
+        return new TensorBatchRecord(null, SchemaTypeUtils.toArrays(input), null);
+    }
 
 }
@@ -31,6 +31,13 @@ import lombok.experimental.SuperBuilder;
 @Data
 public class PmmlPipelineStep extends ModelPipelineStep {
 
+    /**
+     * When true, the step returns one record per input row with typed
+     * columns laid out by the "default" output schema (backed by arrow vectors)
+     * instead of a single text record holding the json of all rows.
+     */
+    private boolean columnarOutput;
+
     @Override
     public String pipelineStepClazz() {
         return "ai.konduit.serving.pipeline.PmmlInferenceExecutionerPipelineStepRunner";
@@ -248,11 +248,18 @@ public class SchemaTypeUtils {
      * to {@link INDArray}
      * this assumes that each "record" is
      * actually a size 1 {@link Writable} of type
-     * {@link NDArrayWritable}
+     * {@link NDArrayWritable}.
+     * A {@link TensorBatchRecord} is returned as is
+     * without concatenating anything.
      * @param records the records to convert
      * @return the extracted {@link INDArray}
      */
     public static INDArray[] toArrays(Record[] records) {
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(records);
+        if(batch != null) {
+            return batch.getArrays();
+        }
+
         INDArray[] ret = new INDArray[records[0].getRecord().size()];
         int initialLength = ret.length;
         //each ndarray
@@ -0,0 +1,130 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import lombok.Getter;
+import org.datavec.api.records.Record;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A whole batch of named tensors, one {@link INDArray}
+ * per input or output name, passed between pipeline steps
+ * as a single {@link Record}.
+ *
+ * Steps that work on arrays (see {@link ai.konduit.serving.pipeline.PipelineStepRunner#consumesTensors()})
+ * read {@link #getArrays()} directly instead of concatenating
+ * one array per record and splitting the results again.
+ * Steps that work on records see a single record
+ * with one {@link NDArrayWritable} per name, which is the same
+ * layout {@link SchemaTypeUtils#toArrays(Record[])} expects.
+ *
+ * The batch can optionally carry the arrow rows it was computed from
+ * as columnar side data, so row aligned columns stay
+ * available to later steps.
+ *
+ * @author Adam Gibson
+ */
+@Getter
+public class TensorBatchRecord extends org.datavec.api.records.impl.Record {
+
+    private final List<String> names;
+    private final INDArray[] arrays;
+    private final ArrowWritableRecordBatch columnar;
+
+    /**
+     * @param names the name of each array, may be null
+     * @param arrays the arrays in the batch
+     * @param columnar the arrow rows the batch was computed from, may be null
+     */
+    public TensorBatchRecord(List<String> names, INDArray[] arrays, ArrowWritableRecordBatch columnar) {
+        super(new ArrayList<>(Arrays.asList(SchemaTypeUtils.fromArrays(arrays))), null);
+        Preconditions.checkState(names == null || names.size() == arrays.length,
+                "Got %s names for %s arrays", names == null ? 0 : names.size(), arrays.length);
+        this.names = names;
+        this.arrays = arrays;
+        this.columnar = columnar;
+    }
+
+    /**
+     * Returns the array with the given name
+     * @param name the name of the array
+     * @return the array or null if the batch has no array with that name
+     */
+    public INDArray get(String name) {
+        if(names == null) {
+            return null;
+        }
+
+        int index = names.indexOf(name);
+        return index < 0 ? null : arrays[index];
+    }
+
+    /**
+     * Wrap a set of arrays as the input for the next step.
+     * @param names the name of each array, may be null
+     * @param arrays the arrays in the batch
+     * @param columnar the arrow rows the batch was computed from, may be null
+     * @return a single element record array
+     */
+    public static Record[] wrap(List<String> names, INDArray[] arrays, ArrowWritableRecordBatch columnar) {
+        return new Record[] {new TensorBatchRecord(names, arrays, columnar)};
+    }
+
+    /**
+     * Returns the tensor batch behind the given records
+     * if they are exactly one untouched {@link TensorBatchRecord}.
+     * A record step may have replaced some of the writables in place,
+     * in which case the arrays are stale and null is returned.
+     * @param records the records to check
+     * @return the batch or null if the records aren't a whole tensor batch
+     */
+    public static TensorBatchRecord batchOf(Record[] records) {
+        if(records == null || records.length != 1 || !(records[0] instanceof TensorBatchRecord)) {
+            return null;
+        }
+
+        TensorBatchRecord batch = (TensorBatchRecord) records[0];
+        List<Writable> writables = batch.getRecord();
+        if(writables.size() != batch.arrays.length) {
+            return null;
+        }
+
+        for(int i = 0; i < batch.arrays.length; i++) {
+            Writable writable = writables.get(i);
+            if(!(writable instanceof NDArrayWritable) || ((NDArrayWritable) writable).get() != batch.arrays[i]) {
+                return null;
+            }
+        }
+
+        return batch;
+    }
+
+}
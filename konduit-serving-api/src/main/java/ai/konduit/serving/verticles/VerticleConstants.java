@@ -36,7 +36,13 @@ public class VerticleConstants {
 
     public final static String CONVERTED_INFERENCE_DATA = "convertedInferenceData";
     public final static String HTTP_PORT_KEY = "httpPort";
+    //set when the router is driven in process (eg: by the war servlet), no http server is started
+    public final static String EMBEDDED_KEY = "embedded";
     public final static String TRANSACTION_ID = "transactionId";
+    //multipart parts parsed by the in memory upload handler
+    public final static String IN_MEMORY_UPLOADS = "inMemoryUploads";
+    //pooled off heap buffers backing the decoded inputs, only present when the handler releases them after the response
+    public final static String POOLED_BUFFERS = "pooledBuffers";
     //keys for the routing context when doing object recognition
     public final static String ORIGINAL_IMAGE_HEIGHT = "originalImageHeight";
     public final static String ORIGINAL_IMAGE_WIDTH = "originalImageWidth";
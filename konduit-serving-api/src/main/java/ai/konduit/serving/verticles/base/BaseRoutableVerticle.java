@@ -25,6 +25,7 @@ package ai.konduit.serving.verticles.base;
 import ai.konduit.serving.verticles.Routable;
 import ai.konduit.serving.verticles.VerticleConstants;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.impl.RouterImpl;
@@ -52,6 +53,11 @@ public abstract  class BaseRoutableVerticle extends AbstractVerticle implements
      * as the httpPort key found in {@link #config()}
      */
     protected void setupWebServer() {
+        if(context != null && config().getBoolean(VerticleConstants.EMBEDDED_KEY, false)) {
+            log.debug("Embedded verticle, requests are dispatched to the router in process. Not starting an http server.");
+            return;
+        }
+
         RouterImpl router = (RouterImpl) router();
         int port;
         if(context != null && config().containsKey(VerticleConstants.HTTP_PORT_KEY)) {
@@ -91,4 +97,13 @@ public abstract  class BaseRoutableVerticle extends AbstractVerticle implements
     public Vertx vertx() {
         return vertx;
     }
+
+    /**
+     * Returns the context the verticle was deployed on,
+     * the router's handlers expect to be called on it.
+     * @return the verticle's context
+     */
+    public Context context() {
+        return context;
+    }
 }
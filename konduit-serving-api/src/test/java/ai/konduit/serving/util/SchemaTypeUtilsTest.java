@@ -30,6 +30,10 @@ import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
 public class SchemaTypeUtilsTest {
 
     @Test
@@ -44,4 +48,23 @@ public class SchemaTypeUtilsTest {
         INDArray[] indArrays = SchemaTypeUtils.toArrays(inputs);
     }
 
+    @Test
+    public void testToArraysTensorBatch() {
+        INDArray first = Nd4j.linspace(1, 6, 6).reshape(3, 2);
+        INDArray second = Nd4j.linspace(1, 3, 3).reshape(3, 1);
+        Record[] inputs = TensorBatchRecord.wrap(Arrays.asList("first", "second"), new INDArray[]{first, second}, null);
+
+        //the arrays are handed over as is, no concatenation
+        INDArray[] indArrays = SchemaTypeUtils.toArrays(inputs);
+        assertEquals(2, indArrays.length);
+        assertSame(first, indArrays[0]);
+        assertSame(second, indArrays[1]);
+        assertSame(second, ((TensorBatchRecord) inputs[0]).get("second"));
+
+        //a record step replacing a writable in place invalidates the batch
+        inputs[0].getRecord().set(1, new NDArrayWritable(second.add(1)));
+        assertNull(TensorBatchRecord.batchOf(inputs));
+        assertEquals(second.add(1), SchemaTypeUtils.toArrays(inputs)[1]);
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.handlers.converter.JsonArrayMapConverter;
+import ai.konduit.serving.util.ArrowUtils;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arrow record batch to matrix conversion, comparing
+ * {@link ArrowUtils#toArray(ArrowWritableRecordBatch)} with the
+ * columnar {@link ArrowUtils#toMatrix(ArrowWritableRecordBatch)}.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArrowToArrayBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int rows;
+
+    @Param({"4", "32"})
+    public int columns;
+
+    private ArrowWritableRecordBatch batch;
+
+    @Setup
+    public void setup() {
+        Schema schema = TabularBenchmarkData.schema(columns);
+        batch = new JsonArrayMapConverter().convert(schema, TabularBenchmarkData.rows(schema, rows), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TabularBenchmarkData.close(batch);
+    }
+
+    @Benchmark
+    public INDArray toArray() {
+        return ArrowUtils.toArray(batch);
+    }
+
+    @Benchmark
+    public INDArray toMatrix() {
+        return ArrowUtils.toMatrix(batch);
+    }
+
+}
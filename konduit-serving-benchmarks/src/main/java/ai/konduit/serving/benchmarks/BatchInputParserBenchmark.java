@@ -0,0 +1,95 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.input.conversion.BatchInputParser;
+import ai.konduit.serving.input.upload.InMemoryFileUpload;
+import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nd4j.VertxBufferNd4jInputAdapter;
+import ai.konduit.serving.util.DataBufferArena;
+import ai.konduit.serving.verticles.VerticleConstants;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+import org.datavec.api.records.Record;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.serde.binary.BinarySerde;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi part batch creation: one serialized nd4j array per part,
+ * converted with {@link VertxBufferNd4jInputAdapter}.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInputParserBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int batchSize;
+
+    @Param({"1,784", "3,224,224"})
+    public String shape;
+
+    private BatchInputParser batchInputParser;
+    private List<InMemoryFileUpload> uploads;
+
+    @Setup
+    public void setup() {
+        String inputName = "input1";
+        batchInputParser = BatchInputParser.builder()
+                .inputParts(Collections.singletonList(inputName))
+                .converters(Collections.singletonMap(inputName, new VertxBufferNd4jInputAdapter()))
+                .converterArgs(Collections.emptyMap())
+                .build();
+
+        uploads = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            INDArray arr = Nd4j.rand(BenchmarkShapes.parse(shape));
+            ByteBuffer serialized = BinarySerde.toByteBuffer(arr);
+            Buffer data = Buffer.buffer(Unpooled.directBuffer(serialized.remaining()).writeBytes(serialized));
+            uploads.add(new InMemoryFileUpload(inputName + "[" + i + "]", null, null, data.length(), data, null));
+        }
+    }
+
+    @Benchmark
+    public Record[] createBatch() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put(VerticleConstants.IN_MEMORY_UPLOADS, uploads);
+        DataBufferArena.enable(data);
+        RoutingContext ctx = BenchmarkRoutingContext.create(data);
+        Record[] ret = batchInputParser.createBatch(ctx);
+        DataBufferArena.releaseAll(data);
+        return ret;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import io.vertx.ext.web.RoutingContext;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RoutingContext} stand in for benchmarks.
+ * Only the context data is backed ({@code data()}, {@code get}, {@code put}),
+ * which is all the decoders and output adapters read.
+ * Any other call fails so a benchmark can't silently measure a half working path.
+ *
+ * @author Adam Gibson
+ */
+public class BenchmarkRoutingContext {
+
+    private BenchmarkRoutingContext() {}
+
+    /**
+     * @param data the context data to expose
+     * @return a routing context backed by the given data
+     */
+    public static RoutingContext create(Map<String, Object> data) {
+        return (RoutingContext) Proxy.newProxyInstance(
+                RoutingContext.class.getClassLoader(),
+                new Class[]{RoutingContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "data":
+                            return data;
+                        case "get":
+                            return data.get((String) args[0]);
+                        case "put":
+                            data.put((String) args[0], args[1]);
+                            return proxy;
+                        case "remove":
+                            return data.remove((String) args[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkRoutingContext" + data;
+                        default:
+                            throw new UnsupportedOperationException("Not available in benchmarks: " + method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @return a routing context backed by an empty mutable map
+     */
+    public static RoutingContext create() {
+        return create(new HashMap<>());
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+/**
+ * Shapes for {@link org.openjdk.jmh.annotations.Param}s are passed as comma separated strings.
+ *
+ * @author Adam Gibson
+ */
+public class BenchmarkShapes {
+
+    private BenchmarkShapes() {}
+
+    /**
+     * @param shape a comma separated shape such as {@code 3,224,224}
+     * @return the parsed shape
+     */
+    public static long[] parse(String shape) {
+        String[] split = shape.split(",");
+        long[] ret = new long[split.length];
+        for (int i = 0; i < split.length; i++) {
+            ret[i] = Long.parseLong(split[i].trim());
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param batchSize the leading dimension
+     * @param shape     a comma separated shape for a single example
+     * @return the example shape with the batch size prepended
+     */
+    public static long[] withBatch(int batchSize, String shape) {
+        long[] example = parse(shape);
+        long[] ret = new long[example.length + 1];
+        ret[0] = batchSize;
+        System.arraycopy(example, 0, ret, 1, example.length);
+        return ret;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.util.image.NativeImageLoader;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of encoded images in to matrices, optionally resizing
+ * to a model's input size the way the image input adapter does.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NativeImageLoaderBenchmark {
+
+    @Param({"224", "608", "1080"})
+    public int imageSize;
+
+    @Param({"0", "224"})
+    public int targetSize;
+
+    @Param({"png", "jpg"})
+    public String format;
+
+    private NativeImageLoader imageLoader;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        imageLoader = targetSize > 0 ? new NativeImageLoader(targetSize, targetSize, 3) : new NativeImageLoader();
+        BufferedImage image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(12345);
+        for (int y = 0; y < imageSize; y++) {
+            for (int x = 0; x < imageSize; x++) {
+                image.setRGB(x, y, random.nextInt(0xffffff));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public INDArray asMatrix() throws Exception {
+        return imageLoader.asMatrix(new ByteArrayInputStream(encoded));
+    }
+
+}
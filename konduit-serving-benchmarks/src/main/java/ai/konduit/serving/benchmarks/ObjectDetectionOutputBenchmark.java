@@ -0,0 +1,110 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.output.adapter.SSDOutputAdapter;
+import ai.konduit.serving.output.adapter.YOLOOutputAdapter;
+import ai.konduit.serving.output.types.BatchOutput;
+import ai.konduit.serving.verticles.VerticleConstants;
+import io.vertx.ext.web.RoutingContext;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of raw object detection outputs in to detected objects
+ * with the {@link SSDOutputAdapter} and {@link YOLOOutputAdapter}.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectDetectionOutputBenchmark {
+
+    private final static int NUM_LABELS = 80;
+    private final static int NUM_PRIOR_BOXES = 5;
+
+    //number of candidate boxes produced by the ssd model
+    @Param({"100", "1000"})
+    public int ssdDetections;
+
+    //yolo input size, the grid is a 32nd of it
+    @Param({"416", "608"})
+    public int yoloInputSize;
+
+    @Param({"0.5"})
+    public double threshold;
+
+    private SSDOutputAdapter ssdOutputAdapter;
+    private YOLOOutputAdapter yoloOutputAdapter;
+    private INDArray[] ssdOutputs, yoloOutputs;
+    private List<String> ssdOutputNames, yoloOutputNames;
+    private RoutingContext routingContext;
+
+    @Setup
+    public void setup() {
+        routingContext = BenchmarkRoutingContext.create();
+        routingContext.put(VerticleConstants.ORIGINAL_IMAGE_HEIGHT, 480);
+        routingContext.put(VerticleConstants.ORIGINAL_IMAGE_WIDTH, 640);
+
+        ssdOutputAdapter = new SSDOutputAdapter(threshold, NUM_LABELS);
+        ssdOutputNames = Arrays.asList("detection_boxes", "detection_classes", "detection_scores");
+        ssdOutputs = new INDArray[]{
+                Nd4j.rand(DataType.FLOAT, 1, ssdDetections, 4),
+                Nd4j.rand(DataType.FLOAT, 1, ssdDetections).muli(NUM_LABELS - 1).castTo(DataType.INT),
+                Nd4j.rand(DataType.FLOAT, 1, ssdDetections)
+        };
+
+        yoloOutputAdapter = YOLOOutputAdapter.builder()
+                .threshold(threshold)
+                .inputShape(new int[]{3, yoloInputSize, yoloInputSize})
+                .numLabels(NUM_LABELS)
+                .build();
+        int grid = yoloInputSize / 32;
+        yoloOutputNames = Arrays.asList("output");
+        yoloOutputs = new INDArray[]{
+                Nd4j.rand(DataType.FLOAT, 1, NUM_PRIOR_BOXES * (5 + NUM_LABELS), grid, grid)
+        };
+    }
+
+    @Benchmark
+    public Map<String, BatchOutput> ssd() {
+        return ssdOutputAdapter.adapt(ssdOutputs, ssdOutputNames, routingContext);
+    }
+
+    @Benchmark
+    public Map<String, BatchOutput> yolo() {
+        return yoloOutputAdapter.adapt(yoloOutputs, yoloOutputNames, routingContext);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.config.Output;
+import ai.konduit.serving.executioner.PipelineExecutioner;
+import ai.konduit.serving.output.types.BatchOutput;
+import ai.konduit.serving.output.types.NDArrayOutput;
+import io.vertx.core.buffer.Buffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary response encoding: a single output with
+ * {@link PipelineExecutioner#convertBatchOutput(INDArray, Output.DataType)}
+ * and several outputs zipped with {@link PipelineExecutioner#zipBuffer(Map, Output.DataType)}.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputEncodingBenchmark {
+
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    @Param({"10", "1000", "3,224,224"})
+    public String shape;
+
+    @Param({"NUMPY", "ND4J", "ARROW"})
+    public String outputType;
+
+    @Param({"3"})
+    public int numOutputs;
+
+    private INDArray output;
+    private Map<String, BatchOutput> outputs;
+    private Output.DataType dataType;
+
+    @Setup
+    public void setup() {
+        dataType = Output.DataType.valueOf(outputType);
+        output = Nd4j.rand(BenchmarkShapes.withBatch(batchSize, shape));
+        outputs = new LinkedHashMap<>();
+        for (int i = 0; i < numOutputs; i++) {
+            outputs.put("output_" + i, NDArrayOutput.builder().ndArray(output).build());
+        }
+    }
+
+    @Benchmark
+    public Buffer convertBatchOutput() {
+        return PipelineExecutioner.convertBatchOutput(output, dataType);
+    }
+
+    @Benchmark
+    public Buffer zipBuffer() {
+        return PipelineExecutioner.zipBuffer(outputs, dataType);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+
+import java.util.Random;
+
+/**
+ * Tabular inputs shared by the json and arrow benchmarks.
+ *
+ * @author Adam Gibson
+ */
+public class TabularBenchmarkData {
+
+    private TabularBenchmarkData() {}
+
+    /**
+     * @param columns the number of double columns
+     * @return a schema with columns named column_0 .. column_n
+     */
+    public static Schema schema(int columns) {
+        Schema.Builder builder = new Schema.Builder();
+        for (int i = 0; i < columns; i++) {
+            builder.addColumnDouble("column_" + i);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @param schema the schema to generate rows for
+     * @param rows   the number of rows
+     * @return json objects with a random value per column
+     */
+    public static JsonArray rows(Schema schema, int rows) {
+        Random random = new Random(12345);
+        JsonArray ret = new JsonArray();
+        for (int i = 0; i < rows; i++) {
+            JsonObject row = new JsonObject();
+            for (int j = 0; j < schema.numColumns(); j++) {
+                row.put(schema.getName(j), random.nextDouble());
+            }
+
+            ret.add(row);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Free the arrow memory behind a converted batch.
+     *
+     * @param batch the batch to close
+     */
+    public static void close(ArrowWritableRecordBatch batch) {
+        for (FieldVector fieldVector : batch.getList()) {
+            fieldVector.close();
+        }
+    }
+
+}
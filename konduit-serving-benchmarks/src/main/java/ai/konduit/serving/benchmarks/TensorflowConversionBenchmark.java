@@ -0,0 +1,87 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.threadpool.tensorflow.conversion.TensorflowConversion;
+import org.bytedeco.tensorflow.TF_Tensor;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.tensorflow.global.tensorflow.TF_DeleteTensor;
+
+/**
+ * Conversion between nd4j arrays and tensorflow tensors in both directions.
+ *
+ * @author Adam Gibson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TensorflowConversionBenchmark {
+
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    @Param({"784", "224,224,3"})
+    public String shape;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public String dataType;
+
+    private TensorflowConversion conversion;
+    private INDArray input;
+    private TF_Tensor tensor;
+
+    @Setup
+    public void setup() {
+        conversion = TensorflowConversion.getInstance();
+        input = Nd4j.rand(DataType.valueOf(dataType), BenchmarkShapes.withBatch(batchSize, shape));
+        tensor = conversion.tensorFromNDArray(input);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TF_DeleteTensor(tensor);
+    }
+
+    @Benchmark
+    public long tensorFromNDArray() {
+        TF_Tensor created = conversion.tensorFromNDArray(input);
+        long address = created.address();
+        TF_DeleteTensor(created);
+        return address;
+    }
+
+    @Benchmark
+    public INDArray ndArrayFromTensor() {
+        return conversion.ndArrayFromTensor(tensor);
+    }
+
+}
@@ -24,7 +24,10 @@ package ai.konduit.serving.executioner;
 
 import ai.konduit.serving.pipeline.PipelineStep;
 import ai.konduit.serving.pipeline.PipelineStepRunner;
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowBatchRecord;
 import ai.konduit.serving.util.SchemaTypeUtils;
+import ai.konduit.serving.util.TensorBatchRecord;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Singular;
@@ -32,7 +35,10 @@ import org.datavec.api.records.Record;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Run a pipeline. A pipeline
@@ -84,17 +90,126 @@ public class Pipeline {
 
     /**
      * Executes a pipeline on a set of input {@link Record}
+     * Steps that consume tensors get a single {@link TensorBatchRecord}
+     * (see {@link PipelineStepRunner#consumesTensors()}), so consecutive
+     * tensor steps pass their arrays along without converting them to records.
+     *
+     * Arrow vectors a step allocated from a request scope (see {@link ArrowBatchRecord#scopeOf(Record[])})
+     * are released once the pipeline is done, except for the scope of the returned records,
+     * which the caller releases with {@link ArrowBatchRecord#release(Record[])}.
      * @param inputs the array of records (one "row" per input.
      * @return the output set of records
      */
     public Record[] doPipeline(Record[] inputs) {
-        for(PipelineStepRunner pipelineStepRunner : steps)
-            inputs = pipelineStepRunner.transform(inputs);
+        List<ArrowAllocators.RequestScope> scopes = new ArrayList<>();
+        ArrowAllocators.RequestScope inputScope = ArrowBatchRecord.scopeOf(inputs);
+        try {
+            for(PipelineStepRunner pipelineStepRunner : steps) {
+                inputs = pipelineStepRunner.transform(adapt(pipelineStepRunner, inputs));
+                track(scopes, inputScope, inputs);
+            }
+        } catch(RuntimeException e) {
+            release(scopes, null);
+            throw e;
+        }
 
+        release(scopes, inputs);
         return inputs;
     }
 
 
+    /**
+     * Executes a pipeline on a set of input {@link Record}
+     * without blocking while a step hands its work off to another thread
+     * (see {@link PipelineStepRunner#transformAsync(Record[])}).
+     *
+     * Steps run on the calling thread until a step returns an incomplete future.
+     * The remaining steps are then resumed on the given executor, so the
+     * returned future is completed either on the calling thread or by the executor,
+     * never on a model worker thread.
+     *
+     * Arrow vectors of intermediate steps are released as in {@link #doPipeline(Record[])}.
+     *
+     * @param inputs the array of records (one "row" per input.
+     * @param executor the executor to resume the pipeline on after an asynchronous step
+     * @return a future completed with the output set of records
+     */
+    public CompletableFuture<Record[]> doPipelineAsync(Record[] inputs, Executor executor) {
+        List<ArrowAllocators.RequestScope> scopes = new ArrayList<>();
+        ArrowAllocators.RequestScope inputScope = ArrowBatchRecord.scopeOf(inputs);
+        return doPipelineAsync(inputs, 0, executor, scopes, inputScope)
+                .whenComplete((records, failure) -> release(scopes, failure == null ? records : null));
+    }
+
+    private CompletableFuture<Record[]> doPipelineAsync(Record[] inputs,
+                                                        int fromStep,
+                                                        Executor executor,
+                                                        List<ArrowAllocators.RequestScope> scopes,
+                                                        ArrowAllocators.RequestScope inputScope) {
+        for(int i = fromStep; i < steps.size(); i++) {
+            CompletableFuture<Record[]> output;
+            try {
+                output = steps.get(i).transformAsync(adapt(steps.get(i), inputs));
+            } catch(Exception e) {
+                output = new CompletableFuture<>();
+                output.completeExceptionally(e);
+            }
+
+            if(!output.isDone()) {
+                int nextStep = i + 1;
+                return output.thenComposeAsync(records -> {
+                    track(scopes, inputScope, records);
+                    return doPipelineAsync(records, nextStep, executor, scopes, inputScope);
+                }, executor);
+            }
+
+            if(output.isCompletedExceptionally()) {
+                return output;
+            }
+
+            inputs = output.join();
+            track(scopes, inputScope, inputs);
+        }
+
+        return CompletableFuture.completedFuture(inputs);
+    }
+
+    /**
+     * Convert the output of the previous step
+     * to what the given step consumes.
+     * Only a step consuming tensors after a step producing records
+     * needs converting, a {@link TensorBatchRecord} is already a valid record.
+     */
+    private static Record[] adapt(PipelineStepRunner step, Record[] inputs) {
+        if(!step.consumesTensors() || TensorBatchRecord.batchOf(inputs) != null) {
+            return inputs;
+        }
+
+        return new Record[] {step.toTensorBatch(inputs)};
+    }
+
+    private static void track(List<ArrowAllocators.RequestScope> scopes, ArrowAllocators.RequestScope inputScope, Record[] output) {
+        ArrowAllocators.RequestScope scope = ArrowBatchRecord.scopeOf(output);
+        if(scope != null && scope != inputScope && !scopes.contains(scope)) {
+            scopes.add(scope);
+        }
+    }
+
+    /**
+     * Close the scopes steps allocated their outputs from.
+     * Later steps may still refer to earlier arrow batches (eg: {@link TensorBatchRecord#getColumnar()}),
+     * so nothing is released before the pipeline is done.
+     */
+    private static void release(List<ArrowAllocators.RequestScope> scopes, Record[] output) {
+        ArrowAllocators.RequestScope outputScope = ArrowBatchRecord.scopeOf(output);
+        for(ArrowAllocators.RequestScope scope : scopes) {
+            if(scope != outputScope) {
+                scope.close();
+            }
+        }
+    }
+
+
     /**
      * Runs a pipeline an a set of {@link INDArray}
      * See {@link SchemaTypeUtils#toArrays(Record[])}
@@ -34,15 +34,20 @@ import ai.konduit.serving.config.Output;
 import ai.konduit.serving.config.ServingConfig;
 import ai.konduit.serving.output.adapter.*;
 import ai.konduit.serving.pipeline.*;
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowBatchRecord;
 import ai.konduit.serving.util.ArrowUtils;
-import ai.konduit.serving.util.ObjectMapperHolder;
+import ai.konduit.serving.util.JsonBufferWriter;
 import ai.konduit.serving.util.SchemaTypeUtils;
 import ai.konduit.serving.pipeline.steps.InferenceExecutionerPipelineStepRunner;
+import ai.konduit.serving.threadpool.MeteredWorkerExecutor;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.datavec.api.records.Record;
 import org.datavec.api.transform.TransformProcess;
@@ -50,17 +55,17 @@ import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
 import org.datavec.api.writable.WritableType;
-import org.datavec.arrow.recordreader.ArrowRecord;
 import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.deeplearning4j.zoo.util.Labels;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.shade.jackson.core.JsonProcessingException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 
@@ -94,11 +99,19 @@ public class PipelineExecutioner {
 
     protected InferenceConfiguration config;
 
+    /**
+     * The pool pipelines resume on once an asynchronous step completes.
+     * When not set they resume on the worker pool of the request's context.
+     */
+    @Setter
+    private MeteredWorkerExecutor completionExecutor;
+
     private Schema inputSchema = null;
     private Schema outputSchema = null;
     private ModelConfig modelConfig = null;
     private ObjectDetectionConfig objectDetectionConfig = null;
     private JsonArrayMapConverter mapConverter = new JsonArrayMapConverter();
+    private JsonBufferWriter jsonBufferWriter = new JsonBufferWriter(false);
 
     private ClassificationMultiOutputAdapter classificationMultiOutputAdapter = new ClassificationMultiOutputAdapter();
     private RegressionMultiOutputAdapter regressionMultiOutputAdapter = new RegressionMultiOutputAdapter();
@@ -119,6 +132,7 @@ public class PipelineExecutioner {
      */
     public void init() {
         ServingConfig servingConfig = config.getServingConfig();
+        jsonBufferWriter = new JsonBufferWriter(servingConfig.isPrettyPrintJson());
         //initialize input and output data types
         this.pipeline = Pipeline.getPipeline(config.getPipelineSteps());
         for (int i = 0; i < config.getPipelineSteps().size(); i++) {
@@ -269,11 +283,14 @@ public class PipelineExecutioner {
     /**
      * Perform inference for the
      * endpoint using the inference executioner.
+     * The response is written from a callback once the pipeline completes,
+     * no thread is blocked while the model runs.
      * @param ctx                the routing context to use representing the current request
      * @param responseOutputType the {@link Output.DataType} for the output
      * @param inputs             the inputs based on the input data
+     * @return a future completed once the response has been written
      */
-    public void doInference(io.vertx.ext.web.RoutingContext ctx, Output.DataType responseOutputType, org.datavec.api.records.Record[] inputs) {
+    public CompletableFuture<Void> doInference(io.vertx.ext.web.RoutingContext ctx, Output.DataType responseOutputType, org.datavec.api.records.Record[] inputs) {
         if(inputs == null || inputs.length < 1 || inputs[0] == null) {
             throw new IllegalStateException("No inputs specified!");
         }
@@ -281,7 +298,21 @@ public class PipelineExecutioner {
 
         String batchId = UUID.randomUUID().toString();
         long nanos = System.nanoTime();
-        INDArray[] execute = pipeline.doPipelineArrays(inputs);
+        return pipeline.doPipelineAsync(inputs, blockingExecutor(ctx)).thenAccept(records -> {
+            try {
+                writeInferenceResponse(ctx, responseOutputType, batchId, nanos, records);
+            } finally {
+                ArrowBatchRecord.release(records);
+            }
+        });
+    }
+
+    private void writeInferenceResponse(RoutingContext ctx,
+                                        Output.DataType responseOutputType,
+                                        String batchId,
+                                        long nanos,
+                                        Record[] records) {
+        INDArray[] execute = SchemaTypeUtils.toArrays(records);
         long after = System.nanoTime();
         if(config.serving().isLogTimings()) {
             long diff = after - nanos;
@@ -334,13 +365,14 @@ public class PipelineExecutioner {
      * @param transformProcess the transform process to use
      * @param outputSchema the output schema
      * @param outputDataType the output data type for the pipeline
+     * @return a future completed once the response has been written
      */
-    public void doInference(RoutingContext ctx,
-                            Output.PredictionType outputAdapterType,
-                            String input,
-                            Schema conversionSchema,
-                            TransformProcess transformProcess,
-                            Schema outputSchema, Output.DataType outputDataType) {
+    public CompletableFuture<Void> doInference(RoutingContext ctx,
+                                               Output.PredictionType outputAdapterType,
+                                               String input,
+                                               Schema conversionSchema,
+                                               TransformProcess transformProcess,
+                                               Schema outputSchema, Output.DataType outputDataType) {
 
         Preconditions.checkNotNull(input,"Input data was null!");
 
@@ -351,21 +383,40 @@ public class PipelineExecutioner {
         }
 
         JsonArray jsonArray = new JsonArray(input);
+        //the arrow vectors of the request and of the pipeline output are released once the response is written
+        ArrowAllocators.RequestScope arrowScope = ArrowAllocators.getInstance().newRequestScope();
         ArrowWritableRecordBatch convert = null;
         try {
-            convert = mapConverter.convert(conversionSchema, jsonArray, transformProcess);
+            convert = mapConverter.convert(arrowScope, conversionSchema, jsonArray, transformProcess);
+            Preconditions.checkNotNull(convert,"Conversion was null!");
         }catch(Exception e) {
             log.error("Error performing conversion",e);
+            arrowScope.close();
             throw e;
         }
 
-        Preconditions.checkNotNull(convert,"Conversion was null!");
-        Record[] pipelineInput = new Record[convert.size()];
-        for(int i = 0; i < pipelineInput.length; i++) {
-            pipelineInput[i] = new ArrowRecord(convert,i,null);
-        }
+        //keep the batch reachable so model steps can read the arrow columns directly
+        Record[] pipelineInput = ArrowBatchRecord.wrap(convert);
 
-        Record[] records = pipeline.doPipeline(pipelineInput);
+        ArrowWritableRecordBatch finalConvert = convert;
+        return pipeline.doPipelineAsync(pipelineInput, blockingExecutor(ctx))
+                .thenAccept(records -> {
+                    try {
+                        writeJsonInferenceResponse(ctx, arrowScope, outputAdapterType, outputSchema, outputDataType, finalConvert, records);
+                    } finally {
+                        ArrowBatchRecord.release(records);
+                    }
+                })
+                .whenComplete((result, failure) -> arrowScope.close());
+    }
+
+    private void writeJsonInferenceResponse(RoutingContext ctx,
+                                            ArrowAllocators.RequestScope arrowScope,
+                                            Output.PredictionType outputAdapterType,
+                                            Schema outputSchema,
+                                            Output.DataType outputDataType,
+                                            ArrowWritableRecordBatch convert,
+                                            Record[] records) {
         Writable firstWritable = records[0].getRecord().get(0);
         if(firstWritable.getType() == WritableType.NDArray) {
             INDArray[] arrays = SchemaTypeUtils.toArrays(records);
@@ -387,34 +438,27 @@ public class PipelineExecutioner {
             writeResponse(adapt, Output.DataType.JSON,UUID.randomUUID().toString(),ctx);
 
         }
-        else if(records.length == 1 &&  records[0].getRecord().get(0) instanceof Text) {
+        //a single text record is a json document (python, pmml), typed arrow rows fall through to the columns below
+        else if(records.length == 1 && !(records[0] instanceof ArrowBatchRecord) && records[0].getRecord().get(0) instanceof Text) {
             if(outputDataType == Output.DataType.JSON) {
-                JsonObject writeJson = new JsonObject();
-                for(int i = 0; i < records[0].getRecord().size(); i++) {
-                    Text text = (Text) records[0].getRecord().get(i);
-
-                    if(text.toString().charAt(0) == '{') {
-                        JsonObject jsonObject1 = new JsonObject(text.toString());
-                        writeJson.put(outputSchema.getName(i),jsonObject1);
-                    }
-                    else if(text.toString().charAt(0) == ']'){
-                        JsonArray jsonObject = new JsonArray(text.toString());
-                        writeJson.put(outputSchema.getName(i),jsonObject);
-                    }
-
-                    else {
-                        writeJson.put(outputSchema.getName(i),text.toString());
-                    }
-                }
-
                 log.info("Writing json response.");
-                String write = writeJson.encodePrettily();
-                ctx.response().putHeader("Content-Type", "application/json");
-                ctx.response().putHeader("Content-Length", String.valueOf(write.getBytes().length));
-                ctx.response().end(write);
+                writeJsonResponse(ctx, (generator, mapper) -> {
+                    generator.writeStartObject();
+                    for(int i = 0; i < records[0].getRecord().size(); i++) {
+                        String text = records[0].getRecord().get(i).toString();
+                        generator.writeFieldName(outputSchema.getName(i));
+                        if(!text.isEmpty() && (text.charAt(0) == '{' || text.charAt(0) == '[')) {
+                            generator.writeTree(mapper.readTree(text));
+                        }
+                        else {
+                            generator.writeString(text);
+                        }
+                    }
+                    generator.writeEndObject();
+                });
             }
             else if(outputDataType == Output.DataType.ARROW){
-                writeArrowResponse(ctx, outputSchema, convert);
+                writeArrowResponse(ctx, arrowScope, outputSchema, convert);
             }
             else {
                 throw new IllegalStateException("Illegal data type response " + outputDataType);
@@ -423,50 +467,51 @@ public class PipelineExecutioner {
 
         }
         else if(outputDataType == Output.DataType.JSON) {
-            JsonArray newArray = new JsonArray();
-            for(Record record : records) {
-                JsonObject row = new JsonObject();
-                List<Writable> writables = record.getRecord();
-                if(outputSchema != null) {
-                    for(int i = 0; i < writables.size(); i++) {
-                        switch(outputSchema.getType(i)) {
-                            case Integer:
-                            case Long:
-                                row.put(outputSchema.getName(i),writables.get(i).toInt());
-                                break;
-                            case Float:
-                                row.put(outputSchema.getName(i),writables.get(i).toFloat());
-                                break;
-                            case Double:
-                                row.put(outputSchema.getName(i),writables.get(i).toDouble());
-                                break;
-                            case Boolean:
-                                row.put(outputSchema.getName(i),Boolean.parseBoolean(writables.get(i).toString()));
-                                break;
-                            default:
-                                row.put(outputSchema.getName(i),writables.get(i).toString());
-
+            log.info("Writing json response.");
+            writeJsonResponse(ctx, (generator, mapper) -> {
+                generator.writeStartArray();
+                for(Record record : records) {
+                    generator.writeStartObject();
+                    List<Writable> writables = record.getRecord();
+                    if(outputSchema != null) {
+                        for(int i = 0; i < writables.size(); i++) {
+                            generator.writeFieldName(outputSchema.getName(i));
+                            switch(outputSchema.getType(i)) {
+                                case Integer:
+                                case Long:
+                                    generator.writeNumber(writables.get(i).toInt());
+                                    break;
+                                case Float:
+                                    generator.writeNumber(writables.get(i).toFloat());
+                                    break;
+                                case Double:
+                                    generator.writeNumber(writables.get(i).toDouble());
+                                    break;
+                                case Boolean:
+                                    generator.writeBoolean(Boolean.parseBoolean(writables.get(i).toString()));
+                                    break;
+                                default:
+                                    generator.writeString(writables.get(i).toString());
+
+                            }
                         }
                     }
-                }
-                else {
-                    for(int i = 0; i < writables.size(); i++) {
-                        row.put(String.valueOf(i),writables.get(i).toString());
+                    else {
+                        for(int i = 0; i < writables.size(); i++) {
+                            generator.writeStringField(String.valueOf(i),writables.get(i).toString());
+                        }
                     }
-                }
-
-                newArray.add(row);
-            }
 
-            log.info("Writing json response.");
-            String write = newArray.encodePrettily();
-            ctx.response().putHeader("Content-Type", "application/json");
-            ctx.response().putHeader("Content-Length", String.valueOf(write.getBytes().length));
-            ctx.response().end(write);
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            });
 
         }
         else if(outputDataType == Output.DataType.ARROW) {
-            writeArrowResponse(ctx, outputSchema, convert);
+            //steps that produce arrow columns (eg: columnar pmml) are written as is
+            ArrowWritableRecordBatch outputBatch = ArrowBatchRecord.batchOf(records);
+            writeArrowResponse(ctx, arrowScope, outputSchema, outputBatch != null ? outputBatch : convert);
         }
     }
 
@@ -475,10 +520,33 @@ public class PipelineExecutioner {
         pipeline.destroy();
     }
 
-    private void writeArrowResponse(RoutingContext ctx, Schema outputSchema, ArrowWritableRecordBatch convert) {
+    /**
+     * An executor resuming pipelines on the {@link #completionExecutor}
+     * once an asynchronous step completes, keeping post processing
+     * and response writing off the model worker threads.
+     * Without one the request's context is captured here, on the calling thread,
+     * rather than looked up from whichever model thread completes the step.
+     */
+    private Executor blockingExecutor(RoutingContext ctx) {
+        MeteredWorkerExecutor workerExecutor = completionExecutor;
+        if(workerExecutor != null) {
+            return command -> workerExecutor.executeBlocking(future -> {
+                command.run();
+                future.complete();
+            }, null);
+        }
+
+        Context context = Vertx.currentContext() != null ? Vertx.currentContext() : ctx.vertx().getOrCreateContext();
+        return command -> context.executeBlocking(future -> {
+            command.run();
+            future.complete();
+        }, false, null);
+    }
+
+    private void writeArrowResponse(RoutingContext ctx, ArrowAllocators.RequestScope arrowScope, Schema outputSchema, ArrowWritableRecordBatch convert) {
         log.info("Writing arrow response.");
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ArrowUtils.writeRecordBatchTo(convert,outputSchema,byteArrayOutputStream);
+        ArrowUtils.writeRecordBatchTo(arrowScope,convert,outputSchema,byteArrayOutputStream);
         Buffer write = Buffer.buffer(byteArrayOutputStream.toByteArray());
         ctx.response().putHeader("Content-Type", "application/octet-stream");
         ctx.response().putHeader("Content-Length", String.valueOf(write.getBytes().length));
@@ -530,32 +598,19 @@ public class PipelineExecutioner {
                 return;
             }
 
-            JsonObject jsonObject = new JsonObject();
-            for (Map.Entry<String, BatchOutput> entry : adapt.entrySet()) {
-
-                entry.getValue().setBatchId(batchId);
-
-                try {
-                    jsonObject.put(entry.getKey(),
-                            new JsonObject(ObjectMapperHolder.getJsonMapper()
-                                    .writeValueAsString(entry.getValue())));
-                } catch (JsonProcessingException e) {
-                    log.error("Unable to process json for value " + entry.getValue(), e);
-                    ctx.response().setStatusCode(500);
-                    ctx.response().end("Unable to process json for value " + entry.getValue());
-                    return;
-                }
+            for (BatchOutput batchOutput : adapt.values()) {
+                batchOutput.setBatchId(batchId);
             }
 
-            String resp = jsonObject.encodePrettily();
-            try {
-                ctx.response().putHeader("Content-Type", "application/json");
-                ctx.response().putHeader("Content-Length", String.valueOf(resp.getBytes().length));
-                ctx.response().end(jsonObject.encodePrettily());
-                log.info("Json response end");
-            } catch (Exception e) {
-                ctx.fail(e);
-            }
+            writeJsonResponse(ctx, (generator, mapper) -> {
+                generator.writeStartObject();
+                for (Map.Entry<String, BatchOutput> entry : adapt.entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    mapper.writeValue(generator, entry.getValue());
+                }
+                generator.writeEndObject();
+            });
+            log.info("Json response end");
         } else {
             if (adapt.size() > 1) {
                 Buffer buffer = zipBuffer(adapt, responseOutputType);
@@ -569,6 +624,26 @@ public class PipelineExecutioner {
     }
 
 
+    private void writeJsonResponse(RoutingContext ctx, JsonBufferWriter.JsonContent content) {
+        Buffer buffer;
+        try {
+            buffer = jsonBufferWriter.write(content);
+        } catch (Exception e) {
+            log.error("Unable to write json response", e);
+            ctx.response().setStatusCode(500);
+            ctx.response().end("Unable to write json response");
+            return;
+        }
+
+        try {
+            ctx.response().putHeader("Content-Type", "application/json");
+            ctx.response().putHeader("Content-Length", String.valueOf(buffer.length()));
+            ctx.response().end(buffer);
+        } catch (Exception e) {
+            ctx.fail(e);
+        }
+    }
+
     private void writeBinary(Buffer buffer, String batchId, RoutingContext ctx) {
         try {
             ctx.response().putHeader("Content-Type", "application/octet-stream");
@@ -33,6 +33,8 @@ import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.concurrent.CompletableFuture;
+
 
 /**
  * An {@link InferenceExecutioner}
@@ -71,8 +73,11 @@ public class SameDiffInferenceExecutioner implements InferenceExecutioner<ModelL
                 .inferenceMode(config.getInferenceMode())
                 .queueLimit(config.getQueueLimit())
                 .batchLimit(config.getBatchLimit())
+                .maxBatchDelayMicros(config.getMaxBatchDelayMicros())
+                .preferredBatchSize(config.getPreferredBatchSize())
                 .inputNames(sameDiffModelLoader.getInputNames())
                 .outputNames(sameDiffModelLoader.getOutputNames())
+                .name(sameDiffModelLoader.getPathToModel() == null ? "samediff" : sameDiffModelLoader.getPathToModel().getName())
                 .build();
         this.modelLoader = model;
 
@@ -80,7 +85,15 @@ public class SameDiffInferenceExecutioner implements InferenceExecutioner<ModelL
 
     @Override
     public INDArray[] execute(INDArray[] input) {
-        INDArray[] ret =  sameDiffThreadPool.output(input);
+        return castToDefaultDataType(sameDiffThreadPool.output(input));
+    }
+
+    @Override
+    public CompletableFuture<INDArray[]> executeAsync(INDArray[] input) {
+        return sameDiffThreadPool.outputAsync(input).thenApply(this::castToDefaultDataType);
+    }
+
+    private INDArray[] castToDefaultDataType(INDArray[] ret) {
         for(int i = 0; i < ret.length; i++) {
             if(ret[i].dataType() != Nd4j.dataType()) {
                 ret[i] = Nd4j.dataType() == DataType.DOUBLE
@@ -25,10 +25,14 @@ package ai.konduit.serving.executioner.inference;
 import ai.konduit.serving.config.ParallelInferenceConfig;
 import ai.konduit.serving.model.loader.ModelLoader;
 import ai.konduit.serving.model.loader.tensorflow.TensorflowGraphHolder;
+import ai.konduit.serving.model.loader.tensorflow.TensorflowModelLoader;
 import ai.konduit.serving.threadpool.tensorflow.TensorFlowThreadPool;
 import lombok.Getter;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
 
 /**
  * An {@link InferenceExecutioner}
@@ -68,16 +72,36 @@ public class TensorflowInferenceExecutioner implements
                 .inferenceMode(config.getInferenceMode())
                 .queueLimit(config.getQueueLimit())
                 .batchLimit(config.getBatchLimit())
+                .maxBatchDelayMicros(config.getMaxBatchDelayMicros())
+                .preferredBatchSize(config.getPreferredBatchSize())
+                .name(modelName(model))
                 .build();
         this.modelLoader = model;
 
     }
 
+    private static String modelName(ModelLoader<TensorflowGraphHolder> model) {
+        if(model instanceof TensorflowModelLoader) {
+            TensorflowModelLoader tensorflowModelLoader = (TensorflowModelLoader) model;
+            if(tensorflowModelLoader.getProtoFile() != null)
+                return tensorflowModelLoader.getProtoFile().getName();
+            if(tensorflowModelLoader.getSavedModelConfig() != null && tensorflowModelLoader.getSavedModelConfig().getSavedModelPath() != null)
+                return new File(tensorflowModelLoader.getSavedModelConfig().getSavedModelPath()).getName();
+        }
+
+        return "tensorflow";
+    }
+
     @Override
     public INDArray[] execute(INDArray[] input) {
         return tensorflowThreadPool.output(input);
     }
 
+    @Override
+    public CompletableFuture<INDArray[]> executeAsync(INDArray[] input) {
+        return tensorflowThreadPool.outputAsync(input);
+    }
+
     @Override
     public void stop() {
         if(tensorflowThreadPool != null) {
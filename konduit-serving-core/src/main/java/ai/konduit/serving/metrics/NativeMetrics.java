@@ -23,15 +23,30 @@
 package ai.konduit.serving.metrics;
 
 import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
 import org.deeplearning4j.perf.listener.DeviceMetric;
 import org.deeplearning4j.perf.listener.HardwareMetric;
+import org.nd4j.linalg.api.memory.AllocationsTracker;
+import org.nd4j.linalg.api.memory.enums.AllocationKind;
+import org.nd4j.linalg.factory.Nd4j;
 import oshi.json.SystemInfo;
 
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 import static java.util.Collections.emptyList;
 
@@ -39,97 +54,282 @@ import static java.util.Collections.emptyList;
  * Metrics derived from
  * {@link HardwareMetric}
  * which contains current information about the system and its devices
- * such as ram, cpu load, and gpu information
+ * such as ram, cpu load, and gpu information,
+ * along with the off heap memory used by nd4j and the process.
+ *
+ * Readings are refreshed by a background thread every sample period
+ * so scrapes never query the system themselves. A gauge whose last
+ * reading is older than the staleness bound reports NaN rather than
+ * a value that is no longer true.
+ *
+ * The readings describe the whole host, so verticles sharing a registry
+ * should use {@link #shared(MeterRegistry, long, long)}: micrometer keeps only the
+ * first gauge registered per name, so separately bound instances would leave every
+ * gauge reading the first instance, which goes stale once its verticle stops.
  *
  */
-public class NativeMetrics implements MeterBinder {
+@Slf4j
+public class NativeMetrics implements MeterBinder, Closeable {
+
+    public final static long DEFAULT_SAMPLE_PERIOD_MS = 5000;
+    public final static long DEFAULT_MAX_STALENESS_MS = 15000;
 
     private final Iterable<Tag> tags;
+    private final long samplePeriodMs;
+    private final long maxStalenessMs;
+    private final SystemInfo systemInfo = new SystemInfo();
+    private final String name = UUID.randomUUID().toString();
+    private volatile Sample sample;
+    private ScheduledExecutorService sampler;
+
+    //one shared instance per registry, reference counted, guarded by SHARED
+    private final static Map<MeterRegistry, NativeMetrics> SHARED = new IdentityHashMap<>();
+    private final List<Meter> meters = new ArrayList<>();
+    private MeterRegistry sharedRegistry;
+    private int references;
 
     public NativeMetrics() {
         this(emptyList());
     }
 
     public NativeMetrics(Iterable<Tag> tags) {
+        this(tags, DEFAULT_SAMPLE_PERIOD_MS, DEFAULT_MAX_STALENESS_MS);
+    }
+
+    public NativeMetrics(Iterable<Tag> tags, long samplePeriodMs, long maxStalenessMs) {
+        if(samplePeriodMs <= 0)
+            throw new IllegalArgumentException("Sample period must be positive, was " + samplePeriodMs);
+        if(maxStalenessMs < samplePeriodMs)
+            throw new IllegalArgumentException("Max staleness of " + maxStalenessMs + " ms is shorter than the sample period of " + samplePeriodMs + " ms");
         this.tags = tags;
+        this.samplePeriodMs = samplePeriodMs;
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    /**
+     * Acquire the native metrics shared by every user of the registry,
+     * creating and binding them on first use. The sample period and staleness
+     * bound of the first caller apply. Each caller releases its reference with {@link #close()},
+     * the sampler stops and the gauges are removed from the registry with the last one.
+     * @param registry the registry to report to
+     * @param samplePeriodMs how often the readings are refreshed
+     * @param maxStalenessMs how old a reading may get before it is reported as NaN
+     * @return the shared native metrics of the registry
+     */
+    public static NativeMetrics shared(MeterRegistry registry, long samplePeriodMs, long maxStalenessMs) {
+        synchronized (SHARED) {
+            NativeMetrics metrics = SHARED.get(registry);
+            if(metrics == null) {
+                metrics = new NativeMetrics(emptyList(), samplePeriodMs, maxStalenessMs);
+                metrics.bindTo(registry);
+                metrics.sharedRegistry = registry;
+                SHARED.put(registry, metrics);
+            }
+
+            metrics.references++;
+            return metrics;
+        }
     }
 
     @Override
     public void bindTo(MeterRegistry registry) {
-        SystemInfo systemInfo = new SystemInfo();
-        HardwareMetric hardwareMetric = HardwareMetric.fromSystem(systemInfo, UUID.randomUUID().toString());
-        Gauge.builder("cpuload", hardwareMetric,HardwareMetric::getAveragedCpuLoad)
-                .tags(tags)
-                .description("Average cpu load")
-                .baseUnit("pipelines." + hardwareMetric.getHostName())
-                .register(registry);
+        //the first reading decides which cores and devices get gauges
+        Sample first = sample == null ? sample() : sample;
+        sample = first;
+        HardwareMetric hardwareMetric = first.hardware;
+        String baseUnit = "pipelines." + hardwareMetric.getHostName();
 
+        gauge(registry, "cpuload", "Average cpu load", baseUnit, s -> s.hardware.getAveragedCpuLoad());
+        gauge(registry, "memoryuse", "Memory use", baseUnit, s -> s.hardware.getCurrentMemoryUse());
+        gauge(registry, "iowaittime", "I/O Wait time", baseUnit, s -> s.hardware.getIoWaitTime());
 
-        Gauge.builder("memoryuse", hardwareMetric,HardwareMetric::getCurrentMemoryUse)
-                .tags(tags)
-                .description("Memory use")
-                .baseUnit("pipelines." + hardwareMetric.getHostName())
-                .register(registry);
+        if(hardwareMetric.getGpuMetrics() != null)
+            for(Map.Entry<Integer,DeviceMetric> entry : hardwareMetric.getGpuMetrics().entrySet()) {
+                int index = entry.getKey();
+                String deviceName = entry.getValue().getDeviceName();
+                gauge(registry, "gpu." + index + ".bandwidth.d2d" + index,
+                        "Gpu " + index + " bandwidth device to device for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getGpuMetrics, index, DeviceMetric::getBandwidthDeviceToDevice));
+                gauge(registry, "gpu." + index + ".bandwidth.d2h" + index,
+                        "Gpu " + index + " bandwidth device to host for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getGpuMetrics, index, DeviceMetric::getBandwidthDeviceToHost));
+                gauge(registry, "gpu." + index + ".load" + index,
+                        "Gpu " + index + " current load for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getGpuMetrics, index, DeviceMetric::getLoad));
+                gauge(registry, "gpu." + index + ".memavailable" + index,
+                        "Gpu " + index + " current available memory for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getGpuMetrics, index, DeviceMetric::getMemAvailable));
+            }
+
+        if(hardwareMetric.getPerCoreMetrics() != null)
+            for(Map.Entry<Integer,DeviceMetric> entry : hardwareMetric.getPerCoreMetrics().entrySet()) {
+                int index = entry.getKey();
+                String deviceName = entry.getValue().getDeviceName();
+                gauge(registry, "Cpu." + index + ".load" + index,
+                        "Cpu " + index + " current load for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getPerCoreMetrics, index, DeviceMetric::getLoad));
+                gauge(registry, "cpu." + index + ".memavailable" + index,
+                        "Cpu " + index + " current available memory for device " + deviceName, baseUnit,
+                        device(HardwareMetric::getPerCoreMetrics, index, DeviceMetric::getMemAvailable));
+            }
 
+        gauge(registry, "native.process.rss", "Resident set size of the process in bytes", baseUnit, s -> s.rssBytes);
+        gauge(registry, "native.offheap.used", "Off heap memory allocated through javacpp in bytes", baseUnit, s -> s.offHeapBytes);
+        gauge(registry, "native.offheap.max", "Off heap memory javacpp may allocate in bytes", baseUnit, s -> s.maxOffHeapBytes);
+        gauge(registry, "nd4j.workspace.used", "Memory allocated by nd4j workspaces on all devices in bytes", baseUnit, s -> sum(s.workspaceBytes));
+        for(int i = 0; i < first.deviceBytes.length; i++) {
+            final int device = i;
+            gauge(registry, "nd4j.device." + device + ".memory.used",
+                    "Memory allocated by nd4j on device " + device + " in bytes", baseUnit, s -> s.deviceBytes[device]);
+            gauge(registry, "nd4j.device." + device + ".workspace.used",
+                    "Memory allocated by nd4j workspaces on device " + device + " in bytes", baseUnit, s -> s.workspaceBytes[device]);
+        }
 
-        Gauge.builder("iowaittime", hardwareMetric,HardwareMetric::getIoWaitTime)
+        //never reported as NaN, this is how a stalled sampler shows up
+        meters.add(Gauge.builder("native.metrics.age", this, metrics -> (System.currentTimeMillis() - metrics.getLastSampleTime()) / 1000.0)
                 .tags(tags)
-                .description("I/O Wait time")
-                .baseUnit("pipelines." + hardwareMetric.getHostName())
-                .register(registry);
+                .description("Seconds since native metrics were last sampled")
+                .baseUnit(baseUnit)
+                .strongReference(true)
+                .register(registry));
 
+        start();
+    }
 
-        if(hardwareMetric.getGpuMetrics() != null)
-            for(Map.Entry<Integer,DeviceMetric> entry : hardwareMetric.getGpuMetrics().entrySet()) {
-                DeviceMetric deviceMetric = hardwareMetric.getGpuMetrics().get(entry.getKey());
-                Gauge.builder("gpu." + entry.getKey() + ".bandwidth.d2d" + entry.getKey(), deviceMetric,DeviceMetric::getBandwidthDeviceToDevice)
-                        .tags(tags)
-                        .description("Gpu " + entry.getKey() + " bandwidth device to device for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
-
-                Gauge.builder("gpu." + entry.getKey() + ".bandwidth.d2h" + entry.getKey(), deviceMetric,DeviceMetric::getBandwidthDeviceToHost)
-                        .tags(tags)
-                        .description("Gpu " + entry.getKey() + " bandwidth device to host for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
-
-                Gauge.builder("gpu." + entry.getKey() + ".load" + entry.getKey(), deviceMetric,DeviceMetric::getLoad)
-                        .tags(tags)
-                        .description("Gpu " + entry.getKey() + " current load for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
-
-                Gauge.builder("gpu." + entry.getKey() + ".memavailable" + entry.getKey(), deviceMetric,DeviceMetric::getMemAvailable)
-                        .tags(tags)
-                        .description("Gpu " + entry.getKey() + " current available memory for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
-
+    /**
+     * The time in milliseconds the current readings were taken at
+     * @return the time of the last sample, or 0 if nothing was sampled yet
+     */
+    public long getLastSampleTime() {
+        Sample current = sample;
+        return current == null ? 0 : current.timestamp;
+    }
 
+    /**
+     * Stops the background sampler. Gauges bound by this instance
+     * report NaN once their readings exceed the staleness bound.
+     * A {@link #shared(MeterRegistry, long, long)} instance only stops once every
+     * user closed it and then removes its gauges, so the next user binds fresh ones.
+     */
+    @Override
+    public void close() {
+        if(sharedRegistry != null) {
+            synchronized (SHARED) {
+                //already released, the registry may have a new shared instance by now
+                if(references == 0 || --references > 0)
+                    return;
+                SHARED.remove(sharedRegistry);
+                for(Meter meter : meters)
+                    sharedRegistry.remove(meter);
+                meters.clear();
             }
+        }
+
+        stop();
+    }
 
+    private synchronized void stop() {
+        if(sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
 
-        if(hardwareMetric.getPerCoreMetrics() != null)
-            for(Map.Entry<Integer,DeviceMetric> entry : hardwareMetric.getPerCoreMetrics().entrySet()) {
-                DeviceMetric deviceMetric = hardwareMetric.getPerCoreMetrics().get(entry.getKey());
-                Gauge.builder("Cpu." + entry.getKey() + ".load" + entry.getKey(), deviceMetric,DeviceMetric::getLoad)
-                        .tags(tags)
-                        .description("Cpu " + entry.getKey() + " current load for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
-
-                Gauge.builder("cpu." + entry.getKey() + ".memavailable" + entry.getKey(), deviceMetric,DeviceMetric::getMemAvailable)
-                        .tags(tags)
-                        .description("Cpu " + entry.getKey() + " current available memory for device " + deviceMetric.getDeviceName())
-                        .baseUnit("pipelines." + hardwareMetric.getHostName())
-                        .register(registry);
+    private synchronized void start() {
+        if(sampler != null)
+            return;
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "native-metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
 
+        sampler.scheduleWithFixedDelay(() -> {
+            try {
+                sample = sample();
+            } catch(Throwable t) {
+                //keep the schedule alive, the previous readings go stale on their own
+                log.warn("Unable to sample native metrics", t);
             }
+        }, samplePeriodMs, samplePeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    private Sample sample() {
+        int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
+        long[] deviceBytes = new long[numDevices];
+        long[] workspaceBytes = new long[numDevices];
+        for(int i = 0; i < numDevices; i++) {
+            deviceBytes[i] = AllocationsTracker.getInstance().bytesOnDevice(i);
+            workspaceBytes[i] = AllocationsTracker.getInstance().bytesOnDevice(AllocationKind.WORKSPACE, i);
+        }
+
+        return new Sample(
+                HardwareMetric.fromSystem(systemInfo, name),
+                Pointer.physicalBytes(),
+                Pointer.totalBytes(),
+                Pointer.maxBytes(),
+                deviceBytes,
+                workspaceBytes,
+                System.currentTimeMillis());
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, String baseUnit, ToDoubleFunction<Sample> reading) {
+        meters.add(Gauge.builder(name, this, metrics -> metrics.read(reading))
+                .tags(tags)
+                .description(description)
+                .baseUnit(baseUnit)
+                .strongReference(true)
+                .register(registry));
+    }
 
+    private double read(ToDoubleFunction<Sample> reading) {
+        Sample current = sample;
+        if(current == null || System.currentTimeMillis() - current.timestamp > maxStalenessMs)
+            return Double.NaN;
+        return reading.applyAsDouble(current);
+    }
 
+    private static ToDoubleFunction<Sample> device(Function<HardwareMetric,Map<Integer,DeviceMetric>> devices,
+                                                   int index,
+                                                   ToDoubleFunction<DeviceMetric> reading) {
+        return s -> {
+            Map<Integer,DeviceMetric> metrics = devices.apply(s.hardware);
+            DeviceMetric deviceMetric = metrics == null ? null : metrics.get(index);
+            return deviceMetric == null ? Double.NaN : reading.applyAsDouble(deviceMetric);
+        };
+    }
 
+    private static long sum(long[] values) {
+        long ret = 0;
+        for(long value : values)
+            ret += value;
+        return ret;
+    }
 
+    private static class Sample {
+        private final HardwareMetric hardware;
+        private final long rssBytes;
+        private final long offHeapBytes;
+        private final long maxOffHeapBytes;
+        private final long[] deviceBytes;
+        private final long[] workspaceBytes;
+        private final long timestamp;
 
+        private Sample(HardwareMetric hardware,
+                       long rssBytes,
+                       long offHeapBytes,
+                       long maxOffHeapBytes,
+                       long[] deviceBytes,
+                       long[] workspaceBytes,
+                       long timestamp) {
+            this.hardware = hardware;
+            this.rssBytes = rssBytes;
+            this.offHeapBytes = offHeapBytes;
+            this.maxOffHeapBytes = maxOffHeapBytes;
+            this.deviceBytes = deviceBytes;
+            this.workspaceBytes = workspaceBytes;
+            this.timestamp = timestamp;
+        }
     }
 }
@@ -42,6 +42,7 @@ import java.util.List;
 @Slf4j
 public class SameDiffModelLoader implements ModelLoader<SameDiff> {
 
+    @Getter
     private File pathToModel;
     @Getter @Setter
     private List<String> inputNames,outputNames;
@@ -56,6 +56,8 @@ public class TensorflowGraphHolder {
     private SavedModelConfig savedModelConfig;
     private byte[] graphDefContent;
     private Map<String, TensorDataType> castingInputTypes,castingOutputTypes;
+    private int intraOpParallelismThreads,interOpParallelismThreads;
+    private boolean sessionPerWorker;
 
 
     @Builder
@@ -65,7 +67,10 @@ public class TensorflowGraphHolder {
                                  List<String> outputNames,
                                  Map<String, TensorDataType> castingInputTypes,
                                  Map<String, TensorDataType> castingOutputTypes,
-                                 SavedModelConfig savedModelConfig) throws Exception {
+                                 SavedModelConfig savedModelConfig,
+                                 int intraOpParallelismThreads,
+                                 int interOpParallelismThreads,
+                                 boolean sessionPerWorker) throws Exception {
         if(savedModelConfig == null)
             Preconditions.checkNotNull(graphContent,"No graph content found!");
         if(inputNames != null && outputNames != null) {
@@ -100,6 +105,9 @@ public class TensorflowGraphHolder {
         }
         this.inputNames = inputNames;
         this.outputNames = outputNames;
+        this.intraOpParallelismThreads = intraOpParallelismThreads;
+        this.interOpParallelismThreads = interOpParallelismThreads;
+        this.sessionPerWorker = sessionPerWorker;
         tfStatus = TF_Status.newStatus();
         log.info("Loading graph");
         if(graphDefContent != null)
@@ -110,6 +118,29 @@ public class TensorflowGraphHolder {
     }
 
 
+    /**
+     * The session configuration to run the graph with:
+     * the loaded config proto (if any) with the configured
+     * intra/inter op thread counts applied on top.
+     * @return the session configuration, null if nothing was configured
+     */
+    public ConfigProto sessionConfig() {
+        if(intraOpParallelismThreads <= 0 && interOpParallelismThreads <= 0) {
+            return configProto;
+        }
+
+        ConfigProto.Builder builder = configProto == null ? ConfigProto.newBuilder() : configProto.toBuilder();
+        if(intraOpParallelismThreads > 0) {
+            builder.setIntraOpParallelismThreads(intraOpParallelismThreads);
+        }
+
+        if(interOpParallelismThreads > 0) {
+            builder.setInterOpParallelismThreads(interOpParallelismThreads);
+        }
+
+        return builder.build();
+    }
+
     /**
      * Creates a graph runner
      * based on the configuration
@@ -117,6 +148,17 @@ public class TensorflowGraphHolder {
      * @return he created {@link GraphRunner}
      */
     public GraphRunner createRunner() {
+        return createRunner(sessionConfig());
+    }
+
+    /**
+     * Creates a graph runner
+     * based on the configuration
+     * of the graph holder with the given session configuration.
+     * @param sessionConfig the session configuration to use (may be null)
+     * @return the created {@link GraphRunner}
+     */
+    public GraphRunner createRunner(ConfigProto sessionConfig) {
 
         GraphRunner graphRunner = GraphRunner.builder()
                 .graphBytes(graphDefContent)
@@ -125,6 +167,7 @@ public class TensorflowGraphHolder {
                 .savedModelConfig(getSavedModelConfig())
                 .inputDataTypes(castingInputTypes)
                 .outputDataTypes(castingOutputTypes)
+                .sessionOptionsConfigProto(sessionConfig)
                 .build();
 
         return graphRunner;
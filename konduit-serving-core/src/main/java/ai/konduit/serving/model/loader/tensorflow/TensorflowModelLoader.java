@@ -58,6 +58,10 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
     private Map<String, TensorDataType> castingInputTypes,castingOutputTypes;
     @Getter
     private SavedModelConfig savedModelConfig;
+    @Getter
+    private int intraOpParallelismThreads,interOpParallelismThreads;
+    @Getter
+    private boolean sessionPerWorker;
 
 
     /**
@@ -70,6 +74,9 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
      *                         when proto file is null(
      * @param castingInputTypes the input types to automatically cast inputs to before performing inference
      * @param castingOutputTypes the output types to automatically cast outputs to before returning results
+     * @param intraOpParallelismThreads the threads used within an op, 0 means the config file or tensorflow decides
+     * @param interOpParallelismThreads the threads used across ops, 0 means the config file or tensorflow decides
+     * @param sessionPerWorker whether each inference worker gets its own session rather than sharing one
      */
     @Builder
     public TensorflowModelLoader(List<String> inputNames,
@@ -78,7 +85,10 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
                                  File configFile,
                                  SavedModelConfig savedModelConfig,
                                  Map<String, TensorDataType> castingInputTypes,
-                                 Map<String, TensorDataType> castingOutputTypes) {
+                                 Map<String, TensorDataType> castingOutputTypes,
+                                 int intraOpParallelismThreads,
+                                 int interOpParallelismThreads,
+                                 boolean sessionPerWorker) {
         if(inputNames != null && outputNames != null)
             Preconditions.checkState(!inputNames.equals(outputNames),"Input names and output names should not be the same");
         this.protoFile = protoFile;
@@ -88,6 +98,9 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
         this.savedModelConfig = savedModelConfig;
         this.castingInputTypes = castingInputTypes;
         this.castingOutputTypes = castingOutputTypes;
+        this.intraOpParallelismThreads = intraOpParallelismThreads;
+        this.interOpParallelismThreads = interOpParallelismThreads;
+        this.sessionPerWorker = sessionPerWorker;
     }
 
 
@@ -114,6 +127,9 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
                 .savedModelConfig(savedModelConfig)
                 .castingInputTypes(castingInputTypes)
                 .castingOutputTypes(castingOutputTypes)
+                .intraOpParallelismThreads(intraOpParallelismThreads)
+                .interOpParallelismThreads(interOpParallelismThreads)
+                .sessionPerWorker(sessionPerWorker)
                 .build();
 
         return tensorflowGraphHolder;
@@ -148,6 +164,9 @@ public class TensorflowModelLoader implements ModelLoader<TensorflowGraphHolder>
                     .savedModelConfig(savedModelConfig)
                     .configFile(sessionConfigPath != null ? new File(sessionConfigPath) : null)
                     .protoFile(modelConfigPath != null ? new File(modelConfigPath): null)
+                    .intraOpParallelismThreads(config.getIntraOpParallelismThreads())
+                    .interOpParallelismThreads(config.getInterOpParallelismThreads())
+                    .sessionPerWorker(config.isSessionPerWorker())
                     .build();
 
             return tensorflowModelLoader;
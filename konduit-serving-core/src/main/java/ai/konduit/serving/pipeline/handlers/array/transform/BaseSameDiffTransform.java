@@ -23,11 +23,11 @@
 package ai.konduit.serving.pipeline.handlers.array.transform;
 
 import ai.konduit.serving.config.SchemaType;
+import ai.konduit.serving.util.TensorBatchRecord;
 import org.datavec.api.records.Record;
 import org.datavec.api.writable.NDArrayWritable;
-import org.nd4j.autodiff.execution.NativeGraphExecutioner;
-import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.io.File;
@@ -36,13 +36,21 @@ import java.util.*;
 /**
  * Base class for running samediff op graphs
  *
+ * Only the ops the output names depend on are executed
+ * and the outputs are returned in the order of {@link #outputNames()}.
+ * When no output names are set the outputs of the graph are used.
+ *
+ * Inputs are either one record per input name holding a single {@link NDArrayWritable}
+ * or a {@link TensorBatchRecord}. The outputs are returned as a {@link TensorBatchRecord}.
+ *
  * @author Adam Gibson
  */
 public abstract class BaseSameDiffTransform implements ArrayTransform {
 
     protected SameDiff sameDiff;
     protected  List<String> inputs,outputs;
-    protected NativeGraphExecutioner nativeGraphExecutioner;
+    //the output names to execute, resolved once per set of output names
+    private volatile String[] resolvedOutputs;
 
     /**
      * Load samediff from the given content.
@@ -54,8 +62,6 @@ public abstract class BaseSameDiffTransform implements ArrayTransform {
      */
     public BaseSameDiffTransform(byte[] sameDiffFlatBuffers,List<String> inputs,List<String> outputs) {
         sameDiff = getSameDiffFromBytes(sameDiffFlatBuffers);
-        nativeGraphExecutioner = new NativeGraphExecutioner();
-        nativeGraphExecutioner.registerGraph(sameDiff);
         this.inputs = inputs;
         this.outputs = outputs;
     }
@@ -67,8 +73,6 @@ public abstract class BaseSameDiffTransform implements ArrayTransform {
      */
     public BaseSameDiffTransform(File file,List<String> inputs) {
         sameDiff = getSameDiffFromFile(file);
-        nativeGraphExecutioner = new NativeGraphExecutioner();
-        nativeGraphExecutioner.registerGraph(sameDiff);
         this.inputs = inputs;
     }
 
@@ -98,25 +102,46 @@ public abstract class BaseSameDiffTransform implements ArrayTransform {
 
     @Override
     public Record[] transform(Record[] input) {
-        Map<String,INDArray> mapIndexes = new HashMap<>();
-        SDVariable[] inputs = new SDVariable[input.length];
-        for(int i = 0; i < input.length; i++) {
-            inputs[i] = sameDiff.getVariable(this.inputs.get(i));
-            NDArrayWritable ndArrayWritable = (NDArrayWritable) input[i].getRecord().get(0);
-            mapIndexes.put(this.inputs.get(i),ndArrayWritable.get());
+        INDArray[] arrays = toTensorBatch(input).getArrays();
+        Preconditions.checkState(arrays.length == inputs.size(),"Expected %s inputs but got %s", inputs.size(), arrays.length);
+        Map<String,INDArray> placeholders = new HashMap<>();
+        for(int i = 0; i < arrays.length; i++) {
+            placeholders.put(inputs.get(i),arrays[i]);
+        }
+
+        //execAll would compute every variable in the graph,
+        //exec only runs the subgraph the requested outputs depend on
+        String[] outputNames = resolveOutputs();
+        Map<String, INDArray> execution = sameDiff.exec(placeholders,outputNames);
+        INDArray[] ret = new INDArray[outputNames.length];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = execution.get(outputNames[i]);
+            Preconditions.checkState(ret[i] != null,"No array was computed for output %s", outputNames[i]);
         }
 
-        Map<String, INDArray> stringINDArrayMap = sameDiff.execAll(mapIndexes);
-        Record[] ret = new Record[stringINDArrayMap.size()];
+        return TensorBatchRecord.wrap(Arrays.asList(outputNames),ret,null);
+    }
+
+    @Override
+    public boolean consumesTensors() {
+        return true;
+    }
+
+    @Override
+    public TensorBatchRecord toTensorBatch(Record[] input) {
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(input);
+        if(batch != null) {
+            return batch;
+        }
 
-        int count = 0;
-        for(String key : stringINDArrayMap.keySet()) {
-            ret[count++] = new org.datavec.api.records.impl.Record(Arrays.asList(
-                    new NDArrayWritable(stringINDArrayMap.get(key))),
-                    null);
+        //one record per input name
+        INDArray[] arrays = new INDArray[input.length];
+        for(int i = 0; i < input.length; i++) {
+            NDArrayWritable ndArrayWritable = (NDArrayWritable) input[i].getRecord().get(0);
+            arrays[i] = ndArrayWritable.get();
         }
 
-        return ret;
+        return new TensorBatchRecord(null,arrays,null);
     }
 
 
@@ -128,6 +153,7 @@ public abstract class BaseSameDiffTransform implements ArrayTransform {
     @Override
     public void setOutputNames(String... outputNames) {
         this.outputs = new ArrayList<>(Arrays.asList(outputNames));
+        this.resolvedOutputs = null;
     }
 
     @Override
@@ -137,7 +163,22 @@ public abstract class BaseSameDiffTransform implements ArrayTransform {
 
     @Override
     public String[] outputNames() {
-        return outputs.toArray(new String[outputs.size()]);
+        return resolveOutputs().clone();
+    }
+
+    private String[] resolveOutputs() {
+        String[] ret = resolvedOutputs;
+        if(ret == null) {
+            List<String> names = outputs == null || outputs.isEmpty() ? sameDiff.outputs() : outputs;
+            for(String name : names) {
+                Preconditions.checkState(sameDiff.hasVariable(name),"No variable named %s found in the graph", name);
+            }
+
+            ret = names.toArray(new String[names.size()]);
+            resolvedOutputs = ret;
+        }
+
+        return ret;
     }
 
     @Override
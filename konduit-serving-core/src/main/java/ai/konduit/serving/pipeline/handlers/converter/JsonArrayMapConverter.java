@@ -22,12 +22,12 @@
 
 package ai.konduit.serving.pipeline.handlers.converter;
 
+import ai.konduit.serving.util.ArrowAllocators;
 import ai.konduit.serving.util.ArrowUtils;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.arrow.memory.BufferAllocator;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.FieldVector;
 import org.datavec.api.transform.ColumnType;
 import org.datavec.api.transform.TransformProcess;
@@ -56,7 +56,8 @@ import java.util.Map;
 @Slf4j
 public class JsonArrayMapConverter extends BaseJsonArrayConverter {
 
-    public static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
+    //vectors allocated here belong to the caller, request handling should use a scope instead
+    public static BufferAllocator bufferAllocator = ArrowAllocators.getInstance().getRootAllocator();
 
     /**
      *
@@ -136,12 +137,33 @@ public class JsonArrayMapConverter extends BaseJsonArrayConverter {
     /**
      *
      * {@inheritDoc}
+     * The vectors of the returned batch are allocated from {@link #bufferAllocator}
+     * and belong to the caller, see {@link #convert(ArrowAllocators.RequestScope, Schema, JsonArray, TransformProcess)}
+     * for conversions released with a request.
      */
     @Override
     public ArrowWritableRecordBatch convert(Schema schema, JsonArray jsonArray, TransformProcess transformProcess) {
         Preconditions.checkNotNull(schema,"Please specify a schema for conversion!");
-        log.info("Converting " + jsonArray);
-        List<FieldVector> vectors = ArrowUtils.createFieldVectors(bufferAllocator,schema,jsonArray.size());
+        return convert(ArrowUtils.createFieldVectors(bufferAllocator,schema,jsonArray.size()),schema,jsonArray,transformProcess);
+    }
+
+    /**
+     * Convert the given json array with vectors created through the given request scope.
+     * The returned batch must not be used after the scope is closed.
+     * See {@link #convert(Schema, JsonArray, TransformProcess)}
+     * @param scope the scope of the request the json array is part of
+     * @param schema the schema of the json array
+     * @param jsonArray the json array to convert
+     * @param transformProcess the transform process to run on the converted batch, may be null
+     * @return the converted batch
+     */
+    public ArrowWritableRecordBatch convert(ArrowAllocators.RequestScope scope, Schema schema, JsonArray jsonArray, TransformProcess transformProcess) {
+        Preconditions.checkNotNull(schema,"Please specify a schema for conversion!");
+        return convert(scope.vectorsFor(schema,jsonArray.size()),schema,jsonArray,transformProcess);
+    }
+
+    private ArrowWritableRecordBatch convert(List<FieldVector> vectors, Schema schema, JsonArray jsonArray, TransformProcess transformProcess) {
+        log.debug("Converting {} json rows", jsonArray.size());
         //all numbers case, convert to json object
         if(jsonArray.getValue(0) instanceof JsonArray) {
             Preconditions.checkNotNull(schema,"Schema must not be null when specifying all numerical values. A schema is needed for names.");
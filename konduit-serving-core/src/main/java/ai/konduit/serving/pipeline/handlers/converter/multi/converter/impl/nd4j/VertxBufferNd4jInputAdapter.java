@@ -25,15 +25,23 @@ package ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nd4j
 
 import ai.konduit.serving.input.adapter.InputAdapter;
 import ai.konduit.serving.input.conversion.ConverterArgs;
+import ai.konduit.serving.util.DataBufferArena;
 import ai.konduit.serving.util.ImagePermuter;
 import io.vertx.core.buffer.Buffer;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.ArrayUtil;
 import org.nd4j.serde.binary.BinarySerde;
 import org.nd4j.shade.guava.primitives.Longs;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -49,7 +57,10 @@ public class VertxBufferNd4jInputAdapter implements InputAdapter<Buffer, Writabl
     @Override
     public NDArrayWritable convert(Buffer input, ConverterArgs parameters, Map<String, Object> contextData) {
         Preconditions.checkState(input.length() > 0,"Buffer appears to be empty!");
-        INDArray fromNpyPointer = BinarySerde.toArray(input.getByteBuf().nioBuffer());
+        INDArray fromNpyPointer = DataBufferArena.isEnabled(contextData) ? toPooledArray(input.getByteBuf().nioBuffer(), contextData) : null;
+        if(fromNpyPointer == null) {
+            fromNpyPointer = BinarySerde.toArray(input.getByteBuf().nioBuffer());
+        }
         if(fromNpyPointer.rank() < 4) {
             fromNpyPointer = fromNpyPointer.reshape(Longs.concat(new long[]{1},fromNpyPointer.shape()));
         }
@@ -61,4 +72,47 @@ public class VertxBufferNd4jInputAdapter implements InputAdapter<Buffer, Writabl
         return new NDArrayWritable(fromNpyPointer);
     }
 
+    /**
+     * Decode the {@link BinarySerde} layout straight in to a buffer leased from the
+     * {@link DataBufferArena}. This is a single copy out of the request buffer
+     * rather than the copy to a direct buffer and the dup done by {@link BinarySerde#toArray(ByteBuffer)}.
+     * The lease is released with the rest of the request's buffers once the response is written.
+     *
+     * @param input the serialized array
+     * @param contextData the routing context data the lease is tracked in
+     * @return the decoded array or null if the layout isn't supported and the regular path should be used
+     */
+    private INDArray toPooledArray(ByteBuffer input, Map<String, Object> contextData) {
+        ByteBuffer buffer = input.duplicate().order(ByteOrder.nativeOrder());
+        int rank = buffer.getInt();
+        if(rank < 1) {
+            return null;
+        }
+
+        DataType dataType = DataType.values()[buffer.getInt()];
+        if(dataType == DataType.COMPRESSED || dataType == DataType.UTF8) {
+            return null;
+        }
+
+        long[] shapeInfo = new long[Shape.shapeInfoLength(rank)];
+        for(int i = 0; i < shapeInfo.length; i++) {
+            shapeInfo[i] = buffer.getLong();
+        }
+
+        long[] shape = Arrays.copyOfRange(shapeInfo, 1, 1 + rank);
+        long[] stride = Arrays.copyOfRange(shapeInfo, 1 + rank, 1 + 2 * rank);
+        char order = (char) shapeInfo[shapeInfo.length - 1];
+        long length = ArrayUtil.prodLong(shape);
+        long numBytes = length * dataType.width();
+        if(length < 1 || buffer.remaining() < numBytes) {
+            return null;
+        }
+
+        buffer.limit(buffer.position() + (int) numBytes);
+        DataBufferArena.Lease lease = DataBufferArena.getInstance().acquire(dataType, length);
+        lease.copyFrom(buffer);
+        DataBufferArena.track(contextData, lease);
+        return Nd4j.create(lease.getBuffer(), shape, stride, 0, order);
+    }
+
 }
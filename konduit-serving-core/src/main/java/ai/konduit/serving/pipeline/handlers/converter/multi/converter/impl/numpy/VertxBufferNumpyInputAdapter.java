@@ -25,17 +25,27 @@ package ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nump
 
 import ai.konduit.serving.input.adapter.InputAdapter;
 import ai.konduit.serving.input.conversion.ConverterArgs;
+import ai.konduit.serving.util.DataBufferArena;
 import ai.konduit.serving.util.ImagePermuter;
 import io.vertx.core.buffer.Buffer;
 import org.bytedeco.javacpp.BytePointer;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.util.ArrayUtil;
 import org.nd4j.shade.guava.primitives.Longs;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Reads in {@link Buffer}
@@ -46,11 +56,18 @@ import java.util.Map;
  */
 public class VertxBufferNumpyInputAdapter implements InputAdapter<Buffer, Writable> {
 
+    private final static byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private final static Pattern DESCR = Pattern.compile("'descr'\\s*:\\s*'([<>|=])([a-z][0-9]+)'");
+    private final static Pattern FORTRAN_ORDER = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+    private final static Pattern SHAPE = Pattern.compile("'shape'\\s*:\\s*\\(([^)]*)\\)");
 
     @Override
     public NDArrayWritable convert(Buffer input, ConverterArgs parameters, Map<String, Object> contextData) {
         Preconditions.checkState(input.length() > 0,"Buffer appears to be empty!");
-        INDArray fromNpyPointer = Nd4j.getNDArrayFactory().createFromNpyPointer(new BytePointer(input.getByteBuf().nioBuffer()));
+        INDArray fromNpyPointer = DataBufferArena.isEnabled(contextData) ? toPooledArray(input.getByteBuf().nioBuffer(), contextData) : null;
+        if(fromNpyPointer == null) {
+            fromNpyPointer = Nd4j.getNDArrayFactory().createFromNpyPointer(new BytePointer(input.getByteBuf().nioBuffer()));
+        }
         if(fromNpyPointer.rank() < 4) {
             fromNpyPointer = fromNpyPointer.reshape(Longs.concat(new long[]{1},fromNpyPointer.shape()));
         }
@@ -62,4 +79,90 @@ public class VertxBufferNumpyInputAdapter implements InputAdapter<Buffer, Writab
         return new NDArrayWritable(fromNpyPointer);
     }
 
+    /**
+     * Parse the npy header and copy the array content straight in to a buffer leased
+     * from the {@link DataBufferArena}, skipping the intermediate pointer copy and the fresh
+     * native allocation of {@code createFromNpyPointer}.
+     * The lease is released with the rest of the request's buffers once the response is written.
+     *
+     * @param input the npy file content
+     * @param contextData the routing context data the lease is tracked in
+     * @return the decoded array or null if the header isn't supported and the regular path should be used
+     */
+    private INDArray toPooledArray(ByteBuffer input, Map<String, Object> contextData) {
+        ByteBuffer buffer = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if(ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN || buffer.remaining() < NPY_MAGIC.length + 4) {
+            return null;
+        }
+
+        for(byte magic : NPY_MAGIC) {
+            if(buffer.get() != magic) {
+                return null;
+            }
+        }
+
+        int majorVersion = buffer.get();
+        buffer.get();
+        int headerLength = majorVersion == 1 ? buffer.getShort() & 0xffff : buffer.getInt();
+        if(headerLength < 0 || buffer.remaining() < headerLength) {
+            return null;
+        }
+
+        byte[] headerBytes = new byte[headerLength];
+        buffer.get(headerBytes);
+        String header = new String(headerBytes, StandardCharsets.ISO_8859_1);
+        Matcher descr = DESCR.matcher(header);
+        Matcher fortranOrder = FORTRAN_ORDER.matcher(header);
+        Matcher shapeMatcher = SHAPE.matcher(header);
+        if(!descr.find() || !fortranOrder.find() || !shapeMatcher.find()) {
+            return null;
+        }
+
+        //big endian content would need swapping
+        if(descr.group(1).equals(">")) {
+            return null;
+        }
+
+        DataType dataType = dataTypeFor(descr.group(2));
+        if(dataType == null) {
+            return null;
+        }
+
+        List<Long> dims = new ArrayList<>();
+        for(String dim : shapeMatcher.group(1).split(",")) {
+            if(!dim.trim().isEmpty()) {
+                dims.add(Long.parseLong(dim.trim()));
+            }
+        }
+
+        long[] shape = Longs.toArray(dims);
+        long length = ArrayUtil.prodLong(shape);
+        long numBytes = length * dataType.width();
+        if(shape.length < 1 || length < 1 || buffer.remaining() < numBytes) {
+            return null;
+        }
+
+        char order = fortranOrder.group(1).equals("True") ? 'f' : 'c';
+        buffer.limit(buffer.position() + (int) numBytes);
+        DataBufferArena.Lease lease = DataBufferArena.getInstance().acquire(dataType, length);
+        lease.copyFrom(buffer);
+        DataBufferArena.track(contextData, lease);
+        return Nd4j.create(lease.getBuffer(), shape, Nd4j.getStrides(shape, order), 0, order);
+    }
+
+    private static DataType dataTypeFor(String numpyType) {
+        switch(numpyType) {
+            case "f8": return DataType.DOUBLE;
+            case "f4": return DataType.FLOAT;
+            case "f2": return DataType.HALF;
+            case "i8": return DataType.LONG;
+            case "i4": return DataType.INT;
+            case "i2": return DataType.SHORT;
+            case "i1": return DataType.BYTE;
+            case "u1": return DataType.UBYTE;
+            case "b1": return DataType.BOOL;
+            default: return null;
+        }
+    }
+
 }
@@ -24,6 +24,7 @@ package ai.konduit.serving.pipeline.steps;
 
 import ai.konduit.serving.pipeline.ArrayConcatenationStep;
 import ai.konduit.serving.pipeline.PipelineStep;
+import ai.konduit.serving.util.TensorBatchRecord;
 import org.datavec.api.records.Record;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
@@ -43,6 +44,9 @@ import java.util.Map;
  * This is meant to be used mainly right before a
  * {@link InferenceExecutionerPipelineStepRunner}
  * that takes in 1 array per named input.
+ * The result is a {@link TensorBatchRecord}, so the model
+ * step reads the concatenated arrays directly. A tensor batch
+ * input already holds 1 array per input and is passed through.
  *
  *
  */
@@ -58,13 +62,11 @@ public class ArrayConcatenationStepRunner extends BasePipelineStepRunner {
 
     @Override
     public Record[] transform(Record[] input) {
-        Record[] ret = new Record[1];
-        ret[0] = new org.datavec.api.records.impl.Record(new ArrayList<>(),null);
-        //allow setting writables at particular indices
-        for(int i = 0; i < input[0].getRecord().size(); i++) {
-            ret[0].getRecord().add(null);
+        if(TensorBatchRecord.batchOf(input) != null) {
+            return input;
         }
 
+        INDArray[] ret = new INDArray[input[0].getRecord().size()];
         Map<Integer,List<INDArray>> arrays = new LinkedHashMap<>();
         for(int i = 0; i < input.length; i++) {
             for(int j = 0 ; j < input[i].getRecord().size(); j++) {
@@ -92,10 +94,10 @@ public class ArrayConcatenationStepRunner extends BasePipelineStepRunner {
             else
                 concatDim = 0;
 
-            ret[0].getRecord().set(entry.getKey(), new NDArrayWritable(Nd4j.concat(concatDim,toConcat)));
+            ret[entry.getKey()] = Nd4j.concat(concatDim,toConcat);
         }
 
-        return ret;
+        return TensorBatchRecord.wrap(null, ret, null);
     }
 
     @Override
@@ -28,12 +28,16 @@ import ai.konduit.serving.executioner.inference.factory.InferenceExecutionerFact
 import ai.konduit.serving.pipeline.ModelPipelineStep;
 import ai.konduit.serving.pipeline.PipelineStep;
 import ai.konduit.serving.config.SchemaType;
+import ai.konduit.serving.util.ArrowBatchRecord;
+import ai.konduit.serving.util.ArrowUtils;
 import ai.konduit.serving.util.SchemaTypeUtils;
+import ai.konduit.serving.util.TensorBatchRecord;
 import lombok.Getter;
 import org.datavec.api.records.Record;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.datavec.api.writable.WritableType;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
@@ -42,6 +46,7 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class InferenceExecutionerPipelineStepRunner extends BasePipelineStepRunner {
     @Getter
@@ -118,14 +123,47 @@ public class InferenceExecutionerPipelineStepRunner extends BasePipelineStepRunn
 
     @Override
     public Record[] transform(Record[] input) {
+        TensorBatchRecord batch = toTensorBatch(input);
+        INDArray[] execution = (INDArray[]) inferenceExecutioner.execute(batch.getArrays());
+        return toOutput(execution, batch);
+    }
+
+    @Override
+    public CompletableFuture<Record[]> transformAsync(Record[] input) {
+        TensorBatchRecord batch = toTensorBatch(input);
+        CompletableFuture<INDArray[]> execution = inferenceExecutioner.executeAsync(batch.getArrays());
+        return execution.thenApply(output -> toOutput(output, batch));
+    }
+
+    @Override
+    public boolean consumesTensors() {
+        return true;
+    }
+
+    @Override
+    public TensorBatchRecord toTensorBatch(Record[] input) {
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(input);
+        if(batch != null) {
+            return batch;
+        }
+
+        //keep the arrow rows around as side data for later steps
+        ArrowWritableRecordBatch columnar = ArrowBatchRecord.batchOf(input);
         //not a singular ndarray record type
         //try to convert to matrix if all numeric,
         //otherwise throw an exception
         if(input[0].getRecord().size() > 1 || recordIsAllNumeric(input[0]))
             input = toNDArray(input);
-        INDArray[] arrayInputs = SchemaTypeUtils.toArrays(input);
-        INDArray[] execution = (INDArray[]) inferenceExecutioner.execute(arrayInputs);
-        return SchemaTypeUtils.toRecords(execution);
+        INDArray[] arrays = SchemaTypeUtils.toArrays(input);
+        return new TensorBatchRecord(namesFor(pipelineStep.getInputNames(), arrays), arrays, columnar);
+    }
+
+    private Record[] toOutput(INDArray[] output, TensorBatchRecord input) {
+        return TensorBatchRecord.wrap(namesFor(pipelineStep.getOutputNames(), output), output, input.getColumnar());
+    }
+
+    private static List<String> namesFor(List<String> names, INDArray[] arrays) {
+        return names != null && names.size() == arrays.length ? names : null;
     }
 
     public Record[] toNDArray(Record[] records) {
@@ -136,6 +174,17 @@ public class InferenceExecutionerPipelineStepRunner extends BasePipelineStepRunn
             return records;
         }
         else {
+            //rows of one arrow batch: fill the matrix column by column from the arrow buffers
+            ArrowWritableRecordBatch batch = ArrowBatchRecord.batchOf(records);
+            INDArray columnar = batch != null ? ArrowUtils.toMatrix(batch) : null;
+            if(columnar != null) {
+                return new Record[] {
+                        new org.datavec.api.records.impl.Record(
+                                Arrays.asList(new NDArrayWritable(columnar))
+                                ,null
+                        )};
+            }
+
             INDArray arr = Nd4j.create(records.length,records[0].getRecord().size());
             for(int i = 0; i < arr.rows(); i++) {
                 for(int j = 0; j < arr.columns(); j++) {
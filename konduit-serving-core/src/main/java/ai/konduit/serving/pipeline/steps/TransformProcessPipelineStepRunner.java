@@ -24,39 +24,55 @@ package ai.konduit.serving.pipeline.steps;
 
 import ai.konduit.serving.pipeline.PipelineStep;
 import ai.konduit.serving.pipeline.TransformProcessPipelineStep;
+import ai.konduit.serving.util.CompiledTransformProcess;
 import org.datavec.api.records.Record;
 import org.datavec.api.transform.TransformProcess;
 import org.datavec.api.writable.Writable;
-import org.datavec.local.transforms.LocalTransformExecutor;
 import org.nd4j.base.Preconditions;
 
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Run transform processes for each input name.
+ * Each transform process is compiled once (see {@link CompiledTransformProcess})
+ * and runs over the whole batch of rows at a time.
  */
 public class TransformProcessPipelineStepRunner extends BasePipelineStepRunner {
 
-    private Map<String,TransformProcess> transformProcesses;
+    private Map<String,CompiledTransformProcess> transformProcesses;
 
     public TransformProcessPipelineStepRunner(PipelineStep pipelineStep) {
         super(pipelineStep);
         TransformProcessPipelineStep transformProcessPipelineStepConfig = (TransformProcessPipelineStep) pipelineStep;
-        this.transformProcesses = transformProcessPipelineStepConfig.getTransformProcesses();
+        Preconditions.checkNotNull(transformProcessPipelineStepConfig.getTransformProcesses(),"No transform processes specified!");
+        this.transformProcesses = new LinkedHashMap<>();
+        for(Map.Entry<String,TransformProcess> entry : transformProcessPipelineStepConfig.getTransformProcesses().entrySet()) {
+            transformProcesses.put(entry.getKey(), CompiledTransformProcess.compile(entry.getValue()));
+        }
     }
 
 
 
     @Override
     public Record[] transform(Record[] input) {
+        if(pipelineStep.getInputNames().size() == 1) {
+            //every record is a row of the same input, run them as one batch
+            List<List<Writable>> rows = transformProcessFor(pipelineStep.inputNameAt(0)).execute(input);
+            Record[] ret = new Record[rows.size()];
+            for(int i = 0; i < ret.length; i++) {
+                ret[i] = new org.datavec.api.records.impl.Record(rows.get(i),null);
+            }
+
+            return ret;
+        }
+
         Record[] ret = new Record[input.length];
         for(int i = 0; i < input.length; i++) {
             if(pipelineStep.inputNameIsValidForStep(pipelineStep.inputNameAt(i))) {
-                TransformProcess toExecute = transformProcesses.get(pipelineStep.inputNameAt(i));
-                Preconditions.checkNotNull(toExecute,"No transform process found for name " + (pipelineStep.inputNameAt(i)));
-                ret[i] = new org.datavec.api.records.impl.Record(LocalTransformExecutor.execute(Arrays.asList(input[i].getRecord()),toExecute).get(0),null);
+                CompiledTransformProcess toExecute = transformProcessFor(pipelineStep.inputNameAt(i));
+                ret[i] = new org.datavec.api.records.impl.Record(toExecute.execute(new Record[]{input[i]}).get(0),null);
 
             }
             else {
@@ -66,6 +82,12 @@ public class TransformProcessPipelineStepRunner extends BasePipelineStepRunner {
         return ret;
     }
 
+    private CompiledTransformProcess transformProcessFor(String inputName) {
+        CompiledTransformProcess toExecute = transformProcesses.get(inputName);
+        Preconditions.checkNotNull(toExecute,"No transform process found for name " + inputName);
+        return toExecute;
+    }
+
     @Override
     public void processValidWritable(Writable writable, List<Writable> record, int inputIndex, Object... extraArgs) {
            throw new UnsupportedOperationException();
@@ -0,0 +1,244 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Time based flush policy for the batched thread pools.
+ *
+ * A batch is held open until either the preferred batch size is reached
+ * or the batching window expires. The window itself adapts to the
+ * observed traffic: it is the expected time to fill the batch
+ * (estimated from the request inter arrival time) bounded by
+ * the configured maximum delay and by the recent model execution time.
+ * When requests arrive further apart than the maximum delay,
+ * waiting can't grow the batch, so batches are flushed immediately.
+ *
+ * A max delay of 0 disables the window and batches go out as soon as a worker picks them up.
+ *
+ * Gauges carry the given tags, which should name the pool (eg: its type and model)
+ * so several pools are reported side by side. Micrometer keeps the first gauge registered
+ * per name and tags, so {@link #close()} removes them again when the pool shuts down.
+ *
+ * @author Adam Gibson
+ */
+public class AdaptiveBatchWindow implements MeterBinder, AutoCloseable {
+
+    //weight of the newest observation in the moving averages
+    private final static double ALPHA = 0.1;
+    //upper bound on a single park so newly arrived inputs are picked up promptly
+    private final static long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    @Getter
+    private final long maxDelayNanos;
+    @Getter
+    private final int preferredBatchSize;
+    @Getter
+    private final Tags tags;
+    //registered gauges with the registry they were registered with, removed on close
+    private final Map<Meter, MeterRegistry> meters = new LinkedHashMap<>();
+
+    private long lastArrivalNanos = -1;
+    private volatile double interArrivalNanos = -1;
+    private volatile double executionNanos = -1;
+    private volatile double batchSize = 0;
+    private volatile double waitNanos = 0;
+
+    public AdaptiveBatchWindow(long maxBatchDelayMicros, int preferredBatchSize) {
+        this(maxBatchDelayMicros, preferredBatchSize, Collections.emptyList());
+    }
+
+    public AdaptiveBatchWindow(long maxBatchDelayMicros, int preferredBatchSize, Iterable<Tag> tags) {
+        if (maxBatchDelayMicros < 0)
+            throw new IllegalArgumentException("Max batch delay must not be negative");
+        if (preferredBatchSize < 1)
+            throw new IllegalArgumentException("Preferred batch size should be positive value");
+
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxBatchDelayMicros);
+        this.preferredBatchSize = preferredBatchSize;
+        this.tags = Tags.of(tags);
+    }
+
+    /**
+     * @return true if batches are held open at all
+     */
+    public boolean isEnabled() {
+        return maxDelayNanos > 0;
+    }
+
+    /**
+     * Record the arrival of a new input.
+     * Called by the observables provider for every request.
+     */
+    public synchronized void onArrival() {
+        long now = System.nanoTime();
+        if (lastArrivalNanos > 0) {
+            interArrivalNanos = average(interArrivalNanos, now - lastArrivalNanos);
+        }
+
+        lastArrivalNanos = now;
+    }
+
+    /**
+     * Record a finished batch.
+     *
+     * @param size           the number of inputs that were merged in to the batch
+     * @param executionNanos the time it took to run the batch through the model
+     */
+    public synchronized void onBatchComplete(int size, long executionNanos) {
+        this.batchSize = batchSize == 0 ? size : average(batchSize, size);
+        this.executionNanos = average(this.executionNanos, executionNanos);
+    }
+
+    /**
+     * The current window for a batch that already holds the given number of inputs.
+     *
+     * @param currentSize the number of inputs in the batch so far
+     * @return the total time in nanoseconds the batch should stay open for
+     */
+    public long windowNanos(int currentSize) {
+        if (!isEnabled() || currentSize >= preferredBatchSize)
+            return 0;
+
+        double interArrival = interArrivalNanos;
+        //no traffic estimate yet or traffic too sparse to ever fill the batch in time
+        if (interArrival <= 0 || interArrival >= maxDelayNanos)
+            return 0;
+
+        double window = Math.min(interArrival * (preferredBatchSize - currentSize), maxDelayNanos);
+        //holding a batch longer than one model execution costs more latency than it buys in throughput
+        double execution = executionNanos;
+        if (execution > 0)
+            window = Math.min(window, execution);
+
+        return (long) window;
+    }
+
+    /**
+     * Block until the batch reaches the preferred size or its window expires.
+     *
+     * @param currentSize  the current number of inputs in the batch
+     * @param openedNanos  {@link System#nanoTime()} at the time the batch was created
+     * @return the time spent waiting in nanoseconds
+     */
+    public long awaitBatch(IntSupplier currentSize, long openedNanos) {
+        long start = System.nanoTime();
+        if (isEnabled()) {
+            int size;
+            while ((size = currentSize.getAsInt()) < preferredBatchSize) {
+                long remaining = openedNanos + windowNanos(size) - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted())
+                    break;
+
+                LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+            }
+        }
+
+        long waited = System.nanoTime() - start;
+        synchronized (this) {
+            waitNanos = average(waitNanos, waited);
+        }
+
+        return waited;
+    }
+
+    /**
+     * @return the moving average of the number of inputs per batch
+     */
+    public double getAverageBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the moving average of the time batches spent waiting in the window, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        return waitNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the current window for an empty batch, in milliseconds
+     */
+    public double getCurrentWindowMillis() {
+        return (double) windowNanos(1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge batchSize = Gauge.builder("batch.size", this, AdaptiveBatchWindow::getAverageBatchSize)
+                .tags(tags)
+                .description("Average number of inputs merged in to a single batch")
+                .register(registry);
+
+        Gauge wait = Gauge.builder("batch.window.wait", this, AdaptiveBatchWindow::getAverageWaitMillis)
+                .tags(tags)
+                .description("Average time batches spent waiting in the batching window")
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        Gauge current = Gauge.builder("batch.window.current", this, AdaptiveBatchWindow::getCurrentWindowMillis)
+                .tags(tags)
+                .description("Current adaptive batching window")
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        synchronized (meters) {
+            meters.put(batchSize, registry);
+            meters.put(wait, registry);
+            meters.put(current, registry);
+        }
+    }
+
+    /**
+     * Remove the gauges from every registry this window was bound to,
+     * so a new pool with the same tags reports its own values.
+     */
+    @Override
+    public void close() {
+        synchronized (meters) {
+            for (Map.Entry<Meter, MeterRegistry> meter : meters.entrySet()) {
+                meter.getValue().remove(meter.getKey());
+            }
+
+            meters.clear();
+        }
+    }
+
+    private static double average(double current, double observation) {
+        return current < 0 ? observation : current + ALPHA * (observation - current);
+    }
+}
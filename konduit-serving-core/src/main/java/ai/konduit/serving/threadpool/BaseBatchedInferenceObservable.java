@@ -0,0 +1,278 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Observable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An observable that merges the inputs of concurrent callers
+ * into as few batches as possible.
+ * Inputs are concatenated along dimension 0 whenever their
+ * data types and non batch dimensions match. The outputs of each batch
+ * are then split back up by row offset so each caller
+ * only sees the rows belonging to its own input.
+ * Subclasses only tie it to the observable type of their thread pool.
+ * Adapted from {@link org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable}
+ *
+ * @author Adam Gibson
+ */
+@Data
+@NoArgsConstructor
+public abstract class BaseBatchedInferenceObservable extends Observable {
+
+    private List<INDArray[]> inputs = new ArrayList<>();
+    @Getter
+    private long id;
+    //used by the batching window to decide when the batch is flushed
+    private final long createdNanos = System.nanoTime();
+    private List<INDArray[]> outputs = new ArrayList<>();
+    protected Exception exception;
+    private AtomicInteger counter = new AtomicInteger(0);
+    private ThreadLocal<Integer> position = new ThreadLocal<>();
+    private List<int[]> outputBatchInputArrays = new ArrayList<>();
+
+    private final Object locker = new Object();
+
+    private ReentrantReadWriteLock realLocker = new ReentrantReadWriteLock();
+    private AtomicBoolean isLocked = new AtomicBoolean(false);
+    private AtomicBoolean isReadLocked = new AtomicBoolean(false);
+
+
+    protected BaseBatchedInferenceObservable(INDArray[] inputs) {
+        addInput(inputs);
+    }
+
+
+    public void addInput(@NonNull INDArray[] input) {
+        synchronized (locker) {
+            inputs.add(input);
+            position.set(counter.getAndIncrement());
+
+            if (isReadLocked.get())
+                realLocker.readLock().unlock();
+        }
+    }
+
+
+
+    public List<INDArray[]> getInputBatches() {
+        realLocker.writeLock().lock();
+        isLocked.set(true);
+
+        try {
+            outputBatchInputArrays.clear();
+
+            // this method should pile individual examples into single batch
+            List<INDArray[]> out = new ArrayList<>();
+            int pos = 0;
+            while (pos < inputs.size()) {
+                int end = pos + 1;
+                while (end < inputs.size() && canBatch(inputs.get(pos), inputs.get(end))) {
+                    end++;
+                }
+
+                outputBatchInputArrays.add(new int[]{pos, end - 1});
+                if (end - pos == 1) {
+                    out.add(inputs.get(pos));
+                } else {
+                    INDArray[] first = inputs.get(pos);
+                    INDArray[] batch = new INDArray[first.length];
+                    for (int i = 0; i < first.length; i++) {
+                        INDArray[] toConcat = new INDArray[end - pos];
+                        for (int j = pos; j < end; j++) {
+                            toConcat[j - pos] = inputs.get(j)[i];
+                        }
+
+                        batch[i] = Nd4j.concat(0, toConcat);
+                    }
+
+                    out.add(batch);
+                }
+
+                pos = end;
+            }
+
+            return out;
+        } finally {
+            realLocker.writeLock().unlock();
+        }
+    }
+
+
+    public void setOutputBatches(List<INDArray[]> output) {
+        //this method should split batched output INDArray[] into multiple separate INDArrays
+        if (output.size() != outputBatchInputArrays.size()) {
+            throw new IllegalArgumentException("Expected " + outputBatchInputArrays.size()
+                    + " output batches, got " + output.size());
+        }
+
+        for (int outBatchNum = 0; outBatchNum < output.size(); outBatchNum++) {
+            INDArray[] currBatchOutputs = output.get(outBatchNum);
+            int[] inputBatchRange = outputBatchInputArrays.get(outBatchNum);
+            if (inputBatchRange[0] == inputBatchRange[1]) {
+                outputs.add(currBatchOutputs);
+                continue;
+            }
+
+            long totalRows = 0;
+            for (int i = inputBatchRange[0]; i <= inputBatchRange[1]; i++) {
+                totalRows += inputs.get(i)[0].size(0);
+            }
+
+            long offset = 0;
+            for (int i = inputBatchRange[0]; i <= inputBatchRange[1]; i++) {
+                long rows = inputs.get(i)[0].size(0);
+                INDArray[] split = new INDArray[currBatchOutputs.length];
+                for (int j = 0; j < currBatchOutputs.length; j++) {
+                    INDArray currArr = currBatchOutputs[j];
+                    //outputs without a batch dimension (for example reductions) are shared as is
+                    if (currArr.rank() > 0 && currArr.size(0) == totalRows) {
+                        split[j] = currArr.get(rowInterval(currArr.rank(), offset, offset + rows));
+                    } else {
+                        split[j] = currArr;
+                    }
+                }
+
+                outputs.add(split);
+                offset += rows;
+            }
+        }
+
+        this.setChanged();
+        notifyObservers();
+    }
+
+    public INDArray[] getOutput() {
+        return getOutput(position.get());
+    }
+
+    /**
+     * Get the output for the input added at the given position.
+     * Unlike {@link #getOutput()} this doesn't depend on
+     * being called from the thread that added the input.
+     *
+     * @param position the position of the input in this batch
+     * @return the output rows belonging to that input
+     */
+    public INDArray[] getOutput(int position) {
+        checkOutputException();
+        return outputs.get(position);
+    }
+
+    public void setOutputException(Exception e) {
+        this.exception = e;
+        this.setChanged();
+        notifyObservers();
+    }
+
+    public Exception getOutputException() {
+        return exception;
+    }
+
+    protected void setCounter(int value) {
+        counter.set(value);
+    }
+
+    public void setPosition(int pos) {
+        position.set(pos);
+    }
+
+    public int getCounter() {
+        return counter.get();
+    }
+
+
+
+    public boolean isLocked() {
+        boolean lck = !realLocker.readLock().tryLock();
+
+        boolean result = lck || isLocked.get();
+
+        if (!result)
+            isReadLocked.set(true);
+
+        return result;
+    }
+
+    protected void checkOutputException() {
+        if (exception != null) {
+            if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else {
+                throw new RuntimeException("Exception encountered while getting output: " + exception.getMessage(), exception);
+            }
+        }
+    }
+
+    private static boolean canBatch(INDArray[] first, INDArray[] second) {
+        if (first.length != second.length)
+            return false;
+
+        for (int i = 0; i < first.length; i++) {
+            INDArray a = first[i];
+            INDArray b = second[i];
+            if (a.rank() < 1 || a.rank() != b.rank() || a.dataType() != b.dataType())
+                return false;
+
+            long[] aShape = a.shape();
+            long[] bShape = b.shape();
+            if (!Arrays.equals(Arrays.copyOfRange(aShape, 1, aShape.length), Arrays.copyOfRange(bShape, 1, bShape.length)))
+                return false;
+        }
+
+        //the row counts are taken from the first array, so every array must agree on it
+        long rows = first[0].size(0);
+        for (int i = 1; i < first.length; i++) {
+            if (first[i].size(0) != rows || second[i].size(0) != second[0].size(0))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static INDArrayIndex[] rowInterval(int rank, long from, long to) {
+        INDArrayIndex[] indices = new INDArrayIndex[rank];
+        indices[0] = NDArrayIndex.interval(from, to);
+        for (int i = 1; i < rank; i++) {
+            indices[i] = NDArrayIndex.all();
+        }
+
+        return indices;
+    }
+
+}
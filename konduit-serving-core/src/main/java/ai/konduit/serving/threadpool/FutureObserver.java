@@ -0,0 +1,70 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * An {@link Observer} that completes a {@link CompletableFuture}
+ * from the inference worker thread instead of parking the calling thread
+ * like {@link org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver}.
+ *
+ * Batched observables hold the inputs of several callers, so the
+ * position of the caller's input within the batch is recorded
+ * before the input is added and passed to the output extractor.
+ *
+ * @param <T> the output type of the observable
+ * @author Adam Gibson
+ */
+public class FutureObserver<T> implements Observer {
+
+    @Getter
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private final BiFunction<Observable, Integer, T> outputExtractor;
+    @Getter
+    @Setter
+    private volatile int position;
+
+    /**
+     * @param outputExtractor extracts the output for the given position from the observable.
+     *                        Any exception thrown completes the future exceptionally.
+     */
+    public FutureObserver(BiFunction<Observable, Integer, T> outputExtractor) {
+        this.outputExtractor = outputExtractor;
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        try {
+            future.complete(outputExtractor.apply(o, position));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
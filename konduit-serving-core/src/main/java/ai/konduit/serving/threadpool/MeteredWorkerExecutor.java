@@ -0,0 +1,136 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named vert.x {@link WorkerExecutor} that runs its tasks unordered
+ * and keeps track of how many tasks are waiting for a thread
+ * and how many are running.
+ *
+ * The underlying executor is a shared worker executor, so every verticle instance
+ * using the same name submits to the same pool. The counters are shared
+ * by name as well, so the exposed gauges describe the whole pool
+ * rather than one verticle's view of it.
+ *
+ * @author Adam Gibson
+ */
+public class MeteredWorkerExecutor implements MeterBinder {
+
+    private final static ConcurrentMap<String, AtomicInteger> QUEUED = new ConcurrentHashMap<>();
+    private final static ConcurrentMap<String, AtomicInteger> ACTIVE = new ConcurrentHashMap<>();
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int poolSize;
+    private final WorkerExecutor workerExecutor;
+    private final AtomicInteger queued, active;
+
+    public MeteredWorkerExecutor(Vertx vertx, String name, int poolSize) {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size for worker executor " + name + " should be positive value");
+
+        this.name = name;
+        this.poolSize = poolSize;
+        this.workerExecutor = vertx.createSharedWorkerExecutor(name, poolSize);
+        this.queued = QUEUED.computeIfAbsent(name, n -> new AtomicInteger());
+        this.active = ACTIVE.computeIfAbsent(name, n -> new AtomicInteger());
+    }
+
+    /**
+     * Run the given blocking code on this pool.
+     * Tasks are not ordered with respect to each other,
+     * so requests coming from the same context can run concurrently.
+     *
+     * @param blockingCodeHandler the blocking code to run
+     * @param resultHandler       invoked on the calling context once the code completes
+     * @param <T>                 the type of the result
+     */
+    public <T> void executeBlocking(Handler<Future<T>> blockingCodeHandler, Handler<AsyncResult<T>> resultHandler) {
+        queued.incrementAndGet();
+        workerExecutor.executeBlocking(future -> {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                blockingCodeHandler.handle(future);
+            } finally {
+                active.decrementAndGet();
+            }
+        }, false, resultHandler);
+    }
+
+    /**
+     * @return the number of tasks submitted but not yet picked up by a thread
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * @return the number of tasks currently running
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Release this verticle's reference to the shared pool.
+     * The threads are shut down once every user has closed it.
+     */
+    public void close() {
+        workerExecutor.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Iterable<Tag> tags = Collections.singletonList(Tag.of("pool", name));
+        Gauge.builder("worker.pool.queued", queued, AtomicInteger::get)
+                .tags(tags)
+                .description("Tasks waiting for a thread in the worker pool")
+                .register(registry);
+        Gauge.builder("worker.pool.active", active, AtomicInteger::get)
+                .tags(tags)
+                .description("Tasks running in the worker pool")
+                .register(registry);
+        Gauge.builder("worker.pool.size", this, MeteredWorkerExecutor::getPoolSize)
+                .tags(tags)
+                .description("Number of threads in the worker pool")
+                .register(registry);
+    }
+}
@@ -24,26 +24,31 @@ package ai.konduit.serving.threadpool.samediff;
 
 
 import ai.konduit.serving.model.loader.ModelLoader;
+import ai.konduit.serving.threadpool.AdaptiveBatchWindow;
+import ai.konduit.serving.threadpool.FutureObserver;
+import ai.konduit.serving.threadpool.samediff.observables.BasicSameDiffInferenceObservable;
 import ai.konduit.serving.threadpool.samediff.observables.BatchedSameDiffInferenceObservable;
 import ai.konduit.serving.threadpool.samediff.observables.SameDiffObservable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.vertx.micrometer.backends.BackendRegistries;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
-import org.nd4j.autodiff.execution.NativeGraphExecutioner;
-import org.nd4j.autodiff.execution.conf.ExecutionMode;
-import org.nd4j.autodiff.execution.conf.ExecutorConfiguration;
-import org.nd4j.autodiff.execution.conf.OutputMode;
 import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.factory.Nd4j;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -62,25 +67,25 @@ public class SameDiffThreadPool {
     private int batchLimit;
     private InferenceMode inferenceMode;
     private int queueLimit;
+    private long maxBatchDelayMicros;
+    private int preferredBatchSize;
+    private AdaptiveBatchWindow batchWindow;
+    private String name;
     // this queue
     private BlockingQueue<SameDiffObservable> observables;
     private SameDiff replicatedModel;
-    private NativeGraphExecutioner nativeGraphExecutioner;
     private List<String> inputNames,outputNames;
+    //the outputs each execution computes, in the order they are returned
+    private String[] resolvedOutputs;
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
-    private static ExecutorConfiguration configuration = ExecutorConfiguration.builder()
-            .executionMode(ExecutionMode.SEQUENTIAL)
-            .profilingMode(OpExecutioner.ProfilingMode.DISABLED)
-            .gatherTimings(true)
-            .outputMode(OutputMode.IMPLICIT)
-            .build();
 
 
     public final static int DEFAULT_NUM_WORKERS = Nd4j.getAffinityManager().getNumberOfDevices();
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_BATCH_DELAY_MICROS = 0;
 
 
 
@@ -89,10 +94,17 @@ public class SameDiffThreadPool {
     }
 
     protected void init() throws Exception {
-        nativeGraphExecutioner = new NativeGraphExecutioner();
         observables = new LinkedBlockingQueue<>(queueLimit);
+        batchWindow = new AdaptiveBatchWindow(maxBatchDelayMicros,
+                preferredBatchSize > 0 ? Math.min(preferredBatchSize, batchLimit) : batchLimit,
+                Arrays.asList(Tag.of("threadpool", "samediff"), Tag.of("model", name)));
+        MeterRegistry registry = BackendRegistries.getDefaultNow();
+        if(registry != null && inferenceMode == InferenceMode.BATCHED) {
+            batchWindow.bindTo(registry);
+        }
         SameDiff graphHolder = sameDiffModelLoader.loadModel();
         this.replicatedModel = graphHolder;
+        resolvedOutputs = resolveOutputs(graphHolder);
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -116,7 +128,7 @@ public class SameDiffThreadPool {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.debug("Initializing ObservablesProvider...");
             nanos = System.nanoTime();
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(nanos, batchLimit, observables, batchWindow);
         }
     }
 
@@ -126,7 +138,20 @@ public class SameDiffThreadPool {
     }
 
     public String[] outputNames() {
-        return replicatedModel.outputs().toArray(new String[0]);
+        return resolvedOutputs.clone();
+    }
+
+    /**
+     * The declared output names or the outputs of the graph when none were declared.
+     * Each one has to be a variable of the graph.
+     */
+    private String[] resolveOutputs(SameDiff sameDiff) {
+        List<String> names = outputNames != null && !outputNames.isEmpty() ? outputNames : sameDiff.outputs();
+        for(String name : names) {
+            Preconditions.checkState(sameDiff.hasVariable(name),"Output %s is not a variable of the graph", name);
+        }
+
+        return names.toArray(new String[0]);
     }
 
     protected long getWorkerCounter(int workerIdx) {
@@ -150,6 +175,9 @@ public class SameDiffThreadPool {
         }
         zoo = null;
 
+        if (batchWindow != null)
+            batchWindow.close();
+
         System.gc();
     }
 
@@ -165,11 +193,11 @@ public class SameDiffThreadPool {
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
 
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        BatchedSameDiffInferenceObservable observable;
+        SameDiffObservable observable;
 
 
         if (inferenceMode == InferenceMode.SEQUENTIAL) {
-            observable = new BatchedSameDiffInferenceObservable(input);
+            observable = new BasicSameDiffInferenceObservable(input);
             observable.addObserver(observer);
             try {
                 observables.put(observable);
@@ -198,12 +226,50 @@ public class SameDiffThreadPool {
     }
 
 
+    /**
+     * Asynchronous version of {@link #output(INDArray[])}.
+     * The returned future is completed by the inference worker thread
+     * once the output is available, no thread is blocked while the model runs.
+     *
+     * @param input      Input to the network
+     * @return a future completed with the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input) {
+        if(input == null) {
+            throw new IllegalArgumentException("No null input allowed.");
+        }
+
+        FutureObserver<INDArray[]> observer = new FutureObserver<>((observable, position) ->
+                observable instanceof BatchedSameDiffInferenceObservable
+                        ? ((BatchedSameDiffInferenceObservable) observable).getOutput(position)
+                        : ((SameDiffObservable) observable).getOutput());
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            SameDiffObservable observable = new BasicSameDiffInferenceObservable(input);
+            observable.addObserver(observer);
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else {
+            provider.setInput(observer, input);
+        }
+
+        return observer.getFuture();
+    }
+
+
     public static class Builder {
         private ModelLoader<SameDiff> tensorflowModelLoader;
         private int workers = DEFAULT_NUM_WORKERS;
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long maxBatchDelayMicros = DEFAULT_MAX_BATCH_DELAY_MICROS;
+        private int preferredBatchSize = 0;
+        private String name = "samediff";
         private List<String> inputNames,outputNames;
 
         public Builder(@NonNull ModelLoader<SameDiff> tensorflowModelLoader) {
@@ -300,6 +366,54 @@ public class SameDiffThreadPool {
             return this;
         }
 
+        /**
+         * This method defines the upper bound on how long a batch
+         * is held open waiting for more inputs. The actual window
+         * adapts to the request arrival rate and model execution time
+         * and never exceeds this value.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL inference mode
+         *
+         * Default value: 0 (flush as soon as a worker is free)
+         *
+         * @param maxBatchDelayMicros the maximum batching delay in microseconds
+         * @return the builder
+         */
+        public Builder maxBatchDelayMicros(long maxBatchDelayMicros) {
+            if (maxBatchDelayMicros < 0)
+                throw new IllegalStateException("Max batch delay should not be negative");
+
+            this.maxBatchDelayMicros = maxBatchDelayMicros;
+            return this;
+        }
+
+        /**
+         * This method defines the batch size at which a batch is
+         * sent for inference without waiting for the batching window to expire.
+         * Values less than 1 mean the batch limit is used.
+         *
+         * @param preferredBatchSize the preferred batch size
+         * @return the builder
+         */
+        public Builder preferredBatchSize(int preferredBatchSize) {
+            this.preferredBatchSize = preferredBatchSize;
+            return this;
+        }
+
+        /**
+         * The name the pool's metrics are tagged with,
+         * stable across restarts like the model's file name.
+         * Defaults to the pool type.
+         *
+         * @param name the name of the pool
+         * @return the builder
+         */
+        public Builder name(@NonNull String name) {
+            this.name = name;
+            return this;
+        }
+
         /**
          * This method builds new PMMLThreadPool instance
          *
@@ -309,6 +423,9 @@ public class SameDiffThreadPool {
             SameDiffThreadPool inference = new SameDiffThreadPool();
             inference.batchLimit = this.batchLimit;
             inference.queueLimit = this.queueLimit;
+            inference.maxBatchDelayMicros = this.maxBatchDelayMicros;
+            inference.preferredBatchSize = this.preferredBatchSize;
+            inference.name = this.name;
             inference.inferenceMode = this.inferenceMode;
             inference.workers = this.workers;
             inference.sameDiffModelLoader = this.tensorflowModelLoader;
@@ -366,24 +483,47 @@ public class SameDiffThreadPool {
                     if (request != null) {
                         counter.incrementAndGet();
 
+                        int batchSize = 1;
+                        if (request instanceof BatchedSameDiffInferenceObservable) {
+                            BatchedSameDiffInferenceObservable batched = (BatchedSameDiffInferenceObservable) request;
+                            batchWindow.awaitBatch(batched::getCounter, batched.getCreatedNanos());
+                        }
 
-                        INDArray[] batches = request.getInputBatches();
-                        if(batches == null || batches.length < 1) {
+                        List<INDArray[]> batches = request.getInputBatches();
+                        if (request instanceof BatchedSameDiffInferenceObservable) {
+                            batchSize = ((BatchedSameDiffInferenceObservable) request).getCounter();
+                        }
+                        if(batches == null || batches.isEmpty()) {
                             log.warn("Batch length was zero. Skipping.");
                             continue;
                         }
-                        log.debug("Received batches");
+                        log.debug("Received " + batches.size() + " batches");
                         try {
-                            Map<String, INDArray> inputs = new LinkedHashMap<>(batches.length);
-                            for (int i = 0; i < inputNames.size(); i++) {
-                                inputs.put(inputNames.get(i), batches[i]);
-                                replicatedModel.associateArrayWithVariable(batches[i],inputNames.get(i));
+                            //one graph execution per merged batch, the observable splits the results back up per caller
+                            long start = System.nanoTime();
+                            List<INDArray[]> outputs = new ArrayList<>(batches.size());
+                            for(INDArray[] batch : batches) {
+                                Map<String,INDArray> placeholders = new HashMap<>();
+                                for (int i = 0; i < inputNames.size(); i++) {
+                                    if(replicatedModel.getVariable(inputNames.get(i)).isPlaceHolder())
+                                        placeholders.put(inputNames.get(i),batch[i]);
+                                    else
+                                        replicatedModel.associateArrayWithVariable(batch[i],inputNames.get(i));
+                                }
+
+                                //only the ops the outputs depend on are executed, not the whole graph
+                                log.debug("Running graph with inputs " + inputNames);
+                                Map<String,INDArray> execution = replicatedModel.exec(placeholders,resolvedOutputs);
+                                INDArray[] output = new INDArray[resolvedOutputs.length];
+                                for(int i = 0; i < output.length; i++) {
+                                    output[i] = execution.get(resolvedOutputs[i]);
+                                }
+
+                                outputs.add(output);
                             }
 
-                            INDArray[] indArrays1 = nativeGraphExecutioner.executeGraph(replicatedModel,configuration);
-
-                            log.debug("Running graph with inputs " + inputNames);
-                            request.setOutputBatches(indArrays1);
+                            batchWindow.onBatchComplete(batchSize, System.nanoTime() - start);
+                            request.setOutputBatches(outputs);
 
                         }catch (Exception e) {
                             log.error("Exception found",e);
@@ -416,18 +556,21 @@ public class SameDiffThreadPool {
         private BlockingQueue<SameDiffObservable> targetQueue;
         private long nanos;
         private int batchLimit;
+        private AdaptiveBatchWindow batchWindow;
 
         private volatile BatchedSameDiffInferenceObservable currentObservable;
         private final Object locker = new Object();
 
-        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<SameDiffObservable> queue) {
+        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<SameDiffObservable> queue, @NonNull AdaptiveBatchWindow batchWindow) {
             this.targetQueue = queue;
             this.nanos = nanos;
             this.batchLimit = batchLimit;
+            this.batchWindow = batchWindow;
         }
 
         protected BatchedSameDiffInferenceObservable setInput(@NonNull Observer observer, INDArray[] input) {
             synchronized (locker) {
+                batchWindow.onArrival();
                 boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
                         || currentObservable.isLocked()) {
@@ -435,8 +578,13 @@ public class SameDiffThreadPool {
                     currentObservable = new BatchedSameDiffInferenceObservable();
                 }
 
-                currentObservable.addInput(input);
+                //register the observer before the input becomes visible to the workers so the notification can't be missed
+                if (observer instanceof FutureObserver) {
+                    ((FutureObserver) observer).setPosition(currentObservable.getCounter());
+                }
+
                 currentObservable.addObserver(observer);
+                currentObservable.addInput(input);
 
                 try {
                     if (isNew)
@@ -25,6 +25,8 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 
 /**
@@ -48,8 +50,8 @@ public class BasicSameDiffInferenceObservable extends Observable implements Same
 
 
     @Override
-    public INDArray[] getInputBatches() {
-        return input;
+    public List<INDArray[]> getInputBatches() {
+        return Collections.singletonList(input);
     }
 
     @Override
@@ -58,8 +60,12 @@ public class BasicSameDiffInferenceObservable extends Observable implements Same
     }
 
     @Override
-    public void setOutputBatches(INDArray[] output) {
-        this.output = output;
+    public void setOutputBatches(List<INDArray[]> output) {
+        if(output.size() != 1) {
+            throw new IllegalArgumentException("Expected exactly 1 output batch, got " + output.size());
+        }
+
+        this.output = output.get(0);
         this.setChanged();
         notifyObservers();
     }
@@ -22,134 +22,21 @@
 
 package ai.konduit.serving.threadpool.samediff.observables;
 
-import lombok.Data;
-import lombok.Getter;
+import ai.konduit.serving.threadpool.BaseBatchedInferenceObservable;
 import lombok.NoArgsConstructor;
-import lombok.NonNull;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Observable;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-@Data
+/**
+ * The {@link BaseBatchedInferenceObservable} used by the
+ * {@link ai.konduit.serving.threadpool.samediff.SameDiffThreadPool}.
+ *
+ * @author Adam Gibson
+ */
 @NoArgsConstructor
-public class BatchedSameDiffInferenceObservable extends Observable implements SameDiffObservable {
-
-    private INDArray[]  input;
-    @Getter
-    private long id;
-    private INDArray[] output;
-    protected Exception exception;
-    private AtomicInteger counter = new AtomicInteger(0);
-    private ThreadLocal<Integer> position = new ThreadLocal<>();
-    private List<int[]> outputBatchInputArrays = new ArrayList<>();
-
-    private final Object locker = new Object();
-
-    private ReentrantReadWriteLock realLocker = new ReentrantReadWriteLock();
-    private AtomicBoolean isLocked = new AtomicBoolean(false);
-    private AtomicBoolean isReadLocked = new AtomicBoolean(false);
-
+public class BatchedSameDiffInferenceObservable extends BaseBatchedInferenceObservable implements SameDiffObservable {
 
     public BatchedSameDiffInferenceObservable(INDArray[] inputs) {
-        this.input = inputs;
-    }
-
-
-    @Override
-    public void addInput(@NonNull INDArray[] input) {
-        synchronized (locker) {
-            if(this.input == null)
-                this.input = input;
-            position.set(counter.getAndIncrement());
-
-            if (isReadLocked.get())
-                realLocker.readLock().unlock();
-        }
-        this.input = input;
-    }
-
-
-
-    @Override
-    public INDArray[] getInputBatches() {
-        realLocker.writeLock().lock();
-        isLocked.set(true);
-
-        outputBatchInputArrays.clear();
-
-        // this method should pile individual examples into single batch
-
-        if (counter.get() > 1) {
-
-            int pos = 0;
-            realLocker.writeLock().unlock();
-            return input;
-        } else {
-            outputBatchInputArrays.add(new int[]{0,0});
-            realLocker.writeLock().unlock();
-            return input;
-        }
-    }
-
-
-    @Override
-    public void setOutputBatches(INDArray[] output) {
-        //this method should split batched output INDArray[] into multiple separate INDArrays
-        int countNumInputBatches = 0;   //Counter for total number of input batches processed
-        this.output = output;
-        this.setChanged();
-        notifyObservers();
+        super(inputs);
     }
 
-    @Override
-    public void setOutputException(Exception e) {
-        this.exception = e;
-    }
-
-    @Override
-    public Exception getOutputException() {
-        return exception;
-    }
-
-
-    /**
-     * PLEASE NOTE: This method is for tests only
-     *
-     * @return the outputs for this observable
-     */
-    protected INDArray[] getOutputs() {
-        return output;
-    }
-
-    protected void setCounter(int value) {
-        counter.set(value);
-    }
-
-    public void setPosition(int pos) {
-        position.set(pos);
-    }
-
-    public int getCounter() {
-        return counter.get();
-    }
-
-
-
-    public boolean isLocked() {
-        boolean lck = !realLocker.readLock().tryLock();
-
-        boolean result = lck || isLocked.get();
-
-        if (!result)
-            isReadLocked.set(true);
-
-        return result;
-    }
-
-
 }
@@ -25,24 +25,35 @@ package ai.konduit.serving.threadpool.tensorflow;
 
 import ai.konduit.serving.model.loader.ModelLoader;
 import ai.konduit.serving.model.loader.tensorflow.TensorflowGraphHolder;
+import ai.konduit.serving.threadpool.AdaptiveBatchWindow;
+import ai.konduit.serving.threadpool.FutureObserver;
+import ai.konduit.serving.threadpool.tensorflow.conversion.InputTensorCache;
 import ai.konduit.serving.threadpool.tensorflow.conversion.TensorflowConversion;
 import ai.konduit.serving.threadpool.tensorflow.conversion.graphrunner.GraphRunner;
 import ai.konduit.serving.threadpool.tensorflow.observables.BasicTensorflowInferenceObservable;
 import ai.konduit.serving.threadpool.tensorflow.observables.BatchedTensorflowInferenceObservable;
 import ai.konduit.serving.threadpool.tensorflow.observables.TensorflowObservable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.vertx.micrometer.backends.BackendRegistries;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.tensorflow.TF_Tensor;
+import org.tensorflow.framework.ConfigProto;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -64,6 +75,10 @@ public class TensorFlowThreadPool {
     private int batchLimit;
     private InferenceMode inferenceMode;
     private int queueLimit;
+    private long maxBatchDelayMicros;
+    private int preferredBatchSize;
+    private AdaptiveBatchWindow batchWindow;
+    private String name;
     // this queue
     private BlockingQueue<TensorflowObservable> observables;
     private GraphRunner replicatedModel;
@@ -76,6 +91,7 @@ public class TensorFlowThreadPool {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_BATCH_DELAY_MICROS = 0;
 
 
 
@@ -85,9 +101,32 @@ public class TensorFlowThreadPool {
 
     protected void init() throws Exception {
         observables = new LinkedBlockingQueue<>(queueLimit);
+        batchWindow = new AdaptiveBatchWindow(maxBatchDelayMicros,
+                preferredBatchSize > 0 ? Math.min(preferredBatchSize, batchLimit) : batchLimit,
+                Arrays.asList(Tag.of("threadpool", "tensorflow"), Tag.of("model", name)));
+        MeterRegistry registry = BackendRegistries.getDefaultNow();
+        if(registry != null && inferenceMode == InferenceMode.BATCHED) {
+            batchWindow.bindTo(registry);
+        }
         TensorflowGraphHolder graphHolder = tensorFlowModelLoader.loadModel();
         log.debug("Initializing graph holder with inputs " + graphHolder.getInputNames() + " and outputSchema " + graphHolder.getOutputNames());
-        this.replicatedModel = graphHolder.createRunner();
+        //workers share the session unless asked not to: one model copy, and tensorflow's own
+        //thread pools are then the only thing deciding how many cores a request uses
+        ConfigProto workerSessionConfig = null;
+        if(graphHolder.isSessionPerWorker() && workers > 1) {
+            workerSessionConfig = graphHolder.sessionConfig();
+            if(workerSessionConfig == null || workerSessionConfig.getIntraOpParallelismThreads() == 0) {
+                //split the cores between the sessions rather than letting each one use all of them
+                int intraOpThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+                log.info("Using " + intraOpThreads + " intra op threads for each of the " + workers + " tensorflow sessions");
+                workerSessionConfig = (workerSessionConfig == null ? ConfigProto.newBuilder() : workerSessionConfig.toBuilder())
+                        .setIntraOpParallelismThreads(intraOpThreads)
+                        .build();
+            }
+        }
+
+        //with a session per worker this is the first worker's runner
+        this.replicatedModel = workerSessionConfig == null ? graphHolder.createRunner() : graphHolder.createRunner(workerSessionConfig);
 
         inputNames = replicatedModel.getInputOrder().toArray(new String[0]);
         outputNames = replicatedModel.getOutputOrder().toArray(new String[0]);
@@ -113,7 +152,8 @@ public class TensorFlowThreadPool {
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i,observables,true, tensorFlowModelLoader);
+            GraphRunner workerRunner = workerSessionConfig == null || i == 0 ? replicatedModel : graphHolder.createRunner(workerSessionConfig);
+            zoo[i] = new InferenceWorker(i,observables,true, workerRunner, workerRunner != replicatedModel);
             zoo[i].setUncaughtExceptionHandler((handler,e) -> {
                 log.error("Exception in thread",e);
             });
@@ -128,7 +168,7 @@ public class TensorFlowThreadPool {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.debug("Initializing ObservablesProvider...");
             nanos = System.nanoTime();
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(nanos, batchLimit, observables, batchWindow);
         }
     }
 
@@ -159,6 +199,14 @@ public class TensorFlowThreadPool {
         }
         zoo = null;
 
+        if (batchWindow != null)
+            batchWindow.close();
+
+        if(replicatedModel != null) {
+            replicatedModel.close();
+            replicatedModel = null;
+        }
+
         System.gc();
     }
 
@@ -210,12 +258,50 @@ public class TensorFlowThreadPool {
     }
 
 
+    /**
+     * Asynchronous version of {@link #output(INDArray[])}.
+     * The returned future is completed by the inference worker thread
+     * once the output is available, no thread is blocked while the model runs.
+     *
+     * @param input      Input to the network
+     * @return a future completed with the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input) {
+        if(input == null) {
+            throw new IllegalArgumentException("No null input allowed.");
+        }
+
+        FutureObserver<INDArray[]> observer = new FutureObserver<>((observable, position) ->
+                observable instanceof BatchedTensorflowInferenceObservable
+                        ? ((BatchedTensorflowInferenceObservable) observable).getOutput(position)
+                        : ((TensorflowObservable) observable).getOutput());
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            TensorflowObservable observable = new BasicTensorflowInferenceObservable(input);
+            observable.addObserver(observer);
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else {
+            provider.setInput(observer, input);
+        }
+
+        return observer.getFuture();
+    }
+
+
     public static class Builder {
         private ModelLoader<TensorflowGraphHolder> tensorflowModelLoader;
         private int workers = DEFAULT_NUM_WORKERS;
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long maxBatchDelayMicros = DEFAULT_MAX_BATCH_DELAY_MICROS;
+        private int preferredBatchSize = 0;
+        private String name = "tensorflow";
 
         public Builder(@NonNull ModelLoader<TensorflowGraphHolder> tensorflowModelLoader) {
             this.tensorflowModelLoader = tensorflowModelLoader;
@@ -291,6 +377,54 @@ public class TensorFlowThreadPool {
             return this;
         }
 
+        /**
+         * This method defines the upper bound on how long a batch
+         * is held open waiting for more inputs. The actual window
+         * adapts to the request arrival rate and model execution time
+         * and never exceeds this value.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL inference mode
+         *
+         * Default value: 0 (flush as soon as a worker is free)
+         *
+         * @param maxBatchDelayMicros the maximum batching delay in microseconds
+         * @return the builder
+         */
+        public Builder maxBatchDelayMicros(long maxBatchDelayMicros) {
+            if (maxBatchDelayMicros < 0)
+                throw new IllegalStateException("Max batch delay should not be negative");
+
+            this.maxBatchDelayMicros = maxBatchDelayMicros;
+            return this;
+        }
+
+        /**
+         * This method defines the batch size at which a batch is
+         * sent for inference without waiting for the batching window to expire.
+         * Values less than 1 mean the batch limit is used.
+         *
+         * @param preferredBatchSize the preferred batch size
+         * @return the builder
+         */
+        public Builder preferredBatchSize(int preferredBatchSize) {
+            this.preferredBatchSize = preferredBatchSize;
+            return this;
+        }
+
+        /**
+         * The name the pool's metrics are tagged with,
+         * stable across restarts like the model's file name.
+         * Defaults to the pool type.
+         *
+         * @param name the name of the pool
+         * @return the builder
+         */
+        public Builder name(@NonNull String name) {
+            this.name = name;
+            return this;
+        }
+
         /**
          * This method builds new TensorFlowThreadPool instance
          *
@@ -300,6 +434,9 @@ public class TensorFlowThreadPool {
             TensorFlowThreadPool inference = new TensorFlowThreadPool();
             inference.batchLimit = this.batchLimit;
             inference.queueLimit = this.queueLimit;
+            inference.maxBatchDelayMicros = this.maxBatchDelayMicros;
+            inference.preferredBatchSize = this.preferredBatchSize;
+            inference.name = this.name;
             inference.inferenceMode = this.inferenceMode;
             inference.workers = this.workers;
             inference.tensorFlowModelLoader = this.tensorflowModelLoader;
@@ -324,11 +461,19 @@ public class TensorFlowThreadPool {
         private AtomicBoolean isStopped = new AtomicBoolean(false);
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
+        //input tensors are refilled per call rather than created and deleted
+        private InputTensorCache inputTensorCache = new InputTensorCache();
+        //either the shared runner or one owned by this worker
+        private GraphRunner graphRunner;
+        private boolean ownsGraphRunner;
+        private Map<String, TF_Tensor> inputs = new LinkedHashMap<>();
 
 
-        private InferenceWorker(int id,@NonNull BlockingQueue inputQueue, boolean rootDevice, @NonNull ModelLoader<TensorflowGraphHolder> modelLoader) {
+        private InferenceWorker(int id,@NonNull BlockingQueue inputQueue, boolean rootDevice, @NonNull GraphRunner graphRunner, boolean ownsGraphRunner) {
             this.inputQueue = inputQueue;
             this.rootDevice = rootDevice;
+            this.graphRunner = graphRunner;
+            this.ownsGraphRunner = ownsGraphRunner;
             this.setDaemon(true);
             this.setName("InferenceThread-" + id);
 
@@ -348,65 +493,34 @@ public class TensorFlowThreadPool {
                     if (request != null) {
                         counter.incrementAndGet();
 
-                        INDArray[] batches = request.getInputBatches();
-                        if(batches == null) {
-                            request.setOutputException(new IllegalArgumentException("No batches found!"));
-                            return;
+                        int batchSize = 1;
+                        if (request instanceof BatchedTensorflowInferenceObservable) {
+                            BatchedTensorflowInferenceObservable batched = (BatchedTensorflowInferenceObservable) request;
+                            batchWindow.awaitBatch(batched::getCounter, batched.getCreatedNanos());
                         }
 
-                        log.debug("Received batches");
-
-                        try {
-                            if(replicatedModel.getInputOrder() == null || replicatedModel.getInputOrder().size() != batches.length) {
-                                request.setOutputException(new IllegalArgumentException("Inputs did not match input order!"));
-                                return;
-                            }
+                        List<INDArray[]> batches = request.getInputBatches();
+                        if(batches == null || batches.isEmpty()) {
+                            request.setOutputException(new IllegalArgumentException("No batches found!"));
+                            continue;
+                        }
 
-                            List<String> inputNames = replicatedModel.getInputOrder();
-                            List<String> outputNames = replicatedModel.getOutputOrder();
-                            Map<String, TF_Tensor> inputs = new LinkedHashMap<>(batches.length);
+                        if (request instanceof BatchedTensorflowInferenceObservable) {
+                            batchSize = ((BatchedTensorflowInferenceObservable) request).getCounter();
+                        }
 
-                            for (int i = 0; i < replicatedModel.getInputOrder().size(); i++) {
-                                inputs.put(inputNames.get(i), TensorflowConversion.getInstance().tensorFromNDArray(batches[i]));
-                            }
+                        log.debug("Received " + batches.size() + " batches");
 
-                            //ensure inputs are recast in case there's a disconnect between the original inputs and the target
-                            //input type in the graph
+                        try {
+                            //one session run per merged batch, the observable splits the results back up per caller
                             long start = System.nanoTime();
-                            inputs = replicatedModel.recastInputs(inputs);
-                            long end = System.nanoTime();
-                            long diff = TimeUnit.NANOSECONDS.toMillis((end - start));
-                            log.info("Recast timing in ms " + diff + " and input shape " + batches[0].shapeInfoToString());
-
-                            log.debug("Running graph with inputs "  + inputNames + " and outputSchema " + outputNames);
-                            start = System.nanoTime();
-                            Map<String, TF_Tensor> outputs = replicatedModel.runTfTensor(inputs);
-                            outputs = replicatedModel.recastOutputs(outputs);
-                            end = System.nanoTime();
-                            diff = TimeUnit.NANOSECONDS.toMillis((end - start));
-                            log.info("Raw TF execution  timing in ms " + diff);
-
-                            log.debug("Ran graph with outputSchema " + outputNames);
-                            INDArray[] outputsArr = new INDArray[outputs.size()];
-                            log.info("Creating new ndarrays from tensor output.");
-                            start = System.nanoTime();
-                            for (int i = 0; i < outputsArr.length; i++) {
-                                outputsArr[i] = TensorflowConversion.getInstance().ndArrayFromTensor(outputs.get(outputNames.get(i)));
-                            }
-
-                            end = System.nanoTime();
-                            diff = TimeUnit.NANOSECONDS.toMillis((end - start));
-                            log.info("NDArray from tensor timing in ms " + diff);
-
-                            request.setOutputBatches(outputsArr);
-
-                            //delete after the batches are done allowing cleanup to happen
-                            //while the next execution can begin
-                            for(Map.Entry<String,TF_Tensor> entry : inputs.entrySet()) {
-                                TF_DeleteTensor(entry.getValue());
+                            List<INDArray[]> outputBatches = new ArrayList<>(batches.size());
+                            for(INDArray[] batch : batches) {
+                                outputBatches.add(runBatch(batch));
                             }
 
-
+                            batchWindow.onBatchComplete(batchSize, System.nanoTime() - start);
+                            request.setOutputBatches(outputBatches);
                         }catch (Exception e) {
                             log.error("Exception found",e);
                             request.setOutputException(e);
@@ -421,10 +535,77 @@ public class TensorFlowThreadPool {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             } finally {
+                inputTensorCache.close();
+                if(ownsGraphRunner) {
+                    graphRunner.close();
+                }
+
                 isStopped.set(true);
             }
         }
 
+        private INDArray[] runBatch(INDArray[] batches) {
+            if(graphRunner.getInputOrder() == null || graphRunner.getInputOrder().size() != batches.length) {
+                throw new IllegalArgumentException("Inputs did not match input order!");
+            }
+
+            List<String> inputNames = graphRunner.getInputOrder();
+            List<String> outputNames = graphRunner.getOutputOrder();
+            inputs.clear();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < inputNames.size(); i++) {
+                TF_Tensor tensor = null;
+                //copying in to the cached tensor also casts to the type the graph expects,
+                //only types nd4j can't produce are left to the cast graphs in recastInputs
+                DataType castType = graphRunner.inputCastType(inputNames.get(i), batches[i]);
+                if(castType != null) {
+                    tensor = inputTensorCache.tensorFor(inputNames.get(i), batches[i], castType);
+                }
+
+                if(tensor == null) {
+                    tensor = TensorflowConversion.getInstance().tensorFromNDArray(batches[i]);
+                }
+
+                inputs.put(inputNames.get(i), tensor);
+            }
+
+            Map<String, TF_Tensor> runInputs = graphRunner.recastInputs(inputs);
+            long end = System.nanoTime();
+            if(log.isDebugEnabled()) {
+                log.debug("Input conversion timing in ms " + TimeUnit.NANOSECONDS.toMillis((end - start)) + " and input shape " + batches[0].shapeInfoToString());
+                log.debug("Running graph with inputs "  + inputNames + " and outputSchema " + outputNames);
+            }
+
+            start = System.nanoTime();
+            Map<String, TF_Tensor> outputs = graphRunner.runTfTensor(runInputs);
+            end = System.nanoTime();
+            log.debug("Raw TF execution  timing in ms {}", TimeUnit.NANOSECONDS.toMillis((end - start)));
+
+            INDArray[] outputsArr = new INDArray[outputs.size()];
+            start = System.nanoTime();
+            for (int i = 0; i < outputsArr.length; i++) {
+                TF_Tensor output = outputs.get(outputNames.get(i));
+                //an output aliasing a cached input would be overwritten by the next call
+                boolean aliased = inputTensorCache.sharesMemory(output);
+                outputsArr[i] = graphRunner.outputToNDArray(outputNames.get(i), output);
+                if(aliased) {
+                    outputsArr[i] = outputsArr[i].dup();
+                }
+            }
+
+            end = System.nanoTime();
+            log.debug("NDArray from tensor timing in ms {}", TimeUnit.NANOSECONDS.toMillis((end - start)));
+
+            for(Map.Entry<String,TF_Tensor> entry : runInputs.entrySet()) {
+                if(!inputTensorCache.isCached(entry.getValue())) {
+                    TF_DeleteTensor(entry.getValue());
+                }
+            }
+
+            return outputsArr;
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -438,18 +619,21 @@ public class TensorFlowThreadPool {
         private BlockingQueue<TensorflowObservable> targetQueue;
         private long nanos;
         private int batchLimit;
+        private AdaptiveBatchWindow batchWindow;
 
         private volatile BatchedTensorflowInferenceObservable currentObservable;
         private final Object locker = new Object();
 
-        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<TensorflowObservable> queue) {
+        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<TensorflowObservable> queue, @NonNull AdaptiveBatchWindow batchWindow) {
             this.targetQueue = queue;
             this.nanos = nanos;
             this.batchLimit = batchLimit;
+            this.batchWindow = batchWindow;
         }
 
         protected BatchedTensorflowInferenceObservable setInput(@NonNull Observer observer, INDArray[] input) {
             synchronized (locker) {
+                batchWindow.onArrival();
                 boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
                         || currentObservable.isLocked()) {
@@ -457,8 +641,13 @@ public class TensorFlowThreadPool {
                     currentObservable = new BatchedTensorflowInferenceObservable();
                 }
 
-                currentObservable.addInput(input);
+                //register the observer before the input becomes visible to the workers so the notification can't be missed
+                if (observer instanceof FutureObserver) {
+                    ((FutureObserver) observer).setPosition(currentObservable.getCounter());
+                }
+
                 currentObservable.addObserver(observer);
+                currentObservable.addInput(input);
 
                 try {
                     if (isNew)
@@ -0,0 +1,204 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool.tensorflow.conversion;
+
+import org.bytedeco.tensorflow.TF_Tensor;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.bytedeco.tensorflow.global.tensorflow.TF_DeleteTensor;
+import static org.bytedeco.tensorflow.global.tensorflow.TF_TensorByteSize;
+import static org.bytedeco.tensorflow.global.tensorflow.TF_TensorData;
+
+/**
+ * Keeps input {@link TF_Tensor}s alive across session runs.
+ *
+ * Rather than wrapping every incoming {@link INDArray} in a new tensor,
+ * each input name gets a tensorflow allocated tensor per shape and data type
+ * (see {@link TensorflowConversion#allocateTensorView(DataType, long[])})
+ * and the incoming array is copied in to it. Once the shapes seen by a worker
+ * have been allocated the steady state does no native allocation at all.
+ *
+ * Only the most recently used {@link #MAX_SHAPES_PER_INPUT} shapes are kept per input,
+ * so variable batch sizes don't grow the cache without bound.
+ *
+ * This class is not thread safe: it is meant to be owned by a single inference worker.
+ *
+ * @author Adam Gibson
+ */
+public class InputTensorCache implements Closeable {
+
+    public final static int MAX_SHAPES_PER_INPUT = 8;
+
+    private Map<String, Map<Key, Pair<TF_Tensor,INDArray>>> tensors = new HashMap<>();
+
+    /**
+     * Get the cached tensor for the given input, copying the input in to it.
+     * Returns null for arrays that can't be cached (scalars and non numeric data types),
+     * the caller should create and delete its own tensor for those.
+     * @param name the name of the input
+     * @param input the input array
+     * @return the cached tensor holding the input's values or null
+     */
+    public TF_Tensor tensorFor(String name, INDArray input) {
+        return tensorFor(name, input, input.dataType());
+    }
+
+    /**
+     * Get the cached tensor of the given data type for the given input, copying the input in to it.
+     * The copy doubles as the cast when the input's type differs, so there is no
+     * separate cast pass over the data.
+     * Returns null for arrays that can't be cached (scalars and non numeric data types),
+     * the caller should create and delete its own tensor for those.
+     * @param name the name of the input
+     * @param input the input array
+     * @param dataType the data type of the tensor to feed
+     * @return the cached tensor holding the input's values or null
+     */
+    public TF_Tensor tensorFor(String name, INDArray input, DataType dataType) {
+        if(input.rank() == 0 || !TensorflowConversion.isViewable(input.dataType()) || !TensorflowConversion.isViewable(dataType)) {
+            return null;
+        }
+
+        Map<Key, Pair<TF_Tensor,INDArray>> byShape = tensors.get(name);
+        if(byShape == null) {
+            byShape = new LinkedHashMap<Key, Pair<TF_Tensor,INDArray>>(MAX_SHAPES_PER_INPUT, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Pair<TF_Tensor,INDArray>> eldest) {
+                    if(size() > MAX_SHAPES_PER_INPUT) {
+                        TF_DeleteTensor(eldest.getValue().getFirst());
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+
+            tensors.put(name, byShape);
+        }
+
+        Key key = new Key(dataType, input.shape());
+        Pair<TF_Tensor,INDArray> cached = byShape.get(key);
+        if(cached == null) {
+            cached = TensorflowConversion.getInstance().allocateTensorView(key.dataType, key.shape);
+            byShape.put(key, cached);
+        }
+
+        cached.getSecond().assign(input);
+        return cached.getFirst();
+    }
+
+    /**
+     * @param tensor the tensor to check
+     * @return true if the given tensor is owned by this cache and must not be deleted by the caller
+     */
+    public boolean isCached(TF_Tensor tensor) {
+        for(Map<Key, Pair<TF_Tensor,INDArray>> byShape : tensors.values()) {
+            for(Pair<TF_Tensor,INDArray> cached : byShape.values()) {
+                if(cached.getFirst().address() == tensor.address()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the given tensor's data lies inside one of the cached tensors.
+     * A session is free to return an input buffer as an output (an identity op for example),
+     * such outputs have to be copied before the cached tensor is refilled.
+     * @param tensor the tensor to check
+     * @return true if the tensor's memory belongs to one of the cached tensors
+     */
+    public boolean sharesMemory(TF_Tensor tensor) {
+        long address = TF_TensorData(tensor).address();
+        for(Map<Key, Pair<TF_Tensor,INDArray>> byShape : tensors.values()) {
+            for(Pair<TF_Tensor,INDArray> cached : byShape.values()) {
+                long start = TF_TensorData(cached.getFirst()).address();
+                if(address >= start && address < start + TF_TensorByteSize(cached.getFirst())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of tensors currently held
+     */
+    public int size() {
+        int ret = 0;
+        for(Map<Key, Pair<TF_Tensor,INDArray>> byShape : tensors.values()) {
+            ret += byShape.size();
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void close() {
+        for(Map<Key, Pair<TF_Tensor,INDArray>> byShape : tensors.values()) {
+            Iterator<Pair<TF_Tensor,INDArray>> iterator = byShape.values().iterator();
+            while(iterator.hasNext()) {
+                TF_DeleteTensor(iterator.next().getFirst());
+                iterator.remove();
+            }
+        }
+
+        tensors.clear();
+    }
+
+    private static class Key {
+        private final DataType dataType;
+        private final long[] shape;
+
+        private Key(DataType dataType, long[] shape) {
+            this.dataType = dataType;
+            this.shape = shape;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return dataType == key.dataType && Arrays.equals(shape, key.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * dataType.hashCode() + Arrays.hashCode(shape);
+        }
+    }
+
+}
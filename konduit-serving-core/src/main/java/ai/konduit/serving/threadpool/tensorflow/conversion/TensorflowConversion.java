@@ -23,6 +23,7 @@
 package ai.konduit.serving.threadpool.tensorflow.conversion;
 
 import ai.konduit.serving.model.SavedModelConfig;
+import ai.konduit.serving.model.TensorDataType;
 import org.bytedeco.javacpp.*;
 import org.bytedeco.javacpp.indexer.*;
 import org.bytedeco.tensorflow.*;
@@ -33,6 +34,7 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.CompressedDataBuffer;
 import org.nd4j.linalg.compression.CompressionDescriptor;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
 import org.nd4j.linalg.util.ArrayUtil;
 import org.tensorflow.framework.MetaGraphDef;
 import org.tensorflow.framework.SignatureDef;
@@ -231,6 +233,68 @@ public class TensorflowConversion {
     }
 
 
+    /**
+     * Allocate a {@link TF_Tensor} owned by tensorflow along with
+     * a c ordered {@link INDArray} view of its memory.
+     * Anything assigned to the view is what the session sees when the
+     * tensor is fed to it, which allows one tensor to be filled and fed
+     * over and over instead of creating a new one per call.
+     * Note that the view is only valid until the tensor is deleted.
+     * @param dataType the data type of the tensor, one of double, float, int or long
+     * @param shape the shape of the tensor
+     * @return the tensor and the view of its memory
+     */
+    public Pair<TF_Tensor,INDArray> allocateTensorView(DataType dataType, long[] shape) {
+        if(!isViewable(dataType)) {
+            throw new IllegalArgumentException("Unsupported data type for a tensor view: " + dataType);
+        }
+
+        int type = TensorDataType.fromNd4jType(dataType).ordinal();
+
+        long length = ArrayUtil.prodLong(shape);
+        TF_Tensor tensor = TF_AllocateTensor(type, new LongPointer(shape), shape.length, length * dataType.width());
+        Pointer pointer = TF_TensorData(tensor).capacity(length);
+        Indexer indexer = indexerForType(dataType, pointer);
+        DataBuffer buffer = Nd4j.createBuffer(indexer.pointer(), dataType, length, indexer);
+        INDArray view = Nd4j.create(buffer, shape, Nd4j.getStrides(shape, 'c'), 0, 'c');
+        Nd4j.getAffinityManager().tagLocation(view, AffinityManager.Location.HOST);
+        return Pair.of(tensor, view);
+    }
+
+
+    /**
+     * Whether tensors of the given type can be read and written by nd4j
+     * in place: see {@link #allocateTensorView(DataType, long[])} and {@link #ndArrayFromTensor(TF_Tensor)}
+     * @param dataType the nd4j data type
+     * @return true for double, float, int and long
+     */
+    public static boolean isViewable(DataType dataType) {
+        switch(dataType) {
+            case DOUBLE:
+            case FLOAT:
+            case INT:
+            case LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The nd4j type to cast to for the given tensorflow type, when nd4j can do the cast
+     * instead of running a cast graph. See {@link #isViewable(DataType)}.
+     * @param tensorDataType the tensorflow data type
+     * @return the equivalent nd4j type or null when nd4j can't produce the type
+     */
+    public static DataType nd4jCastTarget(TensorDataType tensorDataType) {
+        switch(tensorDataType) {
+            case DOUBLE: return DataType.DOUBLE;
+            case FLOAT: return DataType.FLOAT;
+            case INT32: return DataType.INT;
+            case INT64: return DataType.LONG;
+            default: return null;
+        }
+    }
 
 
     private Indexer indexerForType(DataType type, Pointer pointer) {
@@ -247,7 +311,7 @@ public class TensorflowConversion {
         switch(tensorflowType) {
             case DT_DOUBLE: return DataType.DOUBLE;
             case DT_FLOAT: return DataType.FLOAT;
-            case DT_INT32: return DataType.LONG;
+            case DT_INT32: return DataType.INT;
             case DT_INT64: return DataType.LONG;
             case DT_STRING: return DataType.UTF8;
             default: throw new IllegalArgumentException("Illegal type " + tensorflowType);
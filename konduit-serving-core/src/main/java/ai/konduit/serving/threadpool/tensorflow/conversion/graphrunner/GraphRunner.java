@@ -26,6 +26,7 @@ import ai.konduit.serving.threadpool.tensorflow.conversion.TensorflowConversion;
 import ai.konduit.serving.model.SavedModelConfig;
 import ai.konduit.serving.model.TensorDataType;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -41,6 +42,7 @@ import org.bytedeco.tensorflow.TF_SessionOptions;
 import org.bytedeco.tensorflow.TF_Status;
 import org.bytedeco.tensorflow.TF_Tensor;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.io.ClassPathResource;
 import org.nd4j.linalg.primitives.Pair;
@@ -50,6 +52,7 @@ import org.tensorflow.framework.NodeDef;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.bytedeco.tensorflow.global.tensorflow.*;
@@ -82,7 +85,6 @@ public class GraphRunner implements Closeable {
     //a status object used
     private TF_Status status;
     @Getter
-    @Setter
     @Singular
     private List<String> inputOrder,outputOrder;
     @Getter
@@ -92,6 +94,11 @@ public class GraphRunner implements Closeable {
     @Singular
     private Map<String,TensorDataType> inputDataTypes,outputDataTypes;
     private static Map<Pair<TensorDataType,TensorDataType>,GraphRunner> recastGraphDefs;
+    //the input and output operations, resolved on first run rather than looked up by name every call
+    private volatile ResolvedOperations resolvedOperations;
+    //pointer arrays and status objects reused across runs
+    private final Queue<RunScratch> runScratch = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
 
 
     static {
@@ -128,7 +135,7 @@ public class GraphRunner implements Closeable {
                        Map<String, TensorDataType> outputDataTypes) {
         try {
             if(sessionOptionsConfigProto == null) {
-                if(sessionOptionsConfigProto != null) {
+                if(sessionOptionsProtoBytes != null) {
                     this.sessionOptionsConfigProto = ConfigProto.parseFrom(sessionOptionsProtoBytes);
                 }
                 else if(sessionOptionsProtoPath != null) {
@@ -224,29 +231,29 @@ public class GraphRunner implements Closeable {
      * @return the new values
      */
     public Map<String, TF_Tensor> recastInputs(Map<String, TF_Tensor> inputs, List<String> inputOrder, Map<String,TensorDataType> inputDataTypes) {
+        //no target types means every tensor stays as is
         if(inputDataTypes == null || inputDataTypes.isEmpty()) {
-            inputDataTypes = new LinkedHashMap<>();
-            for(int i = 0; i < inputOrder.size(); i++) {
-                TensorDataType tensorDataType = TensorDataType.values()[inputs.get(inputOrder.get(i)).dtype()];
-                Preconditions.checkNotNull(tensorDataType,"Data type of " + inputs.get(inputOrder.get(i)).dtype() + " was null!");
-                inputDataTypes.put(inputOrder.get(i),tensorDataType);
-            }
+            return inputs;
         }
 
-        Map<String, TF_Tensor> ret = new HashMap<>();
+        //only copy the map when something actually needs a cast
+        Map<String, TF_Tensor> ret = null;
         for(int i = 0; i < inputOrder.size(); i++) {
             TF_Tensor currInput = inputs.get(inputOrder.get(i));
+            Preconditions.checkNotNull(currInput,"No tensor found for " + inputOrder.get(i));
             TensorDataType fromDType = TensorDataType.values()[currInput.dtype()];
-            if(fromDType != inputDataTypes.get(inputOrder.get(i))) {
-                TF_Tensor oldTensor = currInput;
-                currInput = castTensor(currInput, fromDType, inputDataTypes.get(inputOrder.get(i)));
-                TF_DeleteTensor(oldTensor);
-            }
+            TensorDataType toDType = inputDataTypes.get(inputOrder.get(i));
+            if(toDType != null && fromDType != toDType) {
+                if(ret == null) {
+                    ret = new LinkedHashMap<>(inputs);
+                }
 
-            ret.put(inputOrder.get(i),currInput);
+                ret.put(inputOrder.get(i),castTensor(currInput, fromDType, toDType));
+                TF_DeleteTensor(currInput);
+            }
         }
 
-        return ret;
+        return ret == null ? inputs : ret;
     }
 
     /**
@@ -279,158 +286,187 @@ public class GraphRunner implements Closeable {
         //recast for adapting input
         inputs = recastInputs(inputs);
 
-
-        if(savedModelConfig != null) {
-            Map<String, TF_Tensor> outputArrays = new LinkedHashMap<>();
-
-            Map<String, org.bytedeco.tensorflow.TF_Operation> opsByName = new HashMap<>();
-            org.bytedeco.tensorflow.TF_Output inputOut = new org.bytedeco.tensorflow.TF_Output(savedModelConfig.getSavedModelInputOrder().size());
-
-            TF_Tensor[] inputTensors = new TF_Tensor[savedModelConfig.getSavedModelInputOrder().size()];
-            for(int i = 0; i < savedModelConfig.getSavedModelInputOrder().size(); i++) {
-                String[] name = savedModelConfig.getSavedModelInputOrder().get(i).split(":");
-                org.bytedeco.tensorflow.TF_Operation inputOp = TF_GraphOperationByName(graph, name[0]);
-                opsByName.put(savedModelConfig.getSavedModelInputOrder().get(i),inputOp);
-                inputOut.position(i).oper(inputOp).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
-                TF_Tensor tfTensor = inputs.get(inputOrder != null && !inputOrder.isEmpty()
-                        ? inputOrder.get(i) : savedModelConfig.getSavedModelInputOrder().get(i));
-                inputTensors[i] = tfTensor;
-            }
-
-
-            //reset the position of the pointer for execution
-            inputOut.position(0);
-
-            org.bytedeco.tensorflow.TF_Output outputOut = new org.bytedeco.tensorflow.TF_Output(savedModelConfig.getSaveModelOutputOrder().size());
-            //only setup the output ops
-            for(int i = 0; i < savedModelConfig.getSaveModelOutputOrder().size(); i++) {
-                String[] name = savedModelConfig.getSaveModelOutputOrder().get(i).split(":");
-                org.bytedeco.tensorflow.TF_Operation outputOp = TF_GraphOperationByName(graph, name[0]);
-                opsByName.put(savedModelConfig.getSaveModelOutputOrder().get(i),outputOp);
-                outputOut.position(i).oper(outputOp).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
-            }
-
-            //reset the position of the pointer for execution
-            outputOut.position(0);
-
-
-
+        ResolvedOperations operations = resolveOperations();
+        RunScratch scratch = borrowScratch(operations);
+        try {
             //these are references to the nd4j ndarrays wrapped for tensorflow
-            PointerPointer<TF_Tensor> inputTensorsPointer = new PointerPointer<>(inputTensors);
-            //note that these are the result pointers
-            //the result pointers are null, and will be populated automatically by the session run
-            PointerPointer<TF_Tensor> outputTensorsPointer = new PointerPointer<>(savedModelConfig.getSaveModelOutputOrder().size());
+            for(int i = 0; i < operations.inputKeys.size(); i++) {
+                TF_Tensor tfTensor = inputs.get(operations.inputKeys.get(i));
+                Preconditions.checkNotNull(tfTensor,"No input tensor found for " + operations.inputKeys.get(i));
+                scratch.inputTensors.put(i, tfTensor);
+            }
 
             long start = System.nanoTime();
             TF_SessionRun(
                     session,
                     null,
                     //inputs
-                    inputOut, inputTensorsPointer, inputTensors.length,
-                    //outputSchema
-                    outputOut, outputTensorsPointer, savedModelConfig.getSaveModelOutputOrder().size(),
+                    operations.inputs, scratch.inputTensors, operations.inputKeys.size(),
+                    //output, the result pointers are populated by the session run
+                    operations.outputs, scratch.outputTensors, operations.outputKeys.size(),
                     //targets
                     null, 0,
                     null,
-                    status);        long end = System.nanoTime();
+                    scratch.status);
+            long end = System.nanoTime();
             long diff = TimeUnit.NANOSECONDS.toMillis((end - start));
-            log.info("Session run  timing in ms " + diff);
-
-
+            log.debug("Session run  timing in ms " + diff);
 
+            if (TF_GetCode(scratch.status) != TF_OK) {
+                throw new IllegalStateException("ERROR: Unable to run session " + TF_Message(scratch.status).getString());
+            }
 
-            if (TF_GetCode(status) != TF_OK) {
-                throw new IllegalStateException("ERROR: Unable to run session " + TF_Message(status).getString());
-            } else {
-                for(int i = 0; i < outputOrder.size(); i++) {
-                    outputArrays.put(outputOrder != null && !outputOrder.isEmpty() ? outputOrder.get(i) :
-                            savedModelConfig.getSaveModelOutputOrder().get(i),new TF_Tensor(outputTensorsPointer.get(i)));
-                }
-
+            Map<String, TF_Tensor> outputArrays = new LinkedHashMap<>(operations.outputKeys.size());
+            for(int i = 0; i < operations.outputKeys.size(); i++) {
+                outputArrays.put(operations.outputKeys.get(i),new TF_Tensor(scratch.outputTensors.get(i)));
             }
 
             return outputArrays;
-
+        } finally {
+            releaseScratch(operations, scratch);
         }
-        else {
-            Map<String, TF_Tensor> outputArrays = new LinkedHashMap<>();
+    }
 
-            Map<String, org.bytedeco.tensorflow.TF_Operation> opsByName = new HashMap<>();
-            org.bytedeco.tensorflow.TF_Output inputOut = new org.bytedeco.tensorflow.TF_Output(inputOrder.size());
 
-            TF_Tensor[] inputTensors = new TF_Tensor[inputOrder.size()];
-            for(int i = 0; i < inputOrder.size(); i++) {
-                String[] name = inputOrder.get(i).split(":");
-                org.bytedeco.tensorflow.TF_Operation inputOp = TF_GraphOperationByName(graph, name[0]);
-                opsByName.put(inputOrder.get(i),inputOp);
-                inputOut.position(i).oper(inputOp).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
-                TF_Tensor tf_tensor = inputs.get(inputOrder.get(i));
+    /**
+     * Resolve the {@link org.bytedeco.tensorflow.TF_Operation}s for the inputs and outputs
+     * in to the native {@link org.bytedeco.tensorflow.TF_Output} arrays passed to
+     * {@link org.bytedeco.tensorflow.global.tensorflow#TF_SessionRun}.
+     * This only happens once per input/output order: the operations live as long as the graph
+     * and the arrays are never written to again, so they are safe to share between threads.
+     * @return the resolved operations
+     */
+    private ResolvedOperations resolveOperations() {
+        ResolvedOperations operations = resolvedOperations;
+        if(operations != null) {
+            return operations;
+        }
 
-                inputTensors[i] = tf_tensor;
+        synchronized (this) {
+            if(resolvedOperations != null) {
+                return resolvedOperations;
             }
 
-
-            //reset the position of the pointer for execution
-            inputOut.position(0);
-
-            org.bytedeco.tensorflow.TF_Output outputOut = new org.bytedeco.tensorflow.TF_Output(outputOrder.size());
-            //only setup the output ops
-            for(int i = 0; i < outputOrder.size(); i++) {
-                String[] name = outputOrder.get(i).split(":");
-                org.bytedeco.tensorflow.TF_Operation outputOp = TF_GraphOperationByName(graph, name[0]);
-                if(outputOp == null) {
-                    throw new IllegalArgumentException("Illegal output found " + outputOrder.get(i) + " - no op found! Mis specified name perhaps?");
-                }
-
-                opsByName.put(outputOrder.get(i),outputOp);
-                outputOut.position(i).oper(outputOp).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
+            List<String> inputOps, outputOps, inputKeys, outputKeys;
+            if(savedModelConfig != null) {
+                inputOps = savedModelConfig.getSavedModelInputOrder();
+                outputOps = savedModelConfig.getSaveModelOutputOrder();
+                inputKeys = inputOrder != null && !inputOrder.isEmpty() ? inputOrder : inputOps;
+                outputKeys = outputOrder != null && !outputOrder.isEmpty() ? outputOrder : outputOps;
+            }
+            else {
+                inputOps = inputOrder;
+                outputOps = outputOrder;
+                inputKeys = inputOrder;
+                outputKeys = outputOrder;
             }
 
-            //reset the position of the pointer for execution
-            outputOut.position(0);
+            resolvedOperations = new ResolvedOperations(
+                    resolveOutputs(inputOps),
+                    resolveOutputs(outputOps),
+                    new ArrayList<>(inputKeys),
+                    new ArrayList<>(outputKeys));
+            return resolvedOperations;
+        }
+    }
 
+    private org.bytedeco.tensorflow.TF_Output resolveOutputs(List<String> names) {
+        org.bytedeco.tensorflow.TF_Output ret = new org.bytedeco.tensorflow.TF_Output(names.size());
+        for(int i = 0; i < names.size(); i++) {
+            String[] name = names.get(i).split(":");
+            org.bytedeco.tensorflow.TF_Operation operation = TF_GraphOperationByName(graph, name[0]);
+            if(operation == null) {
+                throw new IllegalArgumentException("Illegal name found " + names.get(i) + " - no op found! Mis specified name perhaps?");
+            }
 
+            ret.position(i).oper(operation).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
+        }
 
-            //these are references to the nd4j ndarrays wrapped for tensorflow
-            PointerPointer<TF_Tensor> inputTensorsPointer = new PointerPointer<>(inputTensors);
-            //note that these are the result pointers
-            //the result pointers are null, and will be populated automatically by the session run
-            PointerPointer<TF_Tensor> outputTensorsPointer = new PointerPointer<>(outputOrder.size());
+        //reset the position of the pointer for execution
+        ret.position(0);
+        return ret;
+    }
 
-            long start = System.nanoTime();
-            TF_SessionRun(
-                    session,
-                    null,
-                    //inputs
-                    inputOut, inputTensorsPointer, inputOrder.size(),
-                    //output
-                    outputOut, outputTensorsPointer, outputOrder.size(),
-                    //targets
-                    null, 0,
-                    null,
-                    status);
-            long end = System.nanoTime();
-            long diff = TimeUnit.NANOSECONDS.toMillis((end - start));
-            log.info("Session run  timing in ms " + diff);
+    private RunScratch borrowScratch(ResolvedOperations operations) {
+        RunScratch scratch = runScratch.poll();
+        if(scratch == null || scratch.operations != operations) {
+            if(scratch != null) {
+                scratch.close();
+            }
 
+            scratch = new RunScratch(operations);
+        }
 
+        return scratch;
+    }
 
+    private void releaseScratch(ResolvedOperations operations, RunScratch scratch) {
+        if(closed || operations != resolvedOperations) {
+            scratch.close();
+        }
+        else {
+            runScratch.offer(scratch);
+        }
+    }
 
+    private void invalidateOperations() {
+        resolvedOperations = null;
+        RunScratch scratch;
+        while((scratch = runScratch.poll()) != null) {
+            scratch.close();
+        }
+    }
 
+    /**
+     * Set the input names, in the order the tensors are fed to the session.
+     * @param inputOrder the input names
+     */
+    public void setInputOrder(List<String> inputOrder) {
+        this.inputOrder = inputOrder;
+        invalidateOperations();
+    }
 
-            if (TF_GetCode(status) != TF_OK) {
-                throw new IllegalStateException("ERROR: Unable to run session " + TF_Message(status).getString());
-            } else {
-                for(int i = 0; i < outputOrder.size(); i++) {
-                    outputArrays.put(outputOrder.get(i),new TF_Tensor(outputTensorsPointer.get(i)));
-                }
+    /**
+     * Set the output names, in the order the tensors are fetched from the session.
+     * @param outputOrder the output names
+     */
+    public void setOutputOrder(List<String> outputOrder) {
+        this.outputOrder = outputOrder;
+        invalidateOperations();
+    }
 
-            }
 
-            return outputArrays;
+    @AllArgsConstructor
+    private static class ResolvedOperations {
+        private final org.bytedeco.tensorflow.TF_Output inputs;
+        private final org.bytedeco.tensorflow.TF_Output outputs;
+        private final List<String> inputKeys;
+        private final List<String> outputKeys;
+    }
 
+    /**
+     * Per call native state: the tensor pointer arrays handed to the session
+     * and a status object. These are pooled rather than allocated per call,
+     * a {@link TF_Status} in particular can't be shared between concurrent runs.
+     */
+    private static class RunScratch {
+        private final ResolvedOperations operations;
+        private final PointerPointer<TF_Tensor> inputTensors;
+        private final PointerPointer<TF_Tensor> outputTensors;
+        private final TF_Status status;
+
+        private RunScratch(ResolvedOperations operations) {
+            this.operations = operations;
+            this.inputTensors = new PointerPointer<>(Math.max(1, operations.inputKeys.size()));
+            this.outputTensors = new PointerPointer<>(Math.max(1, operations.outputKeys.size()));
+            this.status = TF_NewStatus();
         }
 
+        private void close() {
+            TF_DeleteStatus(status);
+            inputTensors.deallocate();
+            outputTensors.deallocate();
+        }
     }
 
 
@@ -456,19 +492,74 @@ public class GraphRunner implements Closeable {
     public Map<String,INDArray> run(Map<String,INDArray> inputs) {
         Map<String, TF_Tensor> inputTensors = new LinkedHashMap<>();
         for(Map.Entry<String,INDArray> input : inputs.entrySet()) {
-            inputTensors.put(input.getKey(),conversion.tensorFromNDArray(input.getValue()));
+            INDArray arr = input.getValue();
+            DataType castType = inputCastType(input.getKey(), arr);
+            if(castType != null && castType != arr.dataType()) {
+                arr = arr.castTo(castType);
+            }
+
+            inputTensors.put(input.getKey(),conversion.tensorFromNDArray(arr));
         }
 
         Map<String, TF_Tensor> outputTensors = runTfTensor(inputTensors);
         Map<String,INDArray> output = new LinkedHashMap<>();
         for(Map.Entry<String, TF_Tensor> outputTensor : outputTensors.entrySet()) {
-            output.put(outputTensor.getKey(),conversion.ndArrayFromTensor(outputTensor.getValue()));
+            output.put(outputTensor.getKey(),outputToNDArray(outputTensor.getKey(), outputTensor.getValue()));
         }
 
         return output;
     }
 
 
+    /**
+     * The nd4j data type the given input should be converted to before
+     * it is fed to the session. When nd4j can produce the configured input type
+     * the cast is done as part of filling the input tensor, which means
+     * {@link #recastInputs(Map)} has nothing left to do and no cast graph is run.
+     * @param name the name of the input
+     * @param input the input array
+     * @return the data type to feed the input as or null
+     * if the configured type can only be produced by a cast graph
+     */
+    public DataType inputCastType(String name, INDArray input) {
+        TensorDataType target = inputDataTypes == null ? null : inputDataTypes.get(name);
+        if(target == null) {
+            return input.dataType();
+        }
+
+        return TensorflowConversion.nd4jCastTarget(target);
+    }
+
+    /**
+     * Convert an output tensor to an {@link INDArray} of the configured output data type.
+     * The conversion is zero copy when no cast is needed, otherwise nd4j casts
+     * straight from the tensor's memory and the tensor is deleted.
+     * Only types nd4j can't read or produce go through a cast graph.
+     * @param name the name of the output
+     * @param output the output tensor from {@link #runTfTensor(Map)}
+     * @return the output as an ndarray
+     */
+    public INDArray outputToNDArray(String name, TF_Tensor output) {
+        TensorDataType target = outputDataTypes == null ? null : outputDataTypes.get(name);
+        TensorDataType actual = TensorDataType.values()[TF_TensorType(output)];
+        if(target == null || target == actual) {
+            return conversion.ndArrayFromTensor(output);
+        }
+
+        DataType castType = TensorflowConversion.nd4jCastTarget(target);
+        DataType actualType = TensorflowConversion.nd4jCastTarget(actual);
+        if(castType != null && actualType != null) {
+            INDArray ret = conversion.ndArrayFromTensor(output).castTo(castType);
+            TF_DeleteTensor(output);
+            return ret;
+        }
+
+        TF_Tensor cast = castTensor(output, actual, target);
+        TF_DeleteTensor(output);
+        return conversion.ndArrayFromTensor(cast);
+    }
+
+
     private void initOptionsIfNeeded() {
         //setup the status object to be used for all tensorflow calls
         if(status == null) {
@@ -653,6 +744,8 @@ public class GraphRunner implements Closeable {
 
     @Override
     public void close() {
+        closed = true;
+        invalidateOperations();
         if(session != null && status != null) {
             TF_CloseSession(session, status);
             TF_DeleteSession(session,status);
@@ -26,6 +26,8 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 
 /**
@@ -49,8 +51,8 @@ public class BasicTensorflowInferenceObservable extends Observable implements Te
 
 
     @Override
-    public INDArray[] getInputBatches() {
-        return input;
+    public List<INDArray[]> getInputBatches() {
+        return Collections.singletonList(input);
     }
 
     @Override
@@ -59,8 +61,12 @@ public class BasicTensorflowInferenceObservable extends Observable implements Te
     }
 
     @Override
-    public void setOutputBatches(INDArray[] output) {
-        this.output = output;
+    public void setOutputBatches(List<INDArray[]> output) {
+        if(output.size() != 1) {
+            throw new IllegalArgumentException("Expected exactly 1 output batch, got " + output.size());
+        }
+
+        this.output = output.get(0);
         this.setChanged();
         notifyObservers();
     }
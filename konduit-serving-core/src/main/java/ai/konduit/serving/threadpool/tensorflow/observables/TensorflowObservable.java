@@ -24,6 +24,7 @@ package ai.konduit.serving.threadpool.tensorflow.observables;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.List;
 import java.util.Observer;
 
 public interface TensorflowObservable {
@@ -34,14 +35,19 @@ public interface TensorflowObservable {
      * can actually be batched (variable size inputs to fully convolutional net, for example). In these "can't batch"
      * cases, multiple input batches will be returned, to be processed
      *
-     * @return List of pairs of input arrays and input mask arrays. Input mask arrays may be null.
+     * @return List of input arrays, one entry per graph execution
      */
-    INDArray[] getInputBatches();
+    List<INDArray[]> getInputBatches();
 
     void addInput(INDArray[] inputs);
 
-
-    void setOutputBatches(INDArray[] output);
+    /**
+     * Set the outputs for each of the batches returned by {@link #getInputBatches()},
+     * in the same order.
+     *
+     * @param output the outputs, one entry per input batch
+     */
+    void setOutputBatches(List<INDArray[]> output);
 
     void setOutputException(Exception e);
 
@@ -0,0 +1,359 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.metadata.ColumnMetaData;
+import org.datavec.api.transform.schema.Schema;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded arrow memory for the vectors created while converting requests.
+ *
+ * Every request gets a {@link RequestScope} backed by a child allocator
+ * of a shared root allocator. Both are limited, so a burst of large requests
+ * fails those requests instead of growing off heap memory without bound.
+ * Closing the scope closes every vector created through it and the child allocator.
+ *
+ * Fixed width vectors of small batches (at most {@link #MAX_CACHED_ROWS} rows) are allocated from a
+ * separate bounded cache allocator instead and are reset and kept per schema when the scope
+ * is closed, so repeated requests with the same schema reuse them. They are charged to the
+ * cache limit, not to the request limit, and never grow past the rows they were taken for.
+ * Variable width columns (strings, categories, ndarrays) grow with their values,
+ * so they are always allocated from the request's allocator.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+public class ArrowAllocators implements MeterBinder {
+
+    public final static long DEFAULT_LIMIT_BYTES = 1024L * 1024 * 1024;
+    public final static long DEFAULT_REQUEST_LIMIT_BYTES = 256L * 1024 * 1024;
+    public final static long DEFAULT_CACHE_LIMIT_BYTES = 64L * 1024 * 1024;
+    public final static int MAX_CACHED_ROWS = 1024;
+    public final static int MAX_CACHED_PER_SCHEMA = 8;
+
+    private final static ArrowAllocators INSTANCE = new ArrowAllocators(DEFAULT_LIMIT_BYTES, DEFAULT_REQUEST_LIMIT_BYTES, DEFAULT_CACHE_LIMIT_BYTES);
+
+    @Getter
+    private final BufferAllocator rootAllocator;
+    private final BufferAllocator cacheAllocator;
+    @Getter
+    private volatile long requestLimitBytes;
+    private final ConcurrentMap<String, Queue<List<FieldVector>>> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger cachedVectorSets = new AtomicInteger();
+    private final AtomicInteger activeScopes = new AtomicInteger();
+    private final AtomicLong scopeCounter = new AtomicLong();
+
+    public ArrowAllocators(long limitBytes, long requestLimitBytes, long cacheLimitBytes) {
+        this.rootAllocator = new RootAllocator(limitBytes);
+        this.cacheAllocator = rootAllocator.newChildAllocator("vector-cache", 0, cacheLimitBytes);
+        this.requestLimitBytes = requestLimitBytes;
+    }
+
+    /**
+     * @return the allocators shared by the request converters
+     */
+    public static ArrowAllocators getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Update the limits. Memory already allocated is not affected.
+     * @param limitBytes the limit for all arrow memory
+     * @param requestLimitBytes the limit for the vectors of a single request
+     * @param cacheLimitBytes the limit for the cached vectors
+     */
+    public void configure(long limitBytes, long requestLimitBytes, long cacheLimitBytes) {
+        rootAllocator.setLimit(limitBytes);
+        cacheAllocator.setLimit(cacheLimitBytes);
+        this.requestLimitBytes = requestLimitBytes;
+    }
+
+    /**
+     * Open a scope for the vectors of one request.
+     * The scope must be closed once the request is done with the vectors.
+     * @return the new scope
+     */
+    public RequestScope newRequestScope() {
+        return new RequestScope(rootAllocator.newChildAllocator("request-" + scopeCounter.incrementAndGet(), 0, requestLimitBytes));
+    }
+
+    /**
+     * @return the number of bytes currently allocated for arrow vectors
+     */
+    public long getAllocatedBytes() {
+        return rootAllocator.getAllocatedMemory();
+    }
+
+    /**
+     * @return the highest number of bytes allocated at once for arrow vectors
+     */
+    public long getPeakBytes() {
+        return rootAllocator.getPeakMemoryAllocation();
+    }
+
+    /**
+     * @return the number of bytes held by cached vectors
+     */
+    public long getCachedBytes() {
+        return cacheAllocator.getAllocatedMemory();
+    }
+
+    /**
+     * @return the number of request scopes that haven't been closed yet
+     */
+    public int getActiveScopes() {
+        return activeScopes.get();
+    }
+
+    /**
+     * @return the number of idle vector sets in the cache
+     */
+    public int getCachedVectorSets() {
+        return cachedVectorSets.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("arrow.memory.allocated", this, ArrowAllocators::getAllocatedBytes)
+                .description("Bytes currently allocated for arrow vectors")
+                .register(registry);
+        Gauge.builder("arrow.memory.peak", this, ArrowAllocators::getPeakBytes)
+                .description("Highest number of bytes allocated at once for arrow vectors")
+                .register(registry);
+        Gauge.builder("arrow.memory.limit", rootAllocator, BufferAllocator::getLimit)
+                .description("Limit for all arrow vectors")
+                .register(registry);
+        Gauge.builder("arrow.memory.cached", this, ArrowAllocators::getCachedBytes)
+                .description("Bytes held by arrow vectors cached for reuse")
+                .register(registry);
+        Gauge.builder("arrow.requests.active", this, ArrowAllocators::getActiveScopes)
+                .description("Requests holding arrow vectors")
+                .register(registry);
+    }
+
+    private static String keyFor(Schema schema) {
+        StringBuilder key = new StringBuilder();
+        for(int i = 0; i < schema.numColumns(); i++) {
+            key.append(schema.getName(i)).append(':').append(schema.getType(i)).append(',');
+        }
+
+        return key.toString();
+    }
+
+    private static boolean isFixedWidth(ColumnType columnType) {
+        switch(columnType) {
+            case Integer:
+            case Long:
+            case Float:
+            case Double:
+            case Boolean:
+            case Time:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Schema fixedWidthColumns(Schema schema) {
+        List<ColumnMetaData> columns = new ArrayList<>();
+        for(int i = 0; i < schema.numColumns(); i++) {
+            if(isFixedWidth(schema.getType(i))) {
+                columns.add(schema.getMetaData(i));
+            }
+        }
+
+        return new Schema(columns);
+    }
+
+    private static void close(List<FieldVector> vectors) {
+        for(FieldVector vector : vectors) {
+            vector.close();
+        }
+    }
+
+    /**
+     * The arrow vectors of one request.
+     */
+    public class RequestScope implements Closeable {
+
+        @Getter
+        private final BufferAllocator allocator;
+        private final List<List<FieldVector>> owned = new ArrayList<>();
+        private final List<String> borrowedKeys = new ArrayList<>();
+        private final List<List<FieldVector>> borrowed = new ArrayList<>();
+        private boolean closed;
+
+        private RequestScope(BufferAllocator allocator) {
+            this.allocator = allocator;
+            activeScopes.incrementAndGet();
+        }
+
+        /**
+         * Create the vectors for a batch with the given schema,
+         * reusing cached vectors for the fixed width columns of small batches where possible.
+         * See {@link ArrowUtils#createFieldVectors(BufferAllocator, Schema, int)}
+         * @param schema the schema of the batch
+         * @param numRows the number of rows in the batch
+         * @return one vector per column with the given number of rows
+         */
+        public synchronized List<FieldVector> vectorsFor(Schema schema, int numRows) {
+            Schema fixedWidth = numRows <= MAX_CACHED_ROWS ? fixedWidthColumns(schema) : null;
+            if(fixedWidth != null && fixedWidth.numColumns() > 0) {
+                String key = keyFor(fixedWidth);
+                List<FieldVector> cached = takeCached(key, numRows);
+                if(cached == null) {
+                    try {
+                        cached = ArrowUtils.createFieldVectors(cacheAllocator, fixedWidth, numRows);
+                    } catch(OutOfMemoryException e) {
+                        log.debug("Arrow vector cache is full, allocating {} rows for the request", numRows);
+                    }
+                }
+
+                if(cached != null) {
+                    borrowedKeys.add(key);
+                    borrowed.add(cached);
+                    if(fixedWidth.numColumns() == schema.numColumns()) {
+                        return cached;
+                    }
+
+                    List<FieldVector> variableWidth = new ArrayList<>();
+                    owned.add(variableWidth);
+                    List<FieldVector> vectors = new ArrayList<>(schema.numColumns());
+                    int nextCached = 0;
+                    for(int i = 0; i < schema.numColumns(); i++) {
+                        if(isFixedWidth(schema.getType(i))) {
+                            vectors.add(cached.get(nextCached++));
+                        }
+                        else {
+                            FieldVector vector = ArrowUtils.createFieldVectors(allocator, new Schema(Collections.singletonList(schema.getMetaData(i))), numRows).get(0);
+                            variableWidth.add(vector);
+                            vectors.add(vector);
+                        }
+                    }
+
+                    return vectors;
+                }
+            }
+
+            List<FieldVector> vectors = ArrowUtils.createFieldVectors(allocator, schema, numRows);
+            owned.add(vectors);
+            return vectors;
+        }
+
+        /**
+         * Hand vectors allocated from {@link #getAllocator()} over to the scope,
+         * so they are closed along with it.
+         * @param vectors the vectors to close when the scope is closed
+         */
+        public synchronized void own(List<FieldVector> vectors) {
+            owned.add(vectors);
+        }
+
+        private List<FieldVector> takeCached(String key, int numRows) {
+            Queue<List<FieldVector>> queue = cache.get(key);
+            List<FieldVector> vectors = queue == null ? null : queue.poll();
+            if(vectors == null) {
+                return null;
+            }
+
+            cachedVectorSets.decrementAndGet();
+            for(FieldVector vector : vectors) {
+                if(vector.getValueCapacity() < numRows) {
+                    ArrowAllocators.close(vectors);
+                    return null;
+                }
+            }
+
+            for(FieldVector vector : vectors) {
+                vector.setValueCount(numRows);
+            }
+
+            return vectors;
+        }
+
+        /**
+         * Release every vector of the request and the request's allocator.
+         * Cached vectors are reset and handed back to the cache.
+         */
+        @Override
+        public synchronized void close() {
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+            for(int i = 0; i < borrowed.size(); i++) {
+                List<FieldVector> vectors = borrowed.get(i);
+                Queue<List<FieldVector>> queue = cache.computeIfAbsent(borrowedKeys.get(i), k -> new ConcurrentLinkedQueue<>());
+                if(queue.size() < MAX_CACHED_PER_SCHEMA) {
+                    for(FieldVector vector : vectors) {
+                        vector.reset();
+                    }
+
+                    queue.offer(vectors);
+                    cachedVectorSets.incrementAndGet();
+                }
+                else {
+                    ArrowAllocators.close(vectors);
+                }
+            }
+
+            for(List<FieldVector> vectors : owned) {
+                ArrowAllocators.close(vectors);
+            }
+
+            borrowed.clear();
+            borrowedKeys.clear();
+            owned.clear();
+            activeScopes.decrementAndGet();
+            try {
+                allocator.close();
+            } catch(IllegalStateException e) {
+                //something still holds buffers of the request, they are freed once released
+                log.warn("Unable to close arrow allocator " + allocator.getName(), e);
+            }
+        }
+    }
+
+}
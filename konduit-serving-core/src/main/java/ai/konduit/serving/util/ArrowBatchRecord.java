@@ -0,0 +1,139 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import lombok.Getter;
+import org.datavec.api.records.Record;
+import org.datavec.arrow.recordreader.ArrowRecord;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+
+/**
+ * An {@link ArrowRecord} that keeps track of the batch it is a row of,
+ * so steps that need the whole batch as a matrix can read the
+ * arrow columns directly instead of going through each row's writables.
+ *
+ * A step that creates the batch from a {@link ArrowAllocators.RequestScope}
+ * hands the scope along with the rows (see {@link #wrap(ArrowWritableRecordBatch, ArrowAllocators.RequestScope)}),
+ * whoever is done with the rows last closes it with {@link #release(Record[])}.
+ *
+ * @author Adam Gibson
+ */
+@Getter
+public class ArrowBatchRecord extends ArrowRecord {
+
+    private final ArrowWritableRecordBatch batch;
+    private final int index;
+    private final ArrowAllocators.RequestScope scope;
+
+    public ArrowBatchRecord(ArrowWritableRecordBatch batch, int index) {
+        this(batch, index, null);
+    }
+
+    public ArrowBatchRecord(ArrowWritableRecordBatch batch, int index, ArrowAllocators.RequestScope scope) {
+        super(batch, index, null);
+        this.batch = batch;
+        this.index = index;
+        this.scope = scope;
+    }
+
+    /**
+     * Wrap every row of the given batch.
+     * @param batch the batch to wrap
+     * @return one record per row, in order
+     */
+    public static Record[] wrap(ArrowWritableRecordBatch batch) {
+        return wrap(batch, null);
+    }
+
+    /**
+     * Wrap every row of the given batch
+     * along with the scope its vectors were allocated from.
+     * @param batch the batch to wrap
+     * @param scope the scope owning the vectors of the batch, may be null
+     * @return one record per row, in order
+     */
+    public static Record[] wrap(ArrowWritableRecordBatch batch, ArrowAllocators.RequestScope scope) {
+        Record[] ret = new Record[batch.size()];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = new ArrowBatchRecord(batch, i, scope);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the scope owning the vectors behind the given records.
+     * @param records the records to check
+     * @return the scope or null if the records don't carry one
+     */
+    public static ArrowAllocators.RequestScope scopeOf(Record[] records) {
+        if(records == null || records.length < 1 || !(records[0] instanceof ArrowBatchRecord)) {
+            return null;
+        }
+
+        return ((ArrowBatchRecord) records[0]).getScope();
+    }
+
+    /**
+     * Close the scope owning the vectors behind the given records, if any.
+     * The records can't be read afterwards.
+     * @param records the records to release
+     */
+    public static void release(Record[] records) {
+        ArrowAllocators.RequestScope scope = scopeOf(records);
+        if(scope != null) {
+            scope.close();
+        }
+    }
+
+    /**
+     * Returns the batch behind the given records if they are
+     * exactly the rows of one batch, in order.
+     * @param records the records to check
+     * @return the batch or null if the records aren't a whole batch
+     */
+    public static ArrowWritableRecordBatch batchOf(Record[] records) {
+        if(records.length < 1 || !(records[0] instanceof ArrowBatchRecord)) {
+            return null;
+        }
+
+        ArrowWritableRecordBatch batch = ((ArrowBatchRecord) records[0]).getBatch();
+        if(batch.size() != records.length) {
+            return null;
+        }
+
+        for(int i = 0; i < records.length; i++) {
+            if(!(records[i] instanceof ArrowBatchRecord)) {
+                return null;
+            }
+
+            ArrowBatchRecord record = (ArrowBatchRecord) records[i];
+            if(record.getBatch() != batch || record.getIndex() != i) {
+                return null;
+            }
+        }
+
+        return batch;
+    }
+
+}
@@ -157,6 +157,66 @@ public class ArrowUtils {
     }
 
 
+    /**
+     * Convert a batch of numeric columns to a rows x columns matrix
+     * of the default floating point type.
+     * Each column is read as a view straight over the arrow value buffer
+     * and assigned to the matrix in a single op, there is no per cell boxing
+     * in to {@link Writable}s.
+     * @param arrowWritableRecordBatch the batch to convert
+     * @return the matrix or null if the batch has non numeric or null values
+     * or is a view over part of the underlying vectors
+     */
+    public static INDArray toMatrix(ArrowWritableRecordBatch arrowWritableRecordBatch) {
+        List<FieldVector> columnVectors = arrowWritableRecordBatch.getList();
+        Schema schema = arrowWritableRecordBatch.getSchema();
+        int rows = arrowWritableRecordBatch.size();
+        if(columnVectors.isEmpty() || rows < 1 || columnVectors.size() != schema.numColumns()) {
+            return null;
+        }
+
+        DataType[] columnTypes = new DataType[columnVectors.size()];
+        for(int i = 0; i < columnTypes.length; i++) {
+            FieldVector fieldVector = columnVectors.get(i);
+            if(fieldVector.getValueCount() != rows || fieldVector.getNullCount() > 0) {
+                return null;
+            }
+
+            columnTypes[i] = dataTypeFor(fieldVector, schema.getType(i));
+            if(columnTypes[i] == null) {
+                return null;
+            }
+        }
+
+        INDArray arr = Nd4j.create(Nd4j.defaultFloatingPointType(), rows, columnTypes.length);
+        for(int i = 0; i < columnTypes.length; i++) {
+            ByteBuffer direct = columnVectors.get(i).getDataBuffer()
+                    .nioBuffer(0, rows * columnTypes[i].width())
+                    .order(ByteOrder.nativeOrder());
+            INDArray column = Nd4j.create(Nd4j.createBuffer(direct, columnTypes[i], rows), new long[]{rows});
+            //assign casts to the matrix's data type while copying
+            arr.getColumn(i).assign(column);
+        }
+
+        return arr;
+    }
+
+    private static DataType dataTypeFor(FieldVector fieldVector, ColumnType type) {
+        switch(type) {
+            case Integer:
+                return fieldVector instanceof IntVector ? DataType.INT : null;
+            case Long:
+                return fieldVector instanceof BigIntVector ? DataType.LONG : null;
+            case Float:
+                return fieldVector instanceof Float4Vector ? DataType.FLOAT : null;
+            case Double:
+                return fieldVector instanceof Float8Vector ? DataType.DOUBLE : null;
+            default:
+                return null;
+        }
+    }
+
+
     public static List<FieldVector> convertToArrowVector(INDArray from, List<String> name, ColumnType type, BufferAllocator bufferAllocator) {
         List<FieldVector> ret = new ArrayList();
         long cols;
@@ -206,8 +266,23 @@ public class ArrowUtils {
     }
 
     public static void writeRecordBatchTo(List<List<Writable>> recordBatch, Schema inputSchema, OutputStream outputStream) {
-        BufferAllocator bufferAllocator = new RootAllocator(9223372036854775807L);
-        writeRecordBatchTo(bufferAllocator, recordBatch, inputSchema, outputStream);
+        try(ArrowAllocators.RequestScope scope = ArrowAllocators.getInstance().newRequestScope()) {
+            writeRecordBatchTo(scope, recordBatch, inputSchema, outputStream);
+        }
+    }
+
+    /**
+     * Write the batch in the arrow file format, with the columns
+     * allocated from (and released with) the given request scope.
+     * @param scope the scope of the request the batch is written for
+     * @param recordBatch the batch to write
+     * @param inputSchema the schema of the batch
+     * @param outputStream the stream to write to
+     */
+    public static void writeRecordBatchTo(ArrowAllocators.RequestScope scope, List<List<Writable>> recordBatch, Schema inputSchema, OutputStream outputStream) {
+        List<FieldVector> columns = toArrowColumns(scope.getAllocator(), inputSchema, recordBatch);
+        scope.own(columns);
+        writeColumns(columns, recordBatch.size(), inputSchema, outputStream);
     }
 
     public static void writeRecordBatchTo(BufferAllocator bufferAllocator, List<List<Writable>> recordBatch, Schema inputSchema, OutputStream outputStream) {
@@ -220,15 +295,17 @@ public class ArrowUtils {
     }
 
     private static void convertWritables(BufferAllocator bufferAllocator, List<List<Writable>> recordBatch, Schema inputSchema, OutputStream outputStream) {
+        writeColumns(toArrowColumns(bufferAllocator, inputSchema, recordBatch), recordBatch.size(), inputSchema, outputStream);
+    }
+
+    private static void writeColumns(List<FieldVector> columns, int numRows, Schema inputSchema, OutputStream outputStream) {
         org.apache.arrow.vector.types.pojo.Schema convertedSchema;
-        List columns;
         VectorSchemaRoot root;
         ArrowFileWriter writer;
         convertedSchema = toArrowSchema(inputSchema);
-        columns = toArrowColumns(bufferAllocator, inputSchema, recordBatch);
 
         try {
-            root = new VectorSchemaRoot(convertedSchema, columns, recordBatch.size());
+            root = new VectorSchemaRoot(convertedSchema, columns, numRows);
             writer = new ArrowFileWriter(root, providerForVectors(columns, convertedSchema.getFields()), Channels.newChannel(outputStream));
             writer.start();
             writer.writeBatch();
@@ -466,38 +543,47 @@ public class ArrowUtils {
     public static List<FieldVector> createFieldVectors(BufferAllocator bufferAllocator, Schema schema, int numRows) {
         List<FieldVector> ret = new ArrayList(schema.numColumns());
 
-        for(int i = 0; i < schema.numColumns(); ++i) {
-            switch(schema.getType(i)) {
-                case Integer:
-                    ret.add(intVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Float:
-                    ret.add(floatVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Double:
-                    ret.add(doubleVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Long:
-                    ret.add(longVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case NDArray:
-                    ret.add(ndarrayVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Boolean:
-                    ret.add(booleanVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Categorical:
-                    ret.add(stringVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Time:
-                    ret.add(timeVectorOf(bufferAllocator, schema.getName(i), numRows));
-                    break;
-                case Bytes:
-                default:
-                    throw new IllegalArgumentException("Illegal type found for creation of field vectors" + schema.getType(i));
-                case String:
-                    ret.add(stringVectorOf(bufferAllocator, schema.getName(i), numRows));
+        try {
+            for(int i = 0; i < schema.numColumns(); ++i) {
+                switch(schema.getType(i)) {
+                    case Integer:
+                        ret.add(intVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Float:
+                        ret.add(floatVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Double:
+                        ret.add(doubleVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Long:
+                        ret.add(longVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case NDArray:
+                        ret.add(ndarrayVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Boolean:
+                        ret.add(booleanVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Categorical:
+                        ret.add(stringVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Time:
+                        ret.add(timeVectorOf(bufferAllocator, schema.getName(i), numRows));
+                        break;
+                    case Bytes:
+                    default:
+                        throw new IllegalArgumentException("Illegal type found for creation of field vectors" + schema.getType(i));
+                    case String:
+                        ret.add(stringVectorOf(bufferAllocator, schema.getName(i), numRows));
+                }
             }
+        } catch(RuntimeException e) {
+            //don't leave the vectors created so far allocated, eg: when the allocator limit is hit
+            for(FieldVector created : ret) {
+                created.close();
+            }
+
+            throw e;
         }
 
         return ret;
@@ -0,0 +1,559 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.records.Record;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.column.RemoveAllColumnsExceptForTransform;
+import org.datavec.api.transform.transform.column.RemoveColumnsTransform;
+import org.datavec.api.transform.transform.column.RenameColumnsTransform;
+import org.datavec.api.transform.transform.column.ReorderColumnsTransform;
+import org.datavec.api.transform.transform.doubletransform.DoubleMathOpTransform;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.nd4j.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link TransformProcess} compiled once in to a list of
+ * column operations that each run over a whole batch.
+ *
+ * Columns are kept as primitive arrays where possible:
+ * double and float columns as double[], integer, long and time columns as long[],
+ * everything else as {@link Writable}[]. Writables are only created
+ * again for the final rows.
+ *
+ * Transforms are compiled as follows:
+ * <ul>
+ *     <li>double, integer and long math op transforms run as loops over the primitive column</li>
+ *     <li>any other {@link BaseColumnTransform} maps the values of its column only</li>
+ *     <li>removing, reordering and renaming columns just moves the columns around</li>
+ *     <li>every other transform falls back to mapping each row, like {@link LocalTransformExecutor} does</li>
+ * </ul>
+ * Processes with filters, sequence operations or reductions aren't compiled at all
+ * and run through {@link LocalTransformExecutor} for the whole batch.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+public class CompiledTransformProcess {
+
+    @Getter
+    private final TransformProcess transformProcess;
+    private final Schema initialSchema;
+    private final Schema finalSchema;
+    //null when the process couldn't be compiled
+    private final List<ColumnStep> steps;
+
+    private CompiledTransformProcess(TransformProcess transformProcess, List<ColumnStep> steps, Schema finalSchema) {
+        this.transformProcess = transformProcess;
+        this.initialSchema = transformProcess.getInitialSchema();
+        this.finalSchema = finalSchema;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile the given transform process.
+     * @param transformProcess the transform process to compile
+     * @return the compiled transform process
+     */
+    public static CompiledTransformProcess compile(TransformProcess transformProcess) {
+        Preconditions.checkNotNull(transformProcess,"Transform process must not be null!");
+        Schema schema = transformProcess.getInitialSchema();
+        List<ColumnStep> steps = new ArrayList<>();
+        for(DataAction action : transformProcess.getActionList()) {
+            Transform transform = action.getTransform();
+            if(transform == null) {
+                log.debug("Transform process contains {}, running it row by row", action);
+                return new CompiledTransformProcess(transformProcess, null, transformProcess.getFinalSchema());
+            }
+
+            Schema outputSchema = transform.transform(schema);
+            steps.add(compileStep(transform, schema, outputSchema));
+            schema = outputSchema;
+        }
+
+        return new CompiledTransformProcess(transformProcess, steps, schema);
+    }
+
+    /**
+     * Returns true if every action of the transform process
+     * was compiled in to column operations
+     * @return true if the process runs column by column
+     */
+    public boolean isCompiled() {
+        return steps != null;
+    }
+
+    /**
+     * Execute the transform process on the given records.
+     * When the records are exactly the rows of one arrow batch (see {@link ArrowBatchRecord})
+     * the columns are read from the arrow vectors directly.
+     * @param records the input records, one row each
+     * @return the output rows
+     */
+    public List<List<Writable>> execute(Record[] records) {
+        ArrowWritableRecordBatch batch = ArrowBatchRecord.batchOf(records);
+        if(batch != null && isCompiled() && sameColumns(batch.getSchema(), initialSchema)) {
+            return execute(batch);
+        }
+
+        List<List<Writable>> rows = new ArrayList<>(records.length);
+        for(Record record : records) {
+            rows.add(record.getRecord());
+        }
+
+        return execute(rows);
+    }
+
+    /**
+     * Execute the transform process on the given rows.
+     * @param rows the input rows
+     * @return the output rows
+     */
+    public List<List<Writable>> execute(List<List<Writable>> rows) {
+        if(!isCompiled()) {
+            return LocalTransformExecutor.execute(rows, transformProcess);
+        }
+
+        int numRows = rows.size();
+        Object[] columns = new Object[initialSchema.numColumns()];
+        for(int column = 0; column < columns.length; column++) {
+            Writable[] values = new Writable[numRows];
+            for(int row = 0; row < numRows; row++) {
+                values[row] = rows.get(row).get(column);
+            }
+
+            columns[column] = values;
+        }
+
+        return run(columns, numRows);
+    }
+
+    private List<List<Writable>> execute(ArrowWritableRecordBatch batch) {
+        int numRows = batch.size();
+        Object[] columns = new Object[initialSchema.numColumns()];
+        for(int column = 0; column < columns.length; column++) {
+            FieldVector vector = batch.getList().get(column);
+            ColumnType type = initialSchema.getType(column);
+            switch(type) {
+                case Double:
+                    double[] doubles = new double[numRows];
+                    for(int row = 0; row < numRows; row++) {
+                        doubles[row] = ArrowUtils.getDoubleFromFieldVector(row, vector);
+                    }
+                    columns[column] = doubles;
+                    break;
+                case Float:
+                    double[] floats = new double[numRows];
+                    for(int row = 0; row < numRows; row++) {
+                        floats[row] = ArrowUtils.getFloatFromFieldVector(row, vector);
+                    }
+                    columns[column] = floats;
+                    break;
+                case Integer:
+                    long[] ints = new long[numRows];
+                    for(int row = 0; row < numRows; row++) {
+                        ints[row] = ArrowUtils.getIntFromFieldVector(row, vector);
+                    }
+                    columns[column] = ints;
+                    break;
+                case Long:
+                case Time:
+                    long[] longs = new long[numRows];
+                    for(int row = 0; row < numRows; row++) {
+                        longs[row] = ArrowUtils.getLongFromFieldVector(row, vector);
+                    }
+                    columns[column] = longs;
+                    break;
+                default:
+                    Writable[] values = new Writable[numRows];
+                    for(int row = 0; row < numRows; row++) {
+                        values[row] = ArrowUtils.fromEntry(row, vector, type);
+                    }
+                    columns[column] = values;
+                    break;
+            }
+        }
+
+        return run(columns, numRows);
+    }
+
+    private List<List<Writable>> run(Object[] columns, int numRows) {
+        for(ColumnStep step : steps) {
+            columns = step.apply(columns, numRows);
+        }
+
+        List<List<Writable>> ret = new ArrayList<>(numRows);
+        for(int row = 0; row < numRows; row++) {
+            List<Writable> values = new ArrayList<>(columns.length);
+            for(int column = 0; column < columns.length; column++) {
+                values.add(writable(columns[column], row, finalSchema.getType(column)));
+            }
+
+            ret.add(values);
+        }
+
+        return ret;
+    }
+
+    private static ColumnStep compileStep(Transform transform, Schema inputSchema, Schema outputSchema) {
+        if(transform instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform mathOp = (DoubleMathOpTransform) transform;
+            return new DoubleMathOpStep(inputSchema.getIndexOfColumn(mathOp.columnName()), mathOp.getMathOp(), mathOp.getScalar());
+        }
+        else if(transform instanceof IntegerMathOpTransform) {
+            IntegerMathOpTransform mathOp = (IntegerMathOpTransform) transform;
+            return new LongMathOpStep(inputSchema.getIndexOfColumn(mathOp.columnName()), mathOp.getMathOp(), mathOp.getScalar(), true);
+        }
+        else if(transform instanceof LongMathOpTransform) {
+            LongMathOpTransform mathOp = (LongMathOpTransform) transform;
+            return new LongMathOpStep(inputSchema.getIndexOfColumn(mathOp.columnName()), mathOp.getMathOp(), mathOp.getScalar(), false);
+        }
+        else if(transform instanceof BaseColumnTransform && inputSchema.numColumns() == outputSchema.numColumns()) {
+            BaseColumnTransform columnTransform = (BaseColumnTransform) transform;
+            return new MapColumnStep(columnTransform, inputSchema.getIndexOfColumn(columnTransform.columnName()), inputSchema);
+        }
+        else if(transform instanceof RenameColumnsTransform && inputSchema.numColumns() == outputSchema.numColumns()) {
+            return (columns, numRows) -> columns;
+        }
+        else if((transform instanceof RemoveColumnsTransform
+                || transform instanceof RemoveAllColumnsExceptForTransform
+                || transform instanceof ReorderColumnsTransform) && sameColumnsByName(inputSchema, outputSchema)) {
+            int[] sources = new int[outputSchema.numColumns()];
+            for(int i = 0; i < sources.length; i++) {
+                sources[i] = inputSchema.getIndexOfColumn(outputSchema.getName(i));
+            }
+
+            return (columns, numRows) -> {
+                Object[] ret = new Object[sources.length];
+                for(int i = 0; i < sources.length; i++) {
+                    ret[i] = columns[sources[i]];
+                }
+
+                return ret;
+            };
+        }
+
+        log.debug("No column operation for {}, mapping it row by row", transform);
+        return new MapRowStep(transform, inputSchema, outputSchema);
+    }
+
+    private static boolean sameColumnsByName(Schema inputSchema, Schema outputSchema) {
+        for(int i = 0; i < outputSchema.numColumns(); i++) {
+            String name = outputSchema.getName(i);
+            if(!inputSchema.hasColumn(name) || inputSchema.getType(name) != outputSchema.getType(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sameColumns(Schema first, Schema second) {
+        if(first.numColumns() != second.numColumns()) {
+            return false;
+        }
+
+        for(int i = 0; i < first.numColumns(); i++) {
+            if(!first.getName(i).equals(second.getName(i)) || first.getType(i) != second.getType(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static double[] doubles(Object column) {
+        if(column instanceof double[]) {
+            return (double[]) column;
+        }
+
+        if(column instanceof long[]) {
+            long[] longs = (long[]) column;
+            double[] ret = new double[longs.length];
+            for(int i = 0; i < ret.length; i++) {
+                ret[i] = longs[i];
+            }
+
+            return ret;
+        }
+
+        Writable[] writables = (Writable[]) column;
+        double[] ret = new double[writables.length];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = writables[i].toDouble();
+        }
+
+        return ret;
+    }
+
+    private static long[] longs(Object column) {
+        if(column instanceof long[]) {
+            return (long[]) column;
+        }
+
+        if(column instanceof double[]) {
+            double[] doubles = (double[]) column;
+            long[] ret = new long[doubles.length];
+            for(int i = 0; i < ret.length; i++) {
+                ret[i] = (long) doubles[i];
+            }
+
+            return ret;
+        }
+
+        Writable[] writables = (Writable[]) column;
+        long[] ret = new long[writables.length];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = writables[i].toLong();
+        }
+
+        return ret;
+    }
+
+    private static Writable writable(Object column, int row, ColumnType type) {
+        if(column instanceof double[]) {
+            double value = ((double[]) column)[row];
+            return type == ColumnType.Float ? new FloatWritable((float) value) : new DoubleWritable(value);
+        }
+
+        if(column instanceof long[]) {
+            long value = ((long[]) column)[row];
+            return type == ColumnType.Integer ? new IntWritable((int) value) : new LongWritable(value);
+        }
+
+        return ((Writable[]) column)[row];
+    }
+
+    private static Writable[] writables(Object column, ColumnType type) {
+        if(column instanceof Writable[]) {
+            return (Writable[]) column;
+        }
+
+        int length = column instanceof double[] ? ((double[]) column).length : ((long[]) column).length;
+        Writable[] ret = new Writable[length];
+        for(int i = 0; i < length; i++) {
+            ret[i] = writable(column, i, type);
+        }
+
+        return ret;
+    }
+
+    private interface ColumnStep {
+
+        Object[] apply(Object[] columns, int numRows);
+
+    }
+
+    private static class DoubleMathOpStep implements ColumnStep {
+
+        private final int column;
+        private final MathOp mathOp;
+        private final double scalar;
+
+        private DoubleMathOpStep(int column, MathOp mathOp, double scalar) {
+            this.column = column;
+            this.mathOp = mathOp;
+            this.scalar = scalar;
+        }
+
+        @Override
+        public Object[] apply(Object[] columns, int numRows) {
+            double[] input = doubles(columns[column]);
+            double[] output = new double[numRows];
+            switch(mathOp) {
+                case Add:
+                    for(int i = 0; i < numRows; i++) output[i] = input[i] + scalar;
+                    break;
+                case Subtract:
+                    for(int i = 0; i < numRows; i++) output[i] = input[i] - scalar;
+                    break;
+                case Multiply:
+                    for(int i = 0; i < numRows; i++) output[i] = input[i] * scalar;
+                    break;
+                case Divide:
+                    for(int i = 0; i < numRows; i++) output[i] = input[i] / scalar;
+                    break;
+                case Modulus:
+                    for(int i = 0; i < numRows; i++) output[i] = input[i] % scalar;
+                    break;
+                case ReverseSubtract:
+                    for(int i = 0; i < numRows; i++) output[i] = scalar - input[i];
+                    break;
+                case ReverseDivide:
+                    for(int i = 0; i < numRows; i++) output[i] = scalar / input[i];
+                    break;
+                case ScalarMin:
+                    for(int i = 0; i < numRows; i++) output[i] = Math.min(input[i], scalar);
+                    break;
+                case ScalarMax:
+                    for(int i = 0; i < numRows; i++) output[i] = Math.max(input[i], scalar);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+            }
+
+            Object[] ret = columns.clone();
+            ret[column] = output;
+            return ret;
+        }
+    }
+
+    private static class LongMathOpStep implements ColumnStep {
+
+        private final int column;
+        private final MathOp mathOp;
+        private final long scalar;
+        //integer columns wrap around like the int arithmetic of the row by row transform
+        private final boolean integer;
+
+        private LongMathOpStep(int column, MathOp mathOp, long scalar, boolean integer) {
+            this.column = column;
+            this.mathOp = mathOp;
+            this.scalar = scalar;
+            this.integer = integer;
+        }
+
+        @Override
+        public Object[] apply(Object[] columns, int numRows) {
+            long[] input = longs(columns[column]);
+            long[] output = new long[numRows];
+            for(int i = 0; i < numRows; i++) {
+                long value = integer ? (int) input[i] : input[i];
+                long result;
+                switch(mathOp) {
+                    case Add:
+                        result = value + scalar;
+                        break;
+                    case Subtract:
+                        result = value - scalar;
+                        break;
+                    case Multiply:
+                        result = value * scalar;
+                        break;
+                    case Divide:
+                        result = value / scalar;
+                        break;
+                    case Modulus:
+                        result = value % scalar;
+                        break;
+                    case ReverseSubtract:
+                        result = scalar - value;
+                        break;
+                    case ReverseDivide:
+                        result = scalar / value;
+                        break;
+                    case ScalarMin:
+                        result = Math.min(value, scalar);
+                        break;
+                    case ScalarMax:
+                        result = Math.max(value, scalar);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+                }
+
+                output[i] = integer ? (int) result : result;
+            }
+
+            Object[] ret = columns.clone();
+            ret[column] = output;
+            return ret;
+        }
+    }
+
+    private static class MapColumnStep implements ColumnStep {
+
+        private final BaseColumnTransform transform;
+        private final int column;
+        private final ColumnType inputType;
+
+        private MapColumnStep(BaseColumnTransform transform, int column, Schema inputSchema) {
+            this.transform = transform;
+            this.column = column;
+            this.inputType = inputSchema.getType(column);
+        }
+
+        @Override
+        public Object[] apply(Object[] columns, int numRows) {
+            Writable[] input = writables(columns[column], inputType);
+            Writable[] output = new Writable[numRows];
+            for(int i = 0; i < numRows; i++) {
+                output[i] = transform.map(input[i]);
+            }
+
+            Object[] ret = columns.clone();
+            ret[column] = output;
+            return ret;
+        }
+    }
+
+    private static class MapRowStep implements ColumnStep {
+
+        private final Transform transform;
+        private final Schema inputSchema;
+        private final int numOutputColumns;
+
+        private MapRowStep(Transform transform, Schema inputSchema, Schema outputSchema) {
+            this.transform = transform;
+            this.inputSchema = inputSchema;
+            this.numOutputColumns = outputSchema.numColumns();
+        }
+
+        @Override
+        public Object[] apply(Object[] columns, int numRows) {
+            Writable[][] output = new Writable[numOutputColumns][numRows];
+            for(int row = 0; row < numRows; row++) {
+                List<Writable> values = new ArrayList<>(columns.length);
+                for(int column = 0; column < columns.length; column++) {
+                    values.add(writable(columns[column], row, inputSchema.getType(column)));
+                }
+
+                List<Writable> mapped = transform.map(values);
+                Preconditions.checkState(mapped.size() == numOutputColumns,
+                        "Transform %s returned %s values, expected %s", transform, mapped.size(), numOutputColumns);
+                for(int column = 0; column < numOutputColumns; column++) {
+                    output[column][row] = mapped.get(column);
+                }
+            }
+
+            return output;
+        }
+    }
+
+}
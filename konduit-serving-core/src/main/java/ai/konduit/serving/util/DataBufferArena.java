@@ -0,0 +1,228 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.verticles.VerticleConstants;
+import lombok.Getter;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A size classed pool of off heap {@link DataBuffer}s
+ * used when decoding request payloads in to {@link org.nd4j.linalg.api.ndarray.INDArray}s.
+ *
+ * Buffers are grouped by data type and by element count rounded up
+ * to the next power of 2. A {@link Lease} hands out a view of exactly the requested
+ * length over a pooled buffer. Pooling is opt-in per request: only a caller that releases
+ * the leases afterwards enables it with {@link #enable(Map)}. Leases taken while handling
+ * such a request are tracked in the request's context data (see {@link #track(Map, Lease)})
+ * and returned to the arena with {@link #releaseAll(Map)} once the response has been written.
+ * Without it the input adapters decode in to regular allocations.
+ *
+ * Arrays created from a lease must not be used after the lease is released,
+ * anything that needs to outlive the request should be duplicated.
+ *
+ * @author Adam Gibson
+ */
+public class DataBufferArena {
+
+    //smallest size class in elements, smaller requests share it
+    private final static int MIN_CLASS_BITS = 10;
+    //requests above this many bytes are allocated and freed normally
+    public final static long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    public final static int DEFAULT_MAX_RETAINED_PER_CLASS = 32;
+
+    private final static DataBufferArena INSTANCE = new DataBufferArena(DEFAULT_MAX_POOLED_BYTES, DEFAULT_MAX_RETAINED_PER_CLASS);
+
+    @Getter
+    private final long maxPooledBytes;
+    @Getter
+    private final int maxRetainedPerClass;
+    private final ConcurrentMap<DataType, ConcurrentMap<Integer, SizeClass>> sizeClasses = new ConcurrentHashMap<>();
+
+    public DataBufferArena(long maxPooledBytes, int maxRetainedPerClass) {
+        this.maxPooledBytes = maxPooledBytes;
+        this.maxRetainedPerClass = maxRetainedPerClass;
+    }
+
+    /**
+     * @return the arena shared by the input adapters
+     */
+    public static DataBufferArena getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Take a buffer of at least the given length out of the arena,
+     * allocating a new one if none is available.
+     *
+     * @param dataType the data type of the buffer
+     * @param length   the number of elements needed
+     * @return a lease over a buffer of exactly the given length
+     */
+    public Lease acquire(DataType dataType, long length) {
+        int classBits = Math.max(MIN_CLASS_BITS, 64 - Long.numberOfLeadingZeros(Math.max(1, length - 1)));
+        long capacity = 1L << classBits;
+        if (capacity * dataType.width() > maxPooledBytes) {
+            return new Lease(null, Nd4j.createBuffer(dataType, length, false), length);
+        }
+
+        SizeClass sizeClass = sizeClasses.computeIfAbsent(dataType, d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(classBits, b -> new SizeClass());
+        DataBuffer backing = sizeClass.free.poll();
+        if (backing == null) {
+            backing = Nd4j.createBuffer(dataType, capacity, false);
+        } else {
+            sizeClass.retained.decrementAndGet();
+        }
+
+        return new Lease(sizeClass, backing, length);
+    }
+
+    /**
+     * @return the number of idle buffers currently held by the arena
+     */
+    public int retainedBuffers() {
+        int ret = 0;
+        for (ConcurrentMap<Integer, SizeClass> classes : sizeClasses.values()) {
+            for (SizeClass sizeClass : classes.values()) {
+                ret += sizeClass.retained.get();
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Let the input adapters decode the request in to pooled buffers.
+     * The caller is responsible for calling {@link #releaseAll(Map)} once
+     * the request is done.
+     *
+     * @param contextData the routing context data
+     */
+    public static void enable(Map<String, Object> contextData) {
+        contextData.computeIfAbsent(VerticleConstants.POOLED_BUFFERS,
+                k -> Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    /**
+     * @param contextData the routing context data, may be null
+     * @return true if {@link #enable(Map)} was called for the request
+     * and its leases haven't been released yet
+     */
+    public static boolean isEnabled(Map<String, Object> contextData) {
+        return contextData != null && contextData.containsKey(VerticleConstants.POOLED_BUFFERS);
+    }
+
+    /**
+     * Track a lease in the context data of a request
+     * so it can be released once the request is done.
+     *
+     * @param contextData the routing context data
+     * @param lease       the lease to track
+     */
+    public static void track(Map<String, Object> contextData, Lease lease) {
+        @SuppressWarnings("unchecked")
+        List<Lease> leases = (List<Lease>) contextData.get(VerticleConstants.POOLED_BUFFERS);
+        if (leases == null)
+            throw new IllegalStateException("Pooled buffers are not enabled for this request, nothing would release the lease");
+        leases.add(lease);
+    }
+
+    /**
+     * Release every lease tracked in the given context data.
+     *
+     * @param contextData the routing context data
+     */
+    public static void releaseAll(Map<String, Object> contextData) {
+        @SuppressWarnings("unchecked")
+        List<Lease> leases = (List<Lease>) contextData.remove(VerticleConstants.POOLED_BUFFERS);
+        if (leases == null)
+            return;
+
+        synchronized (leases) {
+            for (Lease lease : leases) {
+                lease.release();
+            }
+        }
+    }
+
+    private static class SizeClass {
+        private final Queue<DataBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger retained = new AtomicInteger();
+    }
+
+    /**
+     * A view of exactly the requested length over a buffer owned by the arena.
+     */
+    public class Lease {
+        private final SizeClass sizeClass;
+        private final DataBuffer backing;
+        @Getter
+        private final DataBuffer buffer;
+        private boolean released;
+
+        private Lease(SizeClass sizeClass, DataBuffer backing, long length) {
+            this.sizeClass = sizeClass;
+            this.backing = backing;
+            this.buffer = backing.length() == length ? backing : Nd4j.createBuffer(backing, 0, length);
+        }
+
+        /**
+         * Copy the remaining bytes of the given buffer in to the start of the leased buffer.
+         * The position of the source buffer is not changed.
+         *
+         * @param source the bytes to copy, at most the byte size of the lease
+         */
+        public void copyFrom(ByteBuffer source) {
+            ByteBuffer target = backing.asNio();
+            target.clear();
+            target.put(source.duplicate());
+        }
+
+        /**
+         * Return the buffer to the arena.
+         * Buffers beyond the retention limit of their size class are left to be freed.
+         */
+        public synchronized void release() {
+            if (released)
+                return;
+
+            released = true;
+            if (sizeClass != null && sizeClass.retained.incrementAndGet() <= maxRetainedPerClass) {
+                sizeClass.free.offer(backing);
+            } else if (sizeClass != null) {
+                sizeClass.retained.decrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import io.vertx.core.buffer.Buffer;
+import lombok.Getter;
+import org.nd4j.shade.jackson.core.JsonGenerator;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams json straight in to a vert.x {@link Buffer}
+ * with a jackson {@link JsonGenerator}.
+ *
+ * This avoids building an intermediate {@link io.vertx.core.json.JsonObject} tree,
+ * encoding it to a string and encoding the string again to compute the content length.
+ * Buffers are pre sized from a moving average of the recent response sizes
+ * so large batch responses aren't grown one doubling at a time.
+ *
+ * @author Adam Gibson
+ */
+public class JsonBufferWriter {
+
+    private final static int MIN_SIZE_HINT = 256;
+
+    private final ObjectMapper objectMapper;
+    @Getter
+    private final boolean prettyPrint;
+    private volatile int sizeHint = MIN_SIZE_HINT;
+
+    public JsonBufferWriter(boolean prettyPrint) {
+        this(ObjectMapperHolder.getJsonMapper(), prettyPrint);
+    }
+
+    public JsonBufferWriter(ObjectMapper objectMapper, boolean prettyPrint) {
+        this.objectMapper = objectMapper;
+        this.prettyPrint = prettyPrint;
+    }
+
+    /**
+     * Content written to a generator.
+     */
+    @FunctionalInterface
+    public interface JsonContent {
+        void writeTo(JsonGenerator generator, ObjectMapper objectMapper) throws IOException;
+    }
+
+    /**
+     * Encode the given content.
+     *
+     * @param content the content to write
+     * @return a buffer holding the utf-8 encoded json
+     * @throws IOException if the content can't be serialized
+     */
+    public Buffer write(JsonContent content) throws IOException {
+        Buffer buffer = Buffer.buffer(sizeHint);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(new BufferOutputStream(buffer))) {
+            if (prettyPrint) {
+                generator.useDefaultPrettyPrinter();
+            }
+
+            content.writeTo(generator, objectMapper);
+        }
+
+        //move the hint a quarter of the way towards the last size, leaving some head room
+        int last = buffer.length() + (buffer.length() >> 3);
+        sizeHint = Math.max(MIN_SIZE_HINT, sizeHint + ((last - sizeHint) >> 2));
+        return buffer;
+    }
+
+    /**
+     * Encode a single value with the configured object mapper.
+     *
+     * @param value the value to write
+     * @return a buffer holding the utf-8 encoded json
+     * @throws IOException if the value can't be serialized
+     */
+    public Buffer writeValue(Object value) throws IOException {
+        return write((generator, mapper) -> mapper.writeValue(generator, value));
+    }
+
+    private static class BufferOutputStream extends OutputStream {
+        private final Buffer buffer;
+
+        private BufferOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.appendByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.appendBytes(b, off, len);
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ import ai.konduit.serving.InferenceConfiguration;
 import ai.konduit.serving.executioner.PipelineExecutioner;
 import ai.konduit.serving.input.adapter.InputAdapter;
 import ai.konduit.serving.input.conversion.BatchInputParser;
+import ai.konduit.serving.input.upload.InMemoryMultipartHandler;
 import ai.konduit.serving.metrics.MetricType;
 import ai.konduit.serving.metrics.NativeMetrics;
 import ai.konduit.serving.pipeline.ModelPipelineStep;
@@ -37,8 +38,12 @@ import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.arrow
 import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.image.VertxBufferImageInputAdapter;
 import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nd4j.VertxBufferNd4jInputAdapter;
 import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.numpy.VertxBufferNumpyInputAdapter;
+import ai.konduit.serving.threadpool.MeteredWorkerExecutor;
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.DataBufferArena;
 import ai.konduit.serving.config.Input;
 import ai.konduit.serving.config.Output;
+import ai.konduit.serving.config.ServingConfig;
 import ai.konduit.serving.verticles.VerticleConstants;
 import ai.konduit.serving.verticles.base.BaseRoutableVerticle;
 import io.micrometer.core.instrument.LongTaskTimer;
@@ -52,6 +57,7 @@ import io.micrometer.core.instrument.binder.logging.LogbackMetrics;
 import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
 import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.Router;
@@ -93,6 +99,9 @@ public class InferenceVerticle extends BaseRoutableVerticle {
     //cached for columnar inputs, not used in binary endpoints
     private Schema inputSchema,outputSchema = null;
     private LongTaskTimer inferenceExecutionTimer,batchCreationTimer;
+    //separate pools so decoding of new requests overlaps with inference of earlier ones
+    private MeteredWorkerExecutor batchCreationExecutor,inferenceExecutor;
+    private NativeMetrics nativeMetrics;
 
 
     public List<String> inputNames() {
@@ -117,6 +126,12 @@ public class InferenceVerticle extends BaseRoutableVerticle {
     @Override
     public void stop() throws Exception {
         super.stop();
+        if(batchCreationExecutor != null)
+            batchCreationExecutor.close();
+        if(inferenceExecutor != null)
+            inferenceExecutor.close();
+        if(nativeMetrics != null)
+            nativeMetrics.close();
         log.debug("Stopping model server.");
     }
 
@@ -135,6 +150,16 @@ public class InferenceVerticle extends BaseRoutableVerticle {
             throw new IllegalStateException("Passed in illegal configuration, unable to read InferenceConfiguration object",e);
         }
 
+        batchCreationExecutor = new MeteredWorkerExecutor(vertx,
+                "konduit-serving-batch-creation",
+                inferenceConfiguration.getServingConfig().getBatchCreationPoolSize());
+        inferenceExecutor = new MeteredWorkerExecutor(vertx,
+                "konduit-serving-inference",
+                inferenceConfiguration.getServingConfig().getInferencePoolSize());
+        ArrowAllocators.getInstance().configure(inferenceConfiguration.getServingConfig().getArrowMemoryLimitBytes(),
+                inferenceConfiguration.getServingConfig().getArrowRequestMemoryLimitBytes(),
+                inferenceConfiguration.getServingConfig().getArrowVectorCacheBytes());
+
         MeterRegistry registry = BackendRegistries.getDefaultNow();
         if(registry != null) {
             log.info("Using metrics registry " + registry.getClass().getName() + " for inference");
@@ -146,6 +171,9 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                     .builder("batch_creation")
                     .register(registry);
 
+            batchCreationExecutor.bindTo(registry);
+            inferenceExecutor.bindTo(registry);
+            ArrowAllocators.getInstance().bindTo(registry);
         }
 
         if(inferenceConfiguration.getServingConfig().getMetricTypes() != null && registry != null) {
@@ -171,7 +199,10 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                         new LogbackMetrics().bindTo(registry);
                         break;
                     case NATIVE:
-                        new NativeMetrics().bindTo(registry);
+                        //host wide readings: every verticle on the registry shares one sampler
+                        nativeMetrics = NativeMetrics.shared(registry,
+                                inferenceConfiguration.getServingConfig().getNativeMetricsSamplePeriodMs(),
+                                inferenceConfiguration.getServingConfig().getNativeMetricsMaxStalenessMs());
                         break;
                     case GPU:
                         try {
@@ -200,10 +231,19 @@ public class InferenceVerticle extends BaseRoutableVerticle {
 
 
         Preconditions.checkNotNull(inferenceConfiguration.getServingConfig(),"Please define a serving configuration.");
-        router.post().handler(BodyHandler.create()
-                .setUploadsDirectory(inferenceConfiguration.getServingConfig().getUploadsDirectory())
+        ServingConfig servingConfig = inferenceConfiguration.getServingConfig();
+        Handler<RoutingContext> bodyHandler = BodyHandler.create()
+                .setUploadsDirectory(servingConfig.getUploadsDirectory())
                 .setDeleteUploadedFilesOnEnd(true)
-                .setMergeFormAttributes(true))
+                .setMergeFormAttributes(true);
+        if(servingConfig.isInMemoryUploads()) {
+            bodyHandler = new InMemoryMultipartHandler(vertx,
+                    bodyHandler,
+                    servingConfig.getUploadsDirectory(),
+                    servingConfig.getUploadSpillThresholdBytes());
+        }
+
+        router.post().handler(bodyHandler)
                 .failureHandler(failureHandlder -> {
                     if(failureHandlder.statusCode() == 404) {
                         log.warn("404 at route " + failureHandlder.request().path());
@@ -254,11 +294,8 @@ public class InferenceVerticle extends BaseRoutableVerticle {
             }
 
 
+            LongTaskTimer.Sample start = inferenceExecutionTimer != null ? inferenceExecutionTimer.start() : null;
             try {
-                LongTaskTimer.Sample start = null;
-                if(inferenceExecutionTimer != null) {
-                    start = inferenceExecutionTimer.start();
-                }
                 pipelineExecutioner.doInference(
                         ctx,
                         outputAdapterType,
@@ -266,14 +303,18 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                         inputSchema,
                         null,
                         outputSchema,
-                        inferenceConfiguration.getServingConfig().getOutputDataType());
+                        inferenceConfiguration.getServingConfig().getOutputDataType())
+                        .whenComplete((result, failure) -> {
+                            if(start != null)
+                                start.stop();
+                            if(failure != null) {
+                                jsonInferenceFailed(ctx, failure);
+                            }
+                        });
+            } catch (Exception e) {
                 if(start != null)
                     start.stop();
-            } catch (Exception e) {
-                log.error("Unable to perform json inference",e);
-                ctx.response().setStatusCode(500);
-                ctx.response().setStatusMessage("Failed to perform json inference");
-                ctx.response().end();
+                jsonInferenceFailed(ctx, e);
             }
         });
 
@@ -283,13 +324,16 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                 .consumes("multipart/form-data")
                 .consumes("multipart/mixed").handler(ctx -> {
             Map<String, InputAdapter<Buffer, ?>> adapters = getAdapterMap(ctx);
+            //decode in to pooled buffers, handed back once the response is out
+            DataBufferArena.enable(ctx.data());
+            ctx.addBodyEndHandler(v -> DataBufferArena.releaseAll(ctx.data()));
 
             BatchInputParser batchInputParser = BatchInputParser.builder()
                     .converterArgs(pipelineExecutioner.getArgs())
                     .converters(adapters)
                     .inputParts(inputNames()).build();
 
-            ctx.vertx().executeBlocking(handler -> {
+            batchCreationExecutor.executeBlocking(handler -> {
 
                 long nanos = System.nanoTime();
                 Record[] batch = null;
@@ -322,7 +366,7 @@ public class InferenceVerticle extends BaseRoutableVerticle {
 
                 ctx.put(VerticleConstants.CONVERTED_INFERENCE_DATA,batch);
                 handler.complete();
-            },true, result -> ctx.next());
+            }, result -> ctx.next());
 
         });
 
@@ -343,23 +387,28 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                 return;
             }
 
-            ctx.vertx().executeBlocking(blockingCall -> {
+            inferenceExecutor.executeBlocking(blockingCall -> {
                 try {
                     long nanos = System.nanoTime();
-                    LongTaskTimer.Sample start = null;
-                    if(inferenceExecutionTimer != null)
-                        start = inferenceExecutionTimer.start();
+                    LongTaskTimer.Sample start = inferenceExecutionTimer != null ? inferenceExecutionTimer.start() : null;
+                    //the worker thread is released as soon as the inputs are handed off,
+                    //the response is written from the completion callback
                     pipelineExecutioner.doInference(
                             ctx,
                             inferenceConfiguration.serving().getOutputDataType(),
-                            inputs);
+                            inputs).whenComplete((result, failure) -> {
+                        if(start != null)
+                            start.stop();
+                        long endNanos = System.nanoTime();
+                        if(inferenceConfiguration.serving().isLogTimings()) {
+                            log.info("Timing for inference was " + TimeUnit.NANOSECONDS.toMillis((endNanos - nanos)) + " milliseconds");
+                        }
 
-                    if(start != null)
-                        start.stop();
-                    long endNanos = System.nanoTime();
-                    if(inferenceConfiguration.serving().isLogTimings()) {
-                        log.info("Timing for inference was " + TimeUnit.NANOSECONDS.toMillis((endNanos - nanos)) + " milliseconds");
-                    }
+                        if(failure != null) {
+                            log.error("Failed to do inference ",failure);
+                            ctx.fail(failure);
+                        }
+                    });
 
                     blockingCall.complete();
                 } catch(Exception e) {
@@ -368,7 +417,7 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                     blockingCall.fail(e);
                 }
 
-            },true, result -> {
+            }, result -> {
                 if(result.failed()) {
                     ctx.fail(result.cause());
                 }
@@ -380,9 +429,12 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                 .consumes("multipart/form-data")
                 .consumes("multipart/mixed").handler(ctx -> {
             Map<String, InputAdapter<Buffer, ?>> adapters = getAdapterMap(ctx);
+            //decode in to pooled buffers, handed back once the response is out
+            DataBufferArena.enable(ctx.data());
+            ctx.addBodyEndHandler(v -> DataBufferArena.releaseAll(ctx.data()));
 
             String transactionUUID = UUID.randomUUID().toString();
-            ctx.vertx().executeBlocking(handler -> {
+            batchCreationExecutor.executeBlocking(handler -> {
                 BatchInputParser batchInputParser = BatchInputParser.builder()
                         .converters(adapters)
                         .converterArgs(pipelineExecutioner.getArgs())
@@ -416,7 +468,7 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                     log.error("Unable to convert inputs",e);
                     handler.fail(e);
                 }
-            },true, result -> ctx.next());
+            }, result -> ctx.next());
         });
 
 
@@ -434,20 +486,23 @@ public class InferenceVerticle extends BaseRoutableVerticle {
 
             String outputType = ctx.pathParam("predictionType");
             Output.DataType outputAdapterType = Output.DataType.valueOf(outputType.toUpperCase());
-            ctx.vertx().executeBlocking(handler -> {
+            inferenceExecutor.executeBlocking(handler -> {
                 try {
                     long nanos = System.nanoTime();
-                    LongTaskTimer.Sample start = null;
-                    if(batchCreationTimer != null) {
-                        start = batchCreationTimer.start();
-                    }
-                    pipelineExecutioner.doInference(ctx, outputAdapterType, inputs);
-                    if(start != null)
-                        start.stop();
-                    long endNanos = System.nanoTime();
-                    if(inferenceConfiguration.serving().isLogTimings()) {
-                        log.info("Timing for inference was " + TimeUnit.NANOSECONDS.toMillis((endNanos - nanos)) + " milliseconds");
-                    }
+                    LongTaskTimer.Sample start = inferenceExecutionTimer != null ? inferenceExecutionTimer.start() : null;
+                    pipelineExecutioner.doInference(ctx, outputAdapterType, inputs).whenComplete((result, failure) -> {
+                        if(start != null)
+                            start.stop();
+                        long endNanos = System.nanoTime();
+                        if(inferenceConfiguration.serving().isLogTimings()) {
+                            log.info("Timing for inference was " + TimeUnit.NANOSECONDS.toMillis((endNanos - nanos)) + " milliseconds");
+                        }
+
+                        if(failure != null) {
+                            log.error("Failed to do inference ",failure);
+                            ctx.fail(failure);
+                        }
+                    });
                     handler.complete();
                 }catch(Exception e) {
                     log.error("Failed to do inference ",e);
@@ -455,7 +510,7 @@ public class InferenceVerticle extends BaseRoutableVerticle {
                     handler.fail(e);
                 }
 
-            },true, result -> {
+            }, result -> {
             });
 
         });
@@ -469,6 +524,7 @@ public class InferenceVerticle extends BaseRoutableVerticle {
             //due to needing to sometime initialize retraining routes
             try {
                 pipelineExecutioner = new PipelineExecutioner(inferenceConfiguration);
+                pipelineExecutioner.setCompletionExecutor(inferenceExecutor);
                 pipelineExecutioner.init();
                 setupWebServer();
 
@@ -482,6 +538,13 @@ public class InferenceVerticle extends BaseRoutableVerticle {
         }
     }
 
+    private void jsonInferenceFailed(RoutingContext ctx, Throwable failure) {
+        log.error("Unable to perform json inference",failure);
+        ctx.response().setStatusCode(500);
+        ctx.response().setStatusMessage("Failed to perform json inference");
+        ctx.response().end();
+    }
+
     private Map<String, InputAdapter<Buffer, ?>> getAdapterMap(RoutingContext ctx) {
         Map<String, InputAdapter<Buffer, ?>> adapters = new HashMap<>();
         Input.DataType inputAdapterType = Input.DataType.valueOf(ctx.pathParam("inputType").toUpperCase());
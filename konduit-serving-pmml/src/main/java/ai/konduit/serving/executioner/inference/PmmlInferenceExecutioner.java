@@ -24,6 +24,7 @@ package ai.konduit.serving.executioner.inference;
 
 import ai.konduit.serving.model.loader.ModelLoader;
 import ai.konduit.serving.config.ParallelInferenceConfig;
+import ai.konduit.serving.model.loader.pmml.PmmlModelLoader;
 import ai.konduit.serving.threadpool.pmml.PMMLThreadPool;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -32,6 +33,7 @@ import org.jpmml.evaluator.Evaluator;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An {@link InferenceExecutioner}
@@ -58,6 +60,7 @@ public class PmmlInferenceExecutioner implements
     @Override
     public Evaluator model() {
         try {
+            //the loader caches the parsed model, this is the same evaluator the workers use
             return modelLoader.loadModel();
         } catch (Exception e) {
             log.error("Unable to load model in model() call for pmml inference executioner",e);
@@ -73,6 +76,10 @@ public class PmmlInferenceExecutioner implements
                 .queueLimit(config.getQueueLimit())
                 .inferenceMode(config.getInferenceMode())
                 .workers(config.getWorkers())
+                .maxBatchDelayMicros(config.getMaxBatchDelayMicros())
+                .preferredBatchSize(config.getPreferredBatchSize())
+                .name(model instanceof PmmlModelLoader && ((PmmlModelLoader) model).getPmmlFile() != null ?
+                        ((PmmlModelLoader) model).getPmmlFile().getName() : "pmml")
                 .build();
         this.modelLoader = model;
 
@@ -88,6 +95,15 @@ public class PmmlInferenceExecutioner implements
         return inference.output(input);
     }
 
+    @Override
+    public CompletableFuture<List<Map<FieldName, Object>>> executeAsync(List<Map<FieldName, Object>> input) {
+        if(inference == null) {
+            throw new IllegalStateException("Initialize not called. No ParallelInference found. Please call " +
+                    "inferenceExecutioner.initialize(..)");
+        }
+        return inference.outputAsync(input);
+    }
+
     @Override
     public void stop() {
         if(inference != null) {
@@ -45,7 +45,9 @@ public class PmmlInferenceExecutionerFactory implements InferenceExecutionerFact
         String pmmlConfigPath = inferenceConfiguration.getModelConfigType().getModelLoadingPath();
         ModelEvaluatorFactory modelEvaluatorFactory = ModelEvaluatorFactory.newInstance();
         PmmlInferenceExecutioner inferenceExecutioner = new PmmlInferenceExecutioner();
-        PmmlModelLoader modelLoader1 = new PmmlModelLoader(modelEvaluatorFactory, new File(pmmlConfigPath));
+        String serializedModelPath = pmmlConfig.getSerializedModelPath();
+        PmmlModelLoader modelLoader1 = new PmmlModelLoader(modelEvaluatorFactory, new File(pmmlConfigPath),
+                serializedModelPath == null ? null : new File(serializedModelPath));
         inferenceExecutioner.initialize(modelLoader1, servingConfig.getParallelInferenceConfig());
         return new InitializedInferenceExecutionerConfig(inferenceExecutioner,null,null);
     }
@@ -24,25 +24,72 @@ package ai.konduit.serving.model.loader.pmml;
 
 import ai.konduit.serving.model.loader.ModelLoader;
 import io.vertx.core.buffer.Buffer;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
 import org.dmg.pmml.PMML;
 import org.jpmml.evaluator.Evaluator;
 import org.jpmml.evaluator.ModelEvaluatorFactory;
 import org.jpmml.model.PMMLUtil;
+import org.jpmml.model.visitors.LocatorTransformer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 
+/**
+ * Loads a PMML file in to an {@link Evaluator}.
+ *
+ * The file is parsed once per loader: every {@link #loadModel()} call
+ * returns the same evaluator, which jpmml guarantees to be thread safe once built,
+ * so it can be shared by all inference workers.
+ *
+ * Optionally a serialized copy of the parsed {@link PMML} object
+ * can be kept in {@link #getSerializedModelFile()}. The serialized file starts with
+ * the size and SHA-256 of the PMML file it was built from. When those match the current
+ * PMML file it is read instead of the xml, which is much cheaper for large tree ensembles.
+ * Modification times aren't trusted: copies, checkouts and extracted archives
+ * can give a changed file an older time stamp. The serialized file is (re)written
+ * whenever the xml had to be parsed.
+ *
+ * @author Adam Gibson
+ */
 @Data
-@AllArgsConstructor
-
+@Slf4j
 public class PmmlModelLoader implements ModelLoader<Evaluator> {
 
     private ModelEvaluatorFactory modelEvaluatorFactory;
     private File pmmlFile;
+    private File serializedModelFile;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile Evaluator evaluator;
+
+    public PmmlModelLoader(ModelEvaluatorFactory modelEvaluatorFactory, File pmmlFile) {
+        this(modelEvaluatorFactory, pmmlFile, null);
+    }
+
+    public PmmlModelLoader(ModelEvaluatorFactory modelEvaluatorFactory, File pmmlFile, File serializedModelFile) {
+        this.modelEvaluatorFactory = modelEvaluatorFactory;
+        this.pmmlFile = pmmlFile;
+        this.serializedModelFile = serializedModelFile;
+    }
 
     @Override
     public Buffer saveModel(Evaluator model) {
@@ -51,13 +98,112 @@ public class PmmlModelLoader implements ModelLoader<Evaluator> {
 
     @Override
     public Evaluator loadModel() throws Exception {
+        Evaluator ret = evaluator;
+        if(ret == null) {
+            synchronized (this) {
+                ret = evaluator;
+                if(ret == null) {
+                    ret = modelEvaluatorFactory.newModelEvaluator(readPmml());
+                    //builds the lazily initialized parts of the evaluator up front
+                    //(and checks any embedded verification data) before it's shared
+                    ret.verify();
+                    evaluator = ret;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns true if the serialized model file exists
+     * and was built from the current content of the PMML file.
+     * When the PMML file is gone the serialized model is the only copy left and is used as is.
+     * @return true if the serialized model file can be used instead of the pmml file
+     */
+    public boolean hasUsableSerializedModel() {
+        if(serializedModelFile == null || !serializedModelFile.isFile()) {
+            return false;
+        }
+
+        try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serializedModelFile)))) {
+            return isSource(ois.readUTF(), pmmlFile.isFile() ? fingerprint(pmmlFile) : null);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private PMML readPmml() throws Exception {
+        String fingerprint = pmmlFile.isFile() ? fingerprint(pmmlFile) : null;
+        if(serializedModelFile != null && serializedModelFile.isFile()) {
+            try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serializedModelFile)))) {
+                if(isSource(ois.readUTF(), fingerprint)) {
+                    return (PMML) ois.readObject();
+                }
+
+                log.info("Serialized pmml model " + serializedModelFile + " was built from a different " + pmmlFile + ", parsing it again");
+            } catch (Exception e) {
+                log.warn("Unable to read serialized pmml model " + serializedModelFile + ", parsing " + pmmlFile + " instead", e);
+            }
+        }
+
         PMML pmml;
-        try(InputStream is = new FileInputStream(pmmlFile)) {
-            pmml =  PMMLUtil.unmarshal(is);
+        try(InputStream is = new BufferedInputStream(new FileInputStream(pmmlFile))) {
+            pmml = PMMLUtil.unmarshal(is);
+        }
+
+        if(serializedModelFile != null) {
+            writeSerializedModel(pmml, fingerprint);
+        }
+
+        return pmml;
+    }
+
+    private static boolean isSource(String source, String fingerprint) {
+        return fingerprint == null || fingerprint.equals(source);
+    }
+
+    /**
+     * The size and SHA-256 of the given file, stored at the start
+     * of the serialized model to tell which PMML file it was built from.
+     */
+    private static String fingerprint(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try(InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
         }
 
+        return file.length() + ":" + String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    private void writeSerializedModel(PMML pmml, String fingerprint) {
+        File parent = serializedModelFile.getAbsoluteFile().getParentFile();
+        File tmp = null;
+        try {
+            if(parent != null && !parent.exists() && !parent.mkdirs()) {
+                log.warn("Unable to create directory " + parent + " for serialized pmml model");
+                return;
+            }
 
-        Evaluator evaluator = modelEvaluatorFactory.newModelEvaluator(pmml);
-        return evaluator;
+            //write to a temp file first so a concurrent or interrupted start never sees a partial file
+            tmp = File.createTempFile(serializedModelFile.getName(), ".tmp", parent);
+            //the sax locators the parser attaches to every element aren't serializable
+            pmml.accept(new LocatorTransformer());
+            try(ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                oos.writeUTF(fingerprint);
+                oos.writeObject(pmml);
+            }
+
+            Files.move(tmp.toPath(), serializedModelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            log.warn("Unable to write serialized pmml model to " + serializedModelFile, e);
+            if(tmp != null) {
+                tmp.delete();
+            }
+        }
     }
 }
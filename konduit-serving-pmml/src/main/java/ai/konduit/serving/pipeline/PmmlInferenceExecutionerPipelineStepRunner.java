@@ -22,6 +22,9 @@
 
 package ai.konduit.serving.pipeline;
 
+import ai.konduit.serving.pmml.util.PmmlUtils;
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowBatchRecord;
 import ai.konduit.serving.util.ObjectMapperHolder;
 import ai.konduit.serving.util.WritableValueRetriever;
 import ai.konduit.serving.executioner.inference.PmmlInferenceExecutioner;
@@ -33,16 +36,19 @@ import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
 import org.dmg.pmml.FieldName;
 import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.ModelEvaluator;
 import org.nd4j.base.Preconditions;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 
 public class PmmlInferenceExecutionerPipelineStepRunner extends BasePipelineStepRunner {
 
     private PmmlInferenceExecutioner pmmlInferenceExecutioner;
     private Evaluator evaluator;
+    private Schema columnarOutputSchema;
 
     public PmmlInferenceExecutionerPipelineStepRunner(PipelineStep pipelineStep) {
         super(pipelineStep);
@@ -64,6 +70,14 @@ public class PmmlInferenceExecutionerPipelineStepRunner extends BasePipelineStep
         Preconditions.checkState(pmmlPipelineStepConfig.getOutputColumnNames() != null &&
                 !pmmlPipelineStepConfig.getOutputColumnNames().isEmpty(),"No output names found!");
 
+        if(pmmlPipelineStepConfig.isColumnarOutput()) {
+            columnarOutputSchema = pipelineStep.outputSchemaForName("default");
+            if(columnarOutputSchema == null && evaluator instanceof ModelEvaluator) {
+                columnarOutputSchema = PmmlUtils.outputSchema(((ModelEvaluator<?>) evaluator).getPMML());
+            }
+
+            Preconditions.checkState(columnarOutputSchema != null,"No output schema found for columnar pmml output!");
+        }
 
     }
 
@@ -79,6 +93,15 @@ public class PmmlInferenceExecutionerPipelineStepRunner extends BasePipelineStep
 
     @Override
     public Record[] transform(Record[] input) {
+        return toRecords(pmmlInferenceExecutioner.execute(toPmmlInput(input)));
+    }
+
+    @Override
+    public CompletableFuture<Record[]> transformAsync(Record[] input) {
+        return pmmlInferenceExecutioner.executeAsync(toPmmlInput(input)).thenApply(this::toRecords);
+    }
+
+    private List<Map<FieldName, Object>> toPmmlInput(Record[] input) {
         Schema schema = pipelineStep.inputSchemaForName("default");
         List<Map<FieldName, Object>> pmmlInput = new ArrayList<>(input.length);
         List<FieldName> fieldNames = new ArrayList<>();
@@ -95,7 +118,27 @@ public class PmmlInferenceExecutionerPipelineStepRunner extends BasePipelineStep
             pmmlInput.add(pmmlRecord);
         }
 
-        List<Map<FieldName, Object>> execute = pmmlInferenceExecutioner.execute(pmmlInput);
+        return pmmlInput;
+    }
+
+    private Record[] toRecords(List<Map<FieldName, Object>> execute) {
+        if(columnarOutputSchema != null) {
+            //bounded per request, released by whoever reads the records last (see ArrowBatchRecord#release)
+            ArrowAllocators.RequestScope scope = ArrowAllocators.getInstance().newRequestScope();
+            try {
+                Record[] ret = ArrowBatchRecord.wrap(PmmlUtils.toArrowBatch(scope, execute, columnarOutputSchema), scope);
+                //no record carries the scope, nobody downstream could release it
+                if(ret.length == 0) {
+                    scope.close();
+                }
+
+                return ret;
+            } catch(RuntimeException e) {
+                scope.close();
+                throw e;
+            }
+        }
+
         Record[] ret = new Record[1];
         String json = null;
         try {
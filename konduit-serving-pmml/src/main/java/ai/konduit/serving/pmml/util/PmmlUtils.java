@@ -22,13 +22,18 @@
 
 package ai.konduit.serving.pmml.util;
 
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowUtils;
 import ai.konduit.serving.util.WritableValueRetriever;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
 import org.datavec.api.records.Record;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.transform.serde.JsonMappers;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Text;
 import org.datavec.api.writable.Writable;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
 import org.dmg.pmml.*;
 import org.dmg.pmml.OutputField;
 import org.jpmml.evaluator.*;
@@ -191,6 +196,136 @@ public class PmmlUtils {
     }
 
 
+    /**
+     * Convert the pmml output to typed arrow columns laid out by the given schema.
+     * Each column is filled in to a primitive array sized for the whole batch
+     * and copied in to its vector in one go, so the only per row work is
+     * the map lookup and decoding the evaluator's value.
+     *
+     * Computed values (classifications, probability distributions,..)
+     * are reduced to their result. Use pmml output fields
+     * to expose probabilities as their own columns.
+     *
+     * @param bufferAllocator the allocator for the column vectors
+     * @param pmmlOutput the evaluator output, one map per row
+     * @param outputSchema the schema of the columns to extract
+     * @return a batch with one row per pmml output
+     */
+    public static ArrowWritableRecordBatch toArrowBatch(BufferAllocator bufferAllocator,
+                                                        List<? extends Map<FieldName, ?>> pmmlOutput,
+                                                        Schema outputSchema) {
+        return ArrowUtils.toArrowWritables(toColumns(bufferAllocator, pmmlOutput, outputSchema), outputSchema);
+    }
+
+    /**
+     * Convert the pmml output to typed arrow columns allocated from the given request scope.
+     * The columns are closed along with the scope.
+     * See {@link #toArrowBatch(BufferAllocator, List, Schema)}
+     * @param scope the scope of the request the output belongs to
+     * @param pmmlOutput the evaluator output, one map per row
+     * @param outputSchema the schema of the columns to extract
+     * @return a batch with one row per pmml output
+     */
+    public static ArrowWritableRecordBatch toArrowBatch(ArrowAllocators.RequestScope scope,
+                                                        List<? extends Map<FieldName, ?>> pmmlOutput,
+                                                        Schema outputSchema) {
+        List<FieldVector> columns = toColumns(scope.getAllocator(), pmmlOutput, outputSchema);
+        scope.own(columns);
+        return ArrowUtils.toArrowWritables(columns, outputSchema);
+    }
+
+    private static List<FieldVector> toColumns(BufferAllocator bufferAllocator,
+                                               List<? extends Map<FieldName, ?>> pmmlOutput,
+                                               Schema outputSchema) {
+        List<FieldVector> columns = new ArrayList<>(outputSchema.numColumns());
+        try {
+            addColumns(columns, bufferAllocator, pmmlOutput, outputSchema);
+        } catch(RuntimeException e) {
+            //don't leak the columns created before a conversion or allocation failed
+            for(FieldVector column : columns) {
+                column.close();
+            }
+
+            throw e;
+        }
+
+        return columns;
+    }
+
+    private static void addColumns(List<FieldVector> columns,
+                                   BufferAllocator bufferAllocator,
+                                   List<? extends Map<FieldName, ?>> pmmlOutput,
+                                   Schema outputSchema) {
+        int rows = pmmlOutput.size();
+        for(int j = 0; j < outputSchema.numColumns(); j++) {
+            String name = outputSchema.getName(j);
+            FieldName fieldName = FieldName.create(name);
+            switch(outputSchema.getType(j)) {
+                case Double:
+                    double[] doubles = new double[rows];
+                    for(int i = 0; i < rows; i++) {
+                        doubles[i] = toNumber(decodedValue(pmmlOutput.get(i), fieldName)).doubleValue();
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, doubles));
+                    break;
+                case Float:
+                    float[] floats = new float[rows];
+                    for(int i = 0; i < rows; i++) {
+                        floats[i] = toNumber(decodedValue(pmmlOutput.get(i), fieldName)).floatValue();
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, floats));
+                    break;
+                case Integer:
+                    int[] ints = new int[rows];
+                    for(int i = 0; i < rows; i++) {
+                        ints[i] = toNumber(decodedValue(pmmlOutput.get(i), fieldName)).intValue();
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, ints));
+                    break;
+                case Long:
+                    long[] longs = new long[rows];
+                    for(int i = 0; i < rows; i++) {
+                        longs[i] = toNumber(decodedValue(pmmlOutput.get(i), fieldName)).longValue();
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, longs));
+                    break;
+                case Boolean:
+                    boolean[] booleans = new boolean[rows];
+                    for(int i = 0; i < rows; i++) {
+                        Object value = decodedValue(pmmlOutput.get(i), fieldName);
+                        booleans[i] = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, booleans));
+                    break;
+                case Categorical:
+                case String:
+                    String[] strings = new String[rows];
+                    for(int i = 0; i < rows; i++) {
+                        strings[i] = decodedValue(pmmlOutput.get(i), fieldName).toString();
+                    }
+                    columns.add(ArrowUtils.vectorFor(bufferAllocator, name, strings));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unable to create a column for pmml output " + name + " of type " + outputSchema.getType(j));
+            }
+        }
+    }
+
+    private static Object decodedValue(Map<FieldName, ?> row, FieldName fieldName) {
+        Object value = EvaluatorUtil.decode(row.get(fieldName));
+        Preconditions.checkNotNull(value,"Value " + fieldName.getValue() + " not found!");
+        return value;
+    }
+
+    private static Number toNumber(Object value) {
+        if(value instanceof Number) {
+            return (Number) value;
+        }
+
+        return Double.parseDouble(value.toString());
+    }
+
+
     /**
      * Auto infer a schema based on the final model
      * output from the pmml document.
@@ -24,9 +24,14 @@ package ai.konduit.serving.threadpool.pmml;
 
 
 import ai.konduit.serving.model.loader.ModelLoader;
+import ai.konduit.serving.threadpool.AdaptiveBatchWindow;
+import ai.konduit.serving.threadpool.FutureObserver;
 import ai.konduit.serving.threadpool.pmml.observables.BasicPmmlInferenceObservable;
 import ai.konduit.serving.threadpool.pmml.observables.BatchedPmmlInferenceObservable;
 import ai.konduit.serving.threadpool.pmml.observables.PmmlObservable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.vertx.micrometer.backends.BackendRegistries;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
@@ -36,10 +41,12 @@ import org.jpmml.evaluator.Evaluator;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -59,6 +66,10 @@ public class PMMLThreadPool {
     private int batchLimit;
     private InferenceMode inferenceMode;
     private int queueLimit;
+    private long maxBatchDelayMicros;
+    private int preferredBatchSize;
+    private AdaptiveBatchWindow batchWindow;
+    private String name;
 
     // this queue
     private BlockingQueue<PmmlObservable> observables;
@@ -73,6 +84,7 @@ public class PMMLThreadPool {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_BATCH_DELAY_MICROS = 0;
 
 
 
@@ -80,8 +92,18 @@ public class PMMLThreadPool {
         //
     }
 
-    protected void init() {
+    protected void init() throws Exception {
         observables = new LinkedBlockingQueue<>(queueLimit);
+        batchWindow = new AdaptiveBatchWindow(maxBatchDelayMicros,
+                preferredBatchSize > 0 ? Math.min(preferredBatchSize, batchLimit) : batchLimit,
+                Arrays.asList(Tag.of("threadpool", "pmml"), Tag.of("model", name)));
+        MeterRegistry registry = BackendRegistries.getDefaultNow();
+        if(registry != null && inferenceMode == InferenceMode.BATCHED) {
+            batchWindow.bindTo(registry);
+        }
+
+        //evaluators are thread safe once built: parse the model once and share it with every worker
+        Evaluator evaluator = pmmlModelLoader.loadModel();
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -93,7 +115,7 @@ public class PMMLThreadPool {
             boolean cRoot = !assignedRoot.get() && cDevice == currentDevice;
             assignedRoot.compareAndSet(false, cRoot);
 
-            zoo[i] = new InferenceWorker(i,observables,true,pmmlModelLoader);
+            zoo[i] = new InferenceWorker(i,observables,true,evaluator);
 
             Nd4j.getAffinityManager().unsafeSetDevice(cDevice);
             zoo[i].setDaemon(true);
@@ -104,7 +126,7 @@ public class PMMLThreadPool {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.debug("Initializing ObservablesProvider...");
             nanos = System.nanoTime();
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(nanos, batchLimit, observables, batchWindow);
         }
     }
 
@@ -129,6 +151,9 @@ public class PMMLThreadPool {
         }
         zoo = null;
 
+        if (batchWindow != null)
+            batchWindow.close();
+
         System.gc();
     }
 
@@ -177,12 +202,50 @@ public class PMMLThreadPool {
     }
 
 
+    /**
+     * Asynchronous version of {@link #output(List)}.
+     * The returned future is completed by the inference worker thread
+     * once the output is available, no thread is blocked while the model runs.
+     *
+     * @param input      Input to the network
+     * @return a future completed with the output from the network
+     */
+    public CompletableFuture<List<Map<FieldName,Object>>> outputAsync(List<Map<FieldName,Object>> input) {
+        if(input == null) {
+            throw new IllegalArgumentException("No null input allowed.");
+        }
+
+        FutureObserver<List<Map<FieldName,Object>>> observer = new FutureObserver<>((observable, position) ->
+                observable instanceof BatchedPmmlInferenceObservable
+                        ? ((BatchedPmmlInferenceObservable) observable).getOutput(position)
+                        : ((PmmlObservable) observable).getOutput());
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            PmmlObservable observable = new BasicPmmlInferenceObservable(input);
+            observable.addObserver(observer);
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        } else {
+            provider.setInput(observer, input);
+        }
+
+        return observer.getFuture();
+    }
+
+
     public static class Builder {
         private ModelLoader<Evaluator> pmmlModelLoader;
         private int workers = DEFAULT_NUM_WORKERS;
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long maxBatchDelayMicros = DEFAULT_MAX_BATCH_DELAY_MICROS;
+        private int preferredBatchSize = 0;
+        private String name = "pmml";
 
         public Builder(@NonNull ModelLoader<Evaluator> pmmlModelLoader) {
             this.pmmlModelLoader = pmmlModelLoader;
@@ -256,6 +319,54 @@ public class PMMLThreadPool {
             return this;
         }
 
+        /**
+         * This method defines the upper bound on how long a batch
+         * is held open waiting for more inputs. The actual window
+         * adapts to the request arrival rate and model execution time
+         * and never exceeds this value.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL inference mode
+         *
+         * Default value: 0 (flush as soon as a worker is free)
+         *
+         * @param maxBatchDelayMicros the maximum batching delay in microseconds
+         * @return the builder
+         */
+        public Builder maxBatchDelayMicros(long maxBatchDelayMicros) {
+            if (maxBatchDelayMicros < 0)
+                throw new IllegalStateException("Max batch delay should not be negative");
+
+            this.maxBatchDelayMicros = maxBatchDelayMicros;
+            return this;
+        }
+
+        /**
+         * This method defines the batch size at which a batch is
+         * sent for inference without waiting for the batching window to expire.
+         * Values less than 1 mean the batch limit is used.
+         *
+         * @param preferredBatchSize the preferred batch size
+         * @return the builder
+         */
+        public Builder preferredBatchSize(int preferredBatchSize) {
+            this.preferredBatchSize = preferredBatchSize;
+            return this;
+        }
+
+        /**
+         * The name the pool's metrics are tagged with,
+         * stable across restarts like the model's file name.
+         * Defaults to the pool type.
+         *
+         * @param name the name of the pool
+         * @return the builder
+         */
+        public Builder name(@NonNull String name) {
+            this.name = name;
+            return this;
+        }
+
         /**
          * This method builds new PMMLThreadPool instance
          *
@@ -265,10 +376,17 @@ public class PMMLThreadPool {
             PMMLThreadPool inference = new PMMLThreadPool();
             inference.batchLimit = this.batchLimit;
             inference.queueLimit = this.queueLimit;
+            inference.maxBatchDelayMicros = this.maxBatchDelayMicros;
+            inference.preferredBatchSize = this.preferredBatchSize;
+            inference.name = this.name;
             inference.inferenceMode = this.inferenceMode;
             inference.workers = this.workers;
             inference.pmmlModelLoader = this.pmmlModelLoader;
-            inference.init();
+            try {
+                inference.init();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to load pmml model", e);
+            }
 
             return inference;
         }
@@ -287,11 +405,9 @@ public class PMMLThreadPool {
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
 
-        private ModelLoader<Evaluator> pmmlModelLoader;
-
-        private InferenceWorker(int id,@NonNull BlockingQueue inputQueue, boolean rootDevice, @NonNull ModelLoader<Evaluator> modelLoader) {
+        private InferenceWorker(int id,@NonNull BlockingQueue inputQueue, boolean rootDevice, @NonNull Evaluator evaluator) {
             this.inputQueue = inputQueue;
-            this.pmmlModelLoader = modelLoader;
+            this.replicatedModel = evaluator;
             this.rootDevice = rootDevice;
             this.setDaemon(true);
             this.setName("InferenceThread-" + id);
@@ -305,24 +421,32 @@ public class PMMLThreadPool {
         @Override
         public void run() {
             try {
-                // model should be replicated & initialized here
-                this.replicatedModel = pmmlModelLoader.loadModel();
-
-
                 while (shouldWork.get()) {
                     PmmlObservable request = inputQueue.take();
 
                     if (request != null) {
                         counter.incrementAndGet();
 
+                        int batchSize = 1;
+                        if (request instanceof BatchedPmmlInferenceObservable) {
+                            BatchedPmmlInferenceObservable batched = (BatchedPmmlInferenceObservable) request;
+                            batchWindow.awaitBatch(batched::getCounter, batched.getCreatedNanos());
+                        }
+
                         List<Map<FieldName, Object>> batches = request.getInputBatches();
+                        if (request instanceof BatchedPmmlInferenceObservable) {
+                            batchSize = ((BatchedPmmlInferenceObservable) request).getCounter();
+                        }
+
                         List<Map<FieldName, Object>> out = new ArrayList<>(batches.size());
                         try {
+                            long start = System.nanoTime();
                             for (Map<FieldName, Object> inBatch : batches) {
                                 Map<FieldName, ?> output = replicatedModel.evaluate(inBatch);
                                 out.add((Map<FieldName, Object>) output);
                             }
 
+                            batchWindow.onBatchComplete(batchSize, System.nanoTime() - start);
                             request.setOutputBatches(out);
                         } catch (Exception e){
                             log.error("Error occurred doing inference",e);
@@ -359,18 +483,21 @@ public class PMMLThreadPool {
         private BlockingQueue<PmmlObservable> targetQueue;
         private long nanos;
         private int batchLimit;
+        private AdaptiveBatchWindow batchWindow;
 
         private volatile BatchedPmmlInferenceObservable currentObservable;
         private final Object locker = new Object();
 
-        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<PmmlObservable> queue) {
+        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<PmmlObservable> queue, @NonNull AdaptiveBatchWindow batchWindow) {
             this.targetQueue = queue;
             this.nanos = nanos;
             this.batchLimit = batchLimit;
+            this.batchWindow = batchWindow;
         }
 
         protected PmmlObservable setInput(@NonNull Observer observer, List<Map<FieldName, Object>> input) {
             synchronized (locker) {
+                batchWindow.onArrival();
                 boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
                         || currentObservable.isLocked()) {
@@ -378,8 +505,13 @@ public class PMMLThreadPool {
                     currentObservable = new BatchedPmmlInferenceObservable();
                 }
 
-                currentObservable.addInput(input);
+                //register the observer before the input becomes visible to the workers so the notification can't be missed
+                if (observer instanceof FutureObserver) {
+                    ((FutureObserver) observer).setPosition(currentObservable.getCounter());
+                }
+
                 currentObservable.addObserver(observer);
+                currentObservable.addInput(input);
 
                 try {
                     if (isNew)
@@ -28,23 +28,34 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.dmg.pmml.FieldName;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * An observable that merges the rows of concurrent callers
+ * into a single batch. The evaluated rows are split back up
+ * so each caller only sees the results for its own rows.
+ *
+ * @author Adam Gibson
+ */
 @Data
 @NoArgsConstructor
 public class BatchedPmmlInferenceObservable extends Observable implements PmmlObservable {
 
-    private List<Map<FieldName,Object>> input;
+    private List<List<Map<FieldName,Object>>> inputs = new ArrayList<>();
     @Getter
     private long id;
-    private List<Map<FieldName,Object>> output;
+    //used by the batching window to decide when the batch is flushed
+    private final long createdNanos = System.nanoTime();
+    private List<List<Map<FieldName,Object>>> outputs = new ArrayList<>();
     protected Exception exception;
     private AtomicInteger counter = new AtomicInteger(0);
     private ThreadLocal<Integer> position = new ThreadLocal<>();
-    private List<int[]> outputBatchInputArrays = new ArrayList<>();
 
     private final Object locker = new Object();
 
@@ -54,22 +65,19 @@ public class BatchedPmmlInferenceObservable extends Observable implements PmmlOb
 
 
     public BatchedPmmlInferenceObservable(List<Map<FieldName,Object>> inputs) {
-        this.input = inputs;
+        addInput(inputs);
     }
 
 
     @Override
     public void addInput(@NonNull List<Map<FieldName,Object>>  input) {
         synchronized (locker) {
-            if(this.input == null)
-                this.input = new ArrayList<>();
-            this.input.addAll(input);
+            inputs.add(input);
             position.set(counter.getAndIncrement());
 
             if (isReadLocked.get())
                 realLocker.readLock().unlock();
         }
-        this.input = input;
     }
 
 
@@ -79,36 +87,69 @@ public class BatchedPmmlInferenceObservable extends Observable implements PmmlOb
         realLocker.writeLock().lock();
         isLocked.set(true);
 
-        outputBatchInputArrays.clear();
+        try {
+            // this method should pile individual examples into single batch
+            if (inputs.size() == 1) {
+                return inputs.get(0);
+            }
 
-        // this method should pile individual examples into single batch
+            int rows = 0;
+            for (List<Map<FieldName,Object>> input : inputs) {
+                rows += input.size();
+            }
 
-        if (counter.get() > 1) {
+            List<Map<FieldName,Object>> out = new ArrayList<>(rows);
+            for (List<Map<FieldName,Object>> input : inputs) {
+                out.addAll(input);
+            }
 
-            int pos = 0;
-            List<Map<FieldName,Object>> out = new ArrayList<>(input);
-            realLocker.writeLock().unlock();
             return out;
-        } else {
-            outputBatchInputArrays.add(new int[]{0,0});
+        } finally {
             realLocker.writeLock().unlock();
-            return Collections.singletonList(input.get(0));
         }
     }
 
 
     @Override
     public void setOutputBatches(List<Map<FieldName,Object>> output) {
-        //this method should split batched output INDArray[] into multiple separate INDArrays
-        int countNumInputBatches = 0;   //Counter for total number of input batches processed
-        this.output = output;
+        //this method should split the batched rows back up per caller
+        int offset = 0;
+        for (List<Map<FieldName,Object>> input : inputs) {
+            if (offset + input.size() > output.size()) {
+                throw new IllegalArgumentException("Expected at least " + (offset + input.size()) + " output rows, got " + output.size());
+            }
+
+            outputs.add(output.subList(offset, offset + input.size()));
+            offset += input.size();
+        }
+
         this.setChanged();
         notifyObservers();
     }
 
+    @Override
+    public List<Map<FieldName,Object>> getOutput() {
+        return getOutput(position.get());
+    }
+
+    /**
+     * Get the output for the input added at the given position.
+     * Unlike {@link #getOutput()} this doesn't depend on
+     * being called from the thread that added the input.
+     *
+     * @param position the position of the input in this batch
+     * @return the output rows belonging to that input
+     */
+    public List<Map<FieldName,Object>> getOutput(int position) {
+        checkOutputException();
+        return outputs.get(position);
+    }
+
     @Override
     public void setOutputException(Exception e) {
         this.exception = e;
+        this.setChanged();
+        notifyObservers();
     }
 
     @Override
@@ -116,16 +157,6 @@ public class BatchedPmmlInferenceObservable extends Observable implements PmmlOb
         return exception;
     }
 
-
-    /**
-     * PLEASE NOTE: This method is for tests only
-     *
-     * @return the outputs of the observable
-     */
-    protected List<Map<FieldName,Object>> getOutputs() {
-        return output;
-    }
-
     protected void setCounter(int value) {
         counter.set(value);
     }
@@ -151,5 +182,15 @@ public class BatchedPmmlInferenceObservable extends Observable implements PmmlOb
         return result;
     }
 
+    protected void checkOutputException() {
+        if (exception != null) {
+            if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            } else {
+                throw new RuntimeException("Exception encountered while getting output: " + exception.getMessage(), exception);
+            }
+        }
+    }
+
 
 }
@@ -0,0 +1,102 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.model.loader.pmml;
+
+import org.apache.commons.io.FileUtils;
+import org.dmg.pmml.FieldName;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PmmlModelLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 60000)
+    public void testSerializedModelRoundTrip() throws Exception {
+        File model = folder.newFile("regression.pmml");
+        FileUtils.copyInputStreamToFile(new ClassPathResource("pmml/regression.pmml").getInputStream(), model);
+        File serialized = new File(folder.getRoot(), "cache/regression.ser");
+
+        PmmlModelLoader parsing = new PmmlModelLoader(ModelEvaluatorFactory.newInstance(), model, serialized);
+        assertFalse(parsing.hasUsableSerializedModel());
+        Evaluator parsed = parsing.loadModel();
+        assertSame(parsed, parsing.loadModel());
+        assertTrue(serialized.isFile());
+        assertTrue(parsing.hasUsableSerializedModel());
+
+        //without the xml the second loader can only succeed by reading the serialized model
+        assertTrue(model.delete());
+        PmmlModelLoader cached = new PmmlModelLoader(ModelEvaluatorFactory.newInstance(), model, serialized);
+        assertTrue(cached.hasUsableSerializedModel());
+        Evaluator deserialized = cached.loadModel();
+
+        assertEquals(evaluate(parsed, 1.0, 2.0), evaluate(deserialized, 1.0, 2.0), 1e-6);
+        assertEquals(9.0, evaluate(deserialized, 1.0, 2.0), 1e-6);
+    }
+
+    @Test(timeout = 60000)
+    public void testChangedSourceInvalidatesSerializedModel() throws Exception {
+        File model = folder.newFile("regression.pmml");
+        FileUtils.copyInputStreamToFile(new ClassPathResource("pmml/regression.pmml").getInputStream(), model);
+        File serialized = new File(folder.getRoot(), "cache/regression.ser");
+        assertEquals(9.0, evaluate(new PmmlModelLoader(ModelEvaluatorFactory.newInstance(), model, serialized).loadModel(), 1.0, 2.0), 1e-6);
+
+        //same size and an older time stamp than the serialized model, only the content tells them apart
+        long modified = model.lastModified();
+        String xml = FileUtils.readFileToString(model, StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(model, xml.replace("intercept=\"1.0\"", "intercept=\"2.0\""), StandardCharsets.UTF_8);
+        assertTrue(model.setLastModified(modified));
+        assertTrue(serialized.setLastModified(modified + 60000));
+
+        PmmlModelLoader changed = new PmmlModelLoader(ModelEvaluatorFactory.newInstance(), model, serialized);
+        assertFalse(changed.hasUsableSerializedModel());
+        assertEquals(10.0, evaluate(changed.loadModel(), 1.0, 2.0), 1e-6);
+        //rewritten for the new content
+        assertTrue(changed.hasUsableSerializedModel());
+    }
+
+    private static double evaluate(Evaluator evaluator, double x1, double x2) {
+        Map<FieldName, Object> arguments = new LinkedHashMap<>();
+        arguments.put(FieldName.create("x1"), x1);
+        arguments.put(FieldName.create("x2"), x2);
+        Object y = EvaluatorUtil.decode(evaluator.evaluate(arguments).get(FieldName.create("y")));
+        return ((Number) y).doubleValue();
+    }
+
+}
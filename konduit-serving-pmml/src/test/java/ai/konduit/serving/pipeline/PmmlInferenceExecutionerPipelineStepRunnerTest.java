@@ -0,0 +1,113 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.pipeline;
+
+import ai.konduit.serving.config.SchemaType;
+import ai.konduit.serving.config.ServingConfig;
+import ai.konduit.serving.model.ModelConfigType;
+import ai.konduit.serving.model.PmmlConfig;
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowBatchRecord;
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.Writable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PmmlInferenceExecutionerPipelineStepRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 60000)
+    public void testColumnarOutputReleasesArrowMemory() throws Exception {
+        PmmlPipelineStep pipelineStep = columnarPipelineStep();
+        PmmlInferenceExecutionerPipelineStepRunner runner = new PmmlInferenceExecutionerPipelineStepRunner(pipelineStep);
+        try {
+            long before = ArrowAllocators.getInstance().getAllocatedBytes();
+            Record[] input = new Record[3];
+            for(int i = 0; i < input.length; i++) {
+                List<Writable> row = Arrays.asList(new DoubleWritable(i), new DoubleWritable(i * 2));
+                input[i] = new org.datavec.api.records.impl.Record(row, null);
+            }
+
+            Record[] output = runner.transform(input);
+            assertEquals(input.length, output.length);
+            assertNotNull(ArrowBatchRecord.scopeOf(output));
+            for(int i = 0; i < output.length; i++) {
+                assertEquals(1 + 2 * i + 3 * (i * 2), output[i].getRecord().get(0).toDouble(), 1e-6);
+            }
+
+            assertTrue(ArrowAllocators.getInstance().getAllocatedBytes() > before);
+            ArrowBatchRecord.release(output);
+            assertEquals(0, ArrowAllocators.getInstance().getAllocatedBytes());
+        } finally {
+            runner.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEmptyColumnarOutputClosesScope() throws Exception {
+        PmmlInferenceExecutionerPipelineStepRunner runner = new PmmlInferenceExecutionerPipelineStepRunner(columnarPipelineStep());
+        try {
+            int activeScopes = ArrowAllocators.getInstance().getActiveScopes();
+            Record[] output = runner.transform(new Record[0]);
+            assertEquals(0, output.length);
+            assertEquals(activeScopes, ArrowAllocators.getInstance().getActiveScopes());
+            assertEquals(0, ArrowAllocators.getInstance().getAllocatedBytes());
+        } finally {
+            runner.destroy();
+        }
+    }
+
+    private PmmlPipelineStep columnarPipelineStep() throws Exception {
+        File model = folder.newFile("regression.pmml");
+        FileUtils.copyInputStreamToFile(new ClassPathResource("pmml/regression.pmml").getInputStream(), model);
+
+        return PmmlPipelineStep.builder()
+                .modelConfig(PmmlConfig.builder()
+                        .modelConfigType(ModelConfigType.pmml(model.getAbsolutePath()))
+                        .build())
+                .servingConfig(ServingConfig.builder().build())
+                .inputName("default")
+                .outputName("default")
+                .inputSchema("default", new SchemaType[] {SchemaType.Double, SchemaType.Double})
+                .outputSchema("default", new SchemaType[] {SchemaType.Double})
+                .inputColumnName("default", Arrays.asList("x1", "x2"))
+                .outputColumnName("default", Arrays.asList("y"))
+                .columnarOutput(true)
+                .build();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.pmml.util;
+
+import ai.konduit.serving.util.ArrowAllocators;
+import ai.konduit.serving.util.ArrowBatchRecord;
+import org.datavec.api.records.Record;
+import org.datavec.api.transform.schema.Schema;
+import org.dmg.pmml.FieldName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PmmlUtilsTest {
+
+    @Test(timeout = 60000)
+    public void testToArrowBatchReleasedWithScope() {
+        ArrowAllocators allocators = new ArrowAllocators(1024 * 1024, 1024 * 1024, 0);
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("y")
+                .addColumnInteger("count")
+                .addColumnString("label")
+                .build();
+
+        List<Map<FieldName, Object>> pmmlOutput = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            Map<FieldName, Object> row = new LinkedHashMap<>();
+            row.put(FieldName.create("y"), i + 0.5);
+            row.put(FieldName.create("count"), i);
+            row.put(FieldName.create("label"), "label" + i);
+            pmmlOutput.add(row);
+        }
+
+        ArrowAllocators.RequestScope scope = allocators.newRequestScope();
+        Record[] records = ArrowBatchRecord.wrap(PmmlUtils.toArrowBatch(scope, pmmlOutput, schema), scope);
+        assertEquals(3, records.length);
+        for(int i = 0; i < records.length; i++) {
+            assertEquals(i + 0.5, records[i].getRecord().get(0).toDouble(), 1e-6);
+            assertEquals(i, records[i].getRecord().get(1).toInt());
+            assertEquals("label" + i, records[i].getRecord().get(2).toString());
+        }
+
+        assertSame(scope, ArrowBatchRecord.scopeOf(records));
+        assertTrue(allocators.getAllocatedBytes() > 0);
+
+        ArrowBatchRecord.release(records);
+        assertEquals(0, allocators.getAllocatedBytes());
+        assertEquals(0, allocators.getActiveScopes());
+    }
+
+}
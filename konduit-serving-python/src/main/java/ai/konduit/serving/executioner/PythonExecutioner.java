@@ -23,28 +23,27 @@
 package ai.konduit.serving.executioner;
 
 import ai.konduit.serving.util.python.NumpyArray;
+import ai.konduit.serving.util.python.PythonObjectConverter;
 import ai.konduit.serving.util.python.PythonTransform;
 import ai.konduit.serving.util.python.PythonVariables;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.bytedeco.cpython.PyObject;
 import org.bytedeco.cpython.PyThreadState;
 import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerPointer;
 import org.bytedeco.numpy.global.numpy;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.nd4j.base.Preconditions;
-import org.nd4j.linalg.api.buffer.DataType;
-import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.io.ClassPathResource;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -59,7 +58,6 @@ import static org.bytedeco.cpython.global.python.*;
 @Slf4j
 public class PythonExecutioner {
 
-    private final static String fileVarName = "_f" + Nd4j.getRandom().nextInt();
     private static boolean init;
     public final static String DEFAULT_PYTHON_PATH_PROPERTY = "ai.konduit.serving.python.path";
     public final static String JAVACPP_PYTHON_APPEND_TYPE = "ai.konduit.serving.python.javacpp.path.append";
@@ -70,6 +68,11 @@ public class PythonExecutioner {
     public final static String ALL_VARIABLES_KEY = "allVariables";
     public final static String MAIN_INTERPRETER_NAME = "main";
     private static String clearVarsCode;
+    private static String wrapperCode;
+    //compiled (wrapped) code objects per interpreter, keyed by the user code, least recently used evicted first
+    private static Map<String, CompiledCodeCache> compiledCode = new java.util.concurrent.ConcurrentHashMap<>();
+    public final static int MAX_COMPILED_CODE_PER_INTERPRETER = 256;
+    private final static String NUMPY_SUB_INTERPRETER_MESSAGE = "Unable to execute numpy on sub interpreter. See https://mail.python.org/pipermail/python-dev/2019-January/156095.html for the reasons.";
 
     private static String currentInterpreter = MAIN_INTERPRETER_NAME;
 
@@ -153,6 +156,12 @@ public class PythonExecutioner {
             throw new IllegalStateException("Unable to read pythonexec/clear_vars.py");
         }
 
+        try(InputStream is = new ClassPathResource("pythonexec/pythonexec.py").getInputStream()) {
+            wrapperCode = IOUtils.toString(is, Charset.defaultCharset());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read pythonexec/pythonexec.py",e);
+        }
+
         log.info("CPython: PyEval_InitThreads()");
         PyEval_InitThreads();
         log.info("CPython: Py_InitializeEx()");
@@ -245,6 +254,29 @@ public class PythonExecutioner {
         currentInterpreter = interpreterName;
     }
 
+    /**
+     * Compiled code objects of one interpreter, bounded to
+     * {@link #MAX_COMPILED_CODE_PER_INTERPRETER} entries so code generated per call
+     * can't grow it forever. Only accessed with the GIL held, evicted code objects are released right away.
+     */
+    private static class CompiledCodeCache extends LinkedHashMap<String, PyObject> {
+
+        private CompiledCodeCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PyObject> eldest) {
+            if(size() <= MAX_COMPILED_CODE_PER_INTERPRETER) {
+                return false;
+            }
+
+            log.debug("CPython: Py_DecRef() evicted code object");
+            Py_DecRef(eldest.getValue());
+            return true;
+        }
+    }
+
     public static String getInterpreter(){
         return currentInterpreter;
     }
@@ -254,31 +286,68 @@ public class PythonExecutioner {
         return interpreters.containsKey(interpreterName);
     }
 
-    public static void deleteInterpreter(String interpreterName) {
+    /**
+     * The number of compiled code objects cached for the given interpreter.
+     * @param interpreterName the interpreter name
+     * @return the number of cached code objects, at most {@link #MAX_COMPILED_CODE_PER_INTERPRETER}
+     */
+    public static synchronized int compiledCodeSize(String interpreterName) {
+        CompiledCodeCache interpreterCode = compiledCode.get(interpreterName);
+        return interpreterCode == null ? 0 : interpreterCode.size();
+    }
+
+    /**
+     * Whether the given code currently has a cached code object in the given interpreter.
+     * Doesn't count as a use of the code object.
+     * @param interpreterName the interpreter name
+     * @param code the (unwrapped) code
+     * @return true if the code doesn't need to be compiled again
+     */
+    public static synchronized boolean isCompiled(String interpreterName, String code) {
+        CompiledCodeCache interpreterCode = compiledCode.get(interpreterName);
+        return interpreterCode != null && interpreterCode.containsKey(code);
+    }
+
+    public static synchronized void deleteInterpreter(String interpreterName) {
         if (interpreterName.equals("main")){
             throw new IllegalArgumentException("Can not delete main interpreter");
         }
 
-        Py_EndInterpreter(interpreters.remove(interpreterName));
+        PyThreadState ts = interpreters.remove(interpreterName);
+        CompiledCodeCache interpreterCode = compiledCode.remove(interpreterName);
+        PyThreadState main = PyThreadState_Get();
+        PyThreadState_Swap(ts);
+        if(interpreterCode != null) {
+            //the cache owns a reference to each code object, release them before the interpreter goes away
+            for(PyObject code : interpreterCode.values()) {
+                log.debug("CPython: Py_DecRef() cached code object");
+                Py_DecRef(code);
+            }
+
+            interpreterCode.clear();
+        }
+
+        Py_EndInterpreter(ts);
+        PyThreadState_Swap(main);
     }
 
     private static synchronized void acquireGIL() {
-        log.info("acquireGIL()");
-        log.info("CPython: PyEval_SaveThread()");
+        log.debug("acquireGIL()");
+        log.debug("CPython: PyEval_SaveThread()");
         mainThreadState = PyEval_SaveThread();
-        log.info("CPython: PyThreadState_New()");
+        log.debug("CPython: PyThreadState_New()");
         currentThreadState = PyThreadState_New(interpreters.get(currentInterpreter).interp());
-        log.info("CPython: PyEval_RestoreThread()");
+        log.debug("CPython: PyEval_RestoreThread()");
         PyEval_RestoreThread(currentThreadState);
-        log.info("CPython: PyThreadState_Swap()");
+        log.debug("CPython: PyThreadState_Swap()");
         PyThreadState_Swap(currentThreadState);
 
     }
 
     private static synchronized void releaseGIL() {
-        log.info("CPython: PyEval_SaveThread()");
+        log.debug("CPython: PyEval_SaveThread()");
         PyEval_SaveThread();
-        log.info("CPython: PyEval_RestoreThread()");
+        log.debug("CPython: PyEval_RestoreThread()");
         PyEval_RestoreThread(mainThreadState);
     }
 
@@ -292,218 +361,146 @@ public class PythonExecutioner {
 
 
 
-    private static String inputCode(PythonVariables pyInputs)throws Exception {
-        String inputCode = "";
-        if (pyInputs == null){
-            return inputCode;
-        }
-
-        Map<String, String> strInputs = pyInputs.getStrVariables();
-        Map<String, Long> intInputs = pyInputs.getIntVariables();
-        Map<String, Double> floatInputs = pyInputs.getFloatVariables();
-        Map<String, NumpyArray> ndInputs = pyInputs.getNdVars();
-        Map<String, Object[]> listInputs = pyInputs.getListVariables();
-        Map<String, String> fileInputs = pyInputs.getFileVariables();
-        Map<String, Map<?,?>> dictInputs = pyInputs.getDictVariables();
-
-        String[] varNames;
-
-
-        varNames = strInputs.keySet().toArray(new String[strInputs.size()]);
-        for(String varName: varNames) {
-            Preconditions.checkNotNull(varName,"Var name is null!");
-            Preconditions.checkNotNull(varName.isEmpty(),"Var name can not be empty!");
-            String varValue = strInputs.get(varName);
-            //inputCode += varName + "= {}\n";
-            if(varValue != null)
-                inputCode += varName + " = \"\"\"" + escapeStr(varValue) + "\"\"\"\n";
-            else {
-                inputCode += varName + " = ''\n";
+    /**
+     * Bind the inputs as globals of the current interpreter, run the code
+     * and read the outputs back, all through the C-API under one GIL acquisition.
+     * Array inputs are removed from the globals afterwards, aliases the code kept
+     * keep the java memory alive through the numpy array's base object.
+     */
+    private static synchronized void _exec(String code, PythonVariables pyInputs, PythonVariables pyOutputs) {
+        acquireGIL();
+        try {
+            PyObject globals = PythonObjectConverter.mainGlobals();
+            PythonObjectConverter.setVariables(globals, pyInputs);
+            try {
+                _eval(code, globals);
+                if(pyOutputs != null) {
+                    PythonObjectConverter.readVariables(globals, pyOutputs);
+                }
+            } finally {
+                PythonObjectConverter.removeArrayVariables(globals, pyInputs);
             }
+        } finally {
+            releaseGIL();
         }
+    }
 
-        varNames = intInputs.keySet().toArray(new String[intInputs.size()]);
-        for(String varName: varNames) {
-            Long varValue = intInputs.get(varName);
-            if(varValue != null)
-                inputCode += varName + " = " + varValue.toString() + "\n";
-            else {
-                inputCode += " = 0\n";
+    private static synchronized Map<String,Object> _execAndReadAllVariables(String code, PythonVariables pyInputs) {
+        acquireGIL();
+        try {
+            PyObject globals = PythonObjectConverter.mainGlobals();
+            PythonObjectConverter.setVariables(globals, pyInputs);
+            try {
+                _eval(code, globals);
+                return PythonObjectConverter.readAllVariables(globals);
+            } finally {
+                PythonObjectConverter.removeArrayVariables(globals, pyInputs);
             }
+        } finally {
+            releaseGIL();
         }
+    }
 
-        varNames = dictInputs.keySet().toArray(new String[dictInputs.size()]);
-        for(String varName: varNames) {
-            Map<?,?> varValue = dictInputs.get(varName);
-            if(varValue != null) {
-                throw new IllegalArgumentException("Unable to generate input code for dictionaries.");
+    /**
+     * Run the given (unwrapped) code in the given globals. The code is compiled
+     * once per interpreter and the code object reused on later calls,
+     * so repeated calls only pay for binding the inputs and evaluating.
+     * Must be called with the GIL held.
+     */
+    private static synchronized void _eval(String code, PyObject globals) {
+        CompiledCodeCache interpreterCode = compiledCode.computeIfAbsent(currentInterpreter, k -> new CompiledCodeCache());
+        PyObject compiled = interpreterCode.get(code);
+        if(compiled == null) {
+            String wrapped = getWrappedCode(code);
+            if(log.isDebugEnabled()) {
+                log.debug(wrapped);
             }
-            else {
-                inputCode += " = {}\n";
+            log.debug("CPython: Py_CompileStringExFlags()");
+            compiled = Py_CompileStringExFlags(wrapped, "<konduit-serving>", Py_file_input, null, -1);
+            if(compiled == null || compiled.isNull()) {
+                throw new RuntimeException("Unable to compile python code starting with \"" + firstLine(code) + "\": " + fetchPythonError());
             }
-        }
 
-        varNames = floatInputs.keySet().toArray(new String[floatInputs.size()]);
-        for(String varName: varNames){
-            Double varValue = floatInputs.get(varName);
-            if(varValue != null)
-                inputCode += varName + " = " + varValue.toString() + "\n";
-            else {
-                inputCode += varName + " = 0.0\n";
-            }
+            //the cache owns the reference from here on, the least recently used code object is released
+            interpreterCode.put(code, compiled);
         }
 
-        varNames = listInputs.keySet().toArray(new String[listInputs.size()]);
-        for (String varName: varNames) {
-            Object[] varValue = listInputs.get(varName);
-            if(varValue != null) {
-                String listStr = jArrayToPyString(varValue);
-                inputCode += varName + " = " + listStr + "\n";
-            }
-            else {
-                inputCode += varName + " + []\n";
-            }
-
+        log.debug("CPython: PyEval_EvalCode()");
+        PyObject result = PyEval_EvalCode(compiled, globals, globals);
+        if(result == null || result.isNull()) {
+            log.info("CPython: PyErr_Print");
+            PyErr_Print();
+            throw new RuntimeException("exec failed");
         }
 
-        varNames = fileInputs.keySet().toArray(new String[fileInputs.size()]);
-        for(String varName: varNames) {
-            String varValue = fileInputs.get(varName);
-            if(varValue != null)
-                inputCode += varName + " = \"\"\"" + escapeStr(varValue) + "\"\"\"\n";
-            else {
-                inputCode += varName + " = ''\n";
+        Py_DecRef(result);
+    }
+
+    private static String firstLine(String code) {
+        for(String line : code.split("\n")) {
+            if(!line.trim().isEmpty()) {
+                return line.trim();
             }
         }
 
-        if (!ndInputs.isEmpty()) {
-            inputCode += "import ctypes\n\nimport sys\nimport numpy as np\n";
-            varNames = ndInputs.keySet().toArray(new String[ndInputs.size()]);
-
-            String converter = "__arr_converter = lambda addr, shape, type: np.ctypeslib.as_array(ctypes.cast(addr, ctypes.POINTER(type)), shape)\n";
-            inputCode += converter;
-            for(String varName: varNames) {
-                NumpyArray npArr = ndInputs.get(varName);
-                if(npArr == null)
-                    continue;
-
-                npArr = npArr.copy();
-                String shapeStr = "(";
-                for (long d: npArr.getShape()){
-                    shapeStr += d + ",";
-                }
-                shapeStr += ")";
-                String code;
-                String ctype;
-                if (npArr.getDtype() == DataType.FLOAT) {
-
-                    ctype = "ctypes.c_float";
-                }
-                else if (npArr.getDtype() == DataType.DOUBLE) {
-                    ctype = "ctypes.c_double";
-                }
-                else if (npArr.getDtype() == DataType.SHORT) {
-                    ctype = "ctypes.c_int16";
-                }
-                else if (npArr.getDtype() == DataType.INT) {
-                    ctype = "ctypes.c_int32";
-                }
-                else if (npArr.getDtype() == DataType.LONG){
-                    ctype = "ctypes.c_int64";
-                }
-                else{
-                    throw new Exception("Unsupported data type: " + npArr.getDtype().toString() + ".");
-                }
+        return "";
+    }
 
-                code = "__arr_converter(" + npArr.getAddress() + "," + shapeStr + "," + ctype + ")";
-                code =  varName + "=" + code + "\n";
-                inputCode += code;
+    /**
+     * Fetch and clear the pending python error. Must be called with the GIL held.
+     * @return the error the way python reports it on the last line of a traceback,
+     * eg: SyntaxError: invalid syntax (&lt;konduit-serving&gt;, line 3)
+     */
+    private static String fetchPythonError() {
+        PointerPointer type = new PointerPointer(1), value = new PointerPointer(1), traceback = new PointerPointer(1);
+        PyErr_Fetch(type, value, traceback);
+        //syntax errors are raised as an unnormalized tuple of message and location
+        PyErr_NormalizeException(type, value, traceback);
+        PyObject errorType = fetched(type), errorValue = fetched(value), errorTraceback = fetched(traceback);
+        try {
+            String name = errorType == null ? null : pythonString(PyObject_GetAttrString(errorType, "__name__"));
+            String message = errorValue == null ? null : pythonString(PyObject_Str(errorValue));
+            if(name == null) {
+                return message == null ? "unknown python error" : message;
             }
 
+            return message == null || message.isEmpty() ? name : name + ": " + message;
+        } finally {
+            Py_DecRef(errorType);
+            Py_DecRef(errorValue);
+            Py_DecRef(errorTraceback);
+
+            //formatting the error can raise on its own, it has nothing to add
+            PyErr_Clear();
         }
-        return inputCode;
     }
 
+    private static PyObject fetched(PointerPointer pointer) {
+        Pointer object = pointer.get();
+        return object == null || object.isNull() ? null : new PyObject(object);
+    }
 
-    private static synchronized  void _readOutputs(PythonVariables pyOutputs) throws IOException {
-        File f = new File(getTempFile());
-        Preconditions.checkState(f.exists(),"File " + f.getAbsolutePath() + " failed to get written for reading outputs!");
-        String json = FileUtils.readFileToString(f, Charset.defaultCharset());
-        log.info("Executioner output: ");
-        log.info(json);
-        f.delete();
-
-        if(json.isEmpty()) {
-            log.warn("No json found fore reading outputs. Returning.");
-            return;
+    /**
+     * @return the utf-8 text of the given python string, consuming the reference, or null
+     */
+    private static String pythonString(PyObject str) {
+        if(str == null || str.isNull()) {
+            return null;
         }
 
-
-        JSONParser p = new JSONParser();
-        try{
-            JSONObject jobj = (JSONObject) p.parse(json);
-            for (String varName: pyOutputs.getVariables()){
-                PythonVariables.Type type = pyOutputs.getType(varName);
-                if (type == PythonVariables.Type.NDARRAY){
-                    JSONObject varValue = (JSONObject)jobj.get(varName);
-                    long address = (Long)varValue.get("address");
-                    JSONArray shapeJson = (JSONArray)varValue.get("shape");
-                    JSONArray stridesJson = (JSONArray)varValue.get("strides");
-                    long[] shape = jsonArrayToLongArray(shapeJson);
-                    long[] strides = jsonArrayToLongArray(stridesJson);
-                    String dtypeName = (String)varValue.get("dtype");
-                    DataType dtype;
-                    if (dtypeName.equals("float64")){
-                        dtype = DataType.DOUBLE;
-                    }
-                    else if (dtypeName.equals("float32")){
-                        dtype = DataType.FLOAT;
-                    }
-                    else if (dtypeName.equals("int16")){
-                        dtype = DataType.SHORT;
-                    }
-                    else if (dtypeName.equals("int32")){
-                        dtype = DataType.INT;
-                    }
-                    else if (dtypeName.equals("int64")){
-                        dtype = DataType.LONG;
-                    }
-                    else{
-                        throw new Exception("Unsupported array type " + dtypeName + ".");
-                    }
-
-                    pyOutputs.setValue(varName, new NumpyArray(address, shape, strides, dtype, true));
-
-                    //pyOutputs.setValue(varName, evalNDARRAY(varName));
-
-                }
-                else if (type == PythonVariables.Type.LIST) {
-                    JSONArray varValue = (JSONArray)jobj.get(varName);
-                    pyOutputs.setValue(varName, varValue);
-                    //pyOutputs.setValue(varName, evalLIST(varName));
-                }
-                else if (type == PythonVariables.Type.DICT) {
-                    Map map = toMap((JSONObject) jobj.get(varName));
-                    pyOutputs.setValue(varName, map);
-                    //pyOutputs.setValue(varName, evalDICT(varName));
-
-                }
-                else{
-                    pyOutputs.setValue(varName, jobj.get(varName));
-                }
-            }
-        }
-        catch (Exception e){
-            throw new RuntimeException(e);
+        try {
+            BytePointer utf8 = PyUnicode_AsUTF8(str);
+            return utf8 == null || utf8.isNull() ? null : utf8.getString();
+        } finally {
+            Py_DecRef(str);
         }
     }
 
-
-
-
     private static synchronized void _exec(String code) {
-        log.info(code);
-        log.info("CPython: PyRun_SimpleStringFlag()");
+        if(log.isDebugEnabled()) {
+            log.debug(code);
+        }
+        log.debug("CPython: PyRun_SimpleStringFlag()");
 
         int result = PyRun_SimpleStringFlags(code, null);
         if (result != 0) {
@@ -520,14 +517,14 @@ public class PythonExecutioner {
 
     public static void exec(String code) {
         code = getWrappedCode(code);
-        if(code.contains("import numpy") && !getInterpreter().equals("main")) {
-            throw new IllegalArgumentException("Unable to execute numpy on sub interpreter. See https://mail.python.org/pipermail/python-dev/2019-January/156095.html for the reasons.");
-        }
-
+        checkNumpyInterpreter(code, null);
         acquireGIL();
-        _exec(code);
-        log.info("Exec done");
-        releaseGIL();
+        try {
+            _exec(code);
+        } finally {
+            releaseGIL();
+        }
+        log.debug("Exec done");
     }
 
 
@@ -537,17 +534,8 @@ public class PythonExecutioner {
      * @param pyOutputs the outputs to run
      */
     public static void exec(String code, PythonVariables pyOutputs) {
-
-        exec(code + '\n'  + outputCode(pyOutputs));
-        try {
-
-            _readOutputs(pyOutputs);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        releaseGIL();
+        checkNumpyInterpreter(code, null);
+        _exec(code, null, pyOutputs);
     }
 
 
@@ -560,8 +548,15 @@ public class PythonExecutioner {
      * @throws Exception
      */
     public static void exec(String code, PythonVariables pyInputs, PythonVariables pyOutputs) throws Exception {
-        String inputCode = inputCode(pyInputs);
-        exec(inputCode + code, pyOutputs);
+        checkNumpyInterpreter(code, pyInputs);
+        _exec(code, pyInputs, pyOutputs);
+    }
+
+    private static void checkNumpyInterpreter(String code, PythonVariables pyInputs) {
+        boolean usesNumpy = code.contains("import numpy") || (pyInputs != null && !pyInputs.getNdVars().isEmpty());
+        if(usesNumpy && !getInterpreter().equals(MAIN_INTERPRETER_NAME)) {
+            throw new IllegalArgumentException(NUMPY_SUB_INTERPRETER_MESSAGE);
+        }
     }
 
     private static String interpreterNameFromTransform(PythonTransform transform){
@@ -606,16 +601,11 @@ public class PythonExecutioner {
      * @return all python variables
      */
     public static PythonVariables execAndReturnAllVariables(String code) {
-        exec(code + '\n' + outputCodeForAllVariables());
-        PythonVariables allVars = new PythonVariables();
-        allVars.addDict(ALL_VARIABLES_KEY);
         try {
-            _readOutputs(allVars);
-        }catch (IOException e) {
-            e.printStackTrace();
+            return execAndReturnAllVariables(code, null);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
-
-        return expandInnerDict(allVars, ALL_VARIABLES_KEY);
     }
 
     /**
@@ -626,8 +616,10 @@ public class PythonExecutioner {
      * @throws Exception throws when there's an issue while execution of python code
      */
     public static PythonVariables execAndReturnAllVariables(String code, PythonVariables pyInputs) throws Exception {
-        String inputCode = inputCode(pyInputs);
-        return execAndReturnAllVariables(inputCode + code);
+        checkNumpyInterpreter(code, pyInputs);
+        PythonVariables allVars = new PythonVariables();
+        allVars.addDict(ALL_VARIABLES_KEY, _execAndReadAllVariables(code, pyInputs));
+        return expandInnerDict(allVars, ALL_VARIABLES_KEY);
     }
 
 
@@ -675,146 +667,17 @@ public class PythonExecutioner {
 
 
 
-    private static String getOutputCheckCode(PythonVariables pyOutputs){
-        // make sure all outputs exist and are of expected types
-        // helps avoid JVM crashes (most of the time)
-        String code= "__error_message=''\n";
-        String checkVarExists = "if '%s' not in locals(): __error_message += '%s not found.'\n";
-        String checkVarType = "if not isinstance(%s, %s): __error_message += '%s is not of required type.'\n";
-        for (String varName: pyOutputs.getVariables()){
-            PythonVariables.Type type = pyOutputs.getType(varName);
-            code += String.format(checkVarExists, varName, varName);
-            switch(type){
-                case INT:
-                    code += String.format(checkVarType, varName, "int", varName);
-                    break;
-                case STR:
-                    code += String.format(checkVarType, varName, "str", varName);
-                    break;
-                case FLOAT:
-                    code += String.format(checkVarType, varName, "float", varName);
-                    break;
-                case BOOL:
-                    code += String.format(checkVarType, varName, "bool", varName);
-                    break;
-                case NDARRAY:
-                    code += String.format(checkVarType, varName, "np.ndarray", varName);
-                    break;
-                case LIST:
-                    code += String.format(checkVarType, varName, "list", varName);
-                    break;
-            }
-        }
-        return code;
-    }
-
-    private static String outputVarName() {
-        return "_" + Thread.currentThread().getId() + "_" + currentInterpreter + "_out";
-    }
-
-    private static  String outputCode(PythonVariables pyOutputs) {
-        if (pyOutputs == null){
-            return "";
-        }
-
-        String outputCode = "import json\n";
-        String outputFunctions;
-        try(BufferedInputStream bufferedInputStream = new BufferedInputStream(new ClassPathResource("pythonexec/serialize_array.py").getInputStream())) {
-            outputFunctions= IOUtils.toString(bufferedInputStream,Charset.defaultCharset());
-            outputCode += outputFunctions;
-            outputCode += "\n";
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to read python file pythonexec/serialize_arrays.py from classpath");
-        }
-
-        outputCode += outputVarName() + " = __serialize_dict({";
-        String[] varNames = pyOutputs.getVariables();
-        for (String varName: varNames) {
-            outputCode += "\"" + varName + "\": " + varName + ",";
-        }
-
-
-        if (varNames.length > 0)
-            outputCode = outputCode.substring(0, outputCode.length() - 1);
-        outputCode += "})";
-        outputCode += "\nwith open('" + getTempFile() + "', 'w') as " + fileVarName + ":" + fileVarName + ".write(" + outputVarName() + ")";
-
-
-        return outputCode;
-
-    }
-
-    private static String jArrayToPyString(Object[] array) {
-        String str = "[";
-        for (int i = 0; i < array.length; i++){
-            Object obj = array[i];
-            if (obj instanceof Object[]){
-                str += jArrayToPyString((Object[])obj);
-            }
-            else if (obj instanceof String){
-                str += "\"" + obj + "\"";
-            }
-            else{
-                str += obj.toString().replace("\"", "\\\"");
-            }
-            if (i < array.length - 1){
-                str += ",";
-            }
-
-        }
-        str += "]";
-        return str;
-    }
-
-    private static String escapeStr(String str) {
-        if(str == null)
-            return null;
-        str = str.replace("\\", "\\\\");
-        str = str.replace("\"\"\"", "\\\"\\\"\\\"");
-        return str;
-    }
-
     private static String getWrappedCode(String code) {
-        try(InputStream is = new ClassPathResource("pythonexec/pythonexec.py").getInputStream()) {
-            String base = IOUtils.toString(is, Charset.defaultCharset());
-            StringBuffer indentedCode = new StringBuffer();
-            for(String split : code.split("\n")) {
-                indentedCode.append("    " + split + "\n");
-
-            }
-            String out = base.replace("    pass",indentedCode);
-            return out;
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to read python code!",e);
+        StringBuilder indentedCode = new StringBuilder(code.length() + 64);
+        for(String split : code.split("\n")) {
+            indentedCode.append("    ").append(split).append("\n");
         }
 
+        return wrapperCode.replace("    pass",indentedCode);
     }
 
 
 
-    private static String getTempFile(){
-        String ret =  "temp_" + Thread.currentThread().getId() + "_" + currentInterpreter +  ".json";
-        log.info(ret);
-        return ret;
-    }
-
-
-    private static String outputCodeForAllVariables(){
-        String outputCode = "";
-        try(BufferedInputStream bufferedInputStream = new BufferedInputStream(new ClassPathResource("pythonexec/outputcode.py").getInputStream())) {
-            outputCode  += IOUtils.toString(bufferedInputStream,Charset.defaultCharset()).replace("f2",fileVarName);
-            outputCode += "\n";
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to read python file pythonexec/outputcode.py from classpath");
-        }
-
-        outputCode += String.format("vars =  {key:value for (key,value) in locals().items() if not key.startswith('_') and key is not '%s' and key is not 'loc' and type(value) in (list, dict, str, int, float, bool) or value is None}\n",fileVarName);
-        outputCode += String.format("with open('" + getTempFile() + "', 'w') as %s:json.dump({",fileVarName);
-        outputCode +=String.format( "\"" + ALL_VARIABLES_KEY + "\"" + ": vars}, %s)\n",fileVarName);
-        return outputCode;
-    }
-
-
     /*-----monkey patch for numpy-----*/
     private static List<String[]> _getPatches() {
         exec("import numpy as np");
@@ -0,0 +1,242 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.executioner;
+
+import ai.konduit.serving.util.python.PythonVariables;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A pool of pre-started python interpreters, each in its own process.
+ * Unlike {@link PythonExecutioner}, which runs everything in the single
+ * interpreter embedded in the jvm and serializes all calls on the GIL,
+ * calls against the pool run in parallel on up to numWorkers cores.
+ *
+ * Every worker keeps its own namespace per piece of code, so
+ * a #&lt;SETUP&gt; block runs once per worker. Arrays are exchanged through
+ * files in the shared memory directory, everything
+ * else as json over the process pipes.
+ *
+ * The python executable needs numpy installed when arrays are passed.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+public class PythonProcessPool implements AutoCloseable {
+
+    public final static String PYTHON_EXECUTABLE_PROPERTY = "ai.konduit.serving.python.executable";
+    public final static String DEFAULT_PYTHON_EXECUTABLE = "python3";
+    public final static File DEFAULT_SHARED_MEMORY_DIRECTORY = new File("/dev/shm");
+
+    private static File workerScript;
+
+    @Getter
+    private final int numWorkers;
+    private final List<String> command;
+    private final String pythonPath;
+    private final File sharedMemoryDirectory;
+    @Getter
+    private final long timeoutMillis;
+    private final BlockingQueue<PythonWorkerProcess> idleWorkers;
+    private final List<PythonWorkerProcess> workers = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor watchdog;
+    private volatile boolean closed;
+
+    /**
+     * @param numWorkers the number of python processes to start
+     * @param pythonExecutable the python executable, defaults to the
+     *                         {@link #PYTHON_EXECUTABLE_PROPERTY} system property or python3
+     * @param pythonPath the PYTHONPATH for the workers, may be null
+     * @param sharedMemoryDirectory where arrays are exchanged, defaults to /dev/shm
+     *                              when present, the temp directory otherwise
+     * @param timeoutMillis how long a call may wait for a free worker and then run on it,
+     *                      a worker missing the deadline is killed and replaced. Zero or less waits forever.
+     */
+    @Builder
+    public PythonProcessPool(int numWorkers, String pythonExecutable, String pythonPath, File sharedMemoryDirectory, long timeoutMillis) {
+        Preconditions.checkState(numWorkers > 0, "Number of python workers must be positive, got %s", numWorkers);
+        this.numWorkers = numWorkers;
+        this.pythonPath = pythonPath;
+        this.timeoutMillis = timeoutMillis;
+        if(timeoutMillis > 0) {
+            this.watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "python-worker-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        else {
+            this.watchdog = null;
+        }
+
+        if(pythonExecutable == null) {
+            pythonExecutable = System.getProperty(PYTHON_EXECUTABLE_PROPERTY, DEFAULT_PYTHON_EXECUTABLE);
+        }
+
+        if(sharedMemoryDirectory == null) {
+            sharedMemoryDirectory = DEFAULT_SHARED_MEMORY_DIRECTORY.isDirectory() ?
+                    DEFAULT_SHARED_MEMORY_DIRECTORY : new File(System.getProperty("java.io.tmpdir"));
+        }
+
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+        this.idleWorkers = new ArrayBlockingQueue<>(numWorkers);
+        try {
+            this.command = Arrays.asList(pythonExecutable, "-u", workerScript().getAbsolutePath());
+            for(int i = 0; i < numWorkers; i++) {
+                PythonWorkerProcess worker = new PythonWorkerProcess(i, command, pythonPath, sharedMemoryDirectory);
+                workers.add(worker);
+                idleWorkers.add(worker);
+            }
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Unable to start python workers with " + pythonExecutable, e);
+        }
+
+        log.info("Started {} python workers using {}", numWorkers, pythonExecutable);
+    }
+
+    /**
+     * Run the code on the next free worker, blocking until one is available.
+     * With a timeout, both the wait for a worker and the call itself are bounded by it.
+     * @param code the code to run
+     * @param pyInputs the inputs to the code, may be null
+     * @param pyOutputs the outputs to read back, values are set in place
+     * @throws TimeoutException if no worker became free or the worker didn't answer in time
+     * @throws Exception if the code failed or the worker died, a dead or late worker is replaced
+     */
+    public void exec(String code, PythonVariables pyInputs, PythonVariables pyOutputs) throws Exception {
+        Preconditions.checkState(!closed, "Python process pool is closed");
+        PythonWorkerProcess worker;
+        if(timeoutMillis > 0) {
+            worker = idleWorkers.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if(worker == null) {
+                throw new TimeoutException("No python worker became available within " + timeoutMillis + " ms");
+            }
+        }
+        else {
+            worker = idleWorkers.take();
+        }
+
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline = null;
+        if(watchdog != null) {
+            PythonWorkerProcess running = worker;
+            deadline = watchdog.schedule(() -> {
+                expired.set(true);
+                running.kill();
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        boolean dead = false;
+        try {
+            worker.exec(code, pyInputs, pyOutputs);
+        } catch (IOException e) {
+            dead = true;
+            if(expired.get()) {
+                TimeoutException timeout = new TimeoutException("Python worker did not finish within " + timeoutMillis + " ms and was restarted");
+                timeout.initCause(e);
+                throw timeout;
+            }
+
+            throw e;
+        } finally {
+            //the watchdog may have fired right as the call returned, never hand out a killed worker
+            if(deadline != null && !deadline.cancel(false)) {
+                dead = true;
+            }
+
+            if(dead) {
+                worker = replace(worker);
+            }
+
+            if(worker != null) {
+                idleWorkers.add(worker);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if(watchdog != null) {
+            watchdog.shutdownNow();
+        }
+
+        synchronized (workers) {
+            for(PythonWorkerProcess worker : workers) {
+                worker.close();
+            }
+
+            workers.clear();
+        }
+    }
+
+    private PythonWorkerProcess replace(PythonWorkerProcess dead) {
+        log.warn("Python worker died or missed its deadline, starting a new one");
+        synchronized (workers) {
+            int id = workers.indexOf(dead);
+            dead.close();
+            if(closed || id < 0) {
+                return null;
+            }
+
+            try {
+                PythonWorkerProcess worker = new PythonWorkerProcess(id, command, pythonPath, sharedMemoryDirectory);
+                workers.set(id, worker);
+                return worker;
+            } catch (IOException e) {
+                //keep the dead worker in rotation, the next call on it retries the restart
+                log.error("Unable to restart python worker " + id, e);
+                return dead;
+            }
+        }
+    }
+
+    private static synchronized File workerScript() throws IOException {
+        if(workerScript == null) {
+            File script = File.createTempFile("konduit-python-worker", ".py");
+            script.deleteOnExit();
+            try(InputStream is = new ClassPathResource("pythonexec/worker.py").getInputStream()) {
+                FileUtils.copyInputStreamToFile(is, script);
+            }
+
+            workerScript = script;
+        }
+
+        return workerScript;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.executioner;
+
+import ai.konduit.serving.util.python.PythonVariables;
+import lombok.extern.slf4j.Slf4j;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A single python interpreter running in its own process.
+ * Requests and responses are length prefixed json messages
+ * over the stdin/stdout pipes of the process, arrays are passed
+ * as raw files in a shared memory directory (/dev/shm on linux)
+ * instead of serializing the data. The worker maps them, this side
+ * uses plain channel reads and writes straight from and in to the nd4j buffers
+ * so no mapping outlives a request. Output files carry a prefix unique to the worker,
+ * whatever a dead or killed worker left behind is removed when it is closed.
+ *
+ * Not thread safe: one request at a time, see {@link PythonProcessPool}.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+class PythonWorkerProcess implements Closeable {
+
+    private final int id;
+    private final Process process;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final File sharedMemoryDirectory;
+    private final String outputPrefix;
+
+    PythonWorkerProcess(int id, List<String> command, String pythonPath, File sharedMemoryDirectory) throws IOException {
+        this.id = id;
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+        this.outputPrefix = "konduit-out-" + UUID.randomUUID() + "-";
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        if(pythonPath != null) {
+            processBuilder.environment().put("PYTHONPATH", pythonPath);
+        }
+
+        this.process = processBuilder.start();
+        this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        log.debug("Started python worker {}", id);
+    }
+
+    /**
+     * @return true if the underlying process is still running
+     */
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Run the code in the worker process.
+     * @param code the code to run
+     * @param pyInputs the inputs to the code, may be null
+     * @param pyOutputs the outputs to read back, values are set in place
+     * @throws IOException if the worker could not be reached, the worker should be discarded
+     * @throws RuntimeException if the python code failed
+     */
+    void exec(String code, PythonVariables pyInputs, PythonVariables pyOutputs) throws IOException {
+        List<File> inputFiles = new ArrayList<>();
+        try {
+            JSONObject inputs = new JSONObject();
+            if(pyInputs != null) {
+                for(String name : pyInputs.getVariables()) {
+                    inputs.put(name, toJson(pyInputs.getType(name), pyInputs.getValue(name), inputFiles));
+                }
+            }
+
+            JSONObject outputs = new JSONObject();
+            for(String name : pyOutputs.getVariables()) {
+                outputs.put(name, pyOutputs.getType(name).name());
+            }
+
+            JSONObject request = new JSONObject();
+            request.put("code", code);
+            request.put("inputs", inputs);
+            request.put("outputs", outputs);
+            request.put("shm", sharedMemoryDirectory.getAbsolutePath());
+            request.put("prefix", outputPrefix);
+            writeMessage(request.toJSONString());
+
+            JSONObject response = (JSONObject) new JSONParser().parse(readMessage());
+            if(response.containsKey("error")) {
+                throw new RuntimeException("Python worker " + id + " failed to run code:\n" + response.get("error"));
+            }
+
+            JSONObject values = (JSONObject) response.get("outputs");
+            //every output file is deleted even when reading an earlier one fails
+            List<File> outputFiles = new ArrayList<>();
+            for(Object value : values.values()) {
+                Object path = ((JSONObject) value).get("path");
+                if(path != null) {
+                    outputFiles.add(new File((String) path));
+                }
+            }
+
+            try {
+                for(String name : pyOutputs.getVariables()) {
+                    pyOutputs.setValue(name, fromJson((JSONObject) values.get(name)));
+                }
+            } finally {
+                deleteAll(outputFiles);
+            }
+        } catch (ParseException e) {
+            throw new IOException("Invalid response from python worker " + id, e);
+        } finally {
+            deleteAll(inputFiles);
+        }
+    }
+
+    /**
+     * Kill the process right away, a call blocked on it fails with an {@link IOException}.
+     * The files it left behind are removed by {@link #close()}.
+     */
+    void kill() {
+        process.destroyForcibly();
+    }
+
+    @Override
+    public void close() {
+        try {
+            //end of input makes the worker exit its loop
+            out.close();
+            if(!process.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor(5, java.util.concurrent.TimeUnit.SECONDS);
+            }
+        } catch (IOException e) {
+            destroy();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+
+        //outputs of a request the worker was killed in the middle of
+        File[] leftovers = sharedMemoryDirectory.listFiles((dir, name) -> name.startsWith(outputPrefix));
+        if(leftovers != null) {
+            deleteAll(Arrays.asList(leftovers));
+        }
+    }
+
+    private void destroy() {
+        try {
+            process.destroyForcibly().waitFor(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteAll(List<File> files) {
+        for(File file : files) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                log.warn("Unable to delete python worker array file " + file, e);
+            }
+        }
+    }
+
+    private void writeMessage(String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    private String readMessage() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private JSONObject toJson(PythonVariables.Type type, Object value, List<File> inputFiles) throws IOException {
+        JSONObject ret = new JSONObject();
+        ret.put("type", type.name());
+        switch(type) {
+            case NDARRAY:
+                INDArray arr = ((ai.konduit.serving.util.python.NumpyArray) value).getNd4jArray();
+                File file = File.createTempFile("konduit-in-", "", sharedMemoryDirectory);
+                inputFiles.add(file);
+                DataType dataType = writeArray(arr, file);
+                ret.put("path", file.getAbsolutePath());
+                ret.put("dtype", numpyDataType(dataType));
+                JSONArray shape = new JSONArray();
+                for(long dim : arr.shape()) {
+                    shape.add(dim);
+                }
+                ret.put("shape", shape);
+                break;
+            case LIST:
+                JSONArray list = new JSONArray();
+                list.addAll(Arrays.asList((Object[]) value));
+                ret.put("value", list);
+                break;
+            case DICT:
+                ret.put("value", new JSONObject((Map) value));
+                break;
+            default:
+                ret.put("value", value);
+                break;
+        }
+
+        return ret;
+    }
+
+    private Object fromJson(JSONObject variable) throws IOException {
+        PythonVariables.Type type = PythonVariables.Type.valueOf((String) variable.get("type"));
+        switch(type) {
+            case NDARRAY:
+                List<?> shapeList = (List<?>) variable.get("shape");
+                long[] shape = new long[shapeList.size()];
+                for(int i = 0; i < shape.length; i++) {
+                    shape[i] = ((Number) shapeList.get(i)).longValue();
+                }
+                return readArray(new File((String) variable.get("path")), (String) variable.get("dtype"), shape);
+            case LIST:
+                return ((List<?>) variable.get("value")).toArray();
+            default:
+                return variable.get("value");
+        }
+    }
+
+    /**
+     * Write the array in c order and native byte order to the given file.
+     * Types without a direct numpy equivalent here are written as float64.
+     * @return the data type the array was written as
+     */
+    private static DataType writeArray(INDArray arr, File file) throws IOException {
+        DataType dataType = arr.dataType();
+        if(dataType != DataType.FLOAT && dataType != DataType.DOUBLE && dataType != DataType.INT && dataType != DataType.LONG) {
+            arr = arr.castTo(DataType.DOUBLE);
+            dataType = DataType.DOUBLE;
+        }
+
+        if(arr.isView() || arr.ordering() != 'c') {
+            arr = arr.dup('c');
+        }
+
+        long numBytes = arr.length() * arr.data().getElementSize();
+        if(numBytes == 0) {
+            return dataType;
+        }
+
+        //the array's own memory, no copy on the java heap
+        ByteBuffer buffer = arrayBytes(arr, numBytes);
+        //mapped buffers are only unmapped on gc, tmpfs pages would stay pinned until then
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        return dataType;
+    }
+
+    private static INDArray readArray(File file, String dtype, long[] shape) throws IOException {
+        DataType dataType = nd4jDataType(dtype);
+        INDArray ret = Nd4j.createUninitialized(dataType, shape, 'c');
+        long numBytes = ret.length() * ret.data().getElementSize();
+        if(numBytes == 0) {
+            return ret;
+        }
+
+        //numpy and nd4j agree on the layout of every supported type: read straight in to the array's memory
+        ByteBuffer buffer = arrayBytes(ret, numBytes);
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException("Array file " + file + " ended after " + buffer.position() + " of " + numBytes + " bytes");
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * A direct buffer over the memory of the given c ordered array.
+     */
+    private static ByteBuffer arrayBytes(INDArray arr, long numBytes) {
+        if(numBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Arrays larger than 2GB can't be passed to a python worker");
+        }
+
+        ByteBuffer buffer = arr.data().asNio();
+        int offset = (int) (arr.offset() * arr.data().getElementSize());
+        buffer.limit(offset + (int) numBytes);
+        buffer.position(offset);
+        return buffer;
+    }
+
+    private static String numpyDataType(DataType dataType) {
+        switch(dataType) {
+            case FLOAT: return "float32";
+            case DOUBLE: return "float64";
+            case INT: return "int32";
+            case LONG: return "int64";
+            default: throw new IllegalStateException("Unsupported data type " + dataType);
+        }
+    }
+
+    private static DataType nd4jDataType(String dtype) {
+        switch(dtype) {
+            case "float32": return DataType.FLOAT;
+            case "float64": return DataType.DOUBLE;
+            case "int32": return DataType.INT;
+            case "int64": return DataType.LONG;
+            case "int16": return DataType.SHORT;
+            case "int8": return DataType.BYTE;
+            case "bool": return DataType.BOOL;
+            default: throw new IllegalStateException("Unsupported numpy data type " + dtype);
+        }
+    }
+}
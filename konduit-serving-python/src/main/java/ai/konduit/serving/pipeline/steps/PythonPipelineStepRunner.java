@@ -23,6 +23,7 @@
 package ai.konduit.serving.pipeline.steps;
 
 import ai.konduit.serving.executioner.PythonExecutioner;
+import ai.konduit.serving.executioner.PythonProcessPool;
 import ai.konduit.serving.executioner.Pipeline;
 import ai.konduit.serving.util.python.PythonTransform;
 import ai.konduit.serving.model.PythonConfig;
@@ -40,6 +41,7 @@ import org.nd4j.base.Preconditions;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -55,13 +57,18 @@ public class PythonPipelineStepRunner extends BasePipelineStepRunner {
 
     private Map<String, PythonTransform> pythonTransform;
     private Map<String,TransformProcess> transformProcesses;
+    //set when the (single) python config runs a batch at a time
+    private PythonTransform batchTransform;
+    private List<PythonProcessPool> processPools;
 
     public PythonPipelineStepRunner(PipelineStep pipelineStep) {
         super(pipelineStep);
         PythonPipelineStep pythonConfig = (PythonPipelineStep) pipelineStep;
         pythonTransform = new HashMap<>();
         transformProcesses = new HashMap<>();
+        processPools = new ArrayList<>();
         boolean setPath = false;
+        boolean inProcess = false;
         for(Map.Entry<String,PythonConfig> configEntry : pythonConfig.getPythonConfigs().entrySet()) {
             Preconditions.checkState(pipelineStep.hasInputName(configEntry.getKey()),"Invalid input name specified for transform " + configEntry.getKey());
             PythonConfig currConfig = configEntry.getValue();
@@ -85,6 +92,21 @@ public class PythonPipelineStepRunner extends BasePipelineStepRunner {
 
             Preconditions.checkNotNull(code,"No code to run!");
             Preconditions.checkState(!code.isEmpty(),"Code resolved to an empty string!");
+            PythonProcessPool processPool = null;
+            if(currConfig.getPythonWorkers() > 0) {
+                Preconditions.checkState(!currConfig.isReturnAllInputs(),"Python worker processes do not support returning all inputs.");
+                processPool = PythonProcessPool.builder()
+                        .numWorkers(currConfig.getPythonWorkers())
+                        .pythonExecutable(currConfig.getPythonExecutable())
+                        .pythonPath(currConfig.getPythonPath())
+                        .timeoutMillis(currConfig.getPythonWorkerTimeoutMillis())
+                        .build();
+                processPools.add(processPool);
+            }
+            else {
+                inProcess = true;
+            }
+
             PythonTransform pythonTransform = PythonTransform.builder()
                     .code(code)
                     .returnAllInputs(currConfig.isReturnAllInputs())
@@ -92,19 +114,37 @@ public class PythonPipelineStepRunner extends BasePipelineStepRunner {
                     .outputs(currConfig.getPythonOutputs() != null ? PythonVariables.schemaFromMap(currConfig.getPythonOutputs()) : null)
                     .inputSchema(pythonConfig.inputSchemaForName(configEntry.getKey()))
                     .outputSchema(pythonConfig.outputSchemaForName(configEntry.getKey()))
+                    .processPool(processPool)
                     .build();
             this.pythonTransform.put(configEntry.getKey(),pythonTransform);
+            if(currConfig.isBatchMode()) {
+                Preconditions.checkState(pythonConfig.getPythonConfigs().size() == 1,"Batch mode is only supported for python steps with a single python config.");
+                Preconditions.checkState(!currConfig.isReturnAllInputs(),"Batch mode does not support returning all inputs.");
+                batchTransform = pythonTransform;
+            }
+
             TransformProcess transformProcess = new TransformProcess.Builder(pythonConfig.inputSchemaForName(configEntry.getKey()))
                     .transform(pythonTransform)
                     .build();
             this.transformProcesses.put(configEntry.getKey(),transformProcess);
         }
 
-        PythonExecutioner.init();
+        //the embedded interpreter is only needed when some code runs in the jvm
+        if(inProcess) {
+            PythonExecutioner.init();
+        }
     }
 
     @Override
     public void destroy() {
+        for(PythonProcessPool processPool : processPools) {
+            processPool.close();
+        }
+
+        if(processPools.size() == pythonTransform.size()) {
+            return;
+        }
+
         //get rid of everything but the main interpreter and clear all the variables but the default one
         PythonExecutioner.clearNonMainInterpreters();
         PythonExecutioner.resetAllInterpreters();
@@ -112,6 +152,10 @@ public class PythonPipelineStepRunner extends BasePipelineStepRunner {
 
     @Override
     public Record[] transform(Record[] input) {
+        if(batchTransform != null) {
+            return transformBatch(input);
+        }
+
         Record[] ret = new Record[input.length];
         for(int i = 0; i < ret.length; i++) {
             if(transformProcesses.containsKey(pipelineStep.inputNameAt(i))) {
@@ -129,6 +173,26 @@ public class PythonPipelineStepRunner extends BasePipelineStepRunner {
         return ret;
     }
 
+    /**
+     * Runs the python code once with every record as a row of the batch.
+     */
+    private Record[] transformBatch(Record[] input) {
+        List<List<Writable>> rows = new ArrayList<>(input.length);
+        for(Record record : input) {
+            Preconditions.checkState(record.getRecord() != null && !record.getRecord().isEmpty(),"Record should not be empty!");
+            rows.add(record.getRecord());
+        }
+
+        List<List<Writable>> execute = batchTransform.mapBatch(rows);
+        Record[] ret = new Record[execute.size()];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = new org.datavec.api.records.impl.Record(execute.get(i),null);
+        }
+
+        log.debug("Post python batch transform execution");
+        return ret;
+    }
+
     @Override
     public void processValidWritable(Writable writable, List<Writable> record, int inputIndex, Object... extraArgs) {
         //no-op here
@@ -0,0 +1,573 @@
+
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+
+package ai.konduit.serving.util.python;
+
+import org.bytedeco.cpython.PyCapsule_Destructor;
+import org.bytedeco.cpython.PyObject;
+import org.bytedeco.cpython.PyTypeObject;
+import org.bytedeco.cpython.Py_buffer;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.SizeTPointer;
+import org.bytedeco.numpy.PyArrayObject;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.bytedeco.cpython.global.python.*;
+import static org.bytedeco.numpy.global.numpy.*;
+
+/**
+ * Moves {@link PythonVariables} in and out of a python namespace
+ * directly through the CPython C-API.
+ * Inputs are set as globals with {@code PyDict_SetItemString},
+ * numpy inputs are created as arrays over the nd4j buffer without a copy
+ * and numpy outputs are read through the buffer protocol.
+ *
+ * All methods must be called with the GIL held
+ * and the thread state of the target interpreter active.
+ *
+ * @author Adam Gibson
+ */
+public class PythonObjectConverter {
+
+    //java arrays wrapped by numpy arrays, by the address of the numpy array's base capsule
+    private final static Map<Long, INDArray> OWNED_ARRAYS = new ConcurrentHashMap<>();
+    //called by python once the last numpy array over the memory is gone, kept reachable for the native callback
+    private final static PyCapsule_Destructor RELEASE_OWNED_ARRAY = new PyCapsule_Destructor() {
+        @Override
+        public void call(PyObject capsule) {
+            OWNED_ARRAYS.remove(capsule.address());
+        }
+    };
+
+    private PythonObjectConverter() {
+    }
+
+    /**
+     * Returns the globals of the __main__ module
+     * of the current interpreter. The reference is borrowed.
+     * @return the globals dict
+     */
+    public static PyObject mainGlobals() {
+        PyObject main = PyImport_AddModule("__main__");
+        checkNotNull(main, "Unable to get the __main__ module");
+        return PyModule_GetDict(main);
+    }
+
+    /**
+     * Set every input variable as a global.
+     * Null values become the empty value of their type, null arrays are skipped.
+     * @param globals the namespace to set the variables in
+     * @param pyInputs the inputs
+     */
+    public static void setVariables(PyObject globals, PythonVariables pyInputs) {
+        if(pyInputs == null) {
+            return;
+        }
+
+        for(String varName : pyInputs.getVariables()) {
+            PythonVariables.Type type = pyInputs.getType(varName);
+            Object value = pyInputs.getValue(varName);
+            PyObject pyValue;
+            switch(type) {
+                case STR:
+                case FILE:
+                    pyValue = toPython(value == null ? "" : value);
+                    break;
+                case INT:
+                    pyValue = toPython(value == null ? 0L : value);
+                    break;
+                case FLOAT:
+                    pyValue = toPython(value == null ? 0.0 : value);
+                    break;
+                case BOOL:
+                    pyValue = toPython(value == null ? Boolean.FALSE : value);
+                    break;
+                case LIST:
+                    pyValue = toPython(value == null ? new Object[0] : value);
+                    break;
+                case DICT:
+                    pyValue = value == null ? PyDict_New() : toPython(value);
+                    break;
+                case NDARRAY:
+                    if(value == null) {
+                        continue;
+                    }
+
+                    pyValue = toPython(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported python variable type " + type + " for " + varName);
+            }
+
+            try {
+                if(PyDict_SetItemString(globals, varName, pyValue) != 0) {
+                    throwPythonError("Unable to set python variable " + varName);
+                }
+            } finally {
+                Py_DecRef(pyValue);
+            }
+        }
+    }
+
+    /**
+     * Remove the array inputs from the given namespace
+     * so their java memory can be released as soon as the script is done with it.
+     * @param globals the namespace the inputs were set in
+     * @param pyInputs the inputs
+     */
+    public static void removeArrayVariables(PyObject globals, PythonVariables pyInputs) {
+        if(pyInputs == null) {
+            return;
+        }
+
+        for(String varName : pyInputs.getNdVars().keySet()) {
+            if(!isNull(PyDict_GetItemString(globals, varName)) && PyDict_DelItemString(globals, varName) != 0) {
+                PyErr_Clear();
+            }
+        }
+    }
+
+    /**
+     * Read every output variable from the given namespace
+     * in to its value in pyOutputs, converted by the declared type.
+     * Arrays are copied in to nd4j.
+     * @param globals the namespace to read from
+     * @param pyOutputs the outputs to fill in
+     */
+    public static void readVariables(PyObject globals, PythonVariables pyOutputs) {
+        for(String varName : pyOutputs.getVariables()) {
+            PyObject value = PyDict_GetItemString(globals, varName);
+            if(isNull(value)) {
+                throw new IllegalStateException("Python variable " + varName + " not found.");
+            }
+
+            PythonVariables.Type type = pyOutputs.getType(varName);
+            switch(type) {
+                case INT:
+                    pyOutputs.setValue(varName, toLong(value));
+                    break;
+                case FLOAT:
+                    pyOutputs.setValue(varName, toDouble(value));
+                    break;
+                case BOOL:
+                    pyOutputs.setValue(varName, PyObject_IsTrue(value) == 1);
+                    break;
+                case STR:
+                case FILE:
+                    pyOutputs.setValue(varName, toJavaString(value));
+                    break;
+                case NDARRAY:
+                    pyOutputs.setValue(varName, toNumpyArray(value));
+                    break;
+                case LIST:
+                    pyOutputs.setValue(varName, toList(value));
+                    break;
+                case DICT:
+                    pyOutputs.setValue(varName, toMap(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported python variable type " + type + " for " + varName);
+            }
+        }
+    }
+
+    /**
+     * Read the public variables of the given namespace: the ones
+     * not starting with an underscore that are None, a bool, an int, a float,
+     * a str, a list or a dict.
+     * @param globals the namespace to read from
+     * @return the variables by name
+     */
+    public static Map<String,Object> readAllVariables(PyObject globals) {
+        Map<String,Object> ret = new LinkedHashMap<>();
+        PyObject items = PyDict_Items(globals);
+        checkNotNull(items, "Unable to list python variables");
+        try {
+            long size = PySequence_Size(items);
+            for(long i = 0; i < size; i++) {
+                PyObject item = PySequence_GetItem(items, i);
+                try {
+                    String key = toJavaString(PyTuple_GetItem(item, 0));
+                    PyObject value = PyTuple_GetItem(item, 1);
+                    if(key.startsWith("_")) {
+                        continue;
+                    }
+
+                    switch(typeName(value)) {
+                        case "NoneType":
+                        case "bool":
+                        case "int":
+                        case "float":
+                        case "str":
+                        case "list":
+                        case "dict":
+                            ret.put(key, toJava(value));
+                            break;
+                        default:
+                            break;
+                    }
+                } finally {
+                    Py_DecRef(item);
+                }
+            }
+        } finally {
+            Py_DecRef(items);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Convert a java value to a new python reference.
+     * Supports strings, numbers, booleans, arrays and lists (as python lists),
+     * maps (as python dicts), {@link NumpyArray} and {@link INDArray}.
+     * Arrays are wrapped without a copy, see {@link #toNumpy(INDArray)}.
+     * @param value the value to convert
+     * @return a new reference to the python value
+     */
+    public static PyObject toPython(Object value) {
+        PyObject ret;
+        if(value == null) {
+            throw new IllegalArgumentException("Unable to convert null values to python");
+        }
+        else if(value instanceof String) {
+            ret = PyUnicode_FromString(utf8((String) value));
+        }
+        else if(value instanceof Boolean) {
+            ret = PyBool_FromLong((Boolean) value ? 1 : 0);
+        }
+        else if(value instanceof Double || value instanceof Float) {
+            ret = PyFloat_FromDouble(((Number) value).doubleValue());
+        }
+        else if(value instanceof Number) {
+            ret = PyLong_FromLongLong(((Number) value).longValue());
+        }
+        else if(value instanceof NumpyArray) {
+            ret = toNumpy(((NumpyArray) value).getNd4jArray());
+        }
+        else if(value instanceof INDArray) {
+            ret = toNumpy((INDArray) value);
+        }
+        else if(value instanceof Object[] || value instanceof List) {
+            List<?> list = value instanceof List ? (List<?>) value : java.util.Arrays.asList((Object[]) value);
+            ret = PyList_New(list.size());
+            checkNotNull(ret, "Unable to create python list");
+            for(int i = 0; i < list.size(); i++) {
+                //steals the item reference
+                PyList_SetItem(ret, i, toPython(list.get(i)));
+            }
+        }
+        else if(value instanceof Map) {
+            ret = PyDict_New();
+            checkNotNull(ret, "Unable to create python dict");
+            for(Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+                PyObject key = toPython(entry.getKey());
+                PyObject item = toPython(entry.getValue());
+                try {
+                    if(PyDict_SetItem(ret, key, item) != 0) {
+                        Py_DecRef(ret);
+                        throwPythonError("Unable to set python dict key " + entry.getKey());
+                    }
+                } finally {
+                    Py_DecRef(key);
+                    Py_DecRef(item);
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unable to convert " + value.getClass() + " to python");
+        }
+
+        checkNotNull(ret, "Unable to convert " + value.getClass() + " to python");
+        return ret;
+    }
+
+    /**
+     * Convert a python value to java. ints become {@link Long},
+     * floats {@link Double}, lists and tuples {@link List}, dicts {@link Map},
+     * numpy arrays a copied {@link NumpyArray} and None null.
+     * Anything else is converted with str().
+     * @param value the value (the reference is not consumed)
+     * @return the java value
+     */
+    public static Object toJava(PyObject value) {
+        String typeName = typeName(value);
+        switch(typeName) {
+            case "NoneType":
+                return null;
+            case "bool":
+            case "numpy.bool_":
+                return PyObject_IsTrue(value) == 1;
+            case "int":
+                return toLong(value);
+            case "float":
+                return toDouble(value);
+            case "str":
+                return toJavaString(value);
+            case "list":
+            case "tuple":
+                return toList(value);
+            case "dict":
+                return toMap(value);
+            case "numpy.ndarray":
+                return toNumpyArray(value);
+            default:
+                if(typeName.startsWith("numpy.int") || typeName.startsWith("numpy.uint")) {
+                    return toLong(value);
+                }
+                else if(typeName.startsWith("numpy.float")) {
+                    return toDouble(value);
+                }
+
+                PyObject str = PyObject_Str(value);
+                checkNotNull(str, "Unable to convert python value of type " + typeName);
+                try {
+                    return toJavaString(str);
+                } finally {
+                    Py_DecRef(str);
+                }
+        }
+    }
+
+    /**
+     * Copy a numpy array (or anything exposing a strided buffer
+     * of a supported type) in to nd4j.
+     * @param value the python value
+     * @return the copied array
+     */
+    public static NumpyArray toNumpyArray(PyObject value) {
+        Py_buffer view = new Py_buffer();
+        if(PyObject_GetBuffer(value, view, PyBUF_STRIDES | PyBUF_FORMAT) != 0) {
+            throwPythonError("Python value of type " + typeName(value) + " is not an array.");
+        }
+
+        try {
+            int rank = view.ndim();
+            long[] shape = new long[rank];
+            long[] strides = new long[rank];
+            for(int i = 0; i < rank; i++) {
+                shape[i] = view.shape().get(i);
+                strides[i] = view.strides().get(i);
+            }
+
+            DataType dataType = dataTypeForFormat(view.format().getString(), view.itemsize());
+            //the buffer belongs to python, copy it before it's released
+            return new NumpyArray(view.buf().address(), shape, strides, dataType, true);
+        } finally {
+            PyBuffer_Release(view);
+            view.deallocate();
+        }
+    }
+
+    /**
+     * Wrap the array's memory in a numpy array without copying it.
+     * The numpy array's base is a capsule keeping the java array reachable
+     * until python drops the last reference to it or to any view of it,
+     * so aliases a script keeps around (eg: {@code y = x}, slices or attributes
+     * of long lived objects) stay valid after the inputs were removed.
+     */
+    private static PyObject toNumpy(INDArray array) {
+        if(array.isView() || array.ordering() != 'c') {
+            array = array.dup('c');
+        }
+
+        SizeTPointer dims = new SizeTPointer(Math.max(array.rank(), 1));
+        for(int i = 0; i < array.rank(); i++) {
+            dims.put(i, array.size(i));
+        }
+
+        PyObject ret = PyArray_New(PyArray_Type(), array.rank(), dims, numpyTypeFor(array.dataType()),
+                null, array.data().addressPointer(), 0, NPY_ARRAY_CARRAY, null);
+        checkNotNull(ret, "Unable to create numpy array");
+
+        //the capsule only needs a non null pointer, the array is looked up by the capsule's address
+        PyObject owner = PyCapsule_New(ret, (String) null, RELEASE_OWNED_ARRAY);
+        if(isNull(owner)) {
+            Py_DecRef(ret);
+            throwPythonError("Unable to create numpy base object");
+        }
+
+        OWNED_ARRAYS.put(owner.address(), array);
+        //steals the reference to the capsule, even on failure
+        if(PyArray_SetBaseObject(new PyArrayObject(ret), owner) != 0) {
+            Py_DecRef(ret);
+            throwPythonError("Unable to set numpy base object");
+        }
+
+        return ret;
+    }
+
+    private static int numpyTypeFor(DataType dataType) {
+        switch(dataType) {
+            case FLOAT:
+                return NPY_FLOAT;
+            case DOUBLE:
+                return NPY_DOUBLE;
+            case SHORT:
+                return NPY_SHORT;
+            case INT:
+                return NPY_INT;
+            case LONG:
+                return NPY_LONGLONG;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + dataType + ".");
+        }
+    }
+
+    private static DataType dataTypeForFormat(String format, long itemSize) {
+        //struct module format, optionally prefixed with the byte order
+        char type = format.charAt(format.length() - 1);
+        switch(type) {
+            case 'f':
+                return DataType.FLOAT;
+            case 'd':
+                return DataType.DOUBLE;
+            case 'h':
+                return DataType.SHORT;
+            case 'i':
+            case 'l':
+            case 'q':
+                if(itemSize == 4) {
+                    return DataType.INT;
+                }
+                else if(itemSize == 8) {
+                    return DataType.LONG;
+                }
+                //other integer widths aren't supported
+            default:
+                throw new IllegalArgumentException("Unsupported array type " + format + " with item size " + itemSize + ".");
+        }
+    }
+
+    private static List<Object> toList(PyObject value) {
+        long size = PySequence_Size(value);
+        if(size < 0) {
+            throwPythonError("Python value of type " + typeName(value) + " is not a list.");
+        }
+
+        List<Object> ret = new ArrayList<>((int) size);
+        for(long i = 0; i < size; i++) {
+            PyObject item = PySequence_GetItem(value, i);
+            checkNotNull(item, "Unable to get list item " + i);
+            try {
+                ret.add(toJava(item));
+            } finally {
+                Py_DecRef(item);
+            }
+        }
+
+        return ret;
+    }
+
+    private static Map<String,Object> toMap(PyObject value) {
+        PyObject items = PyDict_Items(value);
+        checkNotNull(items, "Python value of type " + typeName(value) + " is not a dict.");
+        Map<String,Object> ret = new LinkedHashMap<>();
+        try {
+            long size = PySequence_Size(items);
+            for(long i = 0; i < size; i++) {
+                PyObject item = PySequence_GetItem(items, i);
+                try {
+                    Object key = toJava(PyTuple_GetItem(item, 0));
+                    ret.put(String.valueOf(key), toJava(PyTuple_GetItem(item, 1)));
+                } finally {
+                    Py_DecRef(item);
+                }
+            }
+        } finally {
+            Py_DecRef(items);
+        }
+
+        return ret;
+    }
+
+    private static long toLong(PyObject value) {
+        long ret = PyLong_AsLongLong(value);
+        if(ret == -1 && !isNull(PyErr_Occurred())) {
+            throwPythonError("Python value of type " + typeName(value) + " is not an int.");
+        }
+
+        return ret;
+    }
+
+    private static double toDouble(PyObject value) {
+        double ret = PyFloat_AsDouble(value);
+        if(ret == -1.0 && !isNull(PyErr_Occurred())) {
+            throwPythonError("Python value of type " + typeName(value) + " is not a float.");
+        }
+
+        return ret;
+    }
+
+    private static String toJavaString(PyObject value) {
+        BytePointer utf8 = PyUnicode_AsUTF8(value);
+        if(isNull(utf8)) {
+            throwPythonError("Python value of type " + typeName(value) + " is not a str.");
+        }
+
+        try {
+            return utf8.getString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static BytePointer utf8(String value) {
+        try {
+            return new BytePointer(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String typeName(PyObject value) {
+        PyTypeObject type = value.ob_type();
+        return type.tp_name().getString();
+    }
+
+    private static boolean isNull(Pointer pointer) {
+        return pointer == null || pointer.isNull();
+    }
+
+    private static void checkNotNull(Pointer pointer, String message) {
+        if(isNull(pointer)) {
+            throwPythonError(message);
+        }
+    }
+
+    private static void throwPythonError(String message) {
+        if(!isNull(PyErr_Occurred())) {
+            PyErr_Print();
+        }
+
+        throw new IllegalStateException(message);
+    }
+}
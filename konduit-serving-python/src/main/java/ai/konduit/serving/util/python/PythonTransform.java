@@ -23,22 +23,21 @@
 package ai.konduit.serving.util.python;
 
 import ai.konduit.serving.executioner.PythonExecutioner;
+import ai.konduit.serving.executioner.PythonProcessPool;
 import ai.konduit.serving.util.ObjectMapperHolder;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.apache.commons.io.IOUtils;
 import org.datavec.api.transform.ColumnType;
 import org.datavec.api.transform.Transform;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.writable.*;
 import org.nd4j.base.Preconditions;
-import org.nd4j.linalg.io.ClassPathResource;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +61,8 @@ public class PythonTransform implements Transform {
     private Schema outputSchema;
     private String outputDict;
     private boolean returnAllVariables;
+    @JsonIgnore
+    private PythonProcessPool processPool;
 
 
     @Builder
@@ -72,10 +73,14 @@ public class PythonTransform implements Transform {
                            Schema inputSchema,
                            Schema outputSchema,
                            String outputDict,
-                           boolean returnAllInputs) {
+                           boolean returnAllInputs,
+                           PythonProcessPool processPool) {
         Preconditions.checkNotNull(code,"No code found to run!");
+        Preconditions.checkState(processPool == null || (!returnAllInputs && outputDict == null),
+                "Python worker processes do not support returning all variables or an output dict.");
         this.code = code;
         this.returnAllVariables = returnAllInputs;
+        this.processPool = processPool;
         if(inputs != null)
             this.inputs = inputs;
         if(outputs != null)
@@ -86,17 +91,8 @@ public class PythonTransform implements Transform {
         if (outputDict != null) {
             this.outputDict = outputDict;
             this.outputs = new PythonVariables();
+            //arrays inside the dict are read straight from python, see PythonObjectConverter
             this.outputs.addDict(outputDict);
-
-            String helpers;
-            try(InputStream is = new ClassPathResource("pythonexec/serialize_array.py").getInputStream()) {
-                helpers = IOUtils.toString(is, Charset.defaultCharset());
-
-            }catch (IOException e){
-                throw  new RuntimeException("Error reading python code");
-            }
-            this.code += "\n\n" + helpers;
-            this.code += "\n" + outputDict + " = __recursive_serialize_dict(" + outputDict + ")";
         }
 
         try {
@@ -179,7 +175,7 @@ public class PythonTransform implements Transform {
                 return getWritablesFromPyOutputs(out);
             }
             else {
-                PythonExecutioner.exec(code,pyInputs,outputs);
+                execCode(pyInputs,outputs);
                 return getWritablesFromPyOutputs(outputs);
             }
 
@@ -189,6 +185,92 @@ public class PythonTransform implements Transform {
         }
     }
 
+    /**
+     * Run the code once for a whole batch of rows instead of once per row.
+     * Each input is passed to python as one column over the batch:
+     * ints and floats as 1d numpy arrays, arrays stacked along a new first axis
+     * and strings as a list.
+     * Int, float and array outputs must be numpy arrays with the rows
+     * along the first axis, str, list and dict outputs lists with one element per row.
+     *
+     * @param batch the rows to transform
+     * @return the transformed rows, in the same order
+     */
+    public List<List<Writable>> mapBatch(List<List<Writable>> batch) {
+        Preconditions.checkState(!returnAllVariables && outputDict == null,
+                "Batch execution does not support returning all variables or an output dict.");
+        if(batch.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        PythonVariables pyInputs = getBatchPyInputsFromWritables(batch);
+        PythonVariables pyOutputs = new PythonVariables();
+        for(String name : outputs.getVariables()) {
+            switch(outputs.getType(name)) {
+                case INT:
+                case FLOAT:
+                case NDARRAY:
+                    pyOutputs.addNDArray(name);
+                    break;
+                case STR:
+                case LIST:
+                case DICT:
+                    pyOutputs.addList(name);
+                    break;
+                default:
+                    throw new IllegalStateException("Unable to support type " + outputs.getType(name).name());
+            }
+        }
+
+        try {
+            execCode(pyInputs, pyOutputs);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        int numRows = batch.size();
+        for(String name : pyOutputs.getVariables()) {
+            long rows;
+            if(pyOutputs.getType(name) == PythonVariables.Type.NDARRAY) {
+                long[] shape = pyOutputs.getNDArrayValue(name).getShape();
+                rows = shape.length > 0 ? shape[0] : 0;
+            }
+            else {
+                rows = pyOutputs.getListValue(name).length;
+            }
+
+            Preconditions.checkState(rows == numRows, "Output %s has %s rows, expected %s", name, rows, numRows);
+        }
+
+        List<List<Writable>> ret = new ArrayList<>(numRows);
+        for(int i = 0; i < numRows; i++) {
+            PythonVariables rowOutputs = outputs.copySchema();
+            for(String name : outputs.getVariables()) {
+                switch(outputs.getType(name)) {
+                    case INT:
+                        rowOutputs.setValue(name, pyOutputs.getNDArrayValue(name).getNd4jArray().getLong(i));
+                        break;
+                    case FLOAT:
+                        rowOutputs.setValue(name, pyOutputs.getNDArrayValue(name).getNd4jArray().getDouble(i));
+                        break;
+                    case NDARRAY:
+                        rowOutputs.setValue(name, pyOutputs.getNDArrayValue(name).getNd4jArray().slice(i).dup());
+                        break;
+                    case STR:
+                        rowOutputs.setValue(name, String.valueOf(pyOutputs.getListValue(name)[i]));
+                        break;
+                    default:
+                        rowOutputs.setValue(name, pyOutputs.getListValue(name)[i]);
+                        break;
+                }
+            }
+
+            ret.add(getWritablesFromPyOutputs(rowOutputs));
+        }
+
+        return ret;
+    }
+
     @Override
     public String[] outputColumnNames(){
         return outputs.getVariables();
@@ -213,6 +295,15 @@ public class PythonTransform implements Transform {
     }
 
 
+    private void execCode(PythonVariables pyInputs, PythonVariables pyOutputs) throws Exception {
+        if(processPool != null) {
+            processPool.exec(code, pyInputs, pyOutputs);
+        }
+        else {
+            PythonExecutioner.exec(code, pyInputs, pyOutputs);
+        }
+    }
+
     private PythonVariables getPyInputsFromWritables(List<Writable> writables) {
         PythonVariables ret = new PythonVariables();
 
@@ -252,6 +343,49 @@ public class PythonTransform implements Transform {
         return ret;
     }
 
+    private PythonVariables getBatchPyInputsFromWritables(List<List<Writable>> batch) {
+        PythonVariables ret = new PythonVariables();
+        int numRows = batch.size();
+        for (String name: inputs.getVariables()) {
+            int colIdx = inputSchema.getIndexOfColumn(name);
+            PythonVariables.Type pyType = inputs.getType(name);
+            switch (pyType){
+                case INT:
+                    long[] longs = new long[numRows];
+                    for(int i = 0; i < numRows; i++) {
+                        longs[i] = batch.get(i).get(colIdx).toLong();
+                    }
+                    ret.addNDArray(name, Nd4j.createFromArray(longs));
+                    break;
+                case FLOAT:
+                    double[] doubles = new double[numRows];
+                    for(int i = 0; i < numRows; i++) {
+                        doubles[i] = batch.get(i).get(colIdx).toDouble();
+                    }
+                    ret.addNDArray(name, Nd4j.createFromArray(doubles));
+                    break;
+                case STR:
+                    Object[] strings = new Object[numRows];
+                    for(int i = 0; i < numRows; i++) {
+                        strings[i] = batch.get(i).get(colIdx).toString();
+                    }
+                    ret.addList(name, strings);
+                    break;
+                case NDARRAY:
+                    INDArray[] arrays = new INDArray[numRows];
+                    for(int i = 0; i < numRows; i++) {
+                        arrays[i] = ((NDArrayWritable) batch.get(i).get(colIdx)).get();
+                    }
+                    ret.addNDArray(name, Nd4j.stack(0, arrays));
+                    break;
+                default:
+                    throw new RuntimeException("Unsupported input type:" + pyType);
+            }
+        }
+
+        return ret;
+    }
+
     private List<Writable> getWritablesFromPyOutputs(PythonVariables pyOuts) {
         List<Writable> out = new ArrayList<>();
         String[] varNames;
@@ -0,0 +1,143 @@
+import sys
+import os
+import json
+import struct
+import traceback
+
+
+# the protocol runs over the original stdout, anything the user code prints goes to stderr
+_in = sys.stdin.buffer
+_out = sys.stdout.buffer
+sys.stdout = sys.stderr
+
+_namespaces = {}
+_compiled = {}
+_np = None
+_counter = 0
+
+
+def _numpy():
+    global _np
+    if _np is None:
+        import numpy
+        _np = numpy
+    return _np
+
+
+def _read_message():
+    header = _in.read(4)
+    if len(header) < 4:
+        return None
+    length = struct.unpack('>i', header)[0]
+    return json.loads(_in.read(length).decode('utf-8'))
+
+
+def _write_message(message):
+    data = json.dumps(message, default=_to_json).encode('utf-8')
+    _out.write(struct.pack('>i', len(data)))
+    _out.write(data)
+    _out.flush()
+
+
+def _to_json(value):
+    # numpy scalars and arrays nested in lists and dicts
+    if hasattr(value, 'tolist'):
+        return value.tolist()
+    return str(value)
+
+
+def _namespace(code):
+    # one namespace per code string, the setup part only runs the first time
+    namespace = _namespaces.get(code)
+    if namespace is None:
+        namespace = {'__name__': '__main__', '__builtins__': __builtins__}
+        if '#<SETUP>' in code and '#</SETUP>' in code:
+            setup, body = code.split('#</SETUP>', 1)
+            exec(compile(setup, '<setup>', 'exec'), namespace)
+        else:
+            body = code
+        _compiled[code] = compile(body, '<code>', 'exec')
+        _namespaces[code] = namespace
+    return namespace
+
+
+def _read_input(variable):
+    if variable['type'] == 'NDARRAY':
+        np = _numpy()
+        if 0 in variable['shape']:
+            return np.empty(tuple(variable['shape']), dtype=variable['dtype'])
+        # copy on write: the code may modify the array without touching the shared file
+        return np.memmap(variable['path'], dtype=variable['dtype'], mode='c', shape=tuple(variable['shape']))
+    return variable['value']
+
+
+def _write_output(name, var_type, value, shm_dir, prefix, written):
+    global _counter
+    if var_type == 'NDARRAY':
+        np = _numpy()
+        array = np.ascontiguousarray(value)
+        _counter += 1
+        # the jvm sweeps files with its prefix if this worker dies mid request
+        path = os.path.join(shm_dir, '%s%d' % (prefix, _counter))
+        written.append(path)
+        if array.size > 0:
+            mapped = np.memmap(path, dtype=array.dtype, mode='w+', shape=array.shape)
+            mapped[...] = array
+            mapped.flush()
+            del mapped
+        else:
+            open(path, 'wb').close()
+        return {'type': var_type, 'path': path, 'dtype': array.dtype.name, 'shape': list(array.shape)}
+    if var_type == 'INT':
+        value = int(value)
+    elif var_type == 'FLOAT':
+        value = float(value)
+    elif var_type == 'BOOL':
+        value = bool(value)
+    elif var_type in ('STR', 'FILE'):
+        value = str(value)
+    elif var_type == 'LIST':
+        value = list(value)
+    return {'type': var_type, 'value': value}
+
+
+def _handle(request):
+    code = request['code']
+    namespace = _namespace(code)
+    for name, variable in request['inputs'].items():
+        namespace[name] = _read_input(variable)
+    exec(_compiled[code], namespace)
+    outputs = {}
+    written = []
+    try:
+        for name, var_type in request['outputs'].items():
+            outputs[name] = _write_output(name, var_type, namespace[name], request['shm'],
+                                          request.get('prefix', 'konduit-out-%d-' % os.getpid()), written)
+    except BaseException:
+        # the error response has no paths for the jvm to delete
+        for path in written:
+            try:
+                os.remove(path)
+            except OSError:
+                pass
+        raise
+    for name in request['inputs']:
+        # drop the memory maps so the jvm can delete the input files
+        namespace.pop(name, None)
+    return {'outputs': outputs}
+
+
+def main():
+    while True:
+        request = _read_message()
+        if request is None:
+            break
+        try:
+            response = _handle(request)
+        except BaseException:
+            response = {'error': traceback.format_exc()}
+        _write_message(response)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,252 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.executioner;
+
+import ai.konduit.serving.config.SchemaType;
+import ai.konduit.serving.config.ServingConfig;
+import ai.konduit.serving.model.ModelConfig;
+import ai.konduit.serving.model.ModelConfigType;
+import ai.konduit.serving.model.SameDiffConfig;
+import ai.konduit.serving.pipeline.ArrayConcatenationStep;
+import ai.konduit.serving.pipeline.ModelPipelineStep;
+import ai.konduit.serving.pipeline.PipelineStepRunner;
+import ai.konduit.serving.pipeline.steps.ArrayConcatenationStepRunner;
+import ai.konduit.serving.pipeline.steps.InferenceExecutionerPipelineStepRunner;
+import ai.konduit.serving.util.TensorBatchRecord;
+import org.datavec.api.records.Record;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PipelineTests {
+
+    @Rule
+    public TemporaryFolder temporary = new TemporaryFolder();
+
+    private final List<PipelineStepRunner> runners = new ArrayList<>();
+
+    /**
+     * Passes its input through and remembers what it was given.
+     */
+    private static class RecordingStepRunner implements PipelineStepRunner {
+        private final boolean consumesTensors;
+        private Record[] received;
+
+        private RecordingStepRunner(boolean consumesTensors) {
+            this.consumesTensors = consumesTensors;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public Map<String, SchemaType[]> inputTypes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, SchemaType[]> outputTypes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Record[] transform(Record[] input) {
+            received = input;
+            return input;
+        }
+
+        @Override
+        public boolean consumesTensors() {
+            return consumesTensors;
+        }
+    }
+
+    @After
+    public void after() {
+        for(PipelineStepRunner runner : runners) {
+            runner.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testAdaptOnlyForTensorSteps() {
+        Record[] rows = rows(Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2), Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2));
+
+        RecordingStepRunner recordStep = new RecordingStepRunner(false);
+        Pipeline.builder().step(recordStep).build().doPipeline(rows);
+        //record steps get the records as is
+        assertSame(rows, recordStep.received);
+
+        RecordingStepRunner tensorStep = new RecordingStepRunner(true);
+        Pipeline.builder().step(tensorStep).build().doPipeline(rows);
+        //tensor steps get one batch with the rows of each column concatenated
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(tensorStep.received);
+        assertNotNull(batch);
+        assertEquals(2, batch.getArrays().length);
+        assertEquals(Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2), batch.getArrays()[0]);
+        assertEquals(Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2), batch.getArrays()[1]);
+
+        //an untouched tensor batch isn't adapted again
+        RecordingStepRunner next = new RecordingStepRunner(true);
+        Pipeline.builder().step(new RecordingStepRunner(true)).step(next).build().doPipeline(tensorStep.received);
+        assertSame(tensorStep.received, next.received);
+    }
+
+    @Test(timeout = 60000)
+    public void testMultiOutputOrder() throws Exception {
+        INDArray x = Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2);
+        INDArray y = Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2);
+        //declared in the opposite order of the graph
+        Pipeline pipeline = Pipeline.builder()
+                .step(model(multiOutputModel(), Arrays.asList("x", "y"), Arrays.asList("product", "sum")))
+                .build();
+
+        TensorBatchRecord output = TensorBatchRecord.batchOf(pipeline.doPipeline(TensorBatchRecord.wrap(Arrays.asList("x", "y"), new INDArray[]{x, y}, null)));
+        assertNotNull(output);
+        assertEquals(Arrays.asList("product", "sum"), output.getNames());
+        assertEquals(x.mul(y), output.getArrays()[0]);
+        assertEquals(x.add(y), output.getArrays()[1]);
+        assertEquals(x.add(y), output.get("sum"));
+    }
+
+    @Test(timeout = 60000)
+    public void testChainedModelSteps() throws Exception {
+        INDArray x = Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2);
+        INDArray y = Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2);
+
+        SameDiff difference = SameDiff.create();
+        SDVariable product = difference.placeHolder("product", DataType.FLOAT, -1, 2);
+        SDVariable sum = difference.placeHolder("sum", DataType.FLOAT, -1, 2);
+        product.sub("difference", sum);
+
+        RecordingStepRunner between = new RecordingStepRunner(true);
+        Pipeline pipeline = Pipeline.builder()
+                .step(model(multiOutputModel(), Arrays.asList("x", "y"), Arrays.asList("product", "sum")))
+                .step(between)
+                .step(model(difference, Arrays.asList("product", "sum"), Collections.singletonList("difference")))
+                .build();
+
+        Record[] output = pipeline.doPipeline(rows(x, y));
+
+        //the first model's output is handed on as one named batch, not as records
+        TensorBatchRecord intermediate = TensorBatchRecord.batchOf(between.received);
+        assertNotNull(intermediate);
+        assertEquals(Arrays.asList("product", "sum"), intermediate.getNames());
+
+        TensorBatchRecord result = TensorBatchRecord.batchOf(output);
+        assertNotNull(result);
+        assertEquals(x.mul(y).sub(x.add(y)), result.get("difference"));
+    }
+
+    @Test(timeout = 60000)
+    public void testArrayConcatenationBeforeModel() throws Exception {
+        INDArray x = Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2);
+        INDArray y = Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2);
+        ArrayConcatenationStepRunner concatenation = new ArrayConcatenationStepRunner(ArrayConcatenationStep.builder()
+                .inputNames(Arrays.asList("x", "y"))
+                .outputNames(Arrays.asList("x", "y"))
+                .build());
+        RecordingStepRunner between = new RecordingStepRunner(true);
+        Pipeline pipeline = Pipeline.builder()
+                .step(concatenation)
+                .step(between)
+                .step(model(multiOutputModel(), Arrays.asList("x", "y"), Arrays.asList("product", "sum")))
+                .build();
+
+        //one record per row, concatenated along the batch dimension
+        TensorBatchRecord output = TensorBatchRecord.batchOf(pipeline.doPipeline(rows(x, y)));
+        TensorBatchRecord concatenated = TensorBatchRecord.batchOf(between.received);
+        assertNotNull(concatenated);
+        assertEquals(x, concatenated.getArrays()[0]);
+        assertEquals(y, concatenated.getArrays()[1]);
+
+        assertNotNull(output);
+        assertEquals(x.mul(y), output.get("product"));
+        assertEquals(x.add(y), output.get("sum"));
+    }
+
+    private static SameDiff multiOutputModel() {
+        SameDiff sameDiff = SameDiff.create();
+        SDVariable x = sameDiff.placeHolder("x", DataType.FLOAT, -1, 2);
+        SDVariable y = sameDiff.placeHolder("y", DataType.FLOAT, -1, 2);
+        x.add("sum", y);
+        x.mul("product", y);
+        return sameDiff;
+    }
+
+    private InferenceExecutionerPipelineStepRunner model(SameDiff sameDiff, List<String> inputNames, List<String> outputNames) throws Exception {
+        File file = temporary.newFile();
+        sameDiff.asFlatFile(file);
+        ModelPipelineStep modelPipelineStep = ModelPipelineStep.builder()
+                .modelConfig(SameDiffConfig.builder()
+                        .modelConfigType(ModelConfigType.builder()
+                                .modelType(ModelConfig.ModelType.SAMEDIFF)
+                                .modelLoadingPath(file.getAbsolutePath())
+                                .build())
+                        .build())
+                .inputNames(inputNames)
+                .outputNames(outputNames)
+                .servingConfig(ServingConfig.builder().build())
+                .build();
+
+        InferenceExecutionerPipelineStepRunner runner = new InferenceExecutionerPipelineStepRunner(modelPipelineStep);
+        runners.add(runner);
+        return runner;
+    }
+
+    /**
+     * One record per row, holding that row of each array.
+     */
+    private static Record[] rows(INDArray... columns) {
+        Record[] ret = new Record[(int) columns[0].size(0)];
+        for(int i = 0; i < ret.length; i++) {
+            List<Writable> row = new ArrayList<>();
+            for(INDArray column : columns) {
+                row.add(new NDArrayWritable(column.getRow(i, true).dup()));
+            }
+
+            ret[i] = new org.datavec.api.records.impl.Record(row, null);
+        }
+
+        return ret;
+    }
+
+}
@@ -29,6 +29,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -76,4 +77,33 @@ public class SameDiffInferenceExecutionerTests {
         assertEquals(outputs.values().iterator().next(),execute[0]);
     }
 
+    @Test(timeout = 60000)
+    public void testOnlyDeclaredOutputsExecuted() throws Exception {
+        SameDiff sameDiff = SameDiff.create();
+        SDVariable x = sameDiff.placeHolder("x", DataType.FLOAT, -1, 2);
+        SDVariable y = sameDiff.placeHolder("y", DataType.FLOAT, -1, 2);
+        //never fed, running the whole graph would fail on this branch
+        SDVariable unused = sameDiff.placeHolder("unused", DataType.FLOAT, -1, 2);
+        x.add("sum", y);
+        x.mul("product", y);
+        unused.mul("unusedProduct", 2.0);
+
+        File newFile = temporary.newFile();
+        sameDiff.asFlatFile(newFile);
+        SameDiffModelLoader sameDiffModelLoader = new SameDiffModelLoader(newFile, Arrays.asList("x","y"),Arrays.asList("product","sum"));
+        SameDiffInferenceExecutioner sameDiffInferenceExecutioner = new SameDiffInferenceExecutioner();
+        sameDiffInferenceExecutioner.initialize(sameDiffModelLoader, ParallelInferenceConfig.defaultConfig());
+        try {
+            INDArray xArr = Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(3, 2);
+            INDArray yArr = Nd4j.linspace(DataType.FLOAT, 7, 6, 1).reshape(3, 2);
+            INDArray[] execute = sameDiffInferenceExecutioner.execute(new INDArray[]{xArr, yArr});
+            //in the declared order
+            assertEquals(2, execute.length);
+            assertEquals(xArr.mul(yArr), execute[0]);
+            assertEquals(xArr.add(yArr), execute[1]);
+        } finally {
+            sameDiffInferenceExecutioner.stop();
+        }
+    }
+
 }
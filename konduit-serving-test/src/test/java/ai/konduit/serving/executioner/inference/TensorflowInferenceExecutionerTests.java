@@ -32,6 +32,7 @@ import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.io.ClassPathResource;
+import org.tensorflow.framework.ConfigProto;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.File;
@@ -101,4 +102,36 @@ public class TensorflowInferenceExecutionerTests {
         tensorflowInferenceExecutioner.stop();
     }
 
+    @Test(timeout = 60000)
+    public void testSessionPerWorkerWithThreadLimits() throws Exception {
+        TensorflowModelLoader tensorflowModelLoader = TensorflowModelLoader.builder()
+                .inputNames(Arrays.asList("input_0","input_1"))
+                .outputNames(Arrays.asList("output"))
+                .protoFile(new ClassPathResource("inference/tensorflow/frozen_model.pb").getFile())
+                .intraOpParallelismThreads(1)
+                .interOpParallelismThreads(2)
+                .sessionPerWorker(true)
+                .build();
+
+        ConfigProto sessionConfig = tensorflowModelLoader.loadModel().sessionConfig();
+        assertEquals(1, sessionConfig.getIntraOpParallelismThreads());
+        assertEquals(2, sessionConfig.getInterOpParallelismThreads());
+
+        TensorflowInferenceExecutioner tensorflowInferenceExecutioner = new TensorflowInferenceExecutioner();
+        tensorflowInferenceExecutioner.initialize(tensorflowModelLoader, ParallelInferenceConfig.builder()
+                .batchLimit(1)
+                .workers(2)
+                .queueLimit(4)
+                .inferenceMode(InferenceMode.SEQUENTIAL)
+                .build());
+
+        INDArray assertion = Nd4j.linspace(1, 4, 4).muli(2);
+        for(int i = 0; i < 4; i++) {
+            INDArray[] output = tensorflowInferenceExecutioner.execute(new INDArray[]{Nd4j.linspace(1, 4, 4), Nd4j.linspace(1, 4, 4)});
+            assertEquals(assertion,output[0]);
+        }
+
+        tensorflowInferenceExecutioner.stop();
+    }
+
 }
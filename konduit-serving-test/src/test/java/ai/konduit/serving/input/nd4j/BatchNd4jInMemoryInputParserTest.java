@@ -0,0 +1,46 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.input.nd4j;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.runner.RunWith;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Runs the nd4j batch parsing tests with multi part uploads
+ * parsed in to memory instead of the uploads directory.
+ */
+@RunWith(VertxUnitRunner.class)
+@NotThreadSafe
+public class BatchNd4jInMemoryInputParserTest extends BatchNd4jInputParserTest {
+
+    @Override
+    public JsonObject getConfigObject() {
+        JsonObject jsonObject = super.getConfigObject();
+        jsonObject.put(BatchNd4jInputParserVerticle.SPILL_THRESHOLD_KEY, 1024 * 1024L);
+        return jsonObject;
+    }
+
+}
@@ -24,6 +24,7 @@ package ai.konduit.serving.input.nd4j;
 
 import ai.konduit.serving.input.conversion.BatchInputParser;
 import ai.konduit.serving.input.conversion.ConverterArgs;
+import ai.konduit.serving.input.upload.InMemoryMultipartHandler;
 import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nd4j.VertxBufferNd4jInputAdapter;
 import ai.konduit.serving.verticles.base.BaseRoutableVerticle;
 import io.vertx.core.Context;
@@ -41,6 +42,7 @@ import java.util.Collections;
 public class BatchNd4jInputParserVerticle extends BaseRoutableVerticle {
 
     public final static String INPUT_NAME_KEY = "inputNameKey";
+    public final static String SPILL_THRESHOLD_KEY = "spillThresholdKey";
     private BatchInputParser inputParser;
     private String inputName = "input1";
     private Record[] batch;
@@ -61,7 +63,14 @@ public class BatchNd4jInputParserVerticle extends BaseRoutableVerticle {
         BatchNd4jInputParserVerticle.this.inputParser = batchInputParser;
 
 
-        router().post().handler(BodyHandler.create().setMergeFormAttributes(true));
+        if (config().containsKey(SPILL_THRESHOLD_KEY)) {
+            router().post().handler(new InMemoryMultipartHandler(vertx,
+                    BodyHandler.create().setMergeFormAttributes(true),
+                    BodyHandler.DEFAULT_UPLOADS_DIRECTORY,
+                    config().getLong(SPILL_THRESHOLD_KEY)));
+        } else {
+            router().post().handler(BodyHandler.create().setMergeFormAttributes(true));
+        }
         router.post("/").handler(itemHandler -> {
             try {
                 BatchNd4jInputParserVerticle.this.batch = batchInputParser.createBatch(itemHandler);
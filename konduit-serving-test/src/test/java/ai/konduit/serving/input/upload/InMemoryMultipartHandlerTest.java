@@ -0,0 +1,112 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.input.upload;
+
+import ai.konduit.serving.verticles.VerticleConstants;
+import com.jayway.restassured.response.Response;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.*;
+
+public class InMemoryMultipartHandlerTest {
+
+    @Rule
+    public TemporaryFolder temporary = new TemporaryFolder();
+
+    private Vertx vertx;
+    private HttpServer server;
+    private File uploadsDirectory;
+
+    @Before
+    public void before() throws Exception {
+        vertx = Vertx.vertx();
+        uploadsDirectory = temporary.newFolder("uploads");
+        Router router = Router.router(vertx);
+        //far smaller than the payload: the part spills after its first chunk
+        router.post().handler(new InMemoryMultipartHandler(vertx, BodyHandler.create(), uploadsDirectory.getAbsolutePath(), 1024));
+        router.post("/").handler(ctx -> {
+            List<InMemoryFileUpload> uploads = ctx.get(VerticleConstants.IN_MEMORY_UPLOADS);
+            InMemoryFileUpload upload = uploads.get(0);
+            Buffer content = upload.isInMemory() ? upload.getData() : vertx.fileSystem().readFileBlocking(upload.getUploadedFileName());
+            ctx.response()
+                    .putHeader("X-Upload-Size", String.valueOf(upload.getSize()))
+                    .putHeader("X-Upload-In-Memory", String.valueOf(upload.isInMemory()))
+                    .end(content.copy());
+        });
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer().requestHandler(router::accept).listen(0, result -> {
+            if(result.succeeded())
+                listening.complete(result.result());
+            else
+                listening.completeExceptionally(result.cause());
+        });
+        server = listening.get(30, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void after() {
+        vertx.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testSpilledPart() throws Exception {
+        byte[] payload = new byte[1024 * 1024 + 17];
+        new Random(12345).nextBytes(payload);
+        File file = temporary.newFile("payload.bin");
+        FileUtils.writeByteArrayToFile(file, payload);
+
+        Response response = given().port(server.actualPort())
+                .multiPart("input1", file)
+                .when().post("/");
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("false", response.getHeader("X-Upload-In-Memory"));
+        assertEquals(String.valueOf(payload.length), response.getHeader("X-Upload-Size"));
+        assertArrayEquals(payload, response.asByteArray());
+
+        //the spilled file is deleted once the response was written
+        long deadline = System.currentTimeMillis() + 10000;
+        while(uploadsDirectory.list().length > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, uploadsDirectory.list().length);
+    }
+
+}
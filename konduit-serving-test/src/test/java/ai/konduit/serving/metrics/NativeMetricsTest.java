@@ -0,0 +1,83 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.*;
+
+public class NativeMetricsTest {
+
+    @Test(timeout = 60000)
+    public void testReadingsRefreshAndGoStale() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NativeMetrics nativeMetrics = new NativeMetrics(emptyList(), 50, 2000);
+        try {
+            nativeMetrics.bindTo(registry);
+            long firstSample = nativeMetrics.getLastSampleTime();
+            assertTrue(firstSample > 0);
+            assertTrue(registry.get("native.process.rss").gauge().value() > 0);
+            assertFalse(Double.isNaN(registry.get("cpuload").gauge().value()));
+
+            //the sampler keeps refreshing readings after binding
+            while(nativeMetrics.getLastSampleTime() == firstSample)
+                Thread.sleep(10);
+        } finally {
+            nativeMetrics.close();
+        }
+
+        Thread.sleep(2500);
+        assertTrue(Double.isNaN(registry.get("cpuload").gauge().value()));
+        assertTrue(Double.isNaN(registry.get("native.process.rss").gauge().value()));
+        assertTrue(registry.get("native.metrics.age").gauge().value() >= 2.0);
+    }
+
+    @Test(timeout = 60000)
+    public void testSharedPerRegistry() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NativeMetrics first = NativeMetrics.shared(registry, 50, 2000);
+        NativeMetrics second = NativeMetrics.shared(registry, 50, 2000);
+        assertSame(first, second);
+
+        //the remaining user keeps the readings fresh
+        first.close();
+        long lastSample = second.getLastSampleTime();
+        while(second.getLastSampleTime() == lastSample)
+            Thread.sleep(10);
+        assertFalse(Double.isNaN(registry.get("cpuload").gauge().value()));
+
+        //the last user removes the gauges, the next one binds its own
+        second.close();
+        assertNull(registry.find("cpuload").gauge());
+        NativeMetrics next = NativeMetrics.shared(registry, 50, 2000);
+        try {
+            assertNotSame(first, next);
+            assertFalse(Double.isNaN(registry.get("cpuload").gauge().value()));
+        } finally {
+            next.close();
+        }
+    }
+
+}
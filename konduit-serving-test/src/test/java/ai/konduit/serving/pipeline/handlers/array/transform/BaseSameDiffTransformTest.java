@@ -0,0 +1,101 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.pipeline.handlers.array.transform;
+
+import ai.konduit.serving.util.SchemaTypeUtils;
+import ai.konduit.serving.util.TensorBatchRecord;
+import org.datavec.api.records.Record;
+import org.datavec.api.writable.NDArrayWritable;
+import org.junit.Test;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BaseSameDiffTransformTest {
+
+    @Test(timeout = 60000)
+    public void testOutputsInDeclaredOrder() {
+        SameDiff sameDiff = SameDiff.create();
+        SDVariable x = sameDiff.placeHolder("x", DataType.FLOAT, -1, 2);
+        SDVariable added = x.add("added", 1.0);
+        added.mul("multiplied", 2.0);
+        x.sub("subtracted", 5.0);
+
+        ByteBuffer byteBuffer = sameDiff.asFlatBuffers(false);
+        byte[] content = new byte[byteBuffer.capacity() - byteBuffer.position()];
+        byteBuffer.get(content);
+
+        BaseSameDiffTransform transform = new FlatBuffersSameDiffTransform(content,
+                Arrays.asList("x"), Arrays.asList("subtracted", "multiplied"));
+
+        INDArray input = Nd4j.createFromArray(new float[][]{{1, 2}, {3, 4}});
+        Record[] output = transform.transform(new Record[]{
+                new org.datavec.api.records.impl.Record(Arrays.asList(new NDArrayWritable(input)), null)
+        });
+
+        TensorBatchRecord batch = TensorBatchRecord.batchOf(output);
+        assertNotNull(batch);
+        assertEquals(Arrays.asList("subtracted", "multiplied"), batch.getNames());
+
+        INDArray[] arrays = SchemaTypeUtils.toArrays(output);
+        assertEquals(2, arrays.length);
+        assertEquals(input.sub(5.0), arrays[0]);
+        assertEquals(input.add(1.0).mul(2.0), arrays[1]);
+
+        //a tensor batch feeds the next transform directly
+        transform.setOutputNames("added");
+        Record[] chained = transform.transform(TensorBatchRecord.wrap(null, new INDArray[]{input}, null));
+        assertEquals(input.add(1.0), SchemaTypeUtils.toArrays(chained)[0]);
+    }
+
+    private static class FlatBuffersSameDiffTransform extends BaseSameDiffTransform {
+
+        private FlatBuffersSameDiffTransform(byte[] content, List<String> inputs, List<String> outputs) {
+            super(content, inputs, outputs);
+        }
+
+        @Override
+        public SameDiff getSameDiffFromFile(File file) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SameDiff getSameDiffFromBytes(byte[] content) {
+            return SameDiff.fromFlatBuffers(ByteBuffer.wrap(content));
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBatchWindowTest {
+
+    @Test(timeout = 60000)
+    public void testDisabledWindowDoesNotWait() {
+        AdaptiveBatchWindow batchWindow = new AdaptiveBatchWindow(0, 8);
+        assertEquals(0, batchWindow.windowNanos(1));
+        long waited = batchWindow.awaitBatch(() -> 1, System.nanoTime());
+        assertTrue(waited < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test(timeout = 60000)
+    public void testWindowBoundedByMaxDelay() throws Exception {
+        AdaptiveBatchWindow batchWindow = new AdaptiveBatchWindow(1000, 1000);
+        //no arrival rate estimate yet: nothing to gain by waiting
+        assertEquals(0, batchWindow.windowNanos(1));
+
+        for (int i = 0; i < 10; i++) {
+            batchWindow.onArrival();
+            Thread.sleep(0, 100000);
+        }
+
+        long window = batchWindow.windowNanos(1);
+        assertTrue(window > 0);
+        assertTrue(window <= TimeUnit.MICROSECONDS.toNanos(1000));
+        assertEquals(0, batchWindow.windowNanos(1000));
+    }
+
+    @Test(timeout = 60000)
+    public void testWindowBoundedByExecutionTime() throws Exception {
+        AdaptiveBatchWindow batchWindow = new AdaptiveBatchWindow(TimeUnit.SECONDS.toMicros(1), 1000);
+        for (int i = 0; i < 10; i++) {
+            batchWindow.onArrival();
+            Thread.sleep(1);
+        }
+
+        batchWindow.onBatchComplete(4, TimeUnit.MICROSECONDS.toNanos(10));
+        assertTrue(batchWindow.windowNanos(1) <= TimeUnit.MICROSECONDS.toNanos(10));
+        assertEquals(4.0, batchWindow.getAverageBatchSize(), 1e-6);
+    }
+
+    @Test(timeout = 60000)
+    public void testFlushOnPreferredSize() {
+        AdaptiveBatchWindow batchWindow = new AdaptiveBatchWindow(TimeUnit.SECONDS.toMicros(10), 4);
+        long waited = batchWindow.awaitBatch(() -> 4, System.nanoTime());
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test(timeout = 60000)
+    public void testGaugesPerModel() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveBatchWindow first = new AdaptiveBatchWindow(1000, 4, Arrays.asList(Tag.of("threadpool", "test"), Tag.of("model", "first.pb")));
+        AdaptiveBatchWindow second = new AdaptiveBatchWindow(1000, 8, Arrays.asList(Tag.of("threadpool", "test"), Tag.of("model", "second.pb")));
+        first.bindTo(registry);
+        second.bindTo(registry);
+        first.onBatchComplete(2, 1000);
+        second.onBatchComplete(6, 1000);
+
+        assertEquals(2, registry.find("batch.size").tag("threadpool", "test").gauges().size());
+        assertEquals(2.0, registry.get("batch.size").tag("model", "first.pb").gauge().value(), 1e-6);
+        assertEquals(6.0, registry.get("batch.size").tag("model", "second.pb").gauge().value(), 1e-6);
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseRemovesGauges() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveBatchWindow first = new AdaptiveBatchWindow(1000, 4, Arrays.asList(Tag.of("threadpool", "test"), Tag.of("model", "model.pb")));
+        first.bindTo(registry);
+        first.onBatchComplete(2, 1000);
+        first.close();
+        assertTrue(registry.find("batch.size").gauges().isEmpty());
+
+        //a restarted pool for the same model reports its own values rather than the closed one's
+        AdaptiveBatchWindow restarted = new AdaptiveBatchWindow(1000, 4, Arrays.asList(Tag.of("threadpool", "test"), Tag.of("model", "model.pb")));
+        restarted.bindTo(registry);
+        restarted.onBatchComplete(3, 1000);
+        assertEquals(3.0, registry.get("batch.size").tag("model", "model.pb").gauge().value(), 1e-6);
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool;
+
+import io.vertx.core.Vertx;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeteredWorkerExecutorTest {
+
+    @Test(timeout = 60000)
+    public void testQueueDepthAndUnorderedExecution() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            MeteredWorkerExecutor executor = new MeteredWorkerExecutor(vertx, "metered-worker-executor-test", 2);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(2);
+            CountDownLatch done = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                executor.executeBlocking(future -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    future.complete();
+                }, result -> done.countDown());
+            }
+
+            //both threads are busy at once, the third task waits in the queue
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertEquals(2, executor.getActiveCount());
+            assertEquals(1, executor.getQueueDepth());
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, executor.getActiveCount());
+            assertEquals(0, executor.getQueueDepth());
+            executor.close();
+        } finally {
+            vertx.close();
+        }
+    }
+
+}
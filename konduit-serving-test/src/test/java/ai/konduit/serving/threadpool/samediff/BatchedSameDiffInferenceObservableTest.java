@@ -0,0 +1,78 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool.samediff;
+
+import ai.konduit.serving.threadpool.samediff.observables.BatchedSameDiffInferenceObservable;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchedSameDiffInferenceObservableTest {
+
+    @Test(timeout = 60000)
+    public void testConcatenateAndSplit() {
+        INDArray first = Nd4j.linspace(1, 4, 4).reshape(1, 4);
+        INDArray second = Nd4j.linspace(5, 12, 8).reshape(2, 4);
+
+        BatchedSameDiffInferenceObservable observable = new BatchedSameDiffInferenceObservable();
+        observable.addInput(new INDArray[]{first});
+        observable.addInput(new INDArray[]{second});
+
+        List<INDArray[]> batches = observable.getInputBatches();
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0)[0].size(0));
+
+        //pretend the graph doubles its input
+        observable.setOutputBatches(Collections.singletonList(new INDArray[]{batches.get(0)[0].mul(2)}));
+
+        observable.setPosition(0);
+        assertEquals(first.mul(2), observable.getOutput()[0]);
+        observable.setPosition(1);
+        assertEquals(second.mul(2), observable.getOutput()[0]);
+    }
+
+    @Test(timeout = 60000)
+    public void testIncompatibleShapesAreNotMerged() {
+        INDArray first = Nd4j.linspace(1, 4, 4).reshape(1, 4);
+        INDArray second = Nd4j.linspace(1, 6, 6).reshape(1, 6);
+
+        BatchedSameDiffInferenceObservable observable = new BatchedSameDiffInferenceObservable();
+        observable.addInput(new INDArray[]{first});
+        observable.addInput(new INDArray[]{second});
+
+        List<INDArray[]> batches = observable.getInputBatches();
+        assertEquals(2, batches.size());
+
+        observable.setOutputBatches(batches);
+        observable.setPosition(0);
+        assertEquals(first, observable.getOutput()[0]);
+        observable.setPosition(1);
+        assertEquals(second, observable.getOutput()[0]);
+    }
+
+}
@@ -25,11 +25,16 @@ package ai.konduit.serving.threadpool.tensorflow;
 import ai.konduit.serving.threadpool.tensorflow.conversion.TensorflowConversion;
 import ai.konduit.serving.threadpool.tensorflow.conversion.graphrunner.GraphRunner;
 import ai.konduit.serving.model.TensorDataType;
+import org.apache.commons.io.IOUtils;
 import org.bytedeco.tensorflow.TF_Tensor;
 import org.junit.Test;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.util.Arrays;
+import java.util.Collections;
 
 import static junit.framework.TestCase.assertEquals;
 
@@ -51,4 +56,25 @@ public class GraphRunnerTests {
 
     }
 
+    @Test(timeout = 60000)
+    public void testMixedDataTypesCastInNd4j() throws Exception {
+        //a float32 -> float64 graph fed doubles and asked for floats back:
+        //both casts happen in nd4j around a single session run
+        byte[] graphBytes = IOUtils.toByteArray(new ClassPathResource("cast_graph/cast_float32_float64.pb").getInputStream());
+        try(GraphRunner graphRunner = GraphRunner.builder()
+                .graphBytes(graphBytes)
+                .inputNames(Arrays.asList("input"))
+                .outputNames(Arrays.asList("cast_output"))
+                .inputDataTypes(Collections.singletonMap("input", TensorDataType.FLOAT))
+                .outputDataTypes(Collections.singletonMap("cast_output", TensorDataType.FLOAT))
+                .build()) {
+            INDArray arr = Nd4j.linspace(1,4,4).castTo(DataType.DOUBLE);
+            assertEquals(DataType.FLOAT, graphRunner.inputCastType("input", arr));
+
+            INDArray output = graphRunner.run(Collections.singletonMap("input", arr)).get("cast_output");
+            assertEquals(DataType.FLOAT, output.dataType());
+            assertEquals(arr.castTo(DataType.FLOAT), output.reshape(arr.shape()));
+        }
+    }
+
 }
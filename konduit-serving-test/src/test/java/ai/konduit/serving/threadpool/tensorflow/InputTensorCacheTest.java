@@ -0,0 +1,85 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.threadpool.tensorflow;
+
+import ai.konduit.serving.threadpool.tensorflow.conversion.InputTensorCache;
+import ai.konduit.serving.threadpool.tensorflow.conversion.TensorflowConversion;
+import org.bytedeco.tensorflow.TF_Tensor;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.Assert.*;
+
+public class InputTensorCacheTest {
+
+    @Test(timeout = 60000)
+    public void testReusesTensorForSameShape() {
+        try(InputTensorCache cache = new InputTensorCache()) {
+            INDArray first = Nd4j.linspace(1, 8, 8, DataType.FLOAT).reshape(2, 4);
+            TF_Tensor tensor = cache.tensorFor("input", first);
+            assertEquals(first, TensorflowConversion.getInstance().ndArrayFromTensor(tensor));
+
+            INDArray second = first.mul(2);
+            TF_Tensor reused = cache.tensorFor("input", second);
+            assertEquals(tensor.address(), reused.address());
+            assertEquals(second, TensorflowConversion.getInstance().ndArrayFromTensor(reused));
+            assertTrue(cache.isCached(reused));
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testViewInput() {
+        try(InputTensorCache cache = new InputTensorCache()) {
+            INDArray matrix = Nd4j.linspace(1, 8, 8, DataType.DOUBLE).reshape(2, 4);
+            INDArray view = matrix.slice(1);
+            TF_Tensor tensor = cache.tensorFor("input", view);
+            assertEquals(view, TensorflowConversion.getInstance().ndArrayFromTensor(tensor));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEvictsOldShapes() {
+        try(InputTensorCache cache = new InputTensorCache()) {
+            TF_Tensor first = cache.tensorFor("input", Nd4j.ones(DataType.FLOAT, 1, 4));
+            for(int batchSize = 2; batchSize <= InputTensorCache.MAX_SHAPES_PER_INPUT + 1; batchSize++) {
+                cache.tensorFor("input", Nd4j.ones(DataType.FLOAT, batchSize, 4));
+            }
+
+            assertEquals(InputTensorCache.MAX_SHAPES_PER_INPUT, cache.size());
+            assertFalse(cache.isCached(first));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testUnsupportedInputs() {
+        try(InputTensorCache cache = new InputTensorCache()) {
+            assertNull(cache.tensorFor("input", Nd4j.scalar(1.0f)));
+            assertNull(cache.tensorFor("input", Nd4j.create(new String[]{"one", "two"})));
+            assertEquals(0, cache.size());
+        }
+    }
+
+}
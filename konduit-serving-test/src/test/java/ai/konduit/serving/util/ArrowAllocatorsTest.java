@@ -0,0 +1,113 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.pipeline.handlers.converter.JsonArrayMapConverter;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ArrowAllocatorsTest {
+
+    private final Schema schema = new Schema.Builder()
+            .addColumnDouble("first")
+            .addColumnString("second")
+            .build();
+
+    @Test(timeout = 60000)
+    public void testScopeReleasesAndCachesVectors() {
+        ArrowAllocators allocators = new ArrowAllocators(64L * 1024 * 1024, 16L * 1024 * 1024, 16L * 1024 * 1024);
+
+        ArrowAllocators.RequestScope scope = allocators.newRequestScope();
+        JsonArray jsonArray = new JsonArray().add(new JsonObject().put("first", 1.0).put("second", "a"));
+        ArrowWritableRecordBatch batch = new JsonArrayMapConverter().convert(scope, schema, jsonArray, null);
+        assertEquals(1.0, batch.get(0).get(0).toDouble(), 1e-6);
+        List<FieldVector> first = batch.getList();
+        assertEquals(1, allocators.getActiveScopes());
+        assertTrue(allocators.getAllocatedBytes() > 0);
+
+        scope.close();
+        assertEquals(0, allocators.getActiveScopes());
+        assertEquals(1, allocators.getCachedVectorSets());
+        assertEquals(allocators.getCachedBytes(), allocators.getAllocatedBytes());
+
+        //the next request with the same schema reuses the reset vectors
+        ArrowAllocators.RequestScope next = allocators.newRequestScope();
+        List<FieldVector> vectors = next.vectorsFor(schema, 1);
+        assertSame(first.get(0), vectors.get(0));
+        assertTrue(vectors.get(0).isNull(0));
+        next.close();
+
+        //large batches are allocated from the request and freed with it
+        ArrowAllocators.RequestScope large = allocators.newRequestScope();
+        large.vectorsFor(schema, ArrowAllocators.MAX_CACHED_ROWS + 1);
+        assertTrue(large.getAllocator().getAllocatedMemory() > 0);
+        large.close();
+        assertEquals(allocators.getCachedBytes(), allocators.getAllocatedBytes());
+        assertTrue(allocators.getPeakBytes() >= allocators.getAllocatedBytes());
+    }
+
+    @Test(timeout = 60000)
+    public void testVariableWidthColumnsChargedToRequest() {
+        //the cache only has room for the fixed width column
+        ArrowAllocators allocators = new ArrowAllocators(64L * 1024 * 1024, 16L * 1024 * 1024, 64 * 1024);
+        try(ArrowAllocators.RequestScope scope = allocators.newRequestScope()) {
+            List<FieldVector> vectors = scope.vectorsFor(schema, 1);
+            assertNotSame(scope.getAllocator(), vectors.get(0).getAllocator());
+            assertSame(scope.getAllocator(), vectors.get(1).getAllocator());
+
+            //growing past the cache limit succeeds, it is charged to the request
+            byte[] value = new byte[1024 * 1024];
+            Arrays.fill(value, (byte) 'a');
+            ((VarCharVector) vectors.get(1)).setSafe(0, value);
+            assertTrue(scope.getAllocator().getAllocatedMemory() >= value.length);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ArrowUtils.writeRecordBatchTo(scope, ArrowUtils.toArrowWritables(vectors, schema), schema, outputStream);
+            assertTrue(outputStream.size() >= value.length);
+        }
+
+        assertEquals(0, allocators.getActiveScopes());
+        assertEquals(allocators.getCachedBytes(), allocators.getAllocatedBytes());
+    }
+
+    @Test(timeout = 60000, expected = OutOfMemoryException.class)
+    public void testRequestLimit() {
+        ArrowAllocators allocators = new ArrowAllocators(64L * 1024 * 1024, 1024, 0);
+        try(ArrowAllocators.RequestScope scope = allocators.newRequestScope()) {
+            scope.vectorsFor(schema, 100000);
+        }
+    }
+
+}
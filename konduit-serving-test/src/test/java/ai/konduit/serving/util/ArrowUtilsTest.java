@@ -0,0 +1,83 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.pipeline.handlers.converter.JsonArrayMapConverter;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.datavec.api.records.Record;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import static org.junit.Assert.*;
+
+public class ArrowUtilsTest {
+
+    @Test(timeout = 60000)
+    public void testColumnarMatrixMatchesRows() {
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("first")
+                .addColumnInteger("second")
+                .addColumnFloat("third")
+                .addColumnLong("fourth")
+                .build();
+
+        JsonArray jsonArray = new JsonArray();
+        for (int i = 0; i < 100; i++) {
+            jsonArray.add(new JsonObject()
+                    .put("first", i * 0.5)
+                    .put("second", i)
+                    .put("third", i * 2.0f)
+                    .put("fourth", (long) i * 3));
+        }
+
+        ArrowWritableRecordBatch batch = new JsonArrayMapConverter().convert(schema, jsonArray, null);
+        INDArray matrix = ArrowUtils.toMatrix(batch);
+        assertNotNull(matrix);
+        assertArrayEquals(new long[]{100, 4}, matrix.shape());
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(batch.get(i).get(j).toDouble(), matrix.getDouble(i, j), 1e-6);
+            }
+        }
+
+        Record[] records = ArrowBatchRecord.wrap(batch);
+        assertSame(batch, ArrowBatchRecord.batchOf(records));
+        assertNull(ArrowBatchRecord.batchOf(new Record[]{records[1], records[0]}));
+    }
+
+    @Test(timeout = 60000)
+    public void testNonNumericColumnsFallBack() {
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("first")
+                .addColumnString("second")
+                .build();
+
+        JsonArray jsonArray = new JsonArray().add(new JsonObject().put("first", 1.0).put("second", "a"));
+        ArrowWritableRecordBatch batch = new JsonArrayMapConverter().convert(schema, jsonArray, null);
+        assertNull(ArrowUtils.toMatrix(batch));
+    }
+
+}
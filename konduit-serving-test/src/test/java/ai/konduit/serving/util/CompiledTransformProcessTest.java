@@ -0,0 +1,144 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.pipeline.handlers.converter.JsonArrayMapConverter;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.datavec.api.records.Record;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompiledTransformProcessTest {
+
+    @Test(timeout = 60000)
+    public void testMatchesLocalExecutor() {
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("first")
+                .addColumnInteger("second")
+                .addColumnLong("third")
+                .addColumnString("fourth")
+                .addColumnCategorical("fifth", "a", "b")
+                .build();
+
+        TransformProcess transformProcess = new TransformProcess.Builder(schema)
+                .doubleMathOp("first", MathOp.Multiply, 2.0)
+                .doubleMathOp("first", MathOp.ReverseSubtract, 1.0)
+                .integerMathOp("second", MathOp.Add, Integer.MAX_VALUE)
+                .integerMathOp("second", MathOp.Divide, 3)
+                .longMathOp("third", MathOp.ScalarMax, 5L)
+                .appendStringColumnTransform("fourth", "-suffix")
+                .categoricalToInteger("fifth")
+                .renameColumn("first", "renamed")
+                .removeColumns("third")
+                .reorderColumns("fourth", "renamed")
+                .build();
+
+        CompiledTransformProcess compiled = CompiledTransformProcess.compile(transformProcess);
+        assertTrue(compiled.isCompiled());
+
+        List<List<Writable>> rows = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            rows.add(Arrays.asList(
+                    new DoubleWritable(i * 0.5),
+                    new IntWritable(i),
+                    new LongWritable(i),
+                    new Text("row" + i),
+                    new Text(i % 2 == 0 ? "a" : "b")));
+        }
+
+        assertEquals(LocalTransformExecutor.execute(rows, transformProcess), compiled.execute(rows));
+    }
+
+    @Test(timeout = 60000)
+    public void testArrowColumns() {
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("first")
+                .addColumnInteger("second")
+                .addColumnString("third")
+                .build();
+
+        TransformProcess transformProcess = new TransformProcess.Builder(schema)
+                .doubleMathOp("first", MathOp.Add, 1.0)
+                .integerMathOp("second", MathOp.Multiply, 2)
+                .appendStringColumnTransform("third", "!")
+                .build();
+
+        JsonArray jsonArray = new JsonArray();
+        for (int i = 0; i < 20; i++) {
+            jsonArray.add(new JsonObject()
+                    .put("first", i * 0.25)
+                    .put("second", i)
+                    .put("third", "value" + i));
+        }
+
+        ArrowWritableRecordBatch batch = new JsonArrayMapConverter().convert(schema, jsonArray, null);
+        List<List<Writable>> rows = new ArrayList<>();
+        for(int i = 0; i < batch.size(); i++) {
+            rows.add(batch.get(i));
+        }
+
+        Record[] records = ArrowBatchRecord.wrap(batch);
+        assertEquals(LocalTransformExecutor.execute(rows, transformProcess),
+                CompiledTransformProcess.compile(transformProcess).execute(records));
+    }
+
+    @Test(timeout = 60000)
+    public void testFilterFallsBack() {
+        Schema schema = new Schema.Builder()
+                .addColumnDouble("first")
+                .build();
+
+        TransformProcess transformProcess = new TransformProcess.Builder(schema)
+                .filter(new ConditionFilter(new DoubleColumnCondition("first", ConditionOp.LessThan, 1.0)))
+                .doubleMathOp("first", MathOp.Add, 1.0)
+                .build();
+
+        CompiledTransformProcess compiled = CompiledTransformProcess.compile(transformProcess);
+        assertFalse(compiled.isCompiled());
+
+        List<List<Writable>> rows = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            rows.add(Arrays.asList(new DoubleWritable(i)));
+        }
+
+        List<List<Writable>> execute = compiled.execute(rows);
+        assertEquals(3, execute.size());
+        assertEquals(LocalTransformExecutor.execute(rows, transformProcess), execute);
+    }
+
+}
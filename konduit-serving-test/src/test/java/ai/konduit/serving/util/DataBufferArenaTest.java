@@ -0,0 +1,107 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.nd4j.VertxBufferNd4jInputAdapter;
+import ai.konduit.serving.pipeline.handlers.converter.multi.converter.impl.numpy.VertxBufferNumpyInputAdapter;
+import ai.konduit.serving.verticles.VerticleConstants;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.serde.binary.BinarySerde;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DataBufferArenaTest {
+
+    @Test(timeout = 60000)
+    public void testBuffersAreRecycledBySizeClass() {
+        DataBufferArena arena = new DataBufferArena(DataBufferArena.DEFAULT_MAX_POOLED_BYTES, 2);
+        DataBufferArena.Lease first = arena.acquire(DataType.FLOAT, 1000);
+        assertEquals(1000, first.getBuffer().length());
+        first.release();
+        //double release must not put the buffer back twice
+        first.release();
+        assertEquals(1, arena.retainedBuffers());
+
+        DataBufferArena.Lease second = arena.acquire(DataType.FLOAT, 900);
+        assertEquals(900, second.getBuffer().length());
+        assertEquals(0, arena.retainedBuffers());
+        second.release();
+    }
+
+    @Test(timeout = 60000)
+    public void testPooledNumpyDecoding() {
+        INDArray arr = Nd4j.linspace(1, 24, 24, DataType.FLOAT).reshape(2, 3, 4);
+        Map<String, Object> contextData = new HashMap<>();
+        DataBufferArena.enable(contextData);
+        INDArray decoded = new VertxBufferNumpyInputAdapter()
+                .convert(directBuffer(Nd4j.toNpyByteArray(arr)), null, contextData).get();
+
+        assertEquals(arr.reshape(1, 2, 3, 4), decoded);
+        assertNotNull(contextData.get(VerticleConstants.POOLED_BUFFERS));
+        DataBufferArena.releaseAll(contextData);
+        assertFalse(contextData.containsKey(VerticleConstants.POOLED_BUFFERS));
+    }
+
+    @Test(timeout = 60000)
+    public void testPooledNd4jDecoding() {
+        INDArray arr = Nd4j.linspace(1, 24, 24, DataType.DOUBLE).reshape(2, 3, 4);
+        ByteBuffer serialized = BinarySerde.toByteBuffer(arr);
+        byte[] bytes = new byte[serialized.remaining()];
+        serialized.get(bytes);
+
+        Map<String, Object> contextData = new HashMap<>();
+        DataBufferArena.enable(contextData);
+        INDArray decoded = new VertxBufferNd4jInputAdapter()
+                .convert(directBuffer(bytes), null, contextData).get();
+
+        assertEquals(arr.reshape(1, 2, 3, 4), decoded);
+        DataBufferArena.releaseAll(contextData);
+    }
+
+    @Test(timeout = 60000)
+    public void testUnpooledDecodingWithoutOptIn() {
+        INDArray arr = Nd4j.linspace(1, 24, 24, DataType.FLOAT).reshape(2, 3, 4);
+        //a caller that never releases leases, the decoded array must not come from the arena
+        Map<String, Object> contextData = new HashMap<>();
+        INDArray decoded = new VertxBufferNumpyInputAdapter()
+                .convert(directBuffer(Nd4j.toNpyByteArray(arr)), null, contextData).get();
+
+        assertEquals(arr.reshape(1, 2, 3, 4), decoded);
+        assertFalse(DataBufferArena.isEnabled(contextData));
+        assertFalse(contextData.containsKey(VerticleConstants.POOLED_BUFFERS));
+    }
+
+    private static Buffer directBuffer(byte[] bytes) {
+        return Buffer.buffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util;
+
+import ai.konduit.serving.output.types.ClassifierOutput;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonBufferWriterTest {
+
+    @Test(timeout = 60000)
+    public void testCompactAndPrettyOutputMatch() throws Exception {
+        ClassifierOutput classifierOutput = ClassifierOutput.builder()
+                .decisions(new int[]{1})
+                .labels(new String[]{"a", "b"})
+                .probabilities(new double[][]{{0.25, 0.75}})
+                .build();
+
+        JsonBufferWriter.JsonContent content = (generator, mapper) -> {
+            generator.writeStartObject();
+            generator.writeFieldName("default");
+            mapper.writeValue(generator, classifierOutput);
+            generator.writeEndObject();
+        };
+
+        Buffer compact = new JsonBufferWriter(false).write(content);
+        Buffer pretty = new JsonBufferWriter(true).write(content);
+        assertFalse(compact.toString().contains("\n"));
+        assertTrue(pretty.toString().contains("\n"));
+        assertTrue(pretty.length() > compact.length());
+
+        JsonObject expected = new JsonObject(ObjectMapperHolder.getJsonMapper().writeValueAsString(classifierOutput));
+        assertEquals(expected, new JsonObject(compact).getJsonObject("default"));
+        assertEquals(expected, new JsonObject(pretty).getJsonObject("default"));
+    }
+
+}
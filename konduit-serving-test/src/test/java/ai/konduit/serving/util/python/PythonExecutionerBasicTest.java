@@ -28,6 +28,11 @@ import org.junit.Test;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 
@@ -210,4 +215,176 @@ public class PythonExecutionerBasicTest {
 
     }
 
+
+    @Test
+    public void testBool() throws Exception {
+        PythonVariables pyInputs = new PythonVariables();
+        PythonVariables pyOutputs = new PythonVariables();
+
+        pyInputs.addBool("x", true);
+        pyInputs.addBool("y", false);
+        pyOutputs.addBool("z");
+
+        PythonExecutioner.exec("z = x and not y", pyInputs, pyOutputs);
+
+        Assert.assertTrue(pyOutputs.getBooleanValue("z"));
+    }
+
+    @Test
+    public void testDict() throws Exception {
+        PythonVariables pyInputs = new PythonVariables();
+        PythonVariables pyOutputs = new PythonVariables();
+
+        Map<String,Object> x = new LinkedHashMap<>();
+        x.put("a", 1L);
+        x.put("b", "two");
+        pyInputs.addDict("x", x);
+        pyOutputs.addDict("z");
+
+        PythonExecutioner.exec("z = dict(x)\nz['c'] = [x['a'], 2.5]", pyInputs, pyOutputs);
+
+        Map<?,?> z = pyOutputs.getDictValue("z");
+        assertEquals(1L, z.get("a"));
+        assertEquals("two", z.get("b"));
+        assertEquals(Arrays.asList(1L, 2.5), z.get("c"));
+    }
+
+    @Test
+    public void testNDArrayInDict() throws Exception {
+        PythonVariables pyInputs = new PythonVariables();
+        PythonVariables pyOutputs = new PythonVariables();
+
+        pyInputs.addNDArray("x", Nd4j.ones(DataType.FLOAT, 2, 3));
+        pyOutputs.addDict("z");
+
+        PythonExecutioner.exec("z = {'y': x * 2}", pyInputs, pyOutputs);
+
+        Object y = pyOutputs.getDictValue("z").get("y");
+        Assert.assertTrue(y instanceof NumpyArray);
+        INDArray arr = ((NumpyArray) y).getNd4jArray();
+        Assert.assertArrayEquals(new long[]{2, 3}, arr.shape());
+        Assert.assertEquals(12.0, arr.sumNumber().doubleValue(), 1e-5);
+    }
+
+    @Test
+    public void testNonContiguousNDArrayOutput() throws Exception {
+        PythonVariables pyInputs = new PythonVariables();
+        PythonVariables pyOutputs = new PythonVariables();
+
+        pyInputs.addNDArray("x", Nd4j.linspace(1, 6, 6, DataType.DOUBLE).reshape(2, 3));
+        pyOutputs.addNDArray("z");
+
+        PythonExecutioner.exec("z = x.T", pyInputs, pyOutputs);
+
+        INDArray z = pyOutputs.getNDArrayValue("z").getNd4jArray();
+        Assert.assertEquals(Nd4j.linspace(1, 6, 6, DataType.DOUBLE).reshape(2, 3).transpose(), z);
+    }
+
+    @Test
+    public void testAliasedNDArrayInputOutlivesRun() throws Exception {
+        INDArray expected = Nd4j.linspace(DataType.DOUBLE, 1, 12, 1).reshape(3, 4);
+        PythonVariables pyInputs = new PythonVariables();
+        pyInputs.addNDArray("x", expected.dup());
+        //the input global is removed after the run, the aliases stay behind
+        PythonExecutioner.exec("y = x\nclass Holder: pass\nholder = Holder()\nholder.rows = x[1:]", pyInputs, new PythonVariables());
+
+        //drop java's own reference to the input and churn the allocator
+        pyInputs = null;
+        for(int i = 0; i < 10; i++) {
+            System.gc();
+            Nd4j.rand(DataType.DOUBLE, 3, 4);
+        }
+
+        PythonVariables pyOutputs = new PythonVariables();
+        pyOutputs.addNDArray("z");
+        pyOutputs.addNDArray("w");
+        PythonExecutioner.exec("z = y * 1\nw = holder.rows * 1", new PythonVariables(), pyOutputs);
+        Assert.assertEquals(expected, pyOutputs.getNDArrayValue("z").getNd4jArray());
+        Assert.assertEquals(expected.get(NDArrayIndex.interval(1, 3), NDArrayIndex.all()), pyOutputs.getNDArrayValue("w").getNd4jArray());
+
+        //release the aliases so the capsule hands the java array back
+        PythonExecutioner.exec("del y\ndel holder", new PythonVariables(), new PythonVariables());
+    }
+
+    @Test
+    public void testCompiledCodeReusedWithNewInputs() throws Exception {
+        String code = "z = x * 2";
+        for(int i = 0; i < 3; i++) {
+            PythonVariables pyInputs = new PythonVariables();
+            PythonVariables pyOutputs = new PythonVariables();
+            pyInputs.addInt("x", i);
+            pyOutputs.addInt("z");
+
+            PythonExecutioner.exec(code, pyInputs, pyOutputs);
+
+            Assert.assertEquals(i * 2, pyOutputs.getIntValue("z").longValue());
+        }
+    }
+
+    @Test
+    public void testEvictedCodeRecompiles() throws Exception {
+        String interpreter = PythonExecutioner.getInterpreter();
+        int snippets = PythonExecutioner.MAX_COMPILED_CODE_PER_INTERPRETER + 10;
+        for(int i = 0; i < snippets; i++) {
+            PythonVariables pyInputs = new PythonVariables();
+            PythonVariables pyOutputs = new PythonVariables();
+            pyInputs.addInt("x", i);
+            pyOutputs.addInt("z");
+
+            PythonExecutioner.exec("z = x + " + i, pyInputs, pyOutputs);
+
+            Assert.assertEquals(2 * i, pyOutputs.getIntValue("z").longValue());
+            Assert.assertTrue(PythonExecutioner.compiledCodeSize(interpreter) <= PythonExecutioner.MAX_COMPILED_CODE_PER_INTERPRETER);
+        }
+
+        //the cache stays bounded, the first code objects were the least recently used ones and have been released
+        Assert.assertEquals(PythonExecutioner.MAX_COMPILED_CODE_PER_INTERPRETER, PythonExecutioner.compiledCodeSize(interpreter));
+        Assert.assertFalse(PythonExecutioner.isCompiled(interpreter, "z = x + 0"));
+        Assert.assertTrue(PythonExecutioner.isCompiled(interpreter, "z = x + " + (snippets - 1)));
+
+        PythonVariables pyInputs = new PythonVariables();
+        PythonVariables pyOutputs = new PythonVariables();
+        pyInputs.addInt("x", 5);
+        pyOutputs.addInt("z");
+        PythonExecutioner.exec("z = x + 0", pyInputs, pyOutputs);
+        Assert.assertEquals(5, pyOutputs.getIntValue("z").longValue());
+
+        //recompiled, evicting another code object in its place
+        Assert.assertTrue(PythonExecutioner.isCompiled(interpreter, "z = x + 0"));
+        Assert.assertEquals(PythonExecutioner.MAX_COMPILED_CODE_PER_INTERPRETER, PythonExecutioner.compiledCodeSize(interpreter));
+    }
+
+    @Test
+    public void testDeleteInterpreterReleasesCompiledCode() throws Exception {
+        PythonExecutioner.setInterpreter("compiled");
+        try {
+            PythonVariables pyInputs = new PythonVariables();
+            PythonVariables pyOutputs = new PythonVariables();
+            pyInputs.addInt("x", 1);
+            pyOutputs.addInt("z");
+            PythonExecutioner.exec("z = x + 1", pyInputs, pyOutputs);
+            Assert.assertEquals(2, pyOutputs.getIntValue("z").longValue());
+            Assert.assertEquals(1, PythonExecutioner.compiledCodeSize("compiled"));
+        } finally {
+            PythonExecutioner.setInterpreter(PythonExecutioner.MAIN_INTERPRETER_NAME);
+        }
+
+        PythonExecutioner.deleteInterpreter("compiled");
+        Assert.assertFalse(PythonExecutioner.hasInterpreter("compiled"));
+        Assert.assertEquals(0, PythonExecutioner.compiledCodeSize("compiled"));
+    }
+
+    @Test
+    public void testSyntaxErrorFailsCompile() throws Exception {
+        PythonVariables pyOutputs = new PythonVariables();
+        pyOutputs.addInt("z");
+        try {
+            PythonExecutioner.exec("\nz = = 1", new PythonVariables(), pyOutputs);
+            Assert.fail("Expected the code to fail to compile");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("\"z = = 1\""));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("SyntaxError"));
+        }
+    }
+
 }
@@ -0,0 +1,207 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.util.python;
+
+import ai.konduit.serving.executioner.PythonProcessPool;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PythonProcessPoolTest {
+
+    @Rule
+    public TemporaryFolder temporary = new TemporaryFolder();
+
+    private static PythonProcessPool pool;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        Process process = new ProcessBuilder(PythonProcessPool.DEFAULT_PYTHON_EXECUTABLE, "--version").start();
+        Assume.assumeTrue("python3 is not available", process.waitFor() == 0);
+        pool = PythonProcessPool.builder().numWorkers(2).build();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        if(pool != null) {
+            pool.close();
+        }
+    }
+
+    private static boolean hasNumpy() throws Exception {
+        Process process = new ProcessBuilder(PythonProcessPool.DEFAULT_PYTHON_EXECUTABLE, "-c", "import numpy").start();
+        return process.waitFor() == 0;
+    }
+
+    @Test(timeout = 60000L)
+    public void testScalars() throws Exception {
+        PythonVariables pyInputs = new PythonVariables();
+        pyInputs.addInt("x", 10);
+        pyInputs.addFloat("y", 2.5);
+        pyInputs.addStr("s", "Hello");
+        PythonVariables pyOutputs = new PythonVariables();
+        pyOutputs.addFloat("z");
+        pyOutputs.addStr("t");
+        pyOutputs.addList("l");
+
+        pool.exec("z = x * y\nt = s + ' World'\nl = [x, s]", pyInputs, pyOutputs);
+
+        assertEquals(25.0, pyOutputs.getFloatValue("z"), 1e-6);
+        assertEquals("Hello World", pyOutputs.getStrValue("t"));
+        assertEquals(10L, pyOutputs.getListValue("l")[0]);
+        assertEquals("Hello", pyOutputs.getListValue("l")[1]);
+    }
+
+    @Test(timeout = 60000L)
+    public void testNDArray() throws Exception {
+        Assume.assumeTrue("numpy is not available", hasNumpy());
+        INDArray x = Nd4j.linspace(1, 6, 6, DataType.DOUBLE).reshape(2, 3);
+        PythonVariables pyInputs = new PythonVariables();
+        pyInputs.addNDArray("x", x);
+        //views are copied before they are written to shared memory
+        pyInputs.addNDArray("y", x.transpose());
+        PythonVariables pyOutputs = new PythonVariables();
+        pyOutputs.addNDArray("z");
+
+        pool.exec("z = x + y.T", pyInputs, pyOutputs);
+
+        INDArray z = pyOutputs.getNDArrayValue("z").getNd4jArray();
+        assertEquals(x.mul(2), z);
+    }
+
+    @Test(timeout = 60000L)
+    public void testConcurrentCalls() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for(int i = 0; i < 16; i++) {
+                final int value = i;
+                futures.add(executorService.submit(() -> {
+                    PythonVariables pyInputs = new PythonVariables();
+                    pyInputs.addInt("x", value);
+                    PythonVariables pyOutputs = new PythonVariables();
+                    pyOutputs.addInt("y");
+                    pool.exec("y = x * x", pyInputs, pyOutputs);
+                    return pyOutputs.getIntValue("y");
+                }));
+            }
+
+            for(int i = 0; i < futures.size(); i++) {
+                assertEquals(i * i, futures.get(i).get().longValue());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testSetupRunsOncePerWorker() throws Exception {
+        String code = "#<SETUP>\ncalls = 0\n#</SETUP>\ncalls += 1\nresult = calls";
+        long total = 0;
+        for(int i = 0; i < 4; i++) {
+            PythonVariables pyOutputs = new PythonVariables();
+            pyOutputs.addInt("result");
+            pool.exec(code, null, pyOutputs);
+            total += pyOutputs.getIntValue("result");
+        }
+
+        //2 workers, 4 calls: each worker counts 1,2 after the setup ran once
+        assertEquals(6, total);
+    }
+
+    @Test(timeout = 60000L)
+    public void testTimeoutReplacesWorker() throws Exception {
+        try(PythonProcessPool timedPool = PythonProcessPool.builder().numWorkers(1).timeoutMillis(2000).build()) {
+            PythonVariables pyOutputs = new PythonVariables();
+            pyOutputs.addInt("y");
+            try {
+                timedPool.exec("import time\ntime.sleep(30)\ny = 1", null, pyOutputs);
+                fail("Expected the call to time out");
+            } catch (TimeoutException e) {
+                //expected, the late worker is killed
+            }
+
+            //the only worker was replaced, so the pool still answers
+            timedPool.exec("y = 2", null, pyOutputs);
+            assertEquals(2, pyOutputs.getIntValue("y").longValue());
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testOutputFilesDeletedOnFailure() throws Exception {
+        Assume.assumeTrue("numpy is not available", hasNumpy());
+        File sharedMemoryDirectory = temporary.newFolder("shm");
+        try(PythonProcessPool filePool = PythonProcessPool.builder().numWorkers(1).sharedMemoryDirectory(sharedMemoryDirectory).build()) {
+            //the worker writes both arrays, reading the complex one back fails
+            PythonVariables pyOutputs = new PythonVariables();
+            pyOutputs.addNDArray("z");
+            pyOutputs.addNDArray("c");
+            try {
+                filePool.exec("import numpy as np\nz = np.ones(3)\nc = np.zeros(3, dtype=np.complex128)", null, pyOutputs);
+                fail("Expected the complex output to be rejected");
+            } catch (IllegalStateException e) {
+                //expected
+            }
+
+            assertArrayEquals(new String[0], sharedMemoryDirectory.list());
+
+            //the worker fails converting the second output after writing the first
+            pyOutputs = new PythonVariables();
+            pyOutputs.addNDArray("z");
+            pyOutputs.addInt("n");
+            try {
+                filePool.exec("import numpy as np\nz = np.ones(3)\nn = 'not a number'", null, pyOutputs);
+                fail("Expected the int conversion to fail");
+            } catch (RuntimeException e) {
+                //expected
+            }
+
+            assertArrayEquals(new String[0], sharedMemoryDirectory.list());
+        }
+    }
+
+    @Test(timeout = 60000L, expected = RuntimeException.class)
+    public void testErrorInCode() throws Exception {
+        PythonVariables pyOutputs = new PythonVariables();
+        pyOutputs.addInt("y");
+        pool.exec("y = undefined_variable", null, pyOutputs);
+    }
+}
@@ -76,6 +76,42 @@ public class PythonTransformTest {
 
     }
 
+    @Test(timeout = 60000L)
+    public void testMapBatch() throws Exception{
+        Builder schemaBuilder = new Builder();
+        schemaBuilder
+                .addColumnInteger("col1")
+                .addColumnDouble("col2")
+                .addColumnString("col3");
+
+        Schema initialSchema = schemaBuilder.build();
+        schemaBuilder.addColumnDouble("col4")
+                .addColumnString("col5");
+        Schema finalSchema = schemaBuilder.build();
+
+        String pythonCode = "col4 = col1 * col2\ncol5 = [s.upper() for s in col3]";
+
+        PythonTransform pythonTransform = PythonTransform.builder().code(pythonCode)
+                .outputSchema(finalSchema)
+                .inputSchema(initialSchema)
+                .build();
+
+        List<List<Writable>> batch = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            batch.add(Arrays.asList(new IntWritable(i), new DoubleWritable(i + 0.5), new Text("row" + i)));
+        }
+
+        List<List<Writable>> outputs = pythonTransform.mapBatch(batch);
+        assertEquals(3, outputs.size());
+        for(int i = 0; i < 3; i++) {
+            List<Writable> row = outputs.get(i);
+            assertEquals(5, row.size());
+            assertEquals(i, row.get(0).toInt());
+            assertEquals(i * (i + 0.5), row.get(3).toDouble(), 1e-6);
+            assertEquals("ROW" + i, row.get(4).toString());
+        }
+    }
+
     @Test(timeout = 60000L)
     public void testMixedTypes() throws Exception{
         Builder schemaBuilder = new Builder();
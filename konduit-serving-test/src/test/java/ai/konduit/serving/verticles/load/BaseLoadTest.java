@@ -0,0 +1,109 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.verticles.BaseVerticleTest;
+import ai.konduit.serving.verticles.inference.InferenceVerticle;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Base class for load tests against a local {@link InferenceVerticle}.
+ * The defaults are small enough to run with the rest of the suite; for
+ * real measurements override them with system properties:
+ *
+ * <ul>
+ *     <li>{@value #RATE_PROPERTY}: requests per second, default 20</li>
+ *     <li>{@value #DURATION_PROPERTY}: measured window in milliseconds, default 5000</li>
+ *     <li>{@value #WARMUP_PROPERTY}: unrecorded warmup in milliseconds, default 2000</li>
+ *     <li>{@value #OUTPUT_PROPERTY}: where reports go, default target/load-tests</li>
+ * </ul>
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+@NotThreadSafe
+public abstract class BaseLoadTest extends BaseVerticleTest {
+
+    public final static String RATE_PROPERTY = "konduit.loadtest.rate";
+    public final static String DURATION_PROPERTY = "konduit.loadtest.durationMillis";
+    public final static String WARMUP_PROPERTY = "konduit.loadtest.warmupMillis";
+    public final static String OUTPUT_PROPERTY = "konduit.loadtest.output";
+
+    @Override
+    public Class<? extends AbstractVerticle> getVerticalClazz() {
+        return InferenceVerticle.class;
+    }
+
+    @Override
+    public Handler<HttpServerRequest> getRequest() {
+        return null;
+    }
+
+    /**
+     * Run the given request against the deployed verticle, write the report
+     * and assert every request succeeded.
+     * @param name the name of the run, used for the report files
+     * @param request the request to replay
+     * @return the report
+     * @throws Exception if the run or writing the report fails
+     */
+    protected LoadTestReport runLoad(String name, LoadRequest request) throws Exception {
+        //the client gets its own event loops so it does not queue behind the server
+        Vertx clientVertx = Vertx.vertx();
+        try {
+            LoadGenerator loadGenerator = LoadGenerator.builder()
+                    .vertx(clientVertx)
+                    .port(port)
+                    .requestsPerSecond(Double.parseDouble(System.getProperty(RATE_PROPERTY, "20")))
+                    .durationMillis(Long.parseLong(System.getProperty(DURATION_PROPERTY, "5000")))
+                    .warmupMillis(Long.parseLong(System.getProperty(WARMUP_PROPERTY, "2000")))
+                    .build();
+
+            LoadTestReport report = loadGenerator.run(name, request);
+            File summary = report.writeTo(new File(System.getProperty(OUTPUT_PROPERTY, "target/load-tests")));
+            log.info(report.summary());
+            log.info("Wrote load test report to {}", summary.getAbsolutePath());
+
+            assertEquals("Load test requests failed", 0, report.getErrors());
+            assertTrue(report.getCompleted() > 0);
+            return report;
+        } finally {
+            CountDownLatch closed = new CountDownLatch(1);
+            clientVertx.close(result -> closed.countDown());
+            closed.await(30, TimeUnit.SECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.InferenceConfiguration;
+import ai.konduit.serving.config.Input;
+import ai.konduit.serving.config.Output;
+import ai.konduit.serving.config.ServingConfig;
+import ai.konduit.serving.model.ModelConfig;
+import ai.konduit.serving.model.ModelConfigType;
+import ai.konduit.serving.pipeline.ModelPipelineStep;
+import ai.konduit.serving.util.SchemaTypeUtils;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.partition.NumberOfRecordsPartitioner;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.recordreader.ArrowRecordWriter;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
+import org.nd4j.linalg.primitives.Pair;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static ai.konduit.serving.train.TrainUtils.getTrainedNetwork;
+
+/**
+ * Load tests for the json and arrow routes against the small iris network.
+ *
+ * @author Adam Gibson
+ */
+@RunWith(VertxUnitRunner.class)
+@NotThreadSafe
+public class Dl4jLoadTest extends BaseLoadTest {
+
+    private final static double[] IRIS_ROW = {5.1, 3.5, 1.4, 0.2};
+
+    @Override
+    public JsonObject getConfigObject() throws Exception {
+        Pair<MultiLayerNetwork, DataNormalization> multiLayerNetwork = getTrainedNetwork();
+        File modelSave = new File(temporary.getRoot(), "model.zip");
+        ModelSerializer.writeModel(multiLayerNetwork.getFirst(), modelSave, true);
+
+        Schema outputSchema = new Schema.Builder()
+                .addColumnDouble("setosa")
+                .addColumnDouble("versicolor")
+                .addColumnDouble("virginica")
+                .build();
+
+        ServingConfig servingConfig = ServingConfig.builder()
+                .httpPort(port)
+                .inputDataType(Input.DataType.JSON)
+                .predictionType(Output.PredictionType.CLASSIFICATION)
+                .build();
+
+        ModelPipelineStep modelPipelineStep = ModelPipelineStep.builder()
+                .modelConfig(ModelConfig.builder()
+                        .modelConfigType(ModelConfigType.multiLayerNetwork(modelSave.getAbsolutePath()))
+                        .build())
+                .inputName("default")
+                .inputColumnName("default", SchemaTypeUtils.columnNames(inputSchema()))
+                .inputSchema("default", SchemaTypeUtils.typesForSchema(inputSchema()))
+                .outputColumnName("default", SchemaTypeUtils.columnNames(outputSchema))
+                .outputSchema("default", SchemaTypeUtils.typesForSchema(outputSchema))
+                .servingConfig(servingConfig)
+                .build();
+
+        InferenceConfiguration inferenceConfiguration = InferenceConfiguration.builder()
+                .servingConfig(servingConfig)
+                .pipelineStep(modelPipelineStep)
+                .build();
+        return new JsonObject(inferenceConfiguration.toJson());
+    }
+
+    @Test(timeout = 300000)
+    public void testJsonLoad() throws Exception {
+        JsonArray row = new JsonArray();
+        for(double value : IRIS_ROW) {
+            row.add(value);
+        }
+
+        JsonArray body = new JsonArray().add(row);
+        runLoad("dl4j-json", LoadRequest.json("/classification/json", body.encode()));
+    }
+
+    @Test(timeout = 300000)
+    public void testArrowLoad() throws Exception {
+        List<Writable> row = new ArrayList<>();
+        for(double value : IRIS_ROW) {
+            row.add(new DoubleWritable(value));
+        }
+
+        File arrowFile = new File(temporary.getRoot(), "input.arrow");
+        ArrowRecordWriter arrowRecordWriter = new ArrowRecordWriter(inputSchema());
+        arrowRecordWriter.initialize(new FileSplit(arrowFile), new NumberOfRecordsPartitioner());
+        arrowRecordWriter.writeBatch(Collections.singletonList(row));
+        arrowRecordWriter.close();
+
+        runLoad("dl4j-arrow", LoadRequest.multipart("/arrow/numpy", "application/octet-stream",
+                Collections.singletonMap("default", FileUtils.readFileToByteArray(arrowFile))));
+    }
+
+    private Schema inputSchema() {
+        return new Schema.Builder()
+                .addColumnsDouble("petal_length", "petal_width", "sepal_width", "sepal_height")
+                .build();
+    }
+
+}
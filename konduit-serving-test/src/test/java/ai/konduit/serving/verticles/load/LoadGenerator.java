@@ -0,0 +1,224 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.verticles.inference.InferenceVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open loop load generator for a running {@link InferenceVerticle}.
+ *
+ * Requests are sent at a constant arrival rate regardless of how fast
+ * responses come back, which is what a real population of independent
+ * clients looks like. A closed loop client (send, wait, send) slows down
+ * with the server and under reports tail latency.
+ *
+ * Each run is split in to an unrecorded warmup followed by the measured
+ * window. Two histograms are kept: the latency from the intended send time,
+ * which is what gets reported, and the service time from the actual send,
+ * which only differs from the former once the generator itself falls behind.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+@Builder
+public class LoadGenerator {
+
+    private Vertx vertx;
+    @Builder.Default
+    private String host = "localhost";
+    private int port;
+    private double requestsPerSecond;
+    private long durationMillis;
+    @Builder.Default
+    private long warmupMillis = 0;
+    @Builder.Default
+    private int maxConnections = 64;
+    @Builder.Default
+    private long requestTimeoutMillis = 30000;
+
+    /**
+     * Drive the given request at the configured rate and report on the
+     * measured window.
+     * @param name the name of the run, used for the report files
+     * @param request the request to replay
+     * @return the report for the measured window
+     * @throws InterruptedException if interrupted while waiting on responses
+     */
+    public LoadTestReport run(String name, LoadRequest request) throws InterruptedException {
+        if(requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive");
+        }
+
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultHost(host)
+                .setDefaultPort(port)
+                .setKeepAlive(true)
+                .setMaxPoolSize(maxConnections)
+                .setMaxWaitQueueSize(-1));
+        try {
+            if(warmupMillis > 0) {
+                Window warmup = drive(client, request, warmupMillis);
+                log.debug("Warmup for {} completed {} requests with {} errors", name, warmup.completed.get(), warmup.errors.get());
+            }
+
+            Window window = drive(client, request, durationMillis);
+            Histogram latency = window.latency;
+            Histogram service = window.service;
+            long elapsedNanos = Math.max(1, window.lastCompletionNanos.get() - window.startNanos);
+            Package konduitPackage = InferenceVerticle.class.getPackage();
+            String version = konduitPackage != null && konduitPackage.getImplementationVersion() != null ?
+                    konduitPackage.getImplementationVersion() : System.getProperty("konduit.version", "unknown");
+
+            return LoadTestReport.builder()
+                    .name(name)
+                    .path(request.getPath())
+                    .version(version)
+                    .javaVersion(System.getProperty("java.version"))
+                    .osName(System.getProperty("os.name"))
+                    .availableProcessors(Runtime.getRuntime().availableProcessors())
+                    .timestamp(System.currentTimeMillis())
+                    .targetRequestsPerSecond(requestsPerSecond)
+                    .durationMillis(durationMillis)
+                    .completed(window.completed.get())
+                    .errors(window.errors.get())
+                    .throughput(window.completed.get() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)))
+                    .meanMicros(latency.getMean())
+                    .p50Micros(latency.getValueAtPercentile(50.0))
+                    .p90Micros(latency.getValueAtPercentile(90.0))
+                    .p99Micros(latency.getValueAtPercentile(99.0))
+                    .p999Micros(latency.getValueAtPercentile(99.9))
+                    .maxMicros(latency.getMaxValue())
+                    .serviceP50Micros(service.getValueAtPercentile(50.0))
+                    .serviceP99Micros(service.getValueAtPercentile(99.0))
+                    .serviceP999Micros(service.getValueAtPercentile(99.9))
+                    .latencyHistogram(latency)
+                    .build();
+        } finally {
+            client.close();
+        }
+    }
+
+    private Window drive(HttpClient client, LoadRequest request, long millis) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        int total = (int) Math.max(1, Math.round(requestsPerSecond * millis / 1000.0));
+        Window window = new Window(total);
+        //all requests go out on one event loop, scheduling happens on the calling thread
+        Context context = vertx.getOrCreateContext();
+        for(int i = 0; i < total; i++) {
+            long intendedNanos = window.startNanos + i * intervalNanos;
+            long waitNanos;
+            while((waitNanos = intendedNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+
+            context.runOnContext(v -> send(client, request, intendedNanos, window));
+        }
+
+        if(!window.done.await(millis + requestTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            long missing = window.done.getCount();
+            log.warn("{} requests did not complete in time, counting them as errors", missing);
+            window.errors.addAndGet(missing);
+            window.lastCompletionNanos.set(System.nanoTime());
+        }
+
+        return window;
+    }
+
+    private void send(HttpClient client, LoadRequest request, long intendedNanos, Window window) {
+        AtomicBoolean finished = new AtomicBoolean(false);
+        long sentNanos = System.nanoTime();
+        HttpClientRequest clientRequest = client.request(HttpMethod.POST, request.getPath(), response -> {
+            response.exceptionHandler(e -> window.failed(finished, e));
+            response.bodyHandler(body -> {
+                if(response.statusCode() == 200) {
+                    window.succeeded(finished, intendedNanos, sentNanos);
+                }
+                else {
+                    window.failed(finished, new IllegalStateException("Status " + response.statusCode() + " " + response.statusMessage()));
+                }
+            });
+        });
+
+        clientRequest.setTimeout(requestTimeoutMillis);
+        clientRequest.exceptionHandler(e -> window.failed(finished, e));
+        for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            clientRequest.putHeader(header.getKey(), header.getValue());
+        }
+
+        clientRequest.putHeader("Content-Length", String.valueOf(request.getBody().length()));
+        clientRequest.end(request.getBody());
+    }
+
+    private static class Window {
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final Histogram service = new ConcurrentHistogram(3);
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong lastCompletionNanos = new AtomicLong();
+        private final CountDownLatch done;
+        private final long startNanos = System.nanoTime();
+
+        private Window(int total) {
+            done = new CountDownLatch(total);
+            lastCompletionNanos.set(startNanos);
+        }
+
+        private void succeeded(AtomicBoolean finished, long intendedNanos, long sentNanos) {
+            if(!finished.compareAndSet(false, true))
+                return;
+            long now = System.nanoTime();
+            latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - intendedNanos));
+            service.recordValue(TimeUnit.NANOSECONDS.toMicros(now - sentNanos));
+            completed.incrementAndGet();
+            lastCompletionNanos.accumulateAndGet(now, Math::max);
+            done.countDown();
+        }
+
+        private void failed(AtomicBoolean finished, Throwable cause) {
+            if(!finished.compareAndSet(false, true))
+                return;
+            log.debug("Load test request failed", cause);
+            errors.incrementAndGet();
+            lastCompletionNanos.accumulateAndGet(System.nanoTime(), Math::max);
+            done.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.util.UploadUtils;
+import io.vertx.core.buffer.Buffer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Singular;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A single pre-encoded request replayed by the {@link LoadGenerator}.
+ * The body is built once up front so encoding cost does not show up
+ * in the measured latencies.
+ *
+ * @author Adam Gibson
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoadRequest {
+
+    private String path;
+    @Singular
+    private Map<String, String> headers;
+    private Buffer body;
+
+    /**
+     * Create a json request posted to the given path.
+     * @param path the path to post to
+     * @param json the json body
+     * @return the request
+     */
+    public static LoadRequest json(String path, String json) {
+        return LoadRequest.builder()
+                .path(path)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .body(Buffer.buffer(json))
+                .build();
+    }
+
+    /**
+     * Create a multipart/form-data request with one file upload per entry
+     * in the given map, keyed by part name.
+     * @param path the path to post to
+     * @param accept the accepted response content type
+     * @param parts the part names and their contents
+     * @return the request
+     */
+    public static LoadRequest multipart(String path, String accept, Map<String, byte[]> parts) {
+        String boundary = "konduit-load-" + UUID.randomUUID().toString();
+        Buffer[] fileData = new Buffer[parts.size()];
+        String[] names = new String[parts.size()];
+        int i = 0;
+        for(Map.Entry<String, byte[]> part : parts.entrySet()) {
+            names[i] = part.getKey();
+            fileData[i] = Buffer.buffer(part.getValue());
+            i++;
+        }
+
+        return LoadRequest.builder()
+                .path(path)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .header("Accept", accept)
+                .body(UploadUtils.uploadBufferFor(fileData, names, names, boundary))
+                .build();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.util.ObjectMapperHolder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.HdrHistogram.Histogram;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * The outcome of a single {@link LoadGenerator} run.
+ * Latencies are in microseconds and are measured from the time a request
+ * was scheduled to be sent, so a stalled server is charged for the requests
+ * queued up behind it rather than hiding them (coordinated omission).
+ *
+ * {@link #writeTo(File)} writes a json summary meant for diffing between
+ * releases on the same machine, plus the full percentile distribution in
+ * HdrHistogram's .hgrm format for plotting.
+ *
+ * @author Adam Gibson
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoadTestReport {
+
+    private String name;
+    private String path;
+    private String version;
+    private String javaVersion;
+    private String osName;
+    private int availableProcessors;
+    private long timestamp;
+
+    private double targetRequestsPerSecond;
+    private long durationMillis;
+    private long completed;
+    private long errors;
+    private double throughput;
+
+    private double meanMicros;
+    private long p50Micros;
+    private long p90Micros;
+    private long p99Micros;
+    private long p999Micros;
+    private long maxMicros;
+
+    private long serviceP50Micros;
+    private long serviceP99Micros;
+    private long serviceP999Micros;
+
+    @JsonIgnore
+    private transient Histogram latencyHistogram;
+
+    /**
+     * Write the json summary as {@code <name>.json} and the latency
+     * distribution as {@code <name>.hgrm} in to the given directory.
+     * @param directory the directory to write to, created if missing
+     * @return the json summary file
+     * @throws IOException if either file fails to write
+     */
+    public File writeTo(File directory) throws IOException {
+        if(!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create load test output directory " + directory.getAbsolutePath());
+        }
+
+        File summary = new File(directory, name + ".json");
+        ObjectMapperHolder.getJsonMapper().writerWithDefaultPrettyPrinter().writeValue(summary, this);
+        if(latencyHistogram != null) {
+            try(PrintStream printStream = new PrintStream(new FileOutputStream(new File(directory, name + ".hgrm")))) {
+                //scale to milliseconds to match the usual hgrm plotting tools
+                latencyHistogram.outputPercentileDistribution(printStream, 1000.0);
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * @return a one line human readable summary of this run
+     */
+    public String summary() {
+        return String.format("%s %s: %d ok, %d errors, %.1f req/s (target %.1f), latency p50=%dus p99=%dus p99.9=%dus max=%dus",
+                name, path, completed, errors, throughput, targetRequestsPerSecond,
+                p50Micros, p99Micros, p999Micros, maxMicros);
+    }
+
+}
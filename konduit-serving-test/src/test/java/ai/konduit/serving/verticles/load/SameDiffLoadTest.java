@@ -0,0 +1,138 @@
+/*
+ *
+ *  * ******************************************************************************
+ *  *  * Copyright (c) 2015-2019 Skymind Inc.
+ *  *  * Copyright (c) 2019 Konduit AI.
+ *  *  *
+ *  *  * This program and the accompanying materials are made available under the
+ *  *  * terms of the Apache License, Version 2.0 which is available at
+ *  *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *  *
+ *  *  * Unless required by applicable law or agreed to in writing, software
+ *  *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  *  * License for the specific language governing permissions and limitations
+ *  *  * under the License.
+ *  *  *
+ *  *  * SPDX-License-Identifier: Apache-2.0
+ *  *  *****************************************************************************
+ *
+ *
+ */
+
+package ai.konduit.serving.verticles.load;
+
+import ai.konduit.serving.InferenceConfiguration;
+import ai.konduit.serving.config.Input;
+import ai.konduit.serving.config.Output;
+import ai.konduit.serving.config.ServingConfig;
+import ai.konduit.serving.model.ModelConfig;
+import ai.konduit.serving.model.ModelConfigType;
+import ai.konduit.serving.model.SameDiffConfig;
+import ai.konduit.serving.pipeline.ModelPipelineStep;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.serde.binary.BinarySerde;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Load tests for the numpy, nd4j and image multipart routes against a
+ * single op SameDiff graph, so the numbers are dominated by the
+ * serving overhead rather than the model.
+ *
+ * @author Adam Gibson
+ */
+@RunWith(VertxUnitRunner.class)
+@NotThreadSafe
+public class SameDiffLoadTest extends BaseLoadTest {
+
+    private final static int IMAGE_SIZE = 32;
+
+    @Override
+    public JsonObject getConfigObject() throws Exception {
+        SameDiff sameDiff = SameDiff.create();
+        SDVariable input = sameDiff.placeHolder("default", DataType.FLOAT, -1, 3, -1, -1);
+        input.mul("output", 2.0);
+        File sameDiffFile = temporary.newFile();
+        sameDiff.asFlatFile(sameDiffFile);
+
+        ServingConfig servingConfig = ServingConfig.builder()
+                .inputDataType(Input.DataType.NUMPY)
+                .outputDataType(Output.DataType.NUMPY)
+                .predictionType(Output.PredictionType.RAW)
+                .httpPort(port)
+                .build();
+
+        SameDiffConfig modelConfig = SameDiffConfig.builder()
+                .modelConfigType(ModelConfigType.builder()
+                        .modelType(ModelConfig.ModelType.SAMEDIFF)
+                        .modelLoadingPath(sameDiffFile.getAbsolutePath())
+                        .build())
+                .build();
+
+        ModelPipelineStep modelPipelineStep = ModelPipelineStep.builder()
+                .modelConfig(modelConfig)
+                .inputNames(Collections.singletonList("default"))
+                .outputNames(Collections.singletonList("output"))
+                .servingConfig(servingConfig)
+                .build();
+
+        InferenceConfiguration inferenceConfiguration = InferenceConfiguration.builder()
+                .servingConfig(servingConfig)
+                .pipelineStep(modelPipelineStep)
+                .build();
+        return new JsonObject(inferenceConfiguration.toJson());
+    }
+
+    @Test(timeout = 300000)
+    public void testNumpyLoad() throws Exception {
+        runLoad("samediff-numpy", multipart("/numpy/numpy", Nd4j.toNpyByteArray(input())));
+    }
+
+    @Test(timeout = 300000)
+    public void testNd4jLoad() throws Exception {
+        ByteBuffer serialized = BinarySerde.toByteBuffer(input());
+        byte[] bytes = new byte[serialized.remaining()];
+        serialized.get(bytes);
+        runLoad("samediff-nd4j", multipart("/nd4j/numpy", bytes));
+    }
+
+    @Test(timeout = 300000)
+    public void testImageLoad() throws Exception {
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for(int y = 0; y < IMAGE_SIZE; y++) {
+            for(int x = 0; x < IMAGE_SIZE; x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        runLoad("samediff-image", multipart("/image/numpy", png.toByteArray()));
+    }
+
+    private INDArray input() {
+        return Nd4j.rand(DataType.FLOAT, 1, 3, IMAGE_SIZE, IMAGE_SIZE);
+    }
+
+    private LoadRequest multipart(String path, byte[] content) {
+        return LoadRequest.multipart(path, "application/octet-stream", Collections.singletonMap("default", content));
+    }
+
+}
@@ -1,19 +1,16 @@
 package ai.konduit.serving.war;
 
+import ai.konduit.serving.verticles.VerticleConstants;
+import ai.konduit.serving.verticles.base.BaseRoutableVerticle;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientRequest;
-import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.spi.VerticleFactory;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServlet;
@@ -33,8 +30,9 @@ import java.util.concurrent.CountDownLatch;
 public class KonduitServlet extends HttpServlet {
 
     private Vertx vertx;
-    private HttpClient httpClient;
     private JsonObject vertxConfig;
+    private Verticle verticle;
+    private RouterServletBridge bridge;
 
     public final static String CLASS_NAME = "ai.konduit.serving.class";
     public final static String CONFIG_JSON = "ai.konduit.serving.configpath";
@@ -54,7 +52,6 @@ public class KonduitServlet extends HttpServlet {
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
         vertx = Vertx.vertx();
-        httpClient = vertx.createHttpClient();
 
         String configStorePath = System.getProperty(CONFIG_JSON);
         JsonObject config1 = new JsonObject();
@@ -80,6 +77,9 @@ public class KonduitServlet extends HttpServlet {
 
             }
 
+            //requests reach the router through the servlet, the verticle doesn't need to listen on a port
+            vertxConfig.put(VerticleConstants.EMBEDDED_KEY, true);
+
             log.debug("Attempting to deploy verticle " + verticleClassName);
             log("Attempting to deploy verticle " + verticleClassName);
             DeploymentOptions deploymentOptions = new DeploymentOptions()
@@ -96,10 +96,10 @@ public class KonduitServlet extends HttpServlet {
 
                 @Override
                 public Verticle createVerticle(String s, ClassLoader classLoader) throws Exception {
-                    Object verticle = classLoader.loadClass(verticleClassName).newInstance();
-                    Verticle syntaxNetVerticle = (Verticle) verticle;
+                    Object created = classLoader.loadClass(verticleClassName).newInstance();
+                    verticle = (Verticle) created;
                     countDownLatch.countDown();
-                    return syntaxNetVerticle;
+                    return verticle;
                 }
             });
 
@@ -129,6 +129,12 @@ public class KonduitServlet extends HttpServlet {
             Thread.currentThread().interrupt();
         }
 
+        if(!(verticle instanceof BaseRoutableVerticle) || ((BaseRoutableVerticle) verticle).router() == null) {
+            throw new ServletException("Verticle " + verticleClassName + " does not expose a router to dispatch requests to.");
+        }
+
+        BaseRoutableVerticle routableVerticle = (BaseRoutableVerticle) verticle;
+        bridge = new RouterServletBridge(vertx, routableVerticle.context(), routableVerticle.router());
         log("Initialized server");
         log.debug("Initialized server");
 
@@ -137,9 +143,6 @@ public class KonduitServlet extends HttpServlet {
     @Override
     public void destroy() {
         super.destroy();
-        if(httpClient != null) {
-            httpClient.close();
-        }
         if(vertx != null) {
             vertx.close(result -> {
                 if(result.failed()) {
@@ -154,108 +157,27 @@ public class KonduitServlet extends HttpServlet {
     }
 
     @Override
-    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        req.setAttribute("org.apache.catalina.ASYNC_SUPPORTED", true);
-        AsyncContext aCtx = req.startAsync(req, resp);
-        addLoggingListenerToCtx(aCtx);
-
-        ServletInputStream inputStream = req.getInputStream();
-        byte[] streamContent = IOUtils.toByteArray(inputStream);
-        inputStream.close();
-
-        String reqUrl = req.getRequestURL().toString();
-        String baseUrl = reqUrl.replace(req.getContextPath() + "//",req.getContextPath() + "/");
-        String url = baseUrl.replace(req.getContextPath(),"")
-                .replace(String.valueOf(req.getLocalPort()),
-                        String.valueOf(vertxConfig.getInteger("httpPort")));
-
-
-
-        HttpClientRequest request = httpClient.request(HttpMethod.GET, url, httpClientResponse -> {
-            httpClientResponse.exceptionHandler(exception -> {
-                log("Error occurred", exception.getCause());
-            });
-
-            httpClientResponse.bodyHandler(body -> {
-                try {
-                    final PrintWriter writer = aCtx.getResponse().getWriter();
-                    writer.write(body.toString());
-                    writer.flush();
-                    writer.close();
-                    aCtx.complete();
-                } catch (IOException e) {
-                    log("Error occurred", e);
-                }
-            });
-        });
-
-
-        request.putHeader("Content-Type",req.getHeader("Content-Type"));
-        request.setChunked(false);
-        request.end(Buffer.buffer(streamContent));
-
-
-
-    }
-
-
-
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if(bridge == null) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server failed to initialize.");
+            return;
+        }
 
-    @Override
-    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         req.setAttribute("org.apache.catalina.ASYNC_SUPPORTED", true);
         AsyncContext aCtx = req.startAsync(req, resp);
         addLoggingListenerToCtx(aCtx);
-        ServletInputStream inputStream = req.getInputStream();
-        byte[] streamContent = IOUtils.toByteArray(inputStream);
-        inputStream.close();
-
-        if(streamContent != null && streamContent.length > 0)  {
-            //proxy through to vertx backend
-            String reqUrl = req.getRequestURL().toString();
-            String baseUrl = reqUrl.replace(req.getContextPath() + "//",req.getContextPath() + "/");
-            String url = baseUrl.replace(req.getContextPath(),"")
-                    .replace(String.valueOf(req.getLocalPort()),
-                            String.valueOf(vertxConfig.getInteger("httpPort")));
-
-            HttpClientRequest request = httpClient.requestAbs(HttpMethod.POST, url, httpClientResponse -> {
-                httpClientResponse.exceptionHandler(exception -> {
-                    log("Error occurred", exception.getCause());
-                });
-
-                httpClientResponse.bodyHandler(body -> {
-                    try {
-                        final PrintWriter writer = aCtx.getResponse().getWriter();
-                        aCtx.getResponse().setContentType(httpClientResponse.getHeader("Content-Type"));
-                        writer.write(body.toString());
-                        writer.flush();
-                        writer.close();
-                        aCtx.complete();
-                    } catch (IOException e) {
-                        log("Error occurred", e);
-                    }
-                });
-            });
-
-            request.setChunked(false);
-            request.putHeader("Content-Type",req.getHeader("Content-Type"));
-            request.putHeader("Content-Length",String.valueOf(streamContent.length));
-            request.end(Buffer.buffer(streamContent));
-        }
-
-        else {
-            try {
-                final PrintWriter writer = aCtx.getResponse().getWriter();
-                aCtx.getResponse().setContentType("application/json");
-                writer.write(new JsonObject().put("status","empty body").toString());
-                writer.flush();
-                writer.close();
-                aCtx.complete();
-            } catch (IOException e) {
-                log("Error occurred", e);
-            }
+        if("POST".equals(req.getMethod()) && req.getContentLengthLong() == 0) {
+            final PrintWriter writer = aCtx.getResponse().getWriter();
+            aCtx.getResponse().setContentType("application/json");
+            writer.write(new JsonObject().put("status","empty body").toString());
+            writer.flush();
+            writer.close();
+            aCtx.complete();
+            return;
         }
 
+        //dispatched to the verticle's router in process, bodies are streamed both ways
+        bridge.dispatch(aCtx);
     }
 
 
@@ -0,0 +1,1226 @@
+package ai.konduit.serving.war;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpFrame;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.impl.MimeMapping;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.web.Router;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.security.cert.X509Certificate;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Hands servlet requests to a verticle's {@link Router} in process,
+ * instead of proxying them over http to a port the verticle listens on.
+ *
+ * The servlet request and response are exposed to the router as vert.x
+ * {@link HttpServerRequest} and {@link HttpServerResponse}. Bodies are streamed
+ * with servlet async I/O: request chunks are read from a {@link ReadListener} and
+ * handed to the request's handler on the verticle's context, response buffers
+ * are written from a {@link WriteListener} as the container accepts them.
+ * Multi part requests are parsed by the container ({@link HttpServletRequest#getParts()})
+ * and surface as {@link HttpServerFileUpload}s, so the vert.x body handlers work unchanged.
+ *
+ * Connection level features a servlet container doesn't expose
+ * (upgrades, raw sockets, http/2 push and frames) behave like they do
+ * on a vert.x http/1.x connection that can't offer them.
+ *
+ * @author Adam Gibson
+ */
+@Slf4j
+class RouterServletBridge {
+
+    public final static int READ_BUFFER_SIZE = 64 * 1024;
+    private final static Object END = new Object();
+
+    private final Vertx vertx;
+    private final Context context;
+    private final Router router;
+
+    /**
+     * @param vertx the vertx instance the verticle is deployed on
+     * @param context the context the router's handlers are called on
+     * @param router the router to dispatch to
+     */
+    RouterServletBridge(Vertx vertx, Context context, Router router) {
+        this.vertx = vertx;
+        this.context = context;
+        this.router = router;
+    }
+
+    /**
+     * Dispatch the request of the given (started) async context to the router.
+     * The async context is completed once the response has been written.
+     * @param asyncContext the async context of the request
+     * @throws IOException if the servlet streams can't be opened
+     */
+    void dispatch(AsyncContext asyncContext) throws IOException {
+        BridgedRequest request = new BridgedRequest(asyncContext);
+        context.runOnContext(v -> {
+            router.accept(request);
+            request.startReading();
+        });
+    }
+
+    /**
+     * A stream of buffers delivered on the verticle's context,
+     * queueing while there is no demand like a vert.x read stream.
+     * Only accessed on the context.
+     */
+    private static class InboundStream {
+        private final Deque<Object> pending = new ArrayDeque<>();
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+        //asks the source for more once demand comes back
+        private Runnable demandHandler;
+        private long demand = Long.MAX_VALUE;
+        private boolean ended;
+        private long bytes;
+
+        private void push(Object item) {
+            pending.add(item);
+            drain();
+        }
+
+        private void pause() {
+            demand = 0;
+        }
+
+        private void resume() {
+            demand = Long.MAX_VALUE;
+            drain();
+            demanded();
+        }
+
+        private void fetch(long amount) {
+            demand = demand + amount < 0 ? Long.MAX_VALUE : demand + amount;
+            drain();
+            demanded();
+        }
+
+        private boolean hasDemand() {
+            return demand > 0;
+        }
+
+        private void demanded() {
+            if(hasDemand() && demandHandler != null)
+                demandHandler.run();
+        }
+
+        private void drain() {
+            while(!pending.isEmpty()) {
+                Object item = pending.peek();
+                if(item instanceof Buffer) {
+                    if(demand == 0)
+                        return;
+                    if(demand != Long.MAX_VALUE)
+                        demand--;
+                }
+
+                pending.poll();
+                if(item == END) {
+                    ended = true;
+                    if(endHandler != null)
+                        endHandler.handle(null);
+                }
+                else if(item instanceof Throwable) {
+                    if(exceptionHandler != null)
+                        exceptionHandler.handle((Throwable) item);
+                    else
+                        log.error("Unhandled error reading request", (Throwable) item);
+                }
+                else {
+                    Buffer buffer = (Buffer) item;
+                    bytes += buffer.length();
+                    if(handler != null)
+                        handler.handle(buffer);
+                }
+            }
+        }
+    }
+
+    private class BridgedRequest implements HttpServerRequest {
+        private final AsyncContext asyncContext;
+        private final HttpServletRequest servletRequest;
+        private final String path, query;
+        private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        private final MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        private final MultiMap formAttributes = MultiMap.caseInsensitiveMultiMap();
+        private final InboundStream body = new InboundStream();
+        private final BridgedResponse response;
+        private boolean expectMultipart;
+        private Handler<HttpServerFileUpload> uploadHandler;
+        private ServletInputStream in;
+        private Buffer form;
+        private boolean allRead;
+
+        private BridgedRequest(AsyncContext asyncContext) throws IOException {
+            this.asyncContext = asyncContext;
+            this.servletRequest = (HttpServletRequest) asyncContext.getRequest();
+            //the servlet is mapped to /* so everything after the context path is the route
+            String requestPath = servletRequest.getRequestURI().substring(servletRequest.getContextPath().length());
+            while(requestPath.startsWith("//")) {
+                requestPath = requestPath.substring(1);
+            }
+
+            this.path = requestPath.isEmpty() ? "/" : requestPath;
+            this.query = servletRequest.getQueryString();
+            for(String name : Collections.list(servletRequest.getHeaderNames())) {
+                for(String value : Collections.list(servletRequest.getHeaders(name))) {
+                    headers.add(name, value);
+                }
+            }
+
+            if(query != null) {
+                for(Map.Entry<String, List<String>> param : new QueryStringDecoder(query, false).parameters().entrySet()) {
+                    params.add(param.getKey(), param.getValue());
+                }
+            }
+
+            this.response = new BridgedResponse(asyncContext);
+            asyncContext.addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    closed(new IOException("Request timed out"));
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    closed(event.getThrowable());
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        }
+
+        private void closed(Throwable cause) {
+            context.runOnContext(v -> {
+                if(!body.ended)
+                    body.push(cause);
+                response.closed();
+            });
+        }
+
+        /**
+         * Start reading the body, called on the context
+         * once the router had the chance to install its handlers.
+         */
+        private void startReading() {
+            String contentType = headers.get("Content-Type");
+            boolean multipart = contentType != null && contentType.toLowerCase().startsWith("multipart/");
+            if(expectMultipart && multipart) {
+                asyncContext.start(this::readParts);
+                return;
+            }
+
+            boolean urlEncoded = expectMultipart && contentType != null
+                    && contentType.toLowerCase().startsWith("application/x-www-form-urlencoded");
+            form = urlEncoded ? Buffer.buffer() : null;
+            try {
+                in = servletRequest.getInputStream();
+                body.demandHandler = this::readAvailable;
+                in.setReadListener(new ReadListener() {
+                    @Override
+                    public void onDataAvailable() {
+                        context.runOnContext(v -> readAvailable());
+                    }
+
+                    @Override
+                    public void onAllDataRead() {
+                        context.runOnContext(v -> {
+                            allRead = true;
+                            if(form != null) {
+                                for(Map.Entry<String, List<String>> attribute : new QueryStringDecoder(form.toString(StandardCharsets.UTF_8), false).parameters().entrySet()) {
+                                    formAttributes.add(attribute.getKey(), attribute.getValue());
+                                }
+                            }
+
+                            body.push(END);
+                        });
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        context.runOnContext(v -> {
+                            allRead = true;
+                            body.push(t);
+                        });
+                    }
+                });
+            } catch (IOException e) {
+                body.push(e);
+            }
+        }
+
+        /**
+         * Read what the container has buffered while the body has demand,
+         * runs on the context. Once the body is paused the rest stays in the container,
+         * which stops reading the socket, until resume or fetch calls this again.
+         */
+        private void readAvailable() {
+            try {
+                byte[] bytes = null;
+                while(!allRead && body.hasDemand() && in.isReady()) {
+                    if(bytes == null)
+                        bytes = new byte[READ_BUFFER_SIZE];
+                    int read = in.read(bytes);
+                    //end of the body, onAllDataRead pushes the end
+                    if(read == -1)
+                        return;
+                    Buffer chunk = Buffer.buffer(read).appendBytes(bytes, 0, read);
+                    if(form != null)
+                        form.appendBuffer(chunk);
+                    body.push(chunk);
+                }
+            } catch (IOException e) {
+                allRead = true;
+                body.push(e);
+            }
+        }
+
+        /**
+         * Parse the parts with the container, runs on a container thread.
+         * Form fields become form attributes, files uploads.
+         */
+        private void readParts() {
+            try {
+                for(Part part : servletRequest.getParts()) {
+                    if(part.getSubmittedFileName() == null) {
+                        String value;
+                        try(InputStream is = part.getInputStream()) {
+                            value = IOUtils.toString(is, StandardCharsets.UTF_8);
+                        }
+
+                        context.runOnContext(v -> formAttributes.add(part.getName(), value));
+                    }
+                    else {
+                        BridgedUpload upload = new BridgedUpload(part);
+                        context.runOnContext(v -> {
+                            if(uploadHandler != null) {
+                                uploadHandler.handle(upload);
+                                upload.start();
+                            }
+                        });
+                    }
+                }
+
+                context.runOnContext(v -> body.push(END));
+            } catch (IOException | ServletException e) {
+                context.runOnContext(v -> body.push(e));
+            }
+        }
+
+        @Override
+        public HttpServerRequest exceptionHandler(Handler<Throwable> handler) {
+            body.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest handler(Handler<Buffer> handler) {
+            body.handler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest pause() {
+            body.pause();
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest resume() {
+            body.resume();
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest fetch(long amount) {
+            body.fetch(amount);
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest endHandler(Handler<Void> endHandler) {
+            body.endHandler = endHandler;
+            return this;
+        }
+
+        @Override
+        public HttpServerRequest bodyHandler(Handler<Buffer> bodyHandler) {
+            Buffer all = Buffer.buffer();
+            body.handler = all::appendBuffer;
+            body.endHandler = v -> bodyHandler.handle(all);
+            return this;
+        }
+
+        @Override
+        public HttpVersion version() {
+            return "HTTP/1.0".equals(servletRequest.getProtocol()) ? HttpVersion.HTTP_1_0 : HttpVersion.HTTP_1_1;
+        }
+
+        @Override
+        public HttpMethod method() {
+            try {
+                return HttpMethod.valueOf(servletRequest.getMethod());
+            } catch (IllegalArgumentException e) {
+                return HttpMethod.OTHER;
+            }
+        }
+
+        @Override
+        public String rawMethod() {
+            return servletRequest.getMethod();
+        }
+
+        @Override
+        public boolean isSSL() {
+            return servletRequest.isSecure();
+        }
+
+        @Override
+        public String scheme() {
+            return servletRequest.getScheme();
+        }
+
+        @Override
+        public String uri() {
+            return query == null ? path : path + "?" + query;
+        }
+
+        @Override
+        public String path() {
+            return path;
+        }
+
+        @Override
+        public String query() {
+            return query;
+        }
+
+        @Override
+        public String host() {
+            return headers.get("Host");
+        }
+
+        @Override
+        public long bytesRead() {
+            return body.bytes;
+        }
+
+        @Override
+        public HttpServerResponse response() {
+            return response;
+        }
+
+        @Override
+        public MultiMap headers() {
+            return headers;
+        }
+
+        @Override
+        public String getHeader(String headerName) {
+            return headers.get(headerName);
+        }
+
+        @Override
+        public String getHeader(CharSequence headerName) {
+            return headers.get(headerName);
+        }
+
+        @Override
+        public MultiMap params() {
+            return params;
+        }
+
+        @Override
+        public String getParam(String paramName) {
+            return params.get(paramName);
+        }
+
+        @Override
+        public SocketAddress remoteAddress() {
+            return SocketAddress.inetSocketAddress(servletRequest.getRemotePort(), servletRequest.getRemoteAddr());
+        }
+
+        @Override
+        public SocketAddress localAddress() {
+            return SocketAddress.inetSocketAddress(servletRequest.getLocalPort(), servletRequest.getLocalAddr());
+        }
+
+        /**
+         * The container terminates tls and doesn't expose its session.
+         * @return null
+         */
+        public SSLSession sslSession() {
+            return null;
+        }
+
+        @Override
+        public X509Certificate[] peerCertificateChain() throws SSLPeerUnverifiedException {
+            //the servlet spec exposes client certificates as a request attribute
+            Object attribute = servletRequest.getAttribute("javax.servlet.request.X509Certificate");
+            if(!(attribute instanceof java.security.cert.X509Certificate[]) || ((java.security.cert.X509Certificate[]) attribute).length == 0) {
+                throw new SSLPeerUnverifiedException("No client certificates were presented");
+            }
+
+            java.security.cert.X509Certificate[] certificates = (java.security.cert.X509Certificate[]) attribute;
+            X509Certificate[] ret = new X509Certificate[certificates.length];
+            try {
+                for(int i = 0; i < certificates.length; i++) {
+                    ret[i] = X509Certificate.getInstance(certificates[i].getEncoded());
+                }
+            } catch (Exception e) {
+                SSLPeerUnverifiedException unverified = new SSLPeerUnverifiedException("Unable to convert client certificates");
+                unverified.initCause(e);
+                throw unverified;
+            }
+
+            return ret;
+        }
+
+        @Override
+        public String absoluteURI() {
+            StringBuffer url = servletRequest.getRequestURL();
+            return query == null ? url.toString() : url.append('?').append(query).toString();
+        }
+
+        @Override
+        public NetSocket netSocket() {
+            throw new IllegalStateException("The servlet container owns the connection, raw sockets are not available");
+        }
+
+        @Override
+        public HttpServerRequest setExpectMultipart(boolean expect) {
+            expectMultipart = expect;
+            return this;
+        }
+
+        @Override
+        public boolean isExpectMultipart() {
+            return expectMultipart;
+        }
+
+        @Override
+        public HttpServerRequest uploadHandler(Handler<HttpServerFileUpload> uploadHandler) {
+            this.uploadHandler = uploadHandler;
+            return this;
+        }
+
+        @Override
+        public MultiMap formAttributes() {
+            return formAttributes;
+        }
+
+        @Override
+        public String getFormAttribute(String attributeName) {
+            return formAttributes.get(attributeName);
+        }
+
+        @Override
+        public ServerWebSocket upgrade() {
+            throw new IllegalStateException("The servlet container owns the connection, websocket upgrades are not available");
+        }
+
+        @Override
+        public boolean isEnded() {
+            return body.ended;
+        }
+
+        @Override
+        public HttpServerRequest customFrameHandler(Handler<HttpFrame> handler) {
+            //http/1.x requests never receive custom frames
+            return this;
+        }
+
+        @Override
+        public HttpConnection connection() {
+            return null;
+        }
+    }
+
+    private class BridgedUpload implements HttpServerFileUpload {
+        private final Part part;
+        private final InboundStream stream = new InboundStream();
+        private String file;
+        //only touched by one worker read at a time
+        private InputStream is;
+        private boolean reading, finished;
+
+        private BridgedUpload(Part part) {
+            this.part = part;
+        }
+
+        /**
+         * Start streaming the part to its handler or file, called on the context
+         * once the upload handler had the chance to install its handlers.
+         */
+        private void start() {
+            stream.demandHandler = this::readNext;
+            readNext();
+        }
+
+        /**
+         * Read the next chunk on a worker thread while the upload has demand, runs on the context.
+         * A paused upload leaves the rest of the part unread until resume or fetch.
+         */
+        private void readNext() {
+            if(reading || finished || !stream.hasDemand())
+                return;
+
+            reading = true;
+            vertx.<Object>executeBlocking(future -> future.complete(readChunk()), false, result -> {
+                reading = false;
+                Object item = result.succeeded() ? result.result() : result.cause();
+                if(item == END || item instanceof Throwable)
+                    finished = true;
+                stream.push(item);
+                readNext();
+            });
+        }
+
+        /**
+         * Read a chunk of the part, or copy all of it when streaming to a file,
+         * runs on a worker thread.
+         *
+         * @return the chunk, {@link #END} or the error
+         */
+        private Object readChunk() {
+            try {
+                if(is == null)
+                    is = part.getInputStream();
+                if(file != null) {
+                    Files.copy(is, Paths.get(file), StandardCopyOption.REPLACE_EXISTING);
+                    is.close();
+                    return END;
+                }
+
+                byte[] bytes = new byte[READ_BUFFER_SIZE];
+                int read = is.read(bytes);
+                if(read == -1) {
+                    is.close();
+                    return END;
+                }
+
+                return Buffer.buffer(read).appendBytes(bytes, 0, read);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(is);
+                return e;
+            }
+        }
+
+        @Override
+        public HttpServerFileUpload exceptionHandler(Handler<Throwable> handler) {
+            stream.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload handler(Handler<Buffer> handler) {
+            stream.handler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload endHandler(Handler<Void> endHandler) {
+            stream.endHandler = endHandler;
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload pause() {
+            stream.pause();
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload resume() {
+            stream.resume();
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload fetch(long amount) {
+            stream.fetch(amount);
+            return this;
+        }
+
+        @Override
+        public HttpServerFileUpload streamToFileSystem(String filename) {
+            file = filename;
+            return this;
+        }
+
+        @Override
+        public String filename() {
+            return part.getSubmittedFileName();
+        }
+
+        @Override
+        public String name() {
+            return part.getName();
+        }
+
+        @Override
+        public String contentType() {
+            return part.getContentType();
+        }
+
+        @Override
+        public String contentTransferEncoding() {
+            String encoding = part.getHeader("Content-Transfer-Encoding");
+            return encoding == null ? "7bit" : encoding;
+        }
+
+        @Override
+        public String charset() {
+            return StandardCharsets.UTF_8.name();
+        }
+
+        @Override
+        public long size() {
+            return part.getSize();
+        }
+
+        @Override
+        public boolean isSizeAvailable() {
+            return true;
+        }
+    }
+
+    private class BridgedResponse implements HttpServerResponse, WriteListener {
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse servletResponse;
+        private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        private final MultiMap trailers = MultiMap.caseInsensitiveMultiMap();
+        //buffers handed to the container as it accepts them, guarded by this
+        private final Deque<byte[]> pending = new ArrayDeque<>();
+        private long pendingBytes;
+        private boolean writable, completed, endWritten;
+        //state below is only accessed on the context
+        private int statusCode = 200;
+        private String statusMessage;
+        private boolean headWritten, ended, closed, chunked;
+        private long bytesWritten;
+        private volatile int writeQueueMaxSize = 1024 * 1024;
+        private volatile Handler<Void> drainHandler;
+        private Handler<Void> headersEndHandler, bodyEndHandler, endHandler, closeHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        private BridgedResponse(AsyncContext asyncContext) throws IOException {
+            this.asyncContext = asyncContext;
+            this.servletResponse = (HttpServletResponse) asyncContext.getResponse();
+            servletResponse.getOutputStream().setWriteListener(this);
+        }
+
+        @Override
+        public synchronized void onWritePossible() throws IOException {
+            writable = true;
+            flush();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.error("Failed to write response", t);
+            context.runOnContext(v -> {
+                if(exceptionHandler != null)
+                    exceptionHandler.handle(t);
+                closed();
+            });
+        }
+
+        private void closed() {
+            if(closed)
+                return;
+
+            closed = true;
+            if(closeHandler != null)
+                closeHandler.handle(null);
+            synchronized (this) {
+                if(!completed) {
+                    completed = true;
+                    asyncContext.complete();
+                }
+            }
+        }
+
+        /**
+         * Hand pending buffers to the container while it accepts them without blocking.
+         */
+        private synchronized void flush() throws IOException {
+            if(!writable || completed)
+                return;
+
+            ServletOutputStream out = servletResponse.getOutputStream();
+            boolean wasFull = pendingBytes >= writeQueueMaxSize;
+            while(!pending.isEmpty()) {
+                if(!out.isReady()) {
+                    //the container calls onWritePossible once it can take more
+                    writable = false;
+                    return;
+                }
+
+                byte[] bytes = pending.poll();
+                pendingBytes -= bytes.length;
+                out.write(bytes);
+            }
+
+            Handler<Void> drained = drainHandler;
+            if(wasFull && drained != null) {
+                context.runOnContext(v -> drained.handle(null));
+            }
+
+            if(endWritten && out.isReady()) {
+                completed = true;
+                asyncContext.complete();
+            }
+        }
+
+        private void writeHead() {
+            if(headWritten)
+                return;
+
+            if(headersEndHandler != null)
+                headersEndHandler.handle(null);
+            headWritten = true;
+            servletResponse.setStatus(statusCode);
+            for(Map.Entry<String, String> header : headers) {
+                if(header.getKey().equalsIgnoreCase("Content-Type"))
+                    servletResponse.setContentType(header.getValue());
+                else if(header.getKey().equalsIgnoreCase("Content-Length"))
+                    servletResponse.setContentLengthLong(Long.parseLong(header.getValue()));
+                else
+                    servletResponse.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        private void writeBuffer(Buffer buffer) {
+            if(ended)
+                throw new IllegalStateException("Response has already been written");
+            writeHead();
+            if(buffer == null || buffer.length() == 0)
+                return;
+
+            bytesWritten += buffer.length();
+            synchronized (this) {
+                pending.add(buffer.getBytes());
+                pendingBytes += buffer.length();
+                flushOrFail();
+            }
+        }
+
+        private void endBuffer(Buffer buffer) {
+            if(!headWritten && !chunked && !headers.contains("Content-Length"))
+                headers.set("Content-Length", String.valueOf(buffer == null ? 0 : buffer.length()));
+            writeBuffer(buffer);
+            ended = true;
+            synchronized (this) {
+                endWritten = true;
+                flushOrFail();
+            }
+
+            if(bodyEndHandler != null)
+                bodyEndHandler.handle(null);
+            if(endHandler != null)
+                endHandler.handle(null);
+        }
+
+        private void flushOrFail() {
+            try {
+                flush();
+            } catch (IOException e) {
+                onError(e);
+            }
+        }
+
+        private void succeeded(Handler<AsyncResult<Void>> handler) {
+            if(handler != null)
+                handler.handle(Future.succeededFuture());
+        }
+
+        private HttpServerResponse put(MultiMap target, CharSequence name, CharSequence value) {
+            target.set(name, value);
+            return this;
+        }
+
+        private HttpServerResponse put(MultiMap target, CharSequence name, Iterable<? extends CharSequence> values) {
+            target.remove(name);
+            for(CharSequence value : values) {
+                target.add(name, value);
+            }
+
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse exceptionHandler(Handler<Throwable> handler) {
+            exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse write(Buffer data) {
+            writeBuffer(data);
+            return this;
+        }
+
+        public HttpServerResponse write(Buffer data, Handler<AsyncResult<Void>> handler) {
+            writeBuffer(data);
+            succeeded(handler);
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse setWriteQueueMaxSize(int maxSize) {
+            writeQueueMaxSize = maxSize;
+            return this;
+        }
+
+        @Override
+        public synchronized boolean writeQueueFull() {
+            return pendingBytes >= writeQueueMaxSize;
+        }
+
+        @Override
+        public HttpServerResponse drainHandler(Handler<Void> handler) {
+            drainHandler = handler;
+            return this;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public HttpServerResponse setStatusCode(int statusCode) {
+            this.statusCode = statusCode;
+            return this;
+        }
+
+        @Override
+        public String getStatusMessage() {
+            return statusMessage;
+        }
+
+        @Override
+        public HttpServerResponse setStatusMessage(String statusMessage) {
+            //servlet responses can't carry a custom reason phrase
+            this.statusMessage = statusMessage;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse setChunked(boolean chunked) {
+            this.chunked = chunked;
+            return this;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return chunked;
+        }
+
+        @Override
+        public MultiMap headers() {
+            return headers;
+        }
+
+        @Override
+        public HttpServerResponse putHeader(String name, String value) {
+            return put(headers, name, value);
+        }
+
+        @Override
+        public HttpServerResponse putHeader(CharSequence name, CharSequence value) {
+            return put(headers, name, value);
+        }
+
+        @Override
+        public HttpServerResponse putHeader(String name, Iterable<String> values) {
+            return put(headers, name, values);
+        }
+
+        @Override
+        public HttpServerResponse putHeader(CharSequence name, Iterable<CharSequence> values) {
+            return put(headers, name, values);
+        }
+
+        @Override
+        public MultiMap trailers() {
+            return trailers;
+        }
+
+        @Override
+        public HttpServerResponse putTrailer(String name, String value) {
+            return put(trailers, name, value);
+        }
+
+        @Override
+        public HttpServerResponse putTrailer(CharSequence name, CharSequence value) {
+            return put(trailers, name, value);
+        }
+
+        @Override
+        public HttpServerResponse putTrailer(String name, Iterable<String> values) {
+            return put(trailers, name, values);
+        }
+
+        @Override
+        public HttpServerResponse putTrailer(CharSequence name, Iterable<CharSequence> value) {
+            return put(trailers, name, value);
+        }
+
+        @Override
+        public HttpServerResponse closeHandler(Handler<Void> handler) {
+            closeHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse endHandler(Handler<Void> handler) {
+            endHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse write(String chunk, String enc) {
+            return write(Buffer.buffer(chunk, enc));
+        }
+
+        public HttpServerResponse write(String chunk, String enc, Handler<AsyncResult<Void>> handler) {
+            return write(Buffer.buffer(chunk, enc), handler);
+        }
+
+        @Override
+        public HttpServerResponse write(String chunk) {
+            return write(Buffer.buffer(chunk));
+        }
+
+        public HttpServerResponse write(String chunk, Handler<AsyncResult<Void>> handler) {
+            return write(Buffer.buffer(chunk), handler);
+        }
+
+        @Override
+        public HttpServerResponse writeContinue() {
+            //the container answers expect: 100-continue itself
+            return this;
+        }
+
+        @Override
+        public void end(String chunk) {
+            end(Buffer.buffer(chunk));
+        }
+
+        public void end(String chunk, Handler<AsyncResult<Void>> handler) {
+            end(Buffer.buffer(chunk), handler);
+        }
+
+        @Override
+        public void end(String chunk, String enc) {
+            end(Buffer.buffer(chunk, enc));
+        }
+
+        public void end(String chunk, String enc, Handler<AsyncResult<Void>> handler) {
+            end(Buffer.buffer(chunk, enc), handler);
+        }
+
+        @Override
+        public void end(Buffer chunk) {
+            endBuffer(chunk);
+        }
+
+        public void end(Buffer chunk, Handler<AsyncResult<Void>> handler) {
+            endBuffer(chunk);
+            succeeded(handler);
+        }
+
+        @Override
+        public void end() {
+            endBuffer(null);
+        }
+
+        public void end(Handler<AsyncResult<Void>> handler) {
+            endBuffer(null);
+            succeeded(handler);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename) {
+            return sendFile(filename, 0, Long.MAX_VALUE, null);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename, long offset) {
+            return sendFile(filename, offset, Long.MAX_VALUE, null);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename, long offset, long length) {
+            return sendFile(filename, offset, length, null);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename, Handler<AsyncResult<Void>> resultHandler) {
+            return sendFile(filename, 0, Long.MAX_VALUE, resultHandler);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename, long offset, Handler<AsyncResult<Void>> resultHandler) {
+            return sendFile(filename, offset, Long.MAX_VALUE, resultHandler);
+        }
+
+        @Override
+        public HttpServerResponse sendFile(String filename, long offset, long length, Handler<AsyncResult<Void>> resultHandler) {
+            vertx.fileSystem().readFile(filename, result -> {
+                if(result.failed()) {
+                    if(resultHandler != null) {
+                        resultHandler.handle(Future.failedFuture(result.cause()));
+                    }
+                    else {
+                        setStatusCode(404);
+                        end();
+                    }
+
+                    return;
+                }
+
+                Buffer file = result.result();
+                int start = (int) Math.min(offset, file.length());
+                int end = (int) Math.min(file.length(), start + Math.min(length, (long) file.length()));
+                if(!headers.contains("Content-Type")) {
+                    String contentType = MimeMapping.getMimeTypeForFilename(filename);
+                    if(contentType != null)
+                        headers.set("Content-Type", contentType);
+                }
+
+                end(file.getBuffer(start, end));
+                succeeded(resultHandler);
+            });
+
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closed();
+        }
+
+        @Override
+        public boolean ended() {
+            return ended;
+        }
+
+        @Override
+        public boolean closed() {
+            return closed;
+        }
+
+        @Override
+        public boolean headWritten() {
+            return headWritten;
+        }
+
+        @Override
+        public HttpServerResponse headersEndHandler(Handler<Void> handler) {
+            headersEndHandler = handler;
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse bodyEndHandler(Handler<Void> handler) {
+            bodyEndHandler = handler;
+            return this;
+        }
+
+        @Override
+        public long bytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public int streamId() {
+            //only http/2 streams have an id
+            return -1;
+        }
+
+        @Override
+        public HttpServerResponse push(HttpMethod method, String host, String path, Handler<AsyncResult<HttpServerResponse>> handler) {
+            return push(method, host, path, null, handler);
+        }
+
+        @Override
+        public HttpServerResponse push(HttpMethod method, String path, MultiMap headers, Handler<AsyncResult<HttpServerResponse>> handler) {
+            return push(method, null, path, headers, handler);
+        }
+
+        @Override
+        public HttpServerResponse push(HttpMethod method, String path, Handler<AsyncResult<HttpServerResponse>> handler) {
+            return push(method, null, path, null, handler);
+        }
+
+        @Override
+        public HttpServerResponse push(HttpMethod method, String host, String path, MultiMap headers, Handler<AsyncResult<HttpServerResponse>> handler) {
+            handler.handle(Future.failedFuture(new IllegalStateException("Push promises are only supported with http/2")));
+            return this;
+        }
+
+        @Override
+        public void reset() {
+            reset(0L);
+        }
+
+        @Override
+        public void reset(long code) {
+            //like http/1.x, resetting the stream closes the response
+            closed();
+        }
+
+        @Override
+        public HttpServerResponse writeCustomFrame(int type, int flags, Buffer payload) {
+            //http/1.x responses can't carry custom frames
+            return this;
+        }
+
+        @Override
+        public HttpServerResponse writeCustomFrame(HttpFrame frame) {
+            return writeCustomFrame(frame.type(), frame.flags(), frame.payload());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package ai.konduit.serving.war;
+
+import ai.konduit.serving.verticles.base.BaseRoutableVerticle;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.FileUpload;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletConfig;
+import javax.servlet.http.HttpServlet;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sends requests through {@link KonduitServlet} running in a servlet container
+ * to a verticle's router, the way the war is deployed.
+ *
+ * @author Adam Gibson
+ */
+public class KonduitServletTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private Server server;
+
+    /**
+     * Echoes request bodies and uploads back as the response.
+     */
+    public static class EchoVerticle extends BaseRoutableVerticle {
+
+        @Override
+        public void start() throws Exception {
+            super.start();
+            router = Router.router(vertx);
+            //reads the body one chunk at a time from a paused request, ahead of the body handler
+            router.post("/fetch").handler(ctx -> {
+                HttpServerRequest request = ctx.request();
+                Buffer body = Buffer.buffer();
+                request.pause();
+                request.handler(chunk -> {
+                    body.appendBuffer(chunk);
+                    vertx.setTimer(1, id -> request.fetch(1));
+                });
+                request.endHandler(v -> ctx.response()
+                        .putHeader("Content-Type", "application/octet-stream")
+                        .end(body));
+                request.fetch(1);
+            });
+            router.post().handler(BodyHandler.create()
+                    .setUploadsDirectory(config().getString("uploadsDirectory", BodyHandler.DEFAULT_UPLOADS_DIRECTORY))
+                    .setDeleteUploadedFilesOnEnd(true));
+            router.post("/json").handler(ctx -> ctx.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(ctx.getBodyAsJson().put("echo", true).encode()));
+            router.post("/binary").handler(ctx -> ctx.response()
+                    .putHeader("Content-Type", "application/octet-stream")
+                    .end(ctx.getBody()));
+            router.post("/multipart").handler(ctx -> {
+                JsonArray uploads = new JsonArray();
+                try {
+                    for(FileUpload upload : ctx.fileUploads()) {
+                        uploads.add(new JsonObject()
+                                .put("name", upload.name())
+                                .put("fileName", upload.fileName())
+                                .put("size", upload.size())
+                                .put("content", FileUtils.readFileToString(new File(upload.uploadedFileName()), StandardCharsets.UTF_8)));
+                    }
+                } catch (IOException e) {
+                    ctx.fail(e);
+                    return;
+                }
+
+                ctx.response().putHeader("Content-Type", "application/json")
+                        .end(new JsonObject()
+                                .put("uploads", uploads)
+                                .put("label", ctx.request().getFormAttribute("label"))
+                                .encode());
+            });
+            setupWebServer();
+        }
+    }
+
+    /**
+     * Never initializes, like a servlet whose verticle failed to deploy.
+     */
+    public static class UninitializedServlet extends KonduitServlet {
+        @Override
+        public void init(ServletConfig config) {
+        }
+    }
+
+    @Before
+    public void before() throws Exception {
+        File config = testDir.newFile("config.json");
+        FileUtils.writeStringToFile(config, new JsonObject()
+                .put("uploadsDirectory", testDir.newFolder("uploads").getAbsolutePath())
+                .encode(), StandardCharsets.UTF_8);
+        System.setProperty(KonduitServlet.CLASS_NAME, EchoVerticle.class.getName());
+        System.setProperty(KonduitServlet.CONFIG_JSON, config.getAbsolutePath());
+    }
+
+    @After
+    public void after() throws Exception {
+        if(server != null)
+            server.stop();
+        System.clearProperty(KonduitServlet.CLASS_NAME);
+        System.clearProperty(KonduitServlet.CONFIG_JSON);
+    }
+
+    @Test(timeout = 60000)
+    public void testJson() throws Exception {
+        String url = start(new KonduitServlet());
+        HttpURLConnection connection = post(url + "/json", "application/json",
+                new JsonObject().put("value", 1).encode().getBytes(StandardCharsets.UTF_8));
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("application/json"));
+        JsonObject response = new JsonObject(new String(read(connection), StandardCharsets.UTF_8));
+        assertEquals(1, (int) response.getInteger("value"));
+        assertTrue(response.getBoolean("echo"));
+    }
+
+    @Test(timeout = 60000)
+    public void testBinary() throws Exception {
+        String url = start(new KonduitServlet());
+        //larger than a single read so the body is streamed in chunks both ways
+        byte[] body = new byte[RouterServletBridge.READ_BUFFER_SIZE * 4 + 17];
+        new Random(12345).nextBytes(body);
+        HttpURLConnection connection = post(url + "/binary", "application/octet-stream", body);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(body.length, connection.getContentLengthLong());
+        assertArrayEquals(body, read(connection));
+    }
+
+    @Test(timeout = 60000)
+    public void testFetch() throws Exception {
+        String url = start(new KonduitServlet());
+        byte[] body = new byte[RouterServletBridge.READ_BUFFER_SIZE * 16 + 17];
+        new Random(12345).nextBytes(body);
+        HttpURLConnection connection = post(url + "/fetch", "application/octet-stream", body);
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(body, read(connection));
+    }
+
+    @Test(timeout = 60000)
+    public void testMultipart() throws Exception {
+        String url = start(new KonduitServlet());
+        String boundary = "konduitboundary";
+        String body = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"label\"\r\n\r\n" +
+                "cat\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"input\"; filename=\"input.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\n" +
+                "1,2,3\r\n" +
+                "--" + boundary + "--\r\n";
+        HttpURLConnection connection = post(url + "/multipart", "multipart/form-data; boundary=" + boundary,
+                body.getBytes(StandardCharsets.UTF_8));
+        assertEquals(200, connection.getResponseCode());
+        JsonObject response = new JsonObject(new String(read(connection), StandardCharsets.UTF_8));
+        assertEquals("cat", response.getString("label"));
+        JsonArray uploads = response.getJsonArray("uploads");
+        assertEquals(1, uploads.size());
+        JsonObject upload = uploads.getJsonObject(0);
+        assertEquals("input", upload.getString("name"));
+        assertEquals("input.txt", upload.getString("fileName"));
+        assertEquals(5L, (long) upload.getLong("size"));
+        assertEquals("1,2,3", upload.getString("content"));
+    }
+
+    @Test(timeout = 60000)
+    public void testEmptyPost() throws Exception {
+        String url = start(new KonduitServlet());
+        HttpURLConnection connection = post(url + "/json", "application/json", new byte[0]);
+        assertEquals(200, connection.getResponseCode());
+        JsonObject response = new JsonObject(new String(read(connection), StandardCharsets.UTF_8));
+        assertEquals("empty body", response.getString("status"));
+    }
+
+    @Test(timeout = 60000)
+    public void testUnavailableBeforeInit() throws Exception {
+        String url = start(new UninitializedServlet());
+        HttpURLConnection connection = post(url + "/json", "application/json",
+                new JsonObject().put("value", 1).encode().getBytes(StandardCharsets.UTF_8));
+        assertEquals(503, connection.getResponseCode());
+    }
+
+    private String start(HttpServlet servlet) throws Exception {
+        server = new Server(0);
+        ServletContextHandler handler = new ServletContextHandler();
+        handler.setContextPath("/");
+        ServletHolder holder = new ServletHolder(servlet);
+        holder.setAsyncSupported(true);
+        holder.setInitOrder(0);
+        holder.getRegistration().setMultipartConfig(new MultipartConfigElement(
+                testDir.newFolder().getAbsolutePath(), -1, -1, 1024 * 1024));
+        handler.addServlet(holder, "/*");
+        server.setHandler(handler);
+        server.start();
+        return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    private HttpURLConnection post(String url, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(body.length);
+        try(OutputStream os = connection.getOutputStream()) {
+            os.write(body);
+        }
+
+        return connection;
+    }
+
+    private byte[] read(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(InputStream is = connection.getInputStream()) {
+            IOUtils.copy(is, bytes);
+        }
+
+        return bytes.toByteArray();
+    }
+}